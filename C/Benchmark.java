@@ -0,0 +1,502 @@
+/*
+  File name: Benchmark.java
+  To run:
+    $ make bench
+    $ make bench_lex
+    $ make bench_phases
+    $ make bench_symbols
+    $ make bench_deep
+    $ java -classpath ./java/cup.jar:. Benchmark parse [max_n]
+    $ java -classpath ./java/cup.jar:. Benchmark lex [size_mb]
+    $ java -classpath ./java/cup.jar:. Benchmark phases [lines] [results.json|results.csv]
+    $ java -classpath ./java/cup.jar:. Benchmark symbols [globals]
+    $ java -classpath ./java/cup.jar:. Benchmark deep [depth]
+*/
+
+import java.io.*;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import absyn.*;
+import asm.*;
+import symb.*;
+
+class Benchmark {
+  /* number of timed runs per input size, the fastest one is reported */
+  static private final int RUNS = 3;
+
+  /* the parser reports completion on stdout, which is discarded while timing */
+  static private final PrintStream NULL_OUT = new PrintStream(OutputStream.nullOutputStream());
+
+  static private void usage() {
+    System.out.println("usage: java Benchmark parse [max_n] | lex [size_mb] | phases [lines] [results.json|results.csv]");
+    System.out.println("                       | symbols [globals] | deep [depth]");
+    System.out.println("       parse:  parse time for 1K..max_n declarations and statements");
+    System.out.println("       lex:    Lexer throughput in MB/s, FileReader vs SourceReader");
+    System.out.println("       phases: ops/s and allocation per op of lex, parse, showTable and generateAssembly");
+    System.out.println("               over programs/*.cm and generated programs of 1000 and [lines] lines");
+    System.out.println("       symbols: ns and bytes allocated per SymbolTable lookup, with a probe symbol vs by id");
+    System.out.println("       deep:   each phase on one expression [depth] operators deep, nested left and right,");
+    System.out.println("               on a thread with 512 KB of stack");
+  }
+
+  /* C- identifiers are letters only, so i is spelled in base 26 */
+  static String name(int i) {
+    StringBuilder sb = new StringBuilder("g");
+    do {
+      sb.append((char)('a' + i % 26));
+      i /= 26;
+    } while(i > 0);
+    return sb.toString();
+  }
+
+  /* N global declarations followed by an empty main */
+  static String globals(int n) {
+    StringBuilder sb = new StringBuilder(n * 14);
+    for(int i = 0; i < n; i++)
+      sb.append("int ").append(name(i)).append(";\n");
+    sb.append("void main(void) { }\n");
+    return sb.toString();
+  }
+
+  /* a single main whose block holds N statements */
+  static String statements(int n) {
+    StringBuilder sb = new StringBuilder(n * 12 + 64);
+    sb.append("int x;\nvoid main(void) {\n");
+    for(int i = 0; i < n; i++)
+      sb.append("  x = ").append(i).append(";\n");
+    sb.append("}\n");
+    return sb.toString();
+  }
+
+  static Object parse(String source, List<String> args) throws Exception {
+    parser p = new parser("bench.cm", args, new Lexer(new StringReader(source)));
+    return p.parse().value;
+  }
+
+  /* best of RUNS wall-clock parses, in nanoseconds */
+  static long timeParse(String source) throws Exception {
+    List<String> args = new ArrayList<String>();
+    PrintStream out = System.out;
+    long best = Long.MAX_VALUE;
+    System.setOut(NULL_OUT);
+    try {
+      for(int r = 0; r < RUNS; r++) {
+        long start = System.nanoTime();
+        parse(source, args);
+        best = Math.min(best, System.nanoTime() - start);
+      }
+    } finally {
+      System.setOut(out);
+    }
+    return best;
+  }
+
+  /* prints ns per item for each size; a linear parser keeps that column flat */
+  static void parseScaling(String label, int maxN, boolean stmts) throws Exception {
+    System.out.printf("%-12s %10s %12s %12s\n", label, "n", "ms", "ns/item");
+    timeParse(stmts ? statements(1000) : globals(1000)); // warm up the JIT
+    for(int n = 1000; n <= maxN; n *= 10) {
+      String source = stmts ? statements(n) : globals(n);
+      long ns = timeParse(source);
+      System.out.printf("%-12s %10d %12.2f %12.1f\n", "", n, ns / 1e6, (double) ns / n);
+    }
+  }
+
+  /* writes roughly sizeMB of ordinary looking functions to a temp file */
+  static File generated(int sizeMB) throws IOException {
+    File file = File.createTempFile("bench", ".cm");
+    file.deleteOnExit();
+    long target = (long) sizeMB << 20;
+    try(Writer w = new BufferedWriter(new FileWriter(file))) {
+      long written = 0;
+      for(int i = 0; written < target; i++) {
+        String v = name(i);
+        String f = "int f" + name(i) + "(int " + v + ") {\n"
+          + "  /* loop over the argument */\n"
+          + "  while(" + v + " > 0) {\n"
+          + "    " + v + " = " + v + " - 1 * (" + v + " + 42) / 7;\n"
+          + "  }\n"
+          + "  return " + v + ";\n"
+          + "}\n";
+        w.write(f);
+        written += f.length();
+      }
+    }
+    return file;
+  }
+
+  /* drains the lexer and returns the number of tokens */
+  static int lex(Reader reader) throws Exception {
+    Lexer lexer = new Lexer(reader);
+    int tokens = 0;
+    while(lexer.next_token().sym != sym.EOF)
+      tokens++;
+    return tokens;
+  }
+
+  /* best of RUNS, in MB/s over the whole file */
+  static double throughput(File file, boolean mapped) throws Exception {
+    long best = Long.MAX_VALUE;
+    for(int r = 0; r < RUNS; r++) {
+      long start = System.nanoTime();
+      Reader reader = mapped ? new SourceReader(file.getPath()) : new FileReader(file);
+      lex(reader);
+      reader.close();
+      best = Math.min(best, System.nanoTime() - start);
+    }
+    return (file.length() / 1048576.0) / (best / 1e9);
+  }
+
+  static void lexThroughput(int sizeMB) throws Exception {
+    File file = generated(sizeMB);
+    throughput(file, false); // warm up the JIT on both paths
+    throughput(file, true);
+    System.out.printf("%-14s %10s %10s\n", "reader", "MB", "MB/s");
+    System.out.printf("%-14s %10.1f %10.1f\n", "FileReader", file.length() / 1048576.0, throughput(file, false));
+    System.out.printf("%-14s %10.1f %10.1f\n", "SourceReader", file.length() / 1048576.0, throughput(file, true));
+  }
+
+  /* generated program of roughly n lines: globals and small functions
+     that loop, branch and call each other */
+  static String program(int n) {
+    StringBuilder sb = new StringBuilder(n * 24);
+    sb.append("int total;\nint data[10];\n");
+    int lines = 2;
+    for(int i = 0; lines < n; i++) {
+      String f = "f" + name(i);
+      sb.append("int ").append(f).append("(int a, int b) {\n");
+      sb.append("  int c;\n");
+      sb.append("  c = a * 2 + b;\n");
+      sb.append("  while(c > 10) {\n");
+      sb.append("    c = c - b / 3;\n");
+      sb.append("    data[a] = c;\n");
+      sb.append("  }\n");
+      sb.append("  if(c < a) total = total + c; else total = total - 1;\n");
+      if(i > 0)
+        sb.append("  c = f").append(name(i - 1)).append("(c, a);\n");
+      sb.append("  return c;\n");
+      sb.append("}\n");
+      lines += i > 0 ? 11 : 10;
+    }
+    sb.append("void main(void) {\n  total = 0;\n  output(total);\n}\n");
+    return sb.toString();
+  }
+
+  /* Phase harness. Each phase runs on each input for a warm-up period
+     and then a measured period, like one JMH fork with one warm-up and
+     one measurement iteration. Allocation is read from the thread's
+     allocated-bytes counter, and collections from the GC beans. */
+  static private final long WARMUP_NS = 300000000L;
+  static private final long MEASURE_NS = 1000000000L;
+
+  interface Op {
+    void run() throws Exception;
+  }
+
+  static class Result {
+    String input;
+    long bytes;
+    String phase;
+    long ops;
+    long nanos;
+    long allocated;
+    long gcCount;
+    long gcMillis;
+
+    double opsPerSecond() {
+      return ops / (nanos / 1e9);
+    }
+
+    double allocPerOp() {
+      return (double) allocated / ops;
+    }
+  }
+
+  static long gcCount() {
+    long n = 0;
+    for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+      n += Math.max(0, gc.getCollectionCount());
+    return n;
+  }
+
+  static long gcMillis() {
+    long n = 0;
+    for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+      n += Math.max(0, gc.getCollectionTime());
+    return n;
+  }
+
+  static long allocatedBytes() {
+    return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+      .getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  static Result measure(String input, long bytes, String phase, Op op) throws Exception {
+    long warm = System.nanoTime() + WARMUP_NS;
+    do {
+      op.run();
+    } while(System.nanoTime() < warm);
+
+    Result r = new Result();
+    r.input = input;
+    r.bytes = bytes;
+    r.phase = phase;
+    long gcs = gcCount();
+    long gcTime = gcMillis();
+    long allocated = allocatedBytes();
+    long start = System.nanoTime();
+    do {
+      op.run();
+      r.ops++;
+      r.nanos = System.nanoTime() - start;
+    } while(r.nanos < MEASURE_NS);
+    r.allocated = allocatedBytes() - allocated;
+    r.gcCount = gcCount() - gcs;
+    r.gcMillis = gcMillis() - gcTime;
+    return r;
+  }
+
+  /* Runs every phase on one input. The phases print to stdout and
+     stderr, which are discarded by the caller. A program that does not
+     parse, or that a phase throws on, keeps only the phases before it. */
+  static void phases(String input, final String source, final String tm, List<Result> results) throws Exception {
+    final List<String> args = new ArrayList<String>();
+    long bytes = source.length();
+
+    results.add(measure(input, bytes, "lex", () -> lex(new StringReader(source))));
+
+    final DeclarList tree;
+    try {
+      tree = (DeclarList) parse(source, args);
+    } catch(Exception e) {
+      return;
+    }
+    results.add(measure(input, bytes, "parse", () -> parse(source, args)));
+    if(tree == null)
+      return;
+
+    try {
+      results.add(measure(input, bytes, "symbols", () -> new SymbolTable().showTable(tree, 0)));
+      results.add(measure(input, bytes, "assembly", () -> new Asm().generateAssembly(tm, tree)));
+    } catch(Exception e) {
+      // a phase that cannot handle this program's errors
+    }
+  }
+
+  static void writeResults(String file, List<Result> results) throws IOException {
+    try(PrintWriter w = new PrintWriter(new FileWriter(file))) {
+      if(file.endsWith(".csv")) {
+        w.println("suite,input,bytes,phase,ops,ops_per_s,ns_per_op,alloc_bytes_per_op,gc_count,gc_ms");
+        for(Result r : results)
+          w.printf("C,%s,%d,%s,%d,%.1f,%.1f,%.1f,%d,%d\n", r.input, r.bytes, r.phase, r.ops,
+                   r.opsPerSecond(), (double) r.nanos / r.ops, r.allocPerOp(), r.gcCount, r.gcMillis);
+        return;
+      }
+      w.println("{");
+      w.printf("  \"suite\": \"C\",\n  \"timestamp\": \"%s\",\n  \"java\": \"%s\",\n",
+               java.time.Instant.now(), System.getProperty("java.version"));
+      w.printf("  \"warmup_ms\": %d,\n  \"measure_ms\": %d,\n  \"results\": [\n", WARMUP_NS / 1000000, MEASURE_NS / 1000000);
+      for(int i = 0; i < results.size(); i++) {
+        Result r = results.get(i);
+        w.printf("    {\"input\": \"%s\", \"bytes\": %d, \"phase\": \"%s\", \"ops\": %d, \"ops_per_s\": %.1f, "
+                 + "\"ns_per_op\": %.1f, \"alloc_bytes_per_op\": %.1f, \"gc_count\": %d, \"gc_ms\": %d}%s\n",
+                 r.input, r.bytes, r.phase, r.ops, r.opsPerSecond(), (double) r.nanos / r.ops,
+                 r.allocPerOp(), r.gcCount, r.gcMillis, i + 1 < results.size() ? "," : "");
+      }
+      w.println("  ]");
+      w.println("}");
+    }
+  }
+
+  static void phaseSuite(int lines, String resultsFile) throws Exception {
+    List<Result> results = new ArrayList<Result>();
+    File dir = new File(System.getProperty("java.io.tmpdir"), "bench-phases");
+    dir.mkdirs();
+    String tm = new File(dir, "bench.cm").getPath();
+
+    PrintStream out = System.out;
+    PrintStream err = System.err;
+    System.setOut(NULL_OUT);
+    System.setErr(NULL_OUT);
+    try {
+      File[] programs = new File("programs").listFiles((d, name) -> name.endsWith(".cm"));
+      if(programs != null) {
+        Arrays.sort(programs);
+        for(File f : programs) {
+          String source = new String(java.nio.file.Files.readAllBytes(f.toPath()), "US-ASCII");
+          phases(f.getName(), source, tm, results);
+        }
+      }
+      for(int n : new int[] { 1000, lines })
+        phases("generated-" + n, program(n), tm, results);
+    } finally {
+      System.setOut(out);
+      System.setErr(err);
+      new File(dir, "bench.tm").delete();
+      dir.delete();
+    }
+
+    System.out.printf("%-16s %-9s %10s %12s %12s %12s %4s\n", "input", "phase", "ops", "ops/s", "us/op", "B/op", "gc");
+    for(Result r : results)
+      System.out.printf("%-16s %-9s %10d %12.1f %12.2f %12.0f %4d\n", r.input, r.phase, r.ops,
+                        r.opsPerSecond(), r.nanos / 1e3 / r.ops, r.allocPerOp(), r.gcCount);
+    if(resultsFile != null) {
+      writeResults(resultsFile, results);
+      System.out.println("results written to " + resultsFile);
+    }
+  }
+
+  static interface Lookup {
+    Symbol find(SymbolTable table, String id) throws Exception;
+  }
+
+  /* ns and bytes per lookup of every name in ids, best of RUNS */
+  static void timeLookups(String label, SymbolTable table, String[] ids, Lookup lookup) throws Exception {
+    int rounds = Math.max(1, 2000000 / ids.length);
+    for(int r = 0; r < rounds; r++) // warm up the JIT
+      for(String id : ids)
+        lookup.find(table, id);
+    long best = Long.MAX_VALUE;
+    long bytes = 0;
+    for(int run = 0; run < RUNS; run++) {
+      long allocated = allocatedBytes();
+      long start = System.nanoTime();
+      for(int r = 0; r < rounds; r++)
+        for(String id : ids)
+          if(lookup.find(table, id) == null)
+            throw new IllegalStateException(id + " not found");
+      best = Math.min(best, System.nanoTime() - start);
+      bytes = allocatedBytes() - allocated;
+    }
+    long lookups = (long) rounds * ids.length;
+    System.out.printf("%-20s %12.1f %12.2f\n", label, (double) best / lookups, (double) bytes / lookups);
+  }
+
+  /* A table as Asm sees it inside a function: n globals, the parameters
+     and locals of one function and three nested blocks. Every name is
+     looked up in turn from the innermost block. */
+  static void symbolLookups(int n) throws Exception {
+    SymbolTable table = new SymbolTable();
+    String[] ids = new String[n + 8];
+    for(int i = 0; i < n; i++)
+      table.addSymbol(new SymbolInt(ids[i] = name(i)));
+    table.addSymbol(new SymbolFunction("main", 1, TypeSpec.VOID));
+    table.newScope();
+    for(int i = 0; i < 8; i++) {
+      table.addSymbol(new SymbolInt(ids[n + i] = "l" + name(i)));
+      if(i % 2 == 1)
+        table.newScope();
+    }
+
+    System.out.printf("%d globals, 8 locals in 4 scopes\n", n);
+    System.out.printf("%-20s %12s %12s\n", "lookup", "ns", "bytes");
+    timeLookups("probe symbol", table, ids, (t, id) -> t.getMatchingSymbol(new SymbolInt(id)));
+    timeLookups("by id and kind", table, ids, (t, id) -> t.getMatchingSymbol(id, Symbol.INT_TYPE, SymbolInt.class));
+  }
+
+  /* Java stack of the thread each deep phase runs on */
+  static private final long DEEP_STACK = 512 * 1024;
+
+  /* a main assigning one expression of n operators, nested to the left
+     (1 + 1 + ... + 1) or to the right (1 - (1 - (... - 1))) */
+  static String deep(int n, boolean right) {
+    StringBuilder sb = new StringBuilder(n * 6 + 64);
+    sb.append("int x;\nvoid main(void) {\n  x = ");
+    if(right) {
+      for(int i = 0; i < n; i++)
+        sb.append("1 - (");
+      sb.append('1');
+      for(int i = 0; i < n; i++)
+        sb.append(')');
+    } else {
+      sb.append('1');
+      for(int i = 0; i < n; i++)
+        sb.append(" + 1");
+    }
+    sb.append(";\n}\n");
+    return sb.toString();
+  }
+
+  /* best of RUNS runs of op, each on a new thread with DEEP_STACK bytes
+     of stack, in nanoseconds; -1 if op threw, a StackOverflowError from
+     a phase that recurses once per operator included */
+  static long timeDeep(Op op) throws Exception {
+    final Throwable[] failure = new Throwable[1];
+    long best = Long.MAX_VALUE;
+    for(int r = -1; r < RUNS; r++) {
+      Thread thread = new Thread(null, () -> {
+        try {
+          op.run();
+        } catch(Throwable e) {
+          failure[0] = e;
+        }
+      }, "deep", DEEP_STACK);
+      long start = System.nanoTime();
+      thread.start();
+      thread.join();
+      if(failure[0] != null)
+        return -1;
+      if(r >= 0)
+        best = Math.min(best, System.nanoTime() - start);
+    }
+    return best;
+  }
+
+  static void deepExpressions(int n) throws Exception {
+    File file = File.createTempFile("bench-deep", ".cm");
+    String tm = file.getPath();
+    String[] phases = { "parse", "symbols", "assembly" };
+    System.out.printf("expressions %d operators deep, %d KB of stack\n", n, DEEP_STACK / 1024);
+    System.out.printf("%-8s %-9s %10s\n", "", "phase", "ms");
+    for(boolean right : new boolean[] { false, true }) {
+      final String source = deep(n, right);
+      final List<String> args = new ArrayList<String>();
+      final DeclarList[] tree = new DeclarList[1];
+      long[] ns = new long[phases.length];
+      PrintStream out = System.out;
+      System.setOut(NULL_OUT);
+      try {
+        ns[0] = timeDeep(() -> tree[0] = (DeclarList) parse(source, args));
+        ns[1] = ns[0] < 0 ? -1 : timeDeep(() -> new SymbolTable().showTable(tree[0], 0));
+        ns[2] = ns[0] < 0 ? -1 : timeDeep(() -> new Asm().generateAssembly(tm, tree[0]));
+      } finally {
+        System.setOut(out);
+      }
+      for(int i = 0; i < phases.length; i++) {
+        if(ns[i] < 0)
+          System.out.printf("%-8s %-9s %10s\n", right ? "right" : "left", phases[i], "failed");
+        else
+          System.out.printf("%-8s %-9s %10.2f\n", right ? "right" : "left", phases[i], ns[i] / 1e6);
+      }
+    }
+    file.delete();
+    new File(tm.substring(0, tm.lastIndexOf('.')) + ".tm").delete();
+  }
+
+  static public void main(String args[]) {
+    if(args.length < 1) {
+      usage();
+      return;
+    }
+    try {
+      if(args[0].equals("parse")) {
+        int maxN = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+        parseScaling("declarations", maxN, false);
+        parseScaling("statements", maxN, true);
+      } else if(args[0].equals("lex")) {
+        lexThroughput(args.length > 1 ? Integer.parseInt(args[1]) : 64);
+      } else if(args[0].equals("symbols")) {
+        symbolLookups(args.length > 1 ? Integer.parseInt(args[1]) : 10000);
+      } else if(args[0].equals("deep")) {
+        deepExpressions(args.length > 1 ? Integer.parseInt(args[1]) : 100000);
+      } else if(args[0].equals("phases")) {
+        phaseSuite(args.length > 1 ? Integer.parseInt(args[1]) : 10000, args.length > 2 ? args[2] : null);
+      } else {
+        usage();
+      }
+    } catch(Exception e) {
+      e.printStackTrace();
+    }
+  }
+}
@@ -2,36 +2,54 @@
   Created by: Matt Breckon and Dean Way
   File name: Cminus.java
   To run: 
-    $ java Cminus [-a] [-s] [-c] [file_name.cm]
+    $ java Cminus [-a] [-s] [-c] [-dce] [-maxerrors=N] [-failfast] [file_name.cm]
 */
    
 import java.io.*;
 import java.util.*;
+import symb.Diagnostics;
    
 class Cminus {
   /* list of legal command line arguments */
-  static private List<String> cmds = Arrays.asList("-a", "-s", "-c");
+  static private List<String> cmds = Arrays.asList("-a", "-s", "-c", "-dce", "-failfast");
 
   /* terminal argument error readout */
   static private void argsError() {
-    System.out.println("usage: java Cminus [-a] [-s] [-c] [file_name.cm]");
+    System.out.println("usage: java Cminus [-a] [-s] [-c] [-dce] [-maxerrors=N] [-failfast] [file_name.cm]");
     System.out.println("       -a: display abstract syntax tree");
     System.out.println("       -s: display symbol tables");
     System.out.println("       -c: compile file to assembly");
+    System.out.println("       -dce: leave out functions main cannot reach");
+    System.out.println("       -maxerrors=N: stop after N errors");
+    System.out.println("       -failfast: stop at the first error");
   }
 
   static public void main(String args[]) {
     String filename;
     List<String> args_list = new ArrayList<String>();
+    int max_errors = 0;
 
-    /* validate number of arguments */
-    if(args.length > cmds.size()) {
+    /* validate number of arguments (each flag once, -maxerrors and the file) */
+    if(args.length > cmds.size() + 2) {
       System.out.println("Invalid number of arguments.");
       argsError();
       return;
     }
     /* validate command line arguments */
     for(int i = 0; i < args.length - 1; i++) {
+      if(args[i].startsWith("-maxerrors=")) {
+        try {
+          max_errors = Integer.parseInt(args[i].substring("-maxerrors=".length()));
+        } catch(NumberFormatException e) {
+          max_errors = -1;
+        }
+        if(max_errors < 0) {
+          System.out.println(args[i] + " is not a valid argument.");
+          argsError();
+          return;
+        }
+        continue;
+      }
       if(!cmds.contains(args[i])) {
         System.out.println(args[i] + " is not a valid argument.");
         argsError();
@@ -40,6 +58,8 @@ class Cminus {
       if(args[i].equals("-a")) args_list.add("-a");
       if(args[i].equals("-s")) args_list.add("-s");
       if(args[i].equals("-c")) args_list.add("-c");
+      if(args[i].equals("-dce")) args_list.add("-dce");
+      if(args[i].equals("-failfast")) max_errors = 1;
     }
     /* set filename */
     filename = args[args.length - 1];
@@ -55,10 +75,16 @@ class Cminus {
       argsError();
       return;
     }
-    /* execute parser */
+    /* execute parser; errors are printed together at the end, by line */
+    Diagnostics diagnostics = new Diagnostics(max_errors);
     try {
-      parser p = new parser(filename, args_list, new Lexer(new FileReader(filename)));
+      parser p = new parser(filename, args_list, new Lexer(new SourceReader(filename)));
+      p.diagnostics = diagnostics;
       Object result = p.parse().value;      
+      diagnostics.flush(System.err);
+    } catch(Diagnostics.Abort e) {
+      diagnostics.flush(System.err);
+      System.err.println(e.getMessage());
     } catch(Exception e) {
       e.printStackTrace();
     }
@@ -206,11 +206,26 @@ abstract public class Absyn {
     }
   }
 
+  //operators nest as deep as the program does, so they are walked
+  //with a stack of their own
   static private void showTree(ExpOp tree, int spaces) {
-    indent(spaces);
-    System.out.println("ExpOp: ");
-    spaces += SPACES;
-    showTree(tree.left, spaces);
+    new ExpOpWalker(SPACES) {
+      protected void enter(ExpOp tree, int spaces) {
+        indent(spaces);
+        System.out.println("ExpOp: ");
+      }
+
+      protected void operand(Exp tree, int spaces) {
+        showTree(tree, spaces);
+      }
+
+      protected void between(ExpOp tree, int spaces) {
+        showOperator(tree, spaces + SPACES);
+      }
+    }.walk(tree, spaces);
+  }
+
+  static private void showOperator(ExpOp tree, int spaces) {
     indent(spaces);
     System.out.print("Operator: ");
     switch(tree.op) {
@@ -247,6 +262,5 @@ abstract public class Absyn {
       default:
         System.out.println("Unrecognized operator at line " + (tree.pos + 1));
     }
-    showTree(tree.right, spaces);
   }
 }
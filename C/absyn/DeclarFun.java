@@ -5,6 +5,8 @@ public class DeclarFun extends Declar {
   public String name;
   public Params params;
   public StmtComp stmt;
+  /* address of the function's code, set by asm.Asm as it is emitted */
+  public int address;
   public DeclarFun(int pos, TypeSpec type, String name, Params params, StmtComp stmt) {
     this.pos = pos;
     this.type = type;
@@ -7,4 +7,16 @@ public class DeclarList {
     this.head = head;
     this.tail = tail;
   }
+
+  /* reverses the list in place and returns the new head */
+  public static DeclarList reverse(DeclarList list) {
+    DeclarList reversed = null;
+    while(list != null) {
+      DeclarList next = list.tail;
+      list.tail = reversed;
+      reversed = list;
+      list = next;
+    }
+    return reversed;
+  }
 }
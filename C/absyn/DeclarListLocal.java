@@ -7,4 +7,16 @@ public class DeclarListLocal {
     this.head = head;
     this.tail = tail;
   }
+
+  /* reverses the list in place and returns the new head */
+  public static DeclarListLocal reverse(DeclarListLocal list) {
+    DeclarListLocal reversed = null;
+    while(list != null) {
+      DeclarListLocal next = list.tail;
+      list.tail = reversed;
+      reversed = list;
+      list = next;
+    }
+    return reversed;
+  }
 }
@@ -5,6 +5,9 @@ public class DeclarVar extends Declar {
   public String name;
   public Boolean array;
   public int size;
+  /* set by asm.Binder: frame address and scope (1 for a global) */
+  public int address;
+  public int scope;
 
   public DeclarVar(int pos, TypeSpec type, String name, Boolean array) {
     this.pos = pos;
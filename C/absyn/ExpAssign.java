@@ -3,6 +3,8 @@ package absyn;
 public class ExpAssign extends Exp {
   public ExpVar lhs;
   public Exp rhs;
+  /* frame address of the temporary holding the target address, set by asm.Binder */
+  public int temp;
   public ExpAssign(int pos, ExpVar lhs, Exp rhs) {
     this.pos = pos;
     this.lhs = lhs;
@@ -3,6 +3,11 @@ package absyn;
 public class ExpCall extends Exp {
   public String id;
   public ExpList args;
+  /* set by asm.Binder: the function called (null for input and output,
+     whose code is at address) and the frame offset of the new frame */
+  public DeclarFun decl;
+  public int address;
+  public int frame;
   public ExpCall(int pos, String id, ExpList args) {
     this.pos = pos;
     this.id = id;
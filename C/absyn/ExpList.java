@@ -3,8 +3,23 @@ package absyn;
 public class ExpList {
   public Exp head;
   public ExpList tail;
+  /* frame address of the temporary holding head's value as a call
+     argument, set by asm.Binder */
+  public int temp;
   public ExpList(Exp head, ExpList tail) {
     this.head = head;
     this.tail = tail;
   }
+
+  /* reverses the list in place and returns the new head */
+  public static ExpList reverse(ExpList list) {
+    ExpList reversed = null;
+    while(list != null) {
+      ExpList next = list.tail;
+      list.tail = reversed;
+      reversed = list;
+      list = next;
+    }
+    return reversed;
+  }
 }
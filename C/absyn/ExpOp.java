@@ -15,6 +15,8 @@ public class ExpOp extends Exp {
   public Exp left;
   public int op;
   public Exp right;
+  /* frame address of the temporary holding the left value, set by asm.Binder */
+  public int temp;
   public ExpOp(int pos, Exp left, int op, Exp right) {
     this.pos = pos;
     this.left = left;
@@ -0,0 +1,86 @@
+package absyn;
+
+import java.util.Arrays;
+
+/* Walks an ExpOp and the ExpOps nested in its operands with a stack of
+   its own, so a long chain of operators, nested to the left or through
+   parentheses to the right, costs heap instead of Java stack. Operands
+   that are not ExpOps go to operand(), which handles them as usual; an
+   ExpOp inside one of them (an array index or a call argument) is
+   walked again from there, on the same stack.
+
+   The hooks run in the order of a recursive walk: enter() on the way
+   down, the left operand, between(), the right operand, then leave().
+   Each gets the spaces given to walk() plus step for every ExpOp above
+   it, as showTree indents. */
+abstract public class ExpOpWalker {
+  private int step;
+
+  /* ExpOps on the path from the root, and whether their right operand
+     has been started */
+  private ExpOp[] stack = new ExpOp[16];
+  private boolean[] right = new boolean[16];
+  private int top = 0;
+
+  public ExpOpWalker(int step) {
+    this.step = step;
+  }
+
+  protected void enter(ExpOp tree, int spaces) {
+  }
+
+  /* an operand that is not an ExpOp */
+  abstract protected void operand(Exp tree, int spaces);
+
+  protected void between(ExpOp tree, int spaces) {
+  }
+
+  protected void leave(ExpOp tree, int spaces) {
+  }
+
+  public void walk(ExpOp root, int spaces) {
+    int base = this.top;
+    try {
+      Exp tree = root;
+      while(true) {
+        while(tree instanceof ExpOp) {
+          ExpOp op = (ExpOp)tree;
+          enter(op, spaces + (this.top - base) * this.step);
+          push(op);
+          tree = op.left;
+        }
+        operand(tree, spaces + (this.top - base) * this.step);
+        //back up to the nearest operator still missing its right operand
+        while(true) {
+          if(this.top == base) {
+            return;
+          }
+          ExpOp op = this.stack[this.top - 1];
+          int at = spaces + (this.top - 1 - base) * this.step;
+          if(!this.right[this.top - 1]) {
+            this.right[this.top - 1] = true;
+            between(op, at);
+            tree = op.right;
+            break;
+          }
+          this.stack[--this.top] = null;
+          leave(op, at);
+        }
+      }
+    } finally {
+      //a hook that throws (an aborted compilation) leaves nothing behind
+      while(this.top > base) {
+        this.stack[--this.top] = null;
+      }
+    }
+  }
+
+  private void push(ExpOp op) {
+    if(this.top == this.stack.length) {
+      this.stack = Arrays.copyOf(this.stack, this.top * 2);
+      this.right = Arrays.copyOf(this.right, this.top * 2);
+    }
+    this.stack[this.top] = op;
+    this.right[this.top++] = false;
+  }
+}
@@ -3,6 +3,10 @@ package absyn;
 public class ExpVar extends Exp {
   public String name;
   public Exp exp;
+  /* set by asm.Binder: the variable's frame address and scope (1 for a
+     global, 0 if it did not resolve to a variable of this shape) */
+  public int address;
+  public int scope;
   public ExpVar(int pos, String name, Exp exp) {
     this.pos = pos;
     this.name = name;
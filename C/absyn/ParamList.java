@@ -7,4 +7,16 @@ public class ParamList {
     this.head = head;
     this.tail = tail;
   }
+
+  /* reverses the list in place and returns the new head */
+  public static ParamList reverse(ParamList list) {
+    ParamList reversed = null;
+    while(list != null) {
+      ParamList next = list.tail;
+      list.tail = reversed;
+      reversed = list;
+      list = next;
+    }
+    return reversed;
+  }
 }
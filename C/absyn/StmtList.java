@@ -7,4 +7,16 @@ public class StmtList {
     this.head = head;
     this.tail = tail;
   }
+
+  /* reverses the list in place and returns the new head */
+  public static StmtList reverse(StmtList list) {
+    StmtList reversed = null;
+    while(list != null) {
+      StmtList next = list.tail;
+      list.tail = reversed;
+      reversed = list;
+      list = next;
+    }
+    return reversed;
+  }
 }
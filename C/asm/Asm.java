@@ -2,21 +2,60 @@ package asm;
 
 import absyn.*;
 import symb.*;
-import symb.exceptions.*;
 import java.io.*;
 import java.util.*;
 
 public class Asm {
   private String input = "";
   private StringBuilder asm = new StringBuilder(); //string output to .tm file
-  private SymbolTable symbolTable = new SymbolTable();  
+  private SymbolTable symbolTable;
+  private Binder binder;
+  /* with -dce, the functions main cannot reach are left out */
+  private boolean eliminate = false;
+  private CallGraph calls = null;
+  private List<String> removed = new ArrayList<>();
+  private int removedInstructions = 0;
+  private int removedBytes = 0;
   private int address = 0;
+  /* operators, walked with a stack of their own however deep they nest */
+  private ExpOpWalker operators = new ExpOpWalker(0) {
+    protected void operand(Exp tree, int spaces) {
+      genCode(tree);
+    }
+
+    protected void between(ExpOp tree, int spaces) {
+      Asm.this.emitCode(++Asm.this.address, Operations.ST, AC, tree.temp, FP, "push left");
+    }
+
+    protected void leave(ExpOp tree, int spaces) {
+      Asm.this.emitCode(++Asm.this.address, Operations.LD, AC1, tree.temp, FP, "load left");
+      genOperator(tree);
+    }
+  };
   static private final int PC = 7;
   static private final int GP = 6;
   static private final int FP = 5;
   static private final int AC = 0;
   static private final int AC1 = 1;
 
+  public Asm() {
+    this(new Diagnostics());
+  }
+
+  public Asm(Diagnostics diagnostics) {
+    this.symbolTable = new SymbolTable(diagnostics);
+    this.binder = new Binder(this.symbolTable);
+  }
+
+  public void eliminate(boolean eliminate) {
+    this.eliminate = eliminate;
+  }
+
+  /* the call graph of the last program, if -dce built one */
+  public CallGraph callGraph() {
+    return this.calls;
+  }
+
   private enum Operations {
     HALT, IN, OUT, ADD, SUB, MUL, DIV, LD, ST,
     LDA, LDC, JLT, JLE, JGT, JGE, JEQ, JNE;
@@ -78,18 +117,14 @@ public class Asm {
 
   /* default assembly code tail */
   private void end() {
-    try {
-      SymbolFunction match = (SymbolFunction) this.symbolTable.getMatchingSymbol(new SymbolFunction("main", null));
-      this.emitCode(++this.address, Operations.ST, FP, symbolTable.getGlobalOffset(), FP, "push ofp");
-      this.emitCode(++this.address, Operations.LDA, FP, symbolTable.getGlobalOffset(), FP, "push frame");
-      this.emitCode(++this.address, Operations.LDA, AC, 1, PC, "load ac with ret ptr");
-      this.emitCode(++this.address, Operations.LDA, PC, match.getAddress() - this.address - 1, PC, "jump to " + match.getId() + " loc");
+    DeclarFun main = this.binder.function("main");
+    this.emitCode(++this.address, Operations.ST, FP, symbolTable.getGlobalOffset(), FP, "push ofp");
+    this.emitCode(++this.address, Operations.LDA, FP, symbolTable.getGlobalOffset(), FP, "push frame");
+    this.emitCode(++this.address, Operations.LDA, AC, 1, PC, "load ac with ret ptr");
+    ++this.address;
+    if (main != null) {
+      this.emitCode(this.address, Operations.LDA, PC, main.address - this.address - 1, PC, "jump to " + main.name + " loc");
       this.emitCode(++this.address, Operations.LD, FP, 0, FP, "pop frame");
-    }
-    catch(UndeclaredException e) {
-      this.symbolTable.error("Missing declaration of main function");
-    } catch (Exception e) {
-
     }
     asm.append("* End of execution:\n");
     asm.append(String.format("%1$3s", Integer.toString(++address)));
@@ -98,14 +133,18 @@ public class Asm {
 
   /* generate assembly code and output to file */
   public void generateAssembly(String filename, DeclarList tree) {
+    this.binder.bind(tree);
+    if(this.symbolTable.error) {
+      return;
+    }
+    if(this.eliminate) {
+      this.calls = new CallGraph(this.binder.function("main"));
+    }
     header(filename);
     prelude();
     this.genCode(tree);
     end();
 
-    if(this.symbolTable.error) {
-      return;
-    }
     /* output file name with path and .tm file type */
     String write = filename.substring(0, filename.lastIndexOf('.')) + ".tm";
     /* export assembly to external file */
@@ -116,6 +155,10 @@ public class Asm {
       bw.write(asm.toString());
       bw.close();
       System.out.println("Compile complete, saved to " + write);
+      if(!this.removed.isEmpty()) {
+        System.out.println("Removed unreachable functions: " + String.join(", ", this.removed)
+                + " (" + this.removedInstructions + " instructions, " + this.removedBytes + " bytes)");
+      }
     } catch(IOException e) {
       System.out.println("Error: failed to write to " + write);
     }
@@ -134,47 +177,23 @@ public class Asm {
   public void genCode(DeclarListLocal tree) {
     while(tree != null) {
       this.emitComment("allocating local var: " + tree.head.name);
-      genCode(tree.head);
       tree = tree.tail;
     }
   }
 
-  public void genCode(ExpList tree, SymbolFunction func) {
-    List<Integer> argAddresses = new LinkedList<>();
+  /* evaluates the arguments into their temporaries, then copies them
+     into the callee's frame */
+  public void genCode(ExpList tree, int frame) {
+    ExpList args = tree;
     while(tree != null) {
-      if(tree.head instanceof ExpVar){
-        ExpVar var = (ExpVar) tree.head;
-        if (var.exp != null){
-          func.addParameter(new SymbolInt("arg", 0));
-        } else {
-          Symbol match = null;
-          SymbolInt s = new SymbolArray(var.name, 0);
-          try {
-            match = this.symbolTable.getMatchingSymbol(s);
-          } catch (InvalidTypeException e) {
-            s = new SymbolInt(var.name, 0);
-          } catch (Exception e) {
-            this.symbolTable.error("Invaild type for argument on line: " + tree.head.pos);
-          }
-          func.addParameter(s);
-        }
-        genCode(var);
-        SymbolInt temp = symbolTable.newTemp();
-        this.emitCode(++this.address, Operations.ST, AC, temp.getAddress(), FP, "store arg val");
-        argAddresses.add(temp.getAddress());
-      } else {
-        func.addParameter(new SymbolInt("arg", 0));
-        genCode(tree.head);
-        SymbolInt temp = symbolTable.newTemp();
-        this.emitCode(++this.address, Operations.ST, AC, temp.getAddress(), FP, "store arg val");
-        argAddresses.add(temp.getAddress());
-      }
+      genCode(tree.head);
+      this.emitCode(++this.address, Operations.ST, AC, tree.temp, FP, "store arg val");
       tree = tree.tail;
     }
     int i = 0;
-    for(Integer ad : argAddresses) {
-      this.emitCode(++this.address, Operations.LD, AC, ad, FP, "load arg val");
-      this.emitCode(++this.address, Operations.ST, AC, symbolTable.getCurrentOffset() - (2 + i), FP, "store arg val in next frame");
+    for(tree = args; tree != null; tree = tree.tail) {
+      this.emitCode(++this.address, Operations.LD, AC, tree.temp, FP, "load arg val");
+      this.emitCode(++this.address, Operations.ST, AC, frame - (2 + i), FP, "store arg val in next frame");
       i++;
     }
 
@@ -195,40 +214,18 @@ public class Asm {
   }
 
   public void genCode(Declar tree) {
-    if(tree instanceof DeclarVar)
-      genCode((DeclarVar)tree);
-    else if(tree instanceof DeclarFun)
+    if(tree instanceof DeclarFun)
       genCode((DeclarFun)tree);
   }
 
-  private void genCode(DeclarVar tree) {
-    if(tree == null) {
+  private void genCode(DeclarFun tree) {
+    if(this.calls != null && !this.calls.isReachable(tree)) {
+      remove(tree);
       return;
     }
-    if (tree.array){
-      Symbol s = new SymbolArray(tree.name, tree.size);
-      if(!this.symbolTable.addSymbol(s)){
-        this.symbolTable.error("Variable redefinition error on line " + (tree.pos + 1));
-      }
-    }
-    else{
-      Symbol s = new SymbolInt(tree.name);
-      if(!this.symbolTable.addSymbol(s)){
-        this.symbolTable.error("Variable redefinition error on line " + (tree.pos + 1));
-      }
-    }
-  }
-
-  private void genCode(DeclarFun tree) {
     this.address++;
     int jmpAround = this.address;
-    Symbol s = new SymbolFunction(tree.name, ++this.address, tree.type.type);
-    if(!this.symbolTable.addSymbol(s)){
-      this.symbolTable.error("Function redefinition error of function " + tree.name + " on line: " + tree.pos);
-    }
-    this.symbolTable.newScope();
-    this.symbolTable.addSymbol(new SymbolInt("_ofp"));
-    this.symbolTable.addSymbol(new SymbolInt("_ret"));
+    tree.address = ++this.address;
 
     this.emitComment("processing function: " + tree.name);
     this.emitCode(this.address, Operations.ST, 0, -1, 5);
@@ -236,7 +233,23 @@ public class Asm {
     genCode(tree.stmt);
     this.emitCode(++this.address, Operations.LD, PC, -1, FP);
     this.emitCode(jmpAround, Operations.LDA, PC, this.address - jmpAround, PC, "jump around " + tree.name + " body");
-    this.symbolTable.leaveScope();
+  }
+
+  /* generates an unreachable function only to measure it, then takes
+     the code and the addresses back; only other unreachable functions
+     call it */
+  private void remove(DeclarFun tree) {
+    int length = this.asm.length();
+    int address = this.address;
+    CallGraph calls = this.calls;
+    this.calls = null;
+    genCode(tree);
+    this.calls = calls;
+    this.removed.add(tree.name);
+    this.removedInstructions += this.address - address;
+    this.removedBytes += this.asm.length() - length;
+    this.asm.setLength(length);
+    this.address = address;
   }
 
   private void genCode(Params tree) {
@@ -247,29 +260,11 @@ public class Asm {
 
   private void genCode(Param tree) {
     this.emitComment("allocating parameter: " + tree.id);
-    if (tree.array) {
-      SymbolArray s = new SymbolArray(tree.id);
-      if(!this.symbolTable.addSymbol(s)){
-        this.symbolTable.error("Parameter redefinition error");
-      } else {
-        this.symbolTable.getCurrentFunction().addParameter(s);
-      }
-    }
-    else {
-      SymbolInt s = new SymbolInt(tree.id);
-      if(!this.symbolTable.addSymbol(s)){
-        this.symbolTable.error("Parameter redefinition error");
-      } else {
-        this.symbolTable.getCurrentFunction().addParameter(s);
-      }
-    }
   }
 
   private void genCode(Stmt tree) {
     if(tree instanceof StmtComp){
-      this.symbolTable.newScope();
       genCode((StmtComp)tree);
-      this.symbolTable.leaveScope();
     }
     else if(tree instanceof StmtExp){
       genCode((StmtExp)tree);
@@ -283,9 +278,6 @@ public class Asm {
     else if(tree instanceof StmtReturn){
       genCode((StmtReturn)tree);
     }
-    else {
-      this.symbolTable.error("Illegal statement");
-    }
   }
 
   private void genCode(StmtComp tree) {
@@ -298,9 +290,6 @@ public class Asm {
   }
 
   private void genCode(StmtSelect tree) {
-    if (tree.test instanceof ExpCall){
-      this.symbolTable.checkType((ExpCall)tree.test);
-    }
     this.emitComment("-> if");
     genCode(tree.test);
     this.address++;
@@ -316,9 +305,6 @@ public class Asm {
   }
 
   private void genCode(StmtWhile tree) {
-    if (tree.test instanceof ExpCall){
-      this.symbolTable.checkType((ExpCall)tree.test);
-    }
     this.emitComment("-> while");
     int test = this.address;
     genCode(tree.test);
@@ -332,14 +318,7 @@ public class Asm {
 
   private void genCode(StmtReturn tree) {
     if (tree.item != null) {
-      if(!this.symbolTable.getCurrentFunction().getReturnType().equals(TypeSpec.INT)) {
-        this.symbolTable.error("Incorrect return type on line " + (tree.pos + 1));
-      }
       genCode(tree.item);
-    } else {
-      if(!this.symbolTable.getCurrentFunction().getReturnType().equals(TypeSpec.VOID)) {
-        this.symbolTable.error("Incorrect return type on line " + (tree.pos + 1));
-      }
     }
     this.emitCode(++this.address, Operations.LD, PC, -1, FP, "return to caller");
   }
@@ -358,93 +337,52 @@ public class Asm {
   }
 
   private void genCode(ExpAssign tree) {
-    SymbolInt temp = this.symbolTable.newTemp();
     genCode(tree.lhs, false);
-    this.emitCode(++this.address, Operations.ST, AC, temp.getAddress(), FP, "push left");
-    if(tree.rhs instanceof ExpCall){
-      this.symbolTable.checkType((ExpCall)tree.rhs);
-    }
+    this.emitCode(++this.address, Operations.ST, AC, tree.temp, FP, "push left");
     genCode(tree.rhs);
-    this.emitCode(++this.address, Operations.LD, AC1, temp.getAddress(), FP);
+    this.emitCode(++this.address, Operations.LD, AC1, tree.temp, FP);
     this.emitCode(++this.address, Operations.ST, AC, 0, AC1, "assign: store value");
   }
 
   private void genCode(ExpCall tree) {
-    SymbolFunction s = new SymbolFunction(tree.id, 0, null);
-    SymbolFunction match = null;
-    try {
-      match = (SymbolFunction) this.symbolTable.getMatchingSymbol(s);
-      if (tree.args != null) {
-        genCode(tree.args, s);
-      }
-      if (!this.symbolTable.haveMatchingParameters(match, s)) {
-        this.symbolTable.error("arguments in function call to " + match.getId() + " on line "
-                + tree.pos + " does not match definition");
-      }
-      this.emitComment("call to function: " + tree.id);
-      this.emitCode(++this.address, Operations.ST, FP, symbolTable.getCurrentOffset(), FP, "push ofp");
-      this.emitCode(++this.address, Operations.LDA, FP, symbolTable.getCurrentOffset(), FP, "push frame");
-      this.emitCode(++this.address, Operations.LDA, AC, 1, PC, "load ac with ret ptr");
-      this.emitCode(++this.address, Operations.LDA, PC, match.getAddress() - this.address - 1, PC, "jump to " + match.getId() + " loc");
-      this.emitCode(++this.address, Operations.LD, FP, 0, FP, "pop frame");
-    }
-    catch(Exception e) {
-      this.symbolTable.error(e.getMessage() + ": on line " + (tree.pos + 1));
-    }
+    if (tree.args != null) {
+      genCode(tree.args, tree.frame);
+    }
+    int target = tree.decl != null ? tree.decl.address : tree.address;
+    this.emitComment("call to function: " + tree.id);
+    this.emitCode(++this.address, Operations.ST, FP, tree.frame, FP, "push ofp");
+    this.emitCode(++this.address, Operations.LDA, FP, tree.frame, FP, "push frame");
+    this.emitCode(++this.address, Operations.LDA, AC, 1, PC, "load ac with ret ptr");
+    this.emitCode(++this.address, Operations.LDA, PC, target - this.address - 1, PC, "jump to " + tree.id + " loc");
+    this.emitCode(++this.address, Operations.LD, FP, 0, FP, "pop frame");
   }
 
   private void genCode(ExpVar tree, boolean value) {
     Operations load = value ? Operations.LD : Operations.LDA;
     if(tree.exp == null) { //normal variable
-      Symbol s = new SymbolInt(tree.name);
-      try {
-        Symbol match = this.symbolTable.getMatchingSymbol(s);
-        this.emitComment("Looking up id: " + tree.name);
-        if (match.isGlobalVar()){
-          this.emitCode(++this.address, load, AC, match.getAddress(), GP, "load id");
-        } else {
-          this.emitCode(++this.address, load, AC, match.getAddress(), FP, "load id");
-        }
-      }
-      catch(InvalidTypeException e) {
-        //Arrays can be used without brackets in some cases
-        //i.e. int foo(int arr[]) ...  int a[10]; foo(a);
-      } catch (Exception e){
-        this.symbolTable.error(e.getMessage() + ": on line " + (tree.pos + 1));
+      //an array passed whole has no binding and loads nothing
+      //i.e. int foo(int arr[]) ...  int a[10]; foo(a);
+      if (tree.scope == 0) {
+        return;
       }
+      this.emitComment("Looking up id: " + tree.name);
+      this.emitCode(++this.address, load, AC, tree.address, tree.scope == 1 ? GP : FP, "load id");
     } else { //array variable
-      Symbol s = new SymbolArray(tree.name);
-      try {
-        SymbolArray match = (SymbolArray)this.symbolTable.getMatchingSymbol(s);
-        if(tree.exp instanceof ExpCall){
-          this.symbolTable.checkType((ExpCall)tree.exp);
-        }
-        this.emitComment("Looking up id: " + tree.name);
-        this.emitComment("generating index");
-        genCode(tree.exp);
-        this.emitCode(++this.address, Operations.LD, AC1, match.getAddress(), FP, "top of array");
-        this.emitCode(++this.address, Operations.ADD, AC, AC1, AC);
-        this.emitCode(++this.address, load, AC, 0, AC, "load id");
-      }
-      catch(Exception e) {
-        this.symbolTable.error(e.getMessage() + ": on line " + (tree.pos + 1));
-      }
+      this.emitComment("Looking up id: " + tree.name);
+      this.emitComment("generating index");
+      genCode(tree.exp);
+      this.emitCode(++this.address, Operations.LD, AC1, tree.address, FP, "top of array");
+      this.emitCode(++this.address, Operations.ADD, AC, AC1, AC);
+      this.emitCode(++this.address, load, AC, 0, AC, "load id");
     }
   }
 
   private void genCode(ExpOp tree) {
-    SymbolInt temp;
-    if (tree.left instanceof ExpCall){
-      this.symbolTable.checkType((ExpCall)tree.left);
-    }
-    genCode(tree.left);
-    temp = this.symbolTable.newTemp();
-    this.emitCode(++this.address, Operations.ST, AC, temp.getAddress(), FP, "push left");
-    if (tree.right instanceof ExpCall){
-      this.symbolTable.checkType((ExpCall)tree.right);
-    }
-    genCode(tree.right);
-    this.emitCode(++this.address, Operations.LD, AC1, temp.getAddress(), FP, "load left");
+    this.operators.walk(tree, 0);
+  }
+
+  /* applies the operator to the left value in AC1 and the right in AC */
+  private void genOperator(ExpOp tree) {
     switch(tree.op) {
       case ExpOp.PLUS:
         this.emitCode(++this.address, Operations.ADD, AC, AC1, AC);
@@ -0,0 +1,292 @@
+package asm;
+
+import absyn.*;
+import symb.*;
+import symb.exceptions.*;
+import java.util.*;
+
+/* Resolves every name in a program once, before Asm emits any code.
+   The tree is walked in the order Asm emits it, building the same
+   symbol table, temporaries included, so that the frame layout is the
+   one the generated code expects. What Asm needs is left on the nodes:
+   addresses and scopes on ExpVar and DeclarVar, the callee and new
+   frame offset on ExpCall, and the temporaries of assignments,
+   operators and call arguments. Every semantic error is reported here,
+   in the same order as before; Asm writes no file if there were any. */
+public class Binder {
+  private SymbolTable symbolTable;
+
+  /* the declaration behind each function symbol, for ExpCall.decl */
+  private Map<Symbol, DeclarFun> functions = new IdentityHashMap<>();
+
+  /* operators, walked with a stack of their own however deep they nest;
+     the left value waits in a temporary while the right is computed */
+  private ExpOpWalker operators = new ExpOpWalker(0) {
+    protected void enter(ExpOp tree, int spaces) {
+      if (tree.left instanceof ExpCall){
+        Binder.this.symbolTable.checkType((ExpCall)tree.left);
+      }
+    }
+
+    protected void operand(Exp tree, int spaces) {
+      bind(tree);
+    }
+
+    protected void between(ExpOp tree, int spaces) {
+      tree.temp = Binder.this.symbolTable.newTemp().getAddress();
+      if (tree.right instanceof ExpCall){
+        Binder.this.symbolTable.checkType((ExpCall)tree.right);
+      }
+    }
+  };
+
+  public Binder(SymbolTable symbolTable) {
+    this.symbolTable = symbolTable;
+  }
+
+  /* the declaration of a function, or null */
+  public DeclarFun function(String id) {
+    return this.functions.get(this.symbolTable.lookup(id, Symbol.FUNC_TYPE));
+  }
+
+  public void bind(DeclarList tree) {
+    while(tree != null) {
+      bind(tree.head);
+      tree = tree.tail;
+    }
+  }
+
+  private void bind(DeclarListLocal tree) {
+    while(tree != null) {
+      bind(tree.head);
+      tree = tree.tail;
+    }
+  }
+
+  private void bind(StmtList tree) {
+    while(tree != null) {
+      bind(tree.head);
+      tree = tree.tail;
+    }
+  }
+
+  private void bind(ParamList tree) {
+    while(tree != null) {
+      bind(tree.head);
+      tree = tree.tail;
+    }
+  }
+
+  private void bind(Declar tree) {
+    if(tree instanceof DeclarVar)
+      bind((DeclarVar)tree);
+    else if(tree instanceof DeclarFun)
+      bind((DeclarFun)tree);
+  }
+
+  private void bind(DeclarVar tree) {
+    if(tree == null) {
+      return;
+    }
+    Symbol s = tree.array ? new SymbolArray(tree.name, tree.size) : new SymbolInt(tree.name);
+    if(!this.symbolTable.addSymbol(s)){
+      this.symbolTable.error("S01", tree.pos, "Variable redefinition error on line " + (tree.pos + 1));
+    }
+    tree.address = s.getAddress();
+    tree.scope = s.getScope();
+  }
+
+  private void bind(DeclarFun tree) {
+    Symbol s = new SymbolFunction(tree.name, 0, tree.type.type);
+    if(!this.symbolTable.addSymbol(s)){
+      this.symbolTable.error("S02", tree.pos, "Function redefinition error of function " + tree.name + " on line: " + tree.pos);
+    } else {
+      this.functions.put(s, tree);
+    }
+    this.symbolTable.newScope();
+    this.symbolTable.addSymbol(new SymbolInt("_ofp"));
+    this.symbolTable.addSymbol(new SymbolInt("_ret"));
+    bind(tree.params);
+    bind(tree.stmt);
+    this.symbolTable.leaveScope();
+  }
+
+  private void bind(Params tree) {
+    if(!tree.isVoidParams){
+      bind(tree.param_list);
+    }
+  }
+
+  private void bind(Param tree) {
+    SymbolInt s = tree.array ? new SymbolArray(tree.id) : new SymbolInt(tree.id);
+    if(!this.symbolTable.addSymbol(s)){
+      this.symbolTable.error("S03", tree.pos, "Parameter redefinition error");
+    } else {
+      this.symbolTable.getCurrentFunction().addParameter(s);
+    }
+  }
+
+  private void bind(Stmt tree) {
+    if(tree instanceof StmtComp){
+      this.symbolTable.newScope();
+      bind((StmtComp)tree);
+      this.symbolTable.leaveScope();
+    }
+    else if(tree instanceof StmtExp){
+      bind(((StmtExp)tree).exp);
+    }
+    else if(tree instanceof StmtSelect){
+      bind((StmtSelect)tree);
+    }
+    else if(tree instanceof StmtWhile){
+      bind((StmtWhile)tree);
+    }
+    else if(tree instanceof StmtReturn){
+      bind((StmtReturn)tree);
+    }
+    else {
+      this.symbolTable.error("S04", -1, "Illegal statement");
+    }
+  }
+
+  private void bind(StmtComp tree) {
+    bind(tree.declar_local);
+    bind(tree.stmt_list);
+  }
+
+  private void bind(StmtSelect tree) {
+    if (tree.test instanceof ExpCall){
+      this.symbolTable.checkType((ExpCall)tree.test);
+    }
+    bind(tree.test);
+    bind(tree.then_stmt);
+    if (tree.else_stmt != null) {
+      bind(tree.else_stmt);
+    }
+  }
+
+  private void bind(StmtWhile tree) {
+    if (tree.test instanceof ExpCall){
+      this.symbolTable.checkType((ExpCall)tree.test);
+    }
+    bind(tree.test);
+    bind(tree.stmt);
+  }
+
+  private void bind(StmtReturn tree) {
+    String type = tree.item != null ? TypeSpec.INT : TypeSpec.VOID;
+    if(!this.symbolTable.getCurrentFunction().getReturnType().equals(type)) {
+      this.symbolTable.error("S05", tree.pos, "Incorrect return type on line " + (tree.pos + 1));
+    }
+    if (tree.item != null) {
+      bind(tree.item);
+    }
+  }
+
+  private void bind(Exp tree) {
+    if(tree instanceof ExpAssign)
+      bind((ExpAssign)tree);
+    else if(tree instanceof ExpCall)
+      bind((ExpCall)tree);
+    else if(tree instanceof ExpOp)
+      bind((ExpOp)tree);
+    else if(tree instanceof ExpVar)
+      bind((ExpVar)tree);
+  }
+
+  private void bind(ExpAssign tree) {
+    tree.temp = this.symbolTable.newTemp().getAddress();
+    bind(tree.lhs);
+    if(tree.rhs instanceof ExpCall){
+      this.symbolTable.checkType((ExpCall)tree.rhs);
+    }
+    bind(tree.rhs);
+  }
+
+  private void bind(ExpCall tree) {
+    SymbolFunction s = new SymbolFunction(tree.id, 0, null);
+    SymbolFunction match = (SymbolFunction) this.symbolTable.lookup(tree.id, Symbol.FUNC_TYPE);
+    if (tree.args != null) {
+      bind(tree.args, s);
+    }
+    if (match == null) {
+      this.symbolTable.error("S06", tree.pos, "Use of undeclared function " + tree.id + ": on line " + (tree.pos + 1));
+      return;
+    }
+    if (!this.symbolTable.haveMatchingParameters(match, s)) {
+      this.symbolTable.error("S07", tree.pos, "arguments in function call to " + match.getId() + " on line "
+              + tree.pos + " does not match definition");
+    }
+    tree.decl = this.functions.get(match);
+    tree.address = match.getAddress();
+    tree.frame = this.symbolTable.getCurrentOffset();
+  }
+
+  /* the arguments of a call, collected into func to check them against
+     the callee's parameters */
+  private void bind(ExpList tree, SymbolFunction func) {
+    while(tree != null) {
+      if(tree.head instanceof ExpVar && ((ExpVar) tree.head).exp == null){
+        ExpVar var = (ExpVar) tree.head;
+        SymbolInt s = new SymbolArray(var.name, 0);
+        try {
+          this.symbolTable.getMatchingSymbol(var.name, Symbol.INT_TYPE, SymbolArray.class);
+        } catch (InvalidTypeException e) {
+          s = new SymbolInt(var.name, 0);
+        } catch (Exception e) {
+          this.symbolTable.error("S08", tree.head.pos, "Invaild type for argument on line: " + tree.head.pos);
+        }
+        func.addParameter(s);
+      } else {
+        func.addParameter(new SymbolInt("arg", 0));
+      }
+      bind(tree.head);
+      tree.temp = this.symbolTable.newTemp().getAddress();
+      tree = tree.tail;
+    }
+  }
+
+  private void bind(ExpVar tree) {
+    tree.scope = 0;
+    if(tree.exp == null) { //normal variable
+      try {
+        Symbol match = this.symbolTable.getMatchingSymbol(tree.name, Symbol.INT_TYPE, SymbolInt.class);
+        if (match == null) {
+          this.symbolTable.error("S09", tree.pos, "Use of undeclared variable " + tree.name + ": on line " + (tree.pos + 1));
+          return;
+        }
+        tree.address = match.getAddress();
+        tree.scope = match.getScope();
+      }
+      catch(InvalidTypeException e) {
+        //Arrays can be used without brackets in some cases
+        //i.e. int foo(int arr[]) ...  int a[10]; foo(a);
+      } catch (Exception e){
+        this.symbolTable.error("S10", tree.pos, e.getMessage() + ": on line " + (tree.pos + 1));
+      }
+    } else { //array variable
+      Symbol match;
+      try {
+        match = this.symbolTable.getMatchingSymbol(tree.name, Symbol.INT_TYPE, SymbolArray.class);
+      }
+      catch(Exception e) {
+        this.symbolTable.error("S10", tree.pos, e.getMessage() + ": on line " + (tree.pos + 1));
+        return;
+      }
+      if(tree.exp instanceof ExpCall){
+        this.symbolTable.checkType((ExpCall)tree.exp);
+      }
+      bind(tree.exp);
+      if (match == null) {
+        this.symbolTable.error("S09", tree.pos, "Use of undeclared variable " + tree.name + ": on line " + (tree.pos + 1));
+        return;
+      }
+      tree.address = match.getAddress();
+      tree.scope = match.getScope();
+    }
+  }
+
+  private void bind(ExpOp tree) {
+    this.operators.walk(tree, 0);
+  }
+}
@@ -0,0 +1,97 @@
+package asm;
+
+import absyn.*;
+import java.util.*;
+
+/* Which functions call which, from the declarations Binder leaves on
+   each ExpCall, and which of them main reaches. Only the bodies of
+   reachable functions are walked, so the callees of the others are
+   unknown (null). Without a main every function counts as reachable;
+   no call to main is generated then anyway. */
+public class CallGraph {
+  /* distinct callees of each reachable function, in the order first called */
+  private Map<DeclarFun, List<DeclarFun>> callees = new IdentityHashMap<>();
+  private DeclarFun main;
+
+  public CallGraph(DeclarFun main) {
+    this.main = main;
+    if(main == null) {
+      return;
+    }
+    ArrayDeque<DeclarFun> queue = new ArrayDeque<>();
+    this.callees.put(main, new ArrayList<DeclarFun>());
+    queue.add(main);
+    while(!queue.isEmpty()) {
+      DeclarFun function = queue.poll();
+      List<DeclarFun> called = this.callees.get(function);
+      walk(function.stmt, called);
+      for(DeclarFun callee : called) {
+        if(!this.callees.containsKey(callee)) {
+          this.callees.put(callee, new ArrayList<DeclarFun>());
+          queue.add(callee);
+        }
+      }
+    }
+  }
+
+  public boolean isReachable(DeclarFun function) {
+    return this.main == null || this.callees.containsKey(function);
+  }
+
+  /* the functions called by function, or null if it is unreachable */
+  public List<DeclarFun> callees(DeclarFun function) {
+    return this.callees.get(function);
+  }
+
+  private void walk(Stmt tree, List<DeclarFun> called) {
+    if(tree instanceof StmtComp){
+      for(StmtList list = ((StmtComp)tree).stmt_list; list != null; list = list.tail) {
+        walk(list.head, called);
+      }
+    }
+    else if(tree instanceof StmtExp){
+      walk(((StmtExp)tree).exp, called);
+    }
+    else if(tree instanceof StmtSelect){
+      StmtSelect select = (StmtSelect)tree;
+      walk(select.test, called);
+      walk(select.then_stmt, called);
+      walk(select.else_stmt, called);
+    }
+    else if(tree instanceof StmtWhile){
+      walk(((StmtWhile)tree).test, called);
+      walk(((StmtWhile)tree).stmt, called);
+    }
+    else if(tree instanceof StmtReturn){
+      walk(((StmtReturn)tree).item, called);
+    }
+  }
+
+  private void walk(Exp tree, List<DeclarFun> called) {
+    if(tree instanceof ExpAssign){
+      walk(((ExpAssign)tree).lhs, called);
+      walk(((ExpAssign)tree).rhs, called);
+    }
+    else if(tree instanceof ExpCall){
+      ExpCall call = (ExpCall)tree;
+      //input and output have no declaration
+      if(call.decl != null && !called.contains(call.decl)) {
+        called.add(call.decl);
+      }
+      for(ExpList args = call.args; args != null; args = args.tail) {
+        walk(args.head, called);
+      }
+    }
+    else if(tree instanceof ExpOp){
+      //operators nest as deep as the program does; walked without recursion
+      new ExpOpWalker(0) {
+        protected void operand(Exp tree, int spaces) {
+          CallGraph.this.walk(tree, called);
+        }
+      }.walk((ExpOp)tree, 0);
+    }
+    else if(tree instanceof ExpVar){
+      walk(((ExpVar)tree).exp, called);
+    }
+  }
+}
@@ -0,0 +1,92 @@
+package symb;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+
+/* Error messages of a compilation, held until flush prints them all,
+   sorted by line and column. Codes start with P for the parser and S
+   for the symbol checks done while compiling to assembly. A message
+   reported without a line keeps the position of the one before it.
+   Reaching max (when it is not 0) throws Abort. */
+public class Diagnostics {
+  public static class Diagnostic {
+    public final String code;
+    public final int line;    // from 0
+    public final int column;
+    public final String message;
+    private final int order;
+
+    Diagnostic(String code, int line, int column, String message, int order) {
+      this.code = code;
+      this.line = line;
+      this.column = column;
+      this.message = message;
+      this.order = order;
+    }
+
+    public String toString() {
+      return code + " " + (line + 1) + ":" + (column + 1) + " " + message;
+    }
+  }
+
+  private static final Comparator<Diagnostic> BY_POSITION = new Comparator<Diagnostic>() {
+    public int compare(Diagnostic a, Diagnostic b) {
+      if(a.line != b.line)
+        return Integer.compare(a.line, b.line);
+      if(a.column != b.column)
+        return Integer.compare(a.column, b.column);
+      return Integer.compare(a.order, b.order);
+    }
+  };
+
+  public static class Abort extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    Abort(int errors) {
+      super("compilation stopped after " + errors + (errors == 1 ? " error" : " errors"));
+    }
+  }
+
+  private ArrayList<Diagnostic> reported = new ArrayList<>();
+  private int max;
+  private int line = -1;
+  private int column = -1;
+
+  public Diagnostics() {
+    this(0);
+  }
+
+  public Diagnostics(int max) {
+    this.max = max;
+  }
+
+  /* line and column from 0; a negative line when the message has none */
+  public void report(String code, int line, int column, String message) {
+    if(line < 0) {
+      line = this.line;
+      column = this.column;
+    }
+    this.line = line;
+    this.column = column;
+    this.reported.add(new Diagnostic(code, line, column, message, this.reported.size()));
+    if(this.max > 0 && this.reported.size() >= this.max) {
+      throw new Abort(this.reported.size());
+    }
+  }
+
+  public int count() {
+    return this.reported.size();
+  }
+
+  public void flush(PrintStream err) {
+    ArrayList<Diagnostic> sorted = new ArrayList<>(this.reported);
+    sorted.sort(BY_POSITION);
+    StringBuilder text = new StringBuilder();
+    for(Diagnostic d : sorted) {
+      text.append(d.message).append('\n');
+    }
+    err.print(text);
+    err.flush();
+    this.reported.clear();
+  }
+}
@@ -1,28 +1,49 @@
 package symb;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.ArrayDeque;
-import java.util.Deque;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
-import java.util.List;
 import absyn.*;
 import symb.exceptions.*;
 
 public class SymbolTable {
 
-  private Deque<HashMap<List<String>, Symbol>> tableStack = new ArrayDeque<>();
+  /* One scope. A variable and a function of the same name are different
+     symbols, so each kind has its own map and a symbol is found by its id
+     string alone, with no key to build. The list keeps the declaration
+     order for printScope and counts the scope's slots in leaveScope. */
+  private static class Scope {
+    final HashMap<String, Symbol> vars = new HashMap<>();
+    final HashMap<String, Symbol> funcs = new HashMap<>();
+    final ArrayList<Symbol> symbols = new ArrayList<>();
+
+    HashMap<String, Symbol> of(String kind) {
+      return Symbol.FUNC_TYPE.equals(kind) ? funcs : vars;
+    }
+  }
+
+  /* open scopes, innermost at depth - 1 */
+  private Scope[] scopes = new Scope[8];
+  private int depth = 0;
   private final static int SPACES = 4;
   private SymbolFunction currentFunction;
   private int temp = 0;
 
   public boolean error = false;
 
+  /* where errors are reported */
+  private Diagnostics diagnostics;
+
   private int currentOffset = 0;
 
   private int globalOffset = 0;
 
   public SymbolTable() {
+    this(new Diagnostics());
+  }
+
+  public SymbolTable(Diagnostics diagnostics) {
+    this.diagnostics = diagnostics;
     this.newScope();
     SymbolFunction input = new SymbolFunction("input", 4, TypeSpec.INT);
     SymbolFunction output = new SymbolFunction("output", 7, TypeSpec.VOID);
@@ -32,15 +53,17 @@ public class SymbolTable {
   }
 
   public void newScope(){
-    this.tableStack.push(new LinkedHashMap<>());
+    if(this.depth == this.scopes.length)
+      this.scopes = Arrays.copyOf(this.scopes, this.depth * 2);
+    this.scopes[this.depth++] = new Scope();
   }
 
   public void leaveScope(){
-    if(this.tableStack.size() <= 1){
+    if(this.depth <= 1){
       return;
     }
-    this.currentOffset += this.tableStack.peek().size();
-    this.tableStack.pop();
+    this.currentOffset += this.scopes[this.depth - 1].symbols.size();
+    this.scopes[--this.depth] = null;
   }
 
   public SymbolInt newTemp(){
@@ -56,20 +79,20 @@ public class SymbolTable {
   }
 
   public boolean addSymbol(Symbol symb) {
-    if(Symbol.FUNC_TYPE.equals(symb.getType()) && this.tableStack.size() != 1){
+    if(Symbol.FUNC_TYPE.equals(symb.getType()) && this.depth != 1){
       return false;
     }
     if(Symbol.FUNC_TYPE.equals(symb.getType())) {
       this.currentFunction = (SymbolFunction)symb;
       this.currentOffset = 0;
     }
-    List<String> key = Arrays.asList(symb.getId(), symb.getType());
-    HashMap<List<String>, Symbol> top = this.tableStack.peek();
-    if(top == null){
+    if(this.depth == 0){
       throw new RuntimeException();
     }
-    if(top.get(key) == null){
-      symb.setScope(this.tableStack.size());
+    Scope top = this.scopes[this.depth - 1];
+    HashMap<String, Symbol> table = top.of(symb.getType());
+    if(table.get(symb.getId()) == null){
+      symb.setScope(this.depth);
       if (symb.isGlobalVar()){
         symb.setAddress(this.globalOffset);
         this.globalOffset--;
@@ -79,7 +102,8 @@ public class SymbolTable {
         this.currentOffset -= (((SymbolArray)symb).getSize()-1);
         symb.setAddress(this.currentOffset);
       }
-      top.put(key, symb);
+      table.put(symb.getId(), symb);
+      top.symbols.add(symb);
       if (!Symbol.FUNC_TYPE.equals(symb.getType()))
         this.currentOffset--;
     } else {
@@ -90,32 +114,39 @@ public class SymbolTable {
 
   public Symbol getMatchingSymbol(Symbol symb) throws InvalidTypeException,
       UndeclaredException {
-    List<String> key = Arrays.asList(symb.getId(), symb.getType());
-    for(HashMap<List<String>, Symbol> table : this.tableStack){
-      if (table.get(key) != null) {
-        try {
-          sameType(table.get(key), symb);
-        } catch(InvalidTypeException | UndeclaredException e) {
-          throw e;
-        }
-        return table.get(key);
-      }
+    return getMatchingSymbol(symb.getId(), symb.getType(), symb.getClass());
+  }
+
+  /* Same as getMatchingSymbol(Symbol), for callers that have no symbol to
+     match: use is the class the use needs, SymbolInt or SymbolArray for a
+     variable. Allocates nothing unless the match fails the type check. */
+  public Symbol getMatchingSymbol(String id, String kind, Class<? extends Symbol> use)
+      throws InvalidTypeException, UndeclaredException {
+    Symbol decl = lookup(id, kind);
+    if(decl != null) {
+      sameType(decl, id, use);
     }
-    return null;
+    return decl;
   }
 
-  private void sameType(Symbol decl, Symbol use) throws InvalidTypeException, 
-      UndeclaredException {
-    if(decl == null || use == null || !decl.getId().equals(use.getId()) 
-       || !decl.getType().equals(use.getType())) {
-      throw new UndeclaredException("Use of undeclared variable");
+  /* Innermost declaration of id as a variable (Symbol.INT_TYPE) or a
+     function (Symbol.FUNC_TYPE), or null */
+  public Symbol lookup(String id, String kind) {
+    for(int i = this.depth - 1; i >= 0; i--){
+      Symbol decl = this.scopes[i].of(kind).get(id);
+      if(decl != null) {
+        return decl;
+      }
     }
+    return null;
+  }
 
-    if(Symbol.INT_TYPE.equals(decl.getType()) && decl.getClass() != use.getClass()) {
+  private void sameType(Symbol decl, String id, Class<? extends Symbol> use) throws InvalidTypeException {
+    if(Symbol.INT_TYPE.equals(decl.getType()) && decl.getClass() != use) {
       if(decl.getClass() == SymbolArray.class){
         throw new InvalidTypeException(decl.getId() + " defined as array; used as int");
       } else {
-        throw new InvalidTypeException(use.getId() + "  defined as array; used as int");
+        throw new InvalidTypeException(id + "  defined as array; used as int");
       }
     }
   }
@@ -144,11 +175,10 @@ public class SymbolTable {
   }
 
   public void checkType(ExpCall call){
-      Symbol s = new SymbolFunction(call.id, 0, TypeSpec.INT);
       try {
-        SymbolFunction match = (SymbolFunction) this.getMatchingSymbol(s);
+        SymbolFunction match = (SymbolFunction) this.getMatchingSymbol(call.id, Symbol.FUNC_TYPE, SymbolFunction.class);
         if (TypeSpec.VOID.equals(match.getReturnType())){
-          this.error(match.getId() + " of type VOID used in expression requiring type INT on line " + (call.pos + 1));
+          this.error("S11", call.pos, match.getId() + " of type VOID used in expression requiring type INT on line " + (call.pos + 1));
         }
       } catch (Exception e) {
         //Do nothing
@@ -156,11 +186,11 @@ public class SymbolTable {
   }
 
   public boolean inGlobalScope(){
-    return this.tableStack.size() == 1;
+    return this.depth == 1;
   }
 
   public boolean inFunctionOuterScope(){
-    return this.tableStack.size() == 2;
+    return this.depth == 2;
   }
 
   public int getCurrentOffset(){
@@ -172,9 +202,10 @@ public class SymbolTable {
   }
 
 
-  public void error(String message){
-    System.err.println("Error: " + message);
+  /* line from 0, or -1 if the message has none */
+  public void error(String code, int line, String message){
     this.error = true;
+    this.diagnostics.report(code, line, 0, "Error: " + message);
   }
 
   public SymbolFunction getCurrentFunction(){
@@ -186,11 +217,11 @@ public class SymbolTable {
   }
 
   public void printScope(int spaces){
-    if(this.tableStack.peek().isEmpty()) {
+    if(this.scopes[this.depth - 1].symbols.isEmpty()) {
       indent(spaces);
       System.out.println("No variables defined");
     } else {
-      for(Symbol s : this.tableStack.peek().values()){
+      for(Symbol s : this.scopes[this.depth - 1].symbols){
         indent(spaces);
         System.out.println(s);
       }
@@ -366,9 +397,8 @@ public class SymbolTable {
   private void showTable(StmtSelect tree, int spaces) {
     if (tree.test instanceof ExpCall){
       ExpCall call = (ExpCall) tree.test;
-      Symbol s = new SymbolFunction(call.id, 0, TypeSpec.INT);
       try {
-        SymbolFunction match = (SymbolFunction) this.getMatchingSymbol(s);
+        SymbolFunction match = (SymbolFunction) this.getMatchingSymbol(call.id, Symbol.FUNC_TYPE, SymbolFunction.class);
         if (TypeSpec.VOID.equals(match.getReturnType())){
           indent(spaces);
           System.out.println("Error: " + match.getId() + " of type VOID used in condition requiring type INT on line "
@@ -387,9 +417,8 @@ public class SymbolTable {
   private void showTable(StmtWhile tree, int spaces) {
     if (tree.test instanceof ExpCall){
       ExpCall call = (ExpCall) tree.test;
-      Symbol s = new SymbolFunction(call.id, 0, TypeSpec.INT);
       try {
-        SymbolFunction match = (SymbolFunction) this.getMatchingSymbol(s);
+        SymbolFunction match = (SymbolFunction) this.getMatchingSymbol(call.id, Symbol.FUNC_TYPE, SymbolFunction.class);
         if (TypeSpec.VOID.equals(match.getReturnType())){
           indent(spaces);
           System.out.println("Error: " + match.getId() + " of type VOID used in condition requiring type INT on line "
@@ -433,9 +462,8 @@ public class SymbolTable {
     showTable(tree.lhs, spaces);
     if(tree.rhs instanceof ExpCall){
       ExpCall call = (ExpCall) tree.rhs;
-      Symbol s = new SymbolFunction(call.id, 0, TypeSpec.INT);
       try {
-        SymbolFunction match = (SymbolFunction) this.getMatchingSymbol(s);
+        SymbolFunction match = (SymbolFunction) this.getMatchingSymbol(call.id, Symbol.FUNC_TYPE, SymbolFunction.class);
         if (TypeSpec.VOID.equals(match.getReturnType())){
           indent(spaces);
           System.out.println("Error: " + match.getId() + " of type VOID used in an assignment requiring type INT on line "
@@ -470,9 +498,8 @@ public class SymbolTable {
 
   private void showTable(ExpVar tree, int spaces) {
     if(tree.exp == null) { //normal variable
-      Symbol s = new SymbolInt(tree.name, 0);
       try {
-        this.getMatchingSymbol(s);
+        this.getMatchingSymbol(tree.name, Symbol.INT_TYPE, SymbolInt.class);
       }
       catch(InvalidTypeException e) {
         //Do nothing. Arrays can be used without brackets in some cases
@@ -482,9 +509,8 @@ public class SymbolTable {
         System.out.println(e.getMessage() + ": on line " + (tree.pos + 1));
       }
     } else { //array variable
-      Symbol s = new SymbolArray(tree.name, 0);
       try {
-        Symbol match = this.getMatchingSymbol(s);
+        Symbol match = this.getMatchingSymbol(tree.name, Symbol.INT_TYPE, SymbolArray.class);
       }
       catch(Exception e) {
         indent(spaces);
@@ -493,9 +519,8 @@ public class SymbolTable {
 
       if(tree.exp instanceof ExpCall){
         ExpCall call = (ExpCall) tree.exp;
-        Symbol symb = new SymbolFunction(call.id, 0, TypeSpec.INT);
         try {
-          SymbolFunction match = (SymbolFunction) this.getMatchingSymbol(symb);
+          SymbolFunction match = (SymbolFunction) this.getMatchingSymbol(call.id, Symbol.FUNC_TYPE, SymbolFunction.class);
           if (TypeSpec.VOID.equals(match.getReturnType())){
             indent(spaces);
             System.out.println("Error: " + match.getId() + " of type VOID used in array indexing requiring type INT on line "
@@ -509,28 +534,32 @@ public class SymbolTable {
     }
   }
 
-  //
-  private void showTable(ExpOp tree, int spaces) {
-    if (tree.left instanceof ExpCall){
-      ExpCall call = (ExpCall) tree.left;
-      Symbol s = new SymbolFunction(call.id, 0, TypeSpec.INT);
-      try {
-        SymbolFunction match = (SymbolFunction) this.getMatchingSymbol(s);
-        if (TypeSpec.VOID.equals(match.getReturnType())){
-          indent(spaces);
-          System.out.println("Error: " + match.getId() + " of type VOID used in expression requiring type INT on line "
-                  + (tree.pos + 1));
-        }
-      } catch (Exception e) {
-        //Do nothing
-      }
+  //operators nest as deep as the program does, so they are walked
+  //with a stack of their own
+  private ExpOpWalker operators = new ExpOpWalker(0) {
+    protected void enter(ExpOp tree, int spaces) {
+      checkOperand(tree.left, tree, spaces);
+    }
+
+    protected void operand(Exp tree, int spaces) {
+      showTable(tree, spaces);
+    }
+
+    protected void between(ExpOp tree, int spaces) {
+      checkOperand(tree.right, tree, spaces);
     }
-    showTable(tree.left, spaces);
-    if (tree.right instanceof ExpCall){
-      ExpCall call = (ExpCall) tree.right;
-      Symbol s = new SymbolFunction(call.id, 0, TypeSpec.INT);
+  };
+
+  private void showTable(ExpOp tree, int spaces) {
+    this.operators.walk(tree, spaces);
+  }
+
+  //a call used as an operand has to return a value
+  private void checkOperand(Exp operand, ExpOp tree, int spaces) {
+    if (operand instanceof ExpCall){
+      ExpCall call = (ExpCall) operand;
       try {
-        SymbolFunction match = (SymbolFunction) this.getMatchingSymbol(s);
+        SymbolFunction match = (SymbolFunction) this.getMatchingSymbol(call.id, Symbol.FUNC_TYPE, SymbolFunction.class);
         if (TypeSpec.VOID.equals(match.getReturnType())){
           indent(spaces);
           System.out.println("Error: " + match.getId() + " of type VOID used in expression requiring type INT on line "
@@ -540,6 +569,5 @@ public class SymbolTable {
         //Do nothing
       }
     }
-    showTable(tree.right, spaces);
   }
 }
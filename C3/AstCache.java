@@ -0,0 +1,75 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import absyn.AstArena;
+
+/*
+  On-disk cache of parsed programs. Each entry is an AstArena in its
+  binary form, stored under the SHA-256 of the compiler version and the
+  source bytes, so an unchanged file is loaded without lexing or parsing
+  and any change to the source or to the compiler misses. Only programs
+  that parsed without errors are stored, since a hit skips the parser's
+  error reports.
+*/
+public class AstCache {
+  /* bump the CM number whenever the grammar changes; AstArena.FORMAT
+     covers the AST and the arena layout */
+  static public final String VERSION = "CM 1, AstArena " + AstArena.FORMAT;
+
+  static public final String DEFAULT_DIR = ".cmcache";
+
+  private final Path dir;
+
+  public AstCache(String dir) {
+    this.dir = Paths.get(dir);
+  }
+
+  /* hex SHA-256 of VERSION followed by the remaining bytes of source */
+  static public String key(ByteBuffer source) {
+    try {
+      MessageDigest md = MessageDigest.getInstance("SHA-256");
+      md.update(VERSION.getBytes("US-ASCII"));
+      md.update(source.duplicate());
+      StringBuilder sb = new StringBuilder(64);
+      for (byte b : md.digest())
+        sb.append(String.format("%02x", b & 0xff));
+      return sb.toString();
+    } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private Path entry(String key) {
+    return dir.resolve(key + ".ast");
+  }
+
+  /* Returns the cached program for key, or null on a miss. An entry that
+     cannot be read back is treated as a miss and overwritten later. */
+  public AstArena load(String key) {
+    Path path = entry(key);
+    if (!Files.isRegularFile(path))
+      return null;
+    try {
+      return AstArena.fromBytes(SourceReader.load(path.toString()));
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  /* Writes to a temporary file first so a concurrent reader never sees a
+     partial entry. Failing to write only costs the next run a miss, so
+     the caller may just warn. */
+  public void store(String key, AstArena arena) throws IOException {
+    Files.createDirectories(dir);
+    Path tmp = Files.createTempFile(dir, key, ".tmp");
+    try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+      ByteBuffer bytes = arena.toBytes();
+      while (bytes.hasRemaining())
+        channel.write(bytes);
+    }
+    Files.move(tmp, entry(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+}
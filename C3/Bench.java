@@ -0,0 +1,152 @@
+/*
+  One mode of Benchmark, and what the modes share: timing, heap and
+  allocation measurement, a quiet parser, the programs in test/ and
+  scratch directories laid out like a CM working directory.
+*/
+
+import java.io.*;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import absyn.*;
+
+abstract class Bench {
+  /* number of timed runs per input size, the fastest one is reported */
+  static final int RUNS = 3;
+
+  /* the arguments after the mode's name, for the usage line */
+  abstract String arguments();
+
+  /* what the mode measures, a line or two for the usage text */
+  abstract String[] description();
+
+  /* argv[0] is the mode's name */
+  abstract void run(String[] argv) throws Exception;
+
+  /* argv[i] as a number, or otherwise when it is not given */
+  static int arg(String[] argv, int i, int otherwise) {
+    return argv.length > i ? Integer.parseInt(argv[i]) : otherwise;
+  }
+
+  static Absyn parse(String source) throws Exception {
+    parser p = parser.of(new Lexer(new StringReader(source)));
+    return (Absyn)(p.parse().value);
+  }
+
+  static long usedHeap() {
+    Runtime rt = Runtime.getRuntime();
+    for (int i = 0; i < 4; i++)
+      System.gc();
+    return rt.totalMemory() - rt.freeMemory();
+  }
+
+  static parser quietParser(ByteBuffer source) {
+    Lexer lexer = new Lexer(new SourceReader(source.duplicate()));
+    lexer.diagnostics = new Diagnostics();
+    parser p = parser.of(lexer);
+    p.diagnostics = new Diagnostics();
+    return p;
+  }
+
+  /* the .cm programs in test/, sorted by name */
+  static File[] tests() {
+    File[] tests = new File("test").listFiles((dir, name) -> name.endsWith(".cm"));
+    if (tests == null)
+      return new File[0];
+    Arrays.sort(tests);
+    return tests;
+  }
+
+  /* a temporary directory with a test/ for CM's output files */
+  static Path workspace(String prefix) throws IOException {
+    Path dir = Files.createTempDirectory(prefix);
+    Files.createDirectory(dir.resolve("test"));
+    return dir;
+  }
+
+  /* removes a file, or a directory and everything in it */
+  static void delete(File file) {
+    File[] files = file.listFiles();
+    if (files != null)
+      for (File f : files)
+        delete(f);
+    file.delete();
+  }
+
+  /* Phase harness. Each phase runs on each input for a warm-up period
+     and then a measured period, like one JMH fork with one warm-up and
+     one measurement iteration. Allocation is read from the thread's
+     allocated-bytes counter, and collections from the GC beans. */
+  static final long WARMUP_NS = 300000000L;
+  static final long MEASURE_NS = 1000000000L;
+
+  interface Op {
+    void run() throws Exception;
+  }
+
+  static class Result {
+    String input;
+    long bytes;
+    String phase;
+    long ops;
+    long nanos;
+    long allocated;
+    long gcCount;
+    long gcMillis;
+
+    double opsPerSecond() {
+      return ops / (nanos / 1e9);
+    }
+
+    double allocPerOp() {
+      return (double) allocated / ops;
+    }
+  }
+
+  static long gcCount() {
+    long n = 0;
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+      n += Math.max(0, gc.getCollectionCount());
+    return n;
+  }
+
+  static long gcMillis() {
+    long n = 0;
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+      n += Math.max(0, gc.getCollectionTime());
+    return n;
+  }
+
+  static long allocatedBytes() {
+    return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+      .getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  static Result measure(String input, long bytes, String phase, Op op) throws Exception {
+    long warm = System.nanoTime() + WARMUP_NS;
+    do {
+      op.run();
+    } while (System.nanoTime() < warm);
+
+    Result r = new Result();
+    r.input = input;
+    r.bytes = bytes;
+    r.phase = phase;
+    long gcs = gcCount();
+    long gcTime = gcMillis();
+    long allocated = allocatedBytes();
+    long start = System.nanoTime();
+    do {
+      op.run();
+      r.ops++;
+      r.nanos = System.nanoTime() - start;
+    } while (r.nanos < MEASURE_NS);
+    r.allocated = allocatedBytes() - allocated;
+    r.gcCount = gcCount() - gcs;
+    r.gcMillis = gcMillis() - gcTime;
+    return r;
+  }
+}
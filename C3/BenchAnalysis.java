@@ -0,0 +1,65 @@
+/*
+  java Benchmark analysis [functions], or <make bench_analysis>
+*/
+
+import java.io.*;
+import java.util.concurrent.ForkJoinPool;
+import absyn.*;
+
+class BenchAnalysis extends Bench {
+  String arguments() {
+    return "[functions]";
+  }
+
+  String[] description() {
+    return new String[] {
+      "semantic analysis of [functions] functions, sequential vs ParallelAnalyzer on 1..cores threads"
+    };
+  }
+
+  void run(String[] argv) throws Exception {
+    analysisScaling(arg(argv, 1, 500));
+  }
+
+  /* best of 3*RUNS analyses after a warm up; sequential when pool is null */
+  static long timeAnalysis(DecList tree, ForkJoinPool pool, PrintStream discard) {
+    long best = Long.MAX_VALUE;
+    for (int r = -20; r < 3 * RUNS; r++) {
+      long start = System.nanoTime();
+      if (pool == null) {
+        SemanticAnalyzer analyzer = new SemanticAnalyzer(discard, new Diagnostics());
+        tree.accept(analyzer, 0, false);
+        analyzer.printSymbolTable(1);
+      } else {
+        ParallelAnalyzer analyzer = new ParallelAnalyzer(pool, discard, new Diagnostics());
+        analyzer.analyze(tree);
+        analyzer.printSymbolTable(1);
+      }
+      if (r >= 0)
+        best = Math.min(best, System.nanoTime() - start);
+    }
+    return best;
+  }
+
+  /* Semantic analysis of a program of n functions, sequential and with
+     the bodies checked on a pool of 1, 2, 4 ... threads up to the number
+     of processors. The speedup should follow the thread count as long
+     as there are cores for it. */
+  static void analysisScaling(int functions) throws Exception {
+    PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+    DecList tree = (DecList) parse(Generated.program(functions * 10));
+    int cores = Runtime.getRuntime().availableProcessors();
+    System.out.printf("%d functions, %d processors\n", functions, cores);
+    System.out.printf("%-12s %8s %12s %10s\n", "analyzer", "threads", "ms", "speedup");
+    long sequential = timeAnalysis(tree, null, discard);
+    System.out.printf("%-12s %8d %12.2f %10.2f\n", "sequential", 1, sequential / 1e6, 1.0);
+    for (int threads = 1; threads <= cores; threads = threads < cores && threads * 2 > cores ? cores : threads * 2) {
+      ForkJoinPool pool = new ForkJoinPool(threads);
+      long ns = timeAnalysis(tree, pool, discard);
+      pool.shutdown();
+      System.out.printf("%-12s %8d %12.2f %10.2f\n", "parallel", threads, ns / 1e6, (double) sequential / ns);
+      if (threads == cores)
+        break;
+    }
+  }
+}
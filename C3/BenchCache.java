@@ -0,0 +1,73 @@
+/*
+  java Benchmark cache [lines], or <make bench_cache>
+*/
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import absyn.*;
+
+class BenchCache extends Bench {
+  String arguments() {
+    return "[lines]";
+  }
+
+  String[] description() {
+    return new String[] {
+      "time to an AST on an AstCache miss and on a hit"
+    };
+  }
+
+  void run(String[] argv) throws Exception {
+    cacheLatency(arg(argv, 1, 100000));
+  }
+
+  /* Miss: hash, lex, parse, pack and store. Hit: hash, read and rebuild
+     the object tree, which is what CM hands to its phases. */
+  static long cacheRun(AstCache cache, File file, boolean hit) throws Exception {
+    long start = System.nanoTime();
+    ByteBuffer source = SourceReader.load(file.getPath());
+    String key = AstCache.key(source);
+    if (hit) {
+      cache.load(key).toDecList();
+    } else {
+      Lexer lexer = new Lexer(new SourceReader(source));
+      DecList tree = (DecList)(parser.of(lexer).parse().value);
+      cache.store(key, AstArena.pack(tree, lexer.names));
+    }
+    return System.nanoTime() - start;
+  }
+
+  static void cacheLatency(int lines) throws Exception {
+    File file = File.createTempFile("bench", ".cm");
+    file.deleteOnExit();
+    try (Writer w = new FileWriter(file)) {
+      w.write(Generated.program(lines));
+    }
+    File dir = Files.createTempDirectory("bench-cache").toFile();
+    AstCache cache = new AstCache(dir.getPath());
+
+    long miss = Long.MAX_VALUE;
+    long hit = Long.MAX_VALUE;
+    for (int r = 0; r < RUNS + 1; r++) { // the first round warms up the JIT
+      long m = cacheRun(cache, file, false);
+      long h = cacheRun(cache, file, true);
+      if (r > 0) {
+        miss = Math.min(miss, m);
+        hit = Math.min(hit, h);
+      }
+    }
+    long entry = 0;
+    for (File f : dir.listFiles()) {
+      entry = f.length();
+      f.delete();
+    }
+    dir.delete();
+
+    System.out.printf("%-10s %10s %12s\n", "path", "ms", "source MB/s");
+    System.out.printf("%-10s %10.2f %12.1f\n", "miss", miss / 1e6, file.length() / 1048576.0 / (miss / 1e9));
+    System.out.printf("%-10s %10.2f %12.1f\n", "hit", hit / 1e6, file.length() / 1048576.0 / (hit / 1e9));
+    System.out.printf("%d source bytes, %d cache bytes, hit is %.1fx faster\n",
+                      file.length(), entry, (double) miss / hit);
+  }
+}
@@ -0,0 +1,47 @@
+/*
+  java Benchmark cfg [max_loops], or <make bench_cfg>
+*/
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import absyn.*;
+import ir.Cfg;
+import ir.Function;
+import ir.Program;
+
+class BenchCfg extends Bench {
+  String arguments() {
+    return "[max_loops]";
+  }
+
+  String[] description() {
+    return new String[] {
+      "time to build the control-flow graph of a function of 1K..max_loops loops"
+    };
+  }
+
+  void run(String[] argv) throws Exception {
+    cfgScaling(arg(argv, 1, 100000));
+  }
+
+  /* Prints ns per instruction to build the graph of one function of
+     1K..maxN loops; a linear builder keeps that column flat. */
+  static void cfgScaling(int maxN) throws Exception {
+    System.out.printf("%10s %10s %10s %12s %12s\n", "loops", "instrs", "blocks", "ms", "ns/instr");
+    for (int n = 1000; n <= maxN; n *= 10) {
+      parser p = quietParser(ByteBuffer.wrap(Generated.branches(n).getBytes("US-ASCII")));
+      DecList tree = (DecList)(p.parse().value);
+      Program program = new IrBuilder(((Lexer) p.getScanner()).names, new Diagnostics()).build(tree);
+      Function main = program.functions.get(0);
+      int blocks = 0;
+      long best = Long.MAX_VALUE;
+      for (int r = -5; r < RUNS; r++) {
+        long start = System.nanoTime();
+        blocks = new Cfg(main).size();
+        if (r >= 0)
+          best = Math.min(best, System.nanoTime() - start);
+      }
+      System.out.printf("%10d %10d %10d %12.2f %12.2f\n", n, main.code.size(), blocks, best / 1e6, (double) best / main.code.size());
+    }
+  }
+}
@@ -0,0 +1,67 @@
+/*
+  java Benchmark dataflow [max_loops], or <make bench_dataflow>
+*/
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import absyn.*;
+import ir.Cfg;
+import ir.Function;
+import ir.Liveness;
+import ir.Program;
+import ir.ReachingDefinitions;
+import ir.Variables;
+
+class BenchDataflow extends Bench {
+  String arguments() {
+    return "[max_loops]";
+  }
+
+  String[] description() {
+    return new String[] {
+      "time to solve liveness and reaching definitions in a function of 500..max_loops loops"
+    };
+  }
+
+  void run(String[] argv) throws Exception {
+    dataflowScaling(arg(argv, 1, 8000));
+  }
+
+  /* Prints the time to solve each analysis on one function of
+     500..maxN loops, with the variables followed, the definitions and
+     the blocks visited per reachable block. Liveness keeps a flat
+     ns/instr column; reaching definitions has a set as large as the
+     number of assignments in every block, and grows with the size. */
+  static void dataflowScaling(int maxN) throws Exception {
+    System.out.printf("%8s %8s %6s %8s %10s %10s %8s %10s %10s %8s\n", "loops", "instrs", "vars", "defs",
+                      "live ms", "ns/instr", "visits", "reach ms", "ns/instr", "visits");
+    for (int n = 500; n <= maxN; n *= 2) {
+      parser p = quietParser(ByteBuffer.wrap(Generated.localBranches(n).getBytes("US-ASCII")));
+      DecList tree = (DecList)(p.parse().value);
+      Program program = new IrBuilder(((Lexer) p.getScanner()).names, new Diagnostics()).build(tree);
+      Function main = program.functions.get(0);
+      Cfg cfg = new Cfg(main);
+      Variables variables = new Variables(cfg);
+      int instrs = main.code.size();
+      int blocks = cfg.order().length;
+      Liveness live = null;
+      ReachingDefinitions reach = null;
+      long bestLive = Long.MAX_VALUE;
+      long bestReach = Long.MAX_VALUE;
+      for (int r = -3; r < RUNS; r++) {
+        long start = System.nanoTime();
+        live = new Liveness(cfg, new Variables(cfg)).solve();
+        long middle = System.nanoTime();
+        reach = new ReachingDefinitions(cfg, new Variables(cfg)).solve();
+        long end = System.nanoTime();
+        if (r >= 0) {
+          bestLive = Math.min(bestLive, middle - start);
+          bestReach = Math.min(bestReach, end - middle);
+        }
+      }
+      System.out.printf("%8d %8d %6d %8d %10.2f %10.2f %8.2f %10.2f %10.2f %8.2f\n", n, instrs, variables.size(), reach.definitions(),
+                        bestLive / 1e6, (double) bestLive / instrs, (double) live.visits / blocks,
+                        bestReach / 1e6, (double) bestReach / instrs, (double) reach.visits / blocks);
+    }
+  }
+}
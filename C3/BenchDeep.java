@@ -0,0 +1,63 @@
+/*
+  java Benchmark deep [depth], or <make bench_deep>
+*/
+
+import java.io.*;
+import java.nio.file.Path;
+
+class BenchDeep extends Bench {
+  String arguments() {
+    return "[depth]";
+  }
+
+  String[] description() {
+    return new String[] {
+      "-s -c of one expression [depth] operators deep, nested left and right, on a 512 KB thread stack"
+    };
+  }
+
+  void run(String[] argv) throws Exception {
+    deepExpressions(arg(argv, 1, 100000));
+  }
+
+  /* Java stack given to the compiling thread by deepExpressions() and
+     by Check */
+  static final long STACK = 512 * 1024;
+
+  /* Time of -s -c on expressions nested n deep, each run on a thread
+     with a small fixed stack, so a phase that recursed once per
+     operator would overflow it however large -Xss is. Check fails if
+     one does. */
+  static void deepExpressions(int n) throws Exception {
+    Path dir = workspace("bench-deep");
+    try (Writer w = new FileWriter(dir.resolve("left.cm").toFile())) {
+      w.write(Generated.deep(n, false));
+    }
+    try (Writer w = new FileWriter(dir.resolve("right.cm").toFile())) {
+      w.write(Generated.deep(n, true));
+    }
+    final PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+    System.out.printf("expressions %d operators deep, %d KB of stack\n", n, STACK / 1024);
+    System.out.printf("%-8s %-10s %10s\n", "", "", "ms");
+    for (String file : new String[] { "left.cm", "right.cm" }) {
+      for (final String mode : new String[] { "", "-compact", "-stream" }) {
+        long best = Long.MAX_VALUE;
+        for (int r = -1; r < RUNS; r++) {
+          final Compilation unit = new Compilation(file, discard, discard);
+          unit.base = dir.toFile();
+          unit.s_flag = unit.c_flag = true;
+          unit.setFlag(mode);
+          Thread thread = new Thread(null, unit::run, "deep", STACK);
+          long start = System.nanoTime();
+          thread.start();
+          thread.join();
+          if (r >= 0)
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        String label = file.substring(0, file.indexOf('.'));
+        System.out.printf("%-8s %-10s %10.2f\n", label, mode, best / 1e6);
+      }
+    }
+    delete(dir.toFile());
+  }
+}
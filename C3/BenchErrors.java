@@ -0,0 +1,50 @@
+/*
+  java Benchmark errors [count], or <make bench_errors>
+*/
+
+import java.io.*;
+import java.nio.file.Path;
+
+class BenchErrors extends Bench {
+  String arguments() {
+    return "[count]";
+  }
+
+  String[] description() {
+    return new String[] {
+      "-s -c of a program with [count] errors, all reported vs -maxerrors=100 vs -failfast"
+    };
+  }
+
+  void run(String[] argv) throws Exception {
+    errorLimits(arg(argv, 1, 20000));
+  }
+
+  /* Time of -s -c on a program where every statement is an error, each
+     reported by both phases, with no maximum and with the compilation
+     stopped early. */
+  static void errorLimits(int n) throws Exception {
+    Path dir = workspace("bench-errors");
+    try (Writer w = new FileWriter(dir.resolve("errors.cm").toFile())) {
+      w.write(Generated.undeclared(n));
+    }
+    PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+    System.out.printf("%d statements in error\n", n);
+    System.out.printf("%-16s %10s\n", "", "ms");
+    for (String flag : new String[] { "-maxerrors=0", "-maxerrors=100", "-failfast" }) {
+      long best = Long.MAX_VALUE;
+      for (int r = -5; r < 3 * RUNS; r++) {
+        Compilation unit = new Compilation("errors.cm", discard, discard);
+        unit.base = dir.toFile();
+        unit.s_flag = unit.c_flag = true;
+        unit.setFlag(flag);
+        long start = System.nanoTime();
+        unit.run();
+        if (r >= 0)
+          best = Math.min(best, System.nanoTime() - start);
+      }
+      System.out.printf("%-16s %10.2f\n", flag, best / 1e6);
+    }
+    delete(dir.toFile());
+  }
+}
@@ -0,0 +1,61 @@
+/*
+  java Benchmark ir [lines], or <make bench_ir>
+*/
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import absyn.*;
+
+class BenchIr extends Bench {
+  String arguments() {
+    return "[lines]";
+  }
+
+  String[] description() {
+    return new String[] {
+      "TM instructions and generation time, CodeGenerator vs IrBuilder and IrCodeGenerator,",
+      "over test/*.cm and a generated program of [lines] lines"
+    };
+  }
+
+  void run(String[] argv) throws Exception {
+    irBackEnd(arg(argv, 1, 10000));
+  }
+
+  /* TM code for one program from the tree and through the three-address
+     code; programs either back end cannot handle are left out */
+  static void backEnds(String input, ByteBuffer source) throws Exception {
+    final PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+    final DecList tree;
+    final NameTable names;
+    try {
+      parser p = quietParser(source);
+      tree = (DecList)(p.parse().value);
+      names = ((Lexer) p.getScanner()).names;
+      if (tree == null || !p.valid)
+        return;
+    } catch (Exception e) {
+      return;
+    }
+    try {
+      CodeGenerator direct = new CodeGenerator(names, discard, new Diagnostics());
+      direct.visit(tree);
+      IrCodeGenerator lowered = new IrCodeGenerator(names, discard, new Diagnostics());
+      lowered.generate(new IrBuilder(names, new Diagnostics()).build(tree));
+      Result tm = measure(input, source.remaining(), "tree", () -> new CodeGenerator(names, discard, new Diagnostics()).visit(tree));
+      Result ir = measure(input, source.remaining(), "ir", () ->
+        new IrCodeGenerator(names, discard, new Diagnostics()).generate(new IrBuilder(names, new Diagnostics()).build(tree)));
+      System.out.printf("%-16s %12d %12d %12.2f %12.2f\n", input, direct.size(), lowered.size(),
+                        tm.nanos / 1e3 / tm.ops, ir.nanos / 1e3 / ir.ops);
+    } catch (Exception e) {
+      // a back end that cannot handle this program's errors
+    }
+  }
+
+  static void irBackEnd(int lines) throws Exception {
+    System.out.printf("%-16s %12s %12s %12s %12s\n", "input", "tree instrs", "ir instrs", "tree us/op", "ir us/op");
+    for (File f : tests())
+      backEnds(f.getName(), SourceReader.load(f.getPath()));
+    backEnds("generated-" + lines, ByteBuffer.wrap(Generated.program(lines).getBytes("US-ASCII")));
+  }
+}
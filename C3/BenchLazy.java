@@ -0,0 +1,70 @@
+/*
+  java Benchmark lazy [lines], or <make bench_lazy>
+*/
+
+import java.nio.ByteBuffer;
+import absyn.*;
+
+class BenchLazy extends Bench {
+  String arguments() {
+    return "[lines]";
+  }
+
+  String[] description() {
+    return new String[] {
+      "parse time and retained heap with bodies parsed up front vs on demand"
+    };
+  }
+
+  void run(String[] argv) throws Exception {
+    lazyParse(arg(argv, 1, 100000));
+  }
+
+  static DecList parseSource(ByteBuffer source, boolean lazy) throws Exception {
+    Lexer lexer = new Lexer(new SourceReader(source));
+    java_cup.runtime.Scanner scanner = lazy ? new LazyScanner(source, lexer) : lexer;
+    return (DecList)(parser.of(scanner).parse().value);
+  }
+
+  /* Full parse against a parse that skips bodies, then the cost of
+     materializing a single body afterwards. */
+  static void lazyParse(int lines) throws Exception {
+    ByteBuffer source = ByteBuffer.wrap(Generated.program(lines).getBytes("US-ASCII"));
+    long full = Long.MAX_VALUE;
+    long lazy = Long.MAX_VALUE;
+    for (int r = 0; r < RUNS + 1; r++) { // the first round warms up the JIT
+      long start = System.nanoTime();
+      parseSource(source, false);
+      long f = System.nanoTime() - start;
+      start = System.nanoTime();
+      parseSource(source, true);
+      long l = System.nanoTime() - start;
+      if (r > 0) {
+        full = Math.min(full, f);
+        lazy = Math.min(lazy, l);
+      }
+    }
+
+    long base = usedHeap();
+    DecList tree = parseSource(source, false);
+    long fullBytes = usedHeap() - base;
+    tree = null;
+    base = usedHeap();
+    tree = parseSource(source, true);
+    long lazyBytes = usedHeap() - base;
+
+    FunctionDec middle = null;
+    int i = 0;
+    for (DecList d = tree; d != null; d = d.tail)
+      if (i++ == lines / 20)
+        middle = (FunctionDec) d.head;
+    long start = System.nanoTime();
+    middle.body();
+    long one = System.nanoTime() - start;
+
+    System.out.printf("%-8s %10s %14s\n", "bodies", "parse ms", "retained MB");
+    System.out.printf("%-8s %10.2f %14.1f\n", "eager", full / 1e6, fullBytes / 1048576.0);
+    System.out.printf("%-8s %10.2f %14.1f\n", "lazy", lazy / 1e6, lazyBytes / 1048576.0);
+    System.out.printf("one body on demand: %.3f ms\n", one / 1e6);
+  }
+}
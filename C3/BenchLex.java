@@ -0,0 +1,75 @@
+/*
+  java Benchmark lex [size_mb], or <make bench_lex>
+*/
+
+import java.io.*;
+
+class BenchLex extends Bench {
+  String arguments() {
+    return "[size_mb]";
+  }
+
+  String[] description() {
+    return new String[] {
+      "Lexer throughput in MB/s, FileReader vs SourceReader"
+    };
+  }
+
+  void run(String[] argv) throws Exception {
+    lexThroughput(arg(argv, 1, 64));
+  }
+
+  /* writes roughly sizeMB of ordinary looking functions to a temp file */
+  static File generated(int sizeMB) throws IOException {
+    File file = File.createTempFile("bench", ".cm");
+    file.deleteOnExit();
+    long target = (long) sizeMB << 20;
+    try (Writer w = new BufferedWriter(new FileWriter(file))) {
+      long written = 0;
+      for (int i = 0; written < target; i++) {
+        String v = "v" + i;
+        String f = "int f" + i + "(int " + v + ") {\n"
+          + "  /* loop over the argument */\n"
+          + "  while (" + v + " > 0) {\n"
+          + "    " + v + " = " + v + " - 1 * (" + v + " + 42) / 7;\n"
+          + "  }\n"
+          + "  return " + v + ";\n"
+          + "}\n";
+        w.write(f);
+        written += f.length();
+      }
+    }
+    return file;
+  }
+
+  /* drains the lexer and returns the number of tokens */
+  static int lex(Reader reader) throws Exception {
+    Lexer lexer = new Lexer(reader);
+    int tokens = 0;
+    while (lexer.next_token() != null)
+      tokens++;
+    return tokens;
+  }
+
+  /* best of RUNS, in MB/s over the whole file */
+  static double throughput(File file, boolean mapped) throws Exception {
+    long best = Long.MAX_VALUE;
+    for (int r = 0; r < RUNS; r++) {
+      long start = System.nanoTime();
+      Reader reader = mapped ? new SourceReader(file.getPath()) : new FileReader(file);
+      lex(reader);
+      reader.close();
+      best = Math.min(best, System.nanoTime() - start);
+    }
+    return (file.length() / 1048576.0) / (best / 1e9);
+  }
+
+  static void lexThroughput(int sizeMB) throws Exception {
+    File file = generated(sizeMB);
+    throughput(file, false); // warm up the JIT on both paths
+    throughput(file, true);
+    System.out.printf("%-14s %10s %10s\n", "reader", "MB", "MB/s");
+    System.out.printf("%-14s %10.1f %10.1f\n", "FileReader", file.length() / 1048576.0, throughput(file, false));
+    System.out.printf("%-14s %10.1f %10.1f\n", "SourceReader", file.length() / 1048576.0, throughput(file, true));
+  }
+}
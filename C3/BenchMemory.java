@@ -0,0 +1,45 @@
+/*
+  java Benchmark memory [lines], or <make bench_memory>
+*/
+
+import java.io.*;
+import absyn.*;
+
+class BenchMemory extends Bench {
+  String arguments() {
+    return "[lines]";
+  }
+
+  String[] description() {
+    return new String[] {
+      "retained heap per source line, object tree vs AstArena"
+    };
+  }
+
+  void run(String[] argv) throws Exception {
+    memory(arg(argv, 1, 1000000));
+  }
+
+  /* Retained heap of each representation, measured as the growth in used
+     heap after a full collection while only that representation is live. */
+  static void memory(int lines) throws Exception {
+    String source = Generated.program(lines);
+    lines = source.split("\n").length;
+
+    long base = usedHeap();
+    Lexer lexer = new Lexer(new StringReader(source));
+    DecList tree = (DecList)(parser.of(lexer).parse().value);
+    long treeBytes = usedHeap() - base;
+
+    AstArena arena = AstArena.pack(tree, lexer.names);
+    tree = null;
+    lexer = null;
+    long arenaBytes = usedHeap() - base;
+
+    System.out.printf("%-14s %12s %12s\n", "representation", "bytes", "bytes/line");
+    System.out.printf("%-14s %12d %12.1f\n", "source", source.length(), (double) source.length() / lines);
+    System.out.printf("%-14s %12d %12.1f\n", "object tree", treeBytes, (double) treeBytes / lines);
+    System.out.printf("%-14s %12d %12.1f\n", "AstArena", arenaBytes, (double) arenaBytes / lines);
+    System.out.printf("%d lines, %d arena nodes\n", lines, arena.size());
+  }
+}
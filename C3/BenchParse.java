@@ -0,0 +1,44 @@
+/*
+  java Benchmark parse [max_n], or <make bench>
+*/
+
+class BenchParse extends Bench {
+  String arguments() {
+    return "[max_n]";
+  }
+
+  String[] description() {
+    return new String[] {
+      "parse time for 1K..max_n declarations and statements"
+    };
+  }
+
+  void run(String[] argv) throws Exception {
+    int maxN = arg(argv, 1, 1000000);
+    parseScaling("declarations", maxN, false);
+    parseScaling("statements", maxN, true);
+  }
+
+  /* best of RUNS wall-clock parses, in nanoseconds */
+  static long timeParse(String source) throws Exception {
+    long best = Long.MAX_VALUE;
+    for (int r = 0; r < RUNS; r++) {
+      long start = System.nanoTime();
+      parse(source);
+      best = Math.min(best, System.nanoTime() - start);
+    }
+    return best;
+  }
+
+  /* Prints ns per item for each size; a linear parser keeps that column
+     flat while a quadratic one grows it by the size ratio. */
+  static void parseScaling(String label, int maxN, boolean stmts) throws Exception {
+    System.out.printf("%-12s %10s %12s %12s\n", label, "n", "ms", "ns/item");
+    timeParse(stmts ? Generated.statements(1000) : Generated.globals(1000)); // warm up the JIT
+    for (int n = 1000; n <= maxN; n *= 10) {
+      String source = stmts ? Generated.statements(n) : Generated.globals(n);
+      long ns = timeParse(source);
+      System.out.printf("%-12s %10d %12.2f %12.1f\n", "", n, ns / 1e6, (double) ns / n);
+    }
+  }
+}
@@ -0,0 +1,82 @@
+/*
+  java Benchmark passes [lines], or <make bench_passes>
+*/
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import absyn.*;
+import ir.Function;
+import ir.PassManager;
+import ir.Program;
+
+class BenchPasses extends Bench {
+  String arguments() {
+    return "[lines]";
+  }
+
+  String[] description() {
+    return new String[] {
+      "instructions and pass time of -O0, -O1, -O2 and -Os over test/*.cm and generated programs",
+      "of [lines] lines, with the -O2 report of each pass for the largest"
+    };
+  }
+
+  void run(String[] argv) throws Exception {
+    passLevels(arg(argv, 1, 10000));
+  }
+
+  static final String[] LEVELS = { "0", "1", "2", "s" };
+
+  /* Three-address and TM instructions and the time of the passes of
+     each -O level for one program; programs with errors are left out.
+     Returns the -O2 pipeline of the last run, for its report. */
+  static PassManager levels(String input, ByteBuffer source) throws Exception {
+    PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+    parser p = quietParser(source);
+    DecList tree;
+    try {
+      tree = (DecList)(p.parse().value);
+    } catch (Exception e) {
+      return null;
+    }
+    if (tree == null || !p.valid)
+      return null;
+    NameTable names = ((Lexer) p.getScanner()).names;
+    PassManager report = null;
+    for (String level : LEVELS) {
+      long best = Long.MAX_VALUE;
+      Program program = null;
+      PassManager passes = null;
+      for (int r = -3; r < RUNS; r++) {
+        program = new IrBuilder(names, new Diagnostics()).build(tree);
+        passes = PassManager.preset(level);
+        long start = System.nanoTime();
+        passes.run(program);
+        if (r >= 0)
+          best = Math.min(best, System.nanoTime() - start);
+      }
+      int instrs = 0;
+      for (Function function : program.functions)
+        instrs += function.code.size();
+      IrCodeGenerator tm = new IrCodeGenerator(names, discard, new Diagnostics());
+      tm.generate(program);
+      System.out.printf("%-16s %6s %10d %10d %10.3f\n", input, "-O" + level, instrs, tm.size(), best / 1e6);
+      if (level.equals("2"))
+        report = passes;
+    }
+    return report;
+  }
+
+  static void passLevels(int lines) throws Exception {
+    System.out.printf("%-16s %6s %10s %10s %10s\n", "input", "level", "ir instrs", "tm instrs", "passes ms");
+    for (File f : tests())
+      levels(f.getName(), SourceReader.load(f.getPath()));
+    levels("branches-200", ByteBuffer.wrap(Generated.localBranches(200).getBytes("US-ASCII")));
+    PassManager report = levels("generated-" + lines, ByteBuffer.wrap(Generated.program(lines).getBytes("US-ASCII")));
+    if (report != null) {
+      System.out.println();
+      System.out.println("-O2 on generated-" + lines + ":");
+      report.report(System.out);
+    }
+  }
+}
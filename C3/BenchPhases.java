@@ -0,0 +1,106 @@
+/*
+  java Benchmark phases [lines] [results.json|results.csv], or <make bench_phases>
+*/
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import absyn.*;
+
+class BenchPhases extends Bench {
+  String arguments() {
+    return "[lines] [results.json|results.csv]";
+  }
+
+  String[] description() {
+    return new String[] {
+      "ops/s and allocation per op of lex, parse, analyze and generate over test/*.cm",
+      "and generated programs of 1000 and [lines] lines; optionally saved as JSON or CSV"
+    };
+  }
+
+  void run(String[] argv) throws Exception {
+    phaseSuite(arg(argv, 1, 10000), argv.length > 2 ? argv[2] : null);
+  }
+
+  /* Runs every phase on one input. Phases after a failed parse, or that
+     throw on a broken program, are left out. */
+  static void phases(String input, final ByteBuffer source, List<Result> results) throws Exception {
+    final PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+    long bytes = source.remaining();
+
+    results.add(measure(input, bytes, "lex", () -> {
+      Lexer lexer = new Lexer(new SourceReader(source.duplicate()));
+      lexer.diagnostics = new Diagnostics();
+      while (lexer.next_token() != null)
+        ;
+    }));
+
+    final DecList tree;
+    final NameTable names;
+    try {
+      parser p = quietParser(source);
+      tree = (DecList)(p.parse().value);
+      names = ((Lexer) p.getScanner()).names;
+    } catch (Exception e) {
+      return;
+    }
+    results.add(measure(input, bytes, "parse", () -> quietParser(source).parse()));
+    if (tree == null)
+      return;
+
+    try {
+      results.add(measure(input, bytes, "analyze", () -> {
+        SemanticAnalyzer analyzer = new SemanticAnalyzer(discard, new Diagnostics());
+        tree.accept(analyzer, 0, false);
+        analyzer.printSymbolTable(1);
+      }));
+      results.add(measure(input, bytes, "generate", () -> new CodeGenerator(names, discard, new Diagnostics()).visit(tree)));
+    } catch (Exception e) {
+      // a phase that cannot handle this program's errors
+    }
+  }
+
+  static void writeResults(String file, List<Result> results) throws IOException {
+    try (PrintWriter w = new PrintWriter(new FileWriter(file))) {
+      if (file.endsWith(".csv")) {
+        w.println("suite,input,bytes,phase,ops,ops_per_s,ns_per_op,alloc_bytes_per_op,gc_count,gc_ms");
+        for (Result r : results)
+          w.printf("C3,%s,%d,%s,%d,%.1f,%.1f,%.1f,%d,%d\n", r.input, r.bytes, r.phase, r.ops,
+                   r.opsPerSecond(), (double) r.nanos / r.ops, r.allocPerOp(), r.gcCount, r.gcMillis);
+        return;
+      }
+      w.println("{");
+      w.printf("  \"suite\": \"C3\",\n  \"timestamp\": \"%s\",\n  \"java\": \"%s\",\n",
+               java.time.Instant.now(), System.getProperty("java.version"));
+      w.printf("  \"warmup_ms\": %d,\n  \"measure_ms\": %d,\n  \"results\": [\n", WARMUP_NS / 1000000, MEASURE_NS / 1000000);
+      for (int i = 0; i < results.size(); i++) {
+        Result r = results.get(i);
+        w.printf("    {\"input\": \"%s\", \"bytes\": %d, \"phase\": \"%s\", \"ops\": %d, \"ops_per_s\": %.1f, "
+                 + "\"ns_per_op\": %.1f, \"alloc_bytes_per_op\": %.1f, \"gc_count\": %d, \"gc_ms\": %d}%s\n",
+                 r.input, r.bytes, r.phase, r.ops, r.opsPerSecond(), (double) r.nanos / r.ops,
+                 r.allocPerOp(), r.gcCount, r.gcMillis, i + 1 < results.size() ? "," : "");
+      }
+      w.println("  ]");
+      w.println("}");
+    }
+  }
+
+  static void phaseSuite(int lines, String resultsFile) throws Exception {
+    List<Result> results = new ArrayList<Result>();
+    for (File f : tests())
+      phases(f.getName(), SourceReader.load(f.getPath()), results);
+    for (int n : new int[] { 1000, lines })
+      phases("generated-" + n, ByteBuffer.wrap(Generated.program(n).getBytes("US-ASCII")), results);
+
+    System.out.printf("%-16s %-9s %10s %12s %12s %12s %4s\n", "input", "phase", "ops", "ops/s", "us/op", "B/op", "gc");
+    for (Result r : results)
+      System.out.printf("%-16s %-9s %10d %12.1f %12.2f %12.0f %4d\n", r.input, r.phase, r.ops,
+                        r.opsPerSecond(), r.nanos / 1e3 / r.ops, r.allocPerOp(), r.gcCount);
+    if (resultsFile != null) {
+      writeResults(resultsFile, results);
+      System.out.println("results written to " + resultsFile);
+    }
+  }
+}
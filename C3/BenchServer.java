@@ -0,0 +1,63 @@
+/*
+  java Benchmark server [requests], or <make bench_server>
+*/
+
+import java.io.*;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+class BenchServer extends Bench {
+  String arguments() {
+    return "[requests]";
+  }
+
+  String[] description() {
+    return new String[] {
+      "round trip latency of CMClient requests to a warm CMServer"
+    };
+  }
+
+  void run(String[] argv) throws Exception {
+    serverLatency(arg(argv, 1, 200));
+  }
+
+  /* Round trips of a full -a -s -c compile of a small file through a
+     warm server on a private socket. Client JVM startup is not included;
+     the client here is already running. */
+  static void serverLatency(int requests) throws Exception {
+    Path dir = workspace("bench-server");
+    try (Writer w = new FileWriter(dir.resolve("small.cm").toFile())) {
+      w.write(Generated.program(30));
+    }
+    String socket = dir.resolve("cm.sock").toString();
+    CMServer.warmUp();
+    final CMServer server = new CMServer(socket, 1);
+    Thread thread = new Thread(() -> {
+      try {
+        server.serve();
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    });
+    thread.start();
+
+    PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+    String[] args = { "small.cm", "-a", "-s", "-c" };
+    long[] times = new long[requests];
+    for (int i = 0; i < requests; i++) {
+      long start = System.nanoTime();
+      CMClient.request(socket, dir.toString(), args, discard, discard);
+      times[i] = System.nanoTime() - start;
+    }
+    CMClient.request(socket, dir.toString(), new String[] { "-shutdown" }, discard, discard);
+    thread.join();
+    delete(dir.toFile());
+
+    Arrays.sort(times);
+    System.out.printf("%d requests, %d source lines each\n", requests, 30);
+    System.out.printf("%-8s %10s\n", "", "ms");
+    System.out.printf("%-8s %10.3f\n", "median", times[requests / 2] / 1e6);
+    System.out.printf("%-8s %10.3f\n", "p90", times[requests * 9 / 10] / 1e6);
+    System.out.printf("%-8s %10.3f\n", "max", times[requests - 1] / 1e6);
+  }
+}
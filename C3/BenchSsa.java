@@ -0,0 +1,71 @@
+/*
+  java Benchmark ssa [max_loops], or <make bench_ssa>
+*/
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import absyn.*;
+import ir.Cfg;
+import ir.Dominators;
+import ir.Function;
+import ir.Instr;
+import ir.Ssa;
+
+class BenchSsa extends Bench {
+  String arguments() {
+    return "[max_loops]";
+  }
+
+  String[] description() {
+    return new String[] {
+      "time to find dominators, build SSA form and take it out again in a function of 1K..max_loops loops"
+    };
+  }
+
+  void run(String[] argv) throws Exception {
+    ssaScaling(arg(argv, 1, 100000));
+  }
+
+  /* Prints the time to find the dominator tree of one function of
+     1K..maxN loops, to build its SSA form and to take it out again,
+     each per instruction of the function as built, with the phis
+     placed and the instructions after leaving SSA. */
+  static void ssaScaling(int maxN) throws Exception {
+    System.out.printf("%8s %8s %8s %10s %10s %10s %8s %10s\n", "loops", "instrs", "phis", "dom ns", "build ns", "destroy ns", "after", "ms");
+    for (int n = 1000; n <= maxN; n *= 10) {
+      byte[] source = Generated.localBranches(n).getBytes("US-ASCII");
+      int instrs = 0;
+      int phis = 0;
+      int after = 0;
+      long bestDom = Long.MAX_VALUE;
+      long bestBuild = Long.MAX_VALUE;
+      long bestDestroy = Long.MAX_VALUE;
+      for (int r = -3; r < RUNS; r++) {
+        parser p = quietParser(ByteBuffer.wrap(source));
+        DecList tree = (DecList)(p.parse().value);
+        Function main = new IrBuilder(((Lexer) p.getScanner()).names, new Diagnostics()).build(tree).functions.get(0);
+        instrs = main.code.size();
+        long start = System.nanoTime();
+        new Dominators(new Cfg(main));
+        long dominated = System.nanoTime();
+        Ssa.build(main);
+        long built = System.nanoTime();
+        phis = 0;
+        for (Instr instr : main.code)
+          if (instr.kind == Instr.PHI)
+            phis++;
+        long again = System.nanoTime();
+        Ssa.destroy(main);
+        long end = System.nanoTime();
+        after = main.code.size();
+        if (r >= 0) {
+          bestDom = Math.min(bestDom, dominated - start);
+          bestBuild = Math.min(bestBuild, built - dominated);
+          bestDestroy = Math.min(bestDestroy, end - again);
+        }
+      }
+      System.out.printf("%8d %8d %8d %10.2f %10.2f %10.2f %8d %10.2f\n", n, instrs, phis, (double) bestDom / instrs,
+                        (double) bestBuild / instrs, (double) bestDestroy / instrs, after, (bestBuild + bestDestroy) / 1e6);
+    }
+  }
+}
@@ -0,0 +1,79 @@
+/*
+  java Benchmark stream [lines], or <make bench_stream>
+*/
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import absyn.*;
+
+class BenchStream extends Bench {
+  String arguments() {
+    return "[lines]";
+  }
+
+  String[] description() {
+    return new String[] {
+      "live heap high-water mark of -a -s -c, whole program vs one function at a time"
+    };
+  }
+
+  void run(String[] argv) throws Exception {
+    streamMemory(arg(argv, 1, 100000));
+  }
+
+  /* Batch pipeline with every phase, sampling live heap after each phase
+     while the tree and the phase's state are still reachable */
+  static long batchPeak(ByteBuffer source, PrintStream discard) throws Exception {
+    long base = usedHeap();
+    Lexer lexer = new Lexer(new SourceReader(source));
+    DecList tree = (DecList)(parser.of(lexer).parse().value);
+    long peak = usedHeap();
+    tree.accept(new ShowTreeVisitor(discard), 0, false);
+    SemanticAnalyzer analyzer = new SemanticAnalyzer(discard, new Diagnostics());
+    tree.accept(analyzer, 0, false);
+    peak = Math.max(peak, usedHeap());
+    CodeGenerator generator = new CodeGenerator(lexer.names, discard, new Diagnostics());
+    generator.visit(tree);
+    peak = Math.max(peak, usedHeap());
+    return peak - base;
+  }
+
+  /* Streaming pipeline, sampling live heap every so many declarations */
+  static long streamPeak(ByteBuffer source, PrintStream discard, final int every) throws Exception {
+    final long base = usedHeap();
+    final long[] peak = { 0 };
+    Lexer lexer = new Lexer(new SourceReader(source));
+    final StreamingCompiler phases = new StreamingCompiler(lexer.names, discard, discard, discard, null, new Diagnostics());
+    parser p = parser.of(lexer);
+    p.sink = new DecSink() {
+      int count = 0;
+      public void declare(Dec dec) {
+        phases.declare(dec);
+        if (++count % every == 0)
+          peak[0] = Math.max(peak[0], usedHeap() - base);
+      }
+    };
+    phases.begin("bench");
+    p.parse();
+    phases.end();
+    return Math.max(peak[0], usedHeap() - base);
+  }
+
+  static void streamMemory(int lines) throws Exception {
+    ByteBuffer source = ByteBuffer.wrap(Generated.program(lines).getBytes("US-ASCII"));
+    PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+    int functions = lines / 10;
+
+    long start = System.nanoTime();
+    long batch = batchPeak(source, discard);
+    long batchMs = System.nanoTime() - start;
+    start = System.nanoTime();
+    long stream = streamPeak(source, discard, Math.max(1, functions / 20));
+    long streamMs = System.nanoTime() - start;
+
+    System.out.printf("%d lines, %d functions; times include the sampling collections\n", lines, functions);
+    System.out.printf("%-8s %14s %10s\n", "pipeline", "peak live MB", "ms");
+    System.out.printf("%-8s %14.1f %10.0f\n", "batch", batch / 1048576.0, batchMs / 1e6);
+    System.out.printf("%-8s %14.1f %10.0f\n", "stream", stream / 1048576.0, streamMs / 1e6);
+  }
+}
@@ -0,0 +1,47 @@
+/*
+  java Benchmark symbols [max_globals] [depth], or <make bench_symbols>
+*/
+
+import java.io.*;
+import absyn.*;
+
+class BenchSymbols extends Bench {
+  String arguments() {
+    return "[max_globals] [depth]";
+  }
+
+  String[] description() {
+    return new String[] {
+      "SemanticAnalyzer time per variable reference for 1250..max_globals globals"
+    };
+  }
+
+  void run(String[] argv) throws Exception {
+    symbolScaling(arg(argv, 1, 20000), arg(argv, 2, 32));
+  }
+
+  /* Semantic analysis time per variable reference as the number of
+     globals doubles; flat with a hashed symbol table, growing with the
+     table size when each lookup scans the scopes. */
+  static void symbolScaling(int maxN, int depth) throws Exception {
+    PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+    System.out.printf("%d nested blocks\n", depth);
+    System.out.printf("%10s %12s %12s\n", "globals", "ms", "ns/ref");
+    Absyn warm = parse(Generated.scopes(1250, depth));
+    for (int i = 0; i < 200; i++)
+      warm.accept(new SemanticAnalyzer(discard, new Diagnostics()), 0, false); // warm up the JIT
+    for (int n = 1250; n <= maxN; n *= 2) {
+      Absyn tree = parse(Generated.scopes(n, depth));
+      long best = Long.MAX_VALUE;
+      for (int r = 0; r < 3 * RUNS; r++) {
+        long start = System.nanoTime();
+        SemanticAnalyzer analyzer = new SemanticAnalyzer(discard, new Diagnostics());
+        tree.accept(analyzer, 0, false);
+        analyzer.printSymbolTable(1);
+        best = Math.min(best, System.nanoTime() - start);
+      }
+      /* each statement references a global, a local and x */
+      System.out.printf("%10d %12.2f %12.1f\n", n, best / 1e6, (double) best / (3L * n));
+    }
+  }
+}
@@ -0,0 +1,60 @@
+/*
+  Micro benchmarks for the C-Minus front end and back ends, one class
+  per mode (Bench*.java) on the harness in Bench. Parse inputs are
+  generated in memory (Generated); the lexer is fed a generated temp
+  file so both reader paths are measured against the same warm page
+  cache.
+
+  To run:
+    $ make bench_<mode>            (make bench runs parse)
+    $ java -cp /usr/share/java/cup.jar:. Benchmark <mode> [arguments]
+*/
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+class Benchmark {
+  static private final Map<String, Bench> MODES = new LinkedHashMap<>();
+
+  static {
+    MODES.put("parse", new BenchParse());
+    MODES.put("lex", new BenchLex());
+    MODES.put("memory", new BenchMemory());
+    MODES.put("cache", new BenchCache());
+    MODES.put("lazy", new BenchLazy());
+    MODES.put("server", new BenchServer());
+    MODES.put("stream", new BenchStream());
+    MODES.put("phases", new BenchPhases());
+    MODES.put("symbols", new BenchSymbols());
+    MODES.put("analysis", new BenchAnalysis());
+    MODES.put("errors", new BenchErrors());
+    MODES.put("deep", new BenchDeep());
+    MODES.put("ir", new BenchIr());
+    MODES.put("cfg", new BenchCfg());
+    MODES.put("dataflow", new BenchDataflow());
+    MODES.put("ssa", new BenchSsa());
+    MODES.put("passes", new BenchPasses());
+  }
+
+  static private void usage() {
+    System.out.println("usage: java Benchmark <mode> [arguments]");
+    for (Map.Entry<String, Bench> mode : MODES.entrySet()) {
+      System.out.printf("       %-9s %s\n", mode.getKey(), mode.getValue().arguments());
+      for (String line : mode.getValue().description())
+        System.out.printf("                 %s\n", line);
+    }
+  }
+
+  static public void main(String argv[]) {
+    Bench mode = argv.length < 1 ? null : MODES.get(argv[0]);
+    if (mode == null) {
+      usage();
+      return;
+    }
+    try {
+      mode.run(argv);
+    } catch (Exception e) {
+      e.printStackTrace();
+    }
+  }
+}
@@ -1,65 +1,163 @@
 import java.io.*;
-import absyn.*;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
 
+/*
+  Compiles one or more C-Minus programs.
+
+    java CM file.cm [-a] [-s] [-c] [-compact] [-cache] [-lazy] [-parallel] [-dce] [-index] [-ir] [-cfg] [-ssa] [-O0|-O1|-O2|-Os] [-time-passes] [-maxerrors=N] [-failfast]
+    java CM file.cm dir/ ... [-j N] [flags]
+
+  With a single file the compilation prints straight to stdout and
+  stderr, as before. With several files, or a directory (every .cm file
+  in it), the files are compiled concurrently on a pool of N worker
+  threads, N defaulting to the number of processors. Each compilation
+  buffers its own messages and they are printed in the order the files
+  were given, followed by a line of timing per file and a total. Two
+  files of the same name, from different directories, are refused,
+  since both would write the same test/<name>.* outputs.
+*/
 class CM {
-  static public void main(String argv[]) {    
-    
-    boolean a_flag = false;
-    boolean s_flag = false;
-    boolean c_flag = false;
-    
-    for (String s: argv) {
-      if(s.equals("-a"))
-        a_flag = true;
-      if (s.equals("-s"))
-        s_flag = true;
-      if (s.equals("-c"))
-        c_flag = true;
+  static public void main(String argv[]) {
+    List<String> files = new ArrayList<String>();
+    List<String> flags = new ArrayList<String>();
+    int jobs = 0;
+
+    for (int i = 0; i < argv.length; i++) {
+      String s = argv[i];
+      if (s.equals("-j")) {
+        try {
+          jobs = Integer.parseInt(i + 1 < argv.length ? argv[++i] : "");
+        } catch (NumberFormatException e) {
+          jobs = 0;
+        }
+        if (jobs < 1)
+          usage("-j takes a number of threads of at least 1");
+      } else if (s.startsWith("-"))
+        flags.add(s);
+      else if (new File(s).isDirectory())
+        files.addAll(sources(new File(s)));
+      else
+        files.add(s);
     }
-    
-    /* Start the parser */
-    try {
-      parser p = new parser(new Lexer(new FileReader(argv[0])));
-      Absyn result = (Absyn)(p.parse().value);      
-      
-      Path path = Paths.get(argv[0]);
-      Path file = path.getFileName();
-      String filename = file.toString();
-      filename = filename.substring(0, filename.lastIndexOf("."));
-
-      if (a_flag && result != null) {
-        PrintStream out = new PrintStream(new FileOutputStream("test/" + filename + ".abs"));
-        System.setOut(out);
-        System.out.println("The abstract syntax tree is:");
-        ShowTreeVisitor visitor = new ShowTreeVisitor();
-        result.accept(visitor, 0, false); 
-      }
 
-      if (s_flag && result != null) {
-        PrintStream out = new PrintStream(new FileOutputStream("test/" + filename + ".sym"));
-        System.setOut(out);
-        System.out.println("Entering the global scope:");
-        SemanticAnalyzer visitor = new SemanticAnalyzer();
-        result.accept(visitor, 0, false);
-        visitor.printSymbolTable(1);
-        System.out.println("Leaving the global scope");
-      }
+    if (files.isEmpty())
+      usage(null);
+
+    if (files.size() == 1 && jobs == 0) {
+      Compilation unit = new Compilation(files.get(0), System.out, System.err);
+      for (String flag : flags)
+        unit.setFlag(flag);
+      if (!unit.run())
+        System.exit(1);
+      return;
+    }
 
-      if (c_flag && result != null) {
-        /* Need to verify that SemanticAnalyzer produces without errors before running CodeGenerator */
-        PrintStream out = new PrintStream(new FileOutputStream("test/" + filename + ".tm"));
-        System.setOut(out);
-        System.out.println("* C-Minus Compilation to TM Code");
-        System.out.println("* File: " + filename + ".tm");
-        CodeGenerator visitor = new CodeGenerator();
-        visitor.visit(result);
+    String clash = clash(files);
+    if (clash != null) {
+      System.err.println("CM: " + clash);
+      System.exit(1);
+    }
+
+    if (!compileAll(files, flags, jobs > 0 ? jobs : Runtime.getRuntime().availableProcessors()))
+      System.exit(1);
+  }
+
+  /* prints what was wrong with the arguments, if known, and exits */
+  static void usage(String problem) {
+    if (problem != null)
+      System.err.println("CM: " + problem);
+    System.err.println("usage: java CM file.cm|dir ... [-j N] [-a] [-s] [-c] [-compact] [-cache] [-lazy] [-parallel] [-dce] [-index] [-ir] [-cfg] [-ssa] [-O0|-O1|-O2|-Os] [-time-passes] [-maxerrors=N] [-failfast]");
+    System.exit(1);
+  }
+
+  /* the .cm files directly inside dir, in name order */
+  static List<String> sources(File dir) {
+    List<String> files = new ArrayList<String>();
+    File[] entries = dir.listFiles();
+    if (entries == null)
+      return files;
+    Arrays.sort(entries);
+    for (File f : entries)
+      if (f.isFile() && f.getName().endsWith(".cm"))
+        files.add(f.getPath());
+    return files;
+  }
+
+  /* Every file writes test/<name>.*, name being its file name without
+     the extension, so two files with the same name would overwrite
+     each other's output; says which two, or returns null */
+  static String clash(List<String> files) {
+    Map<String, String> owners = new HashMap<String, String>();
+    for (String file : files) {
+      String name = new File(file).getName();
+      int dot = name.lastIndexOf('.');
+      if (dot >= 0)
+        name = name.substring(0, dot);
+      String owner = owners.putIfAbsent(name, file);
+      if (owner != null)
+        return owner + " and " + file + " would both write test/" + name + ".*";
+    }
+    return null;
+  }
+
+  /* A compilation whose messages are held until the driver prints them */
+  static class BufferedUnit implements Callable<BufferedUnit> {
+    final ByteArrayOutputStream outBytes = new ByteArrayOutputStream();
+    final ByteArrayOutputStream errBytes = new ByteArrayOutputStream();
+    final Compilation unit;
+    boolean ok;
+
+    BufferedUnit(String filename, List<String> flags) {
+      unit = new Compilation(filename, new PrintStream(outBytes), new PrintStream(errBytes));
+      for (String flag : flags)
+        unit.setFlag(flag);
+    }
+
+    public BufferedUnit call() {
+      ok = unit.run();
+      return this;
+    }
+  }
+
+  static boolean compileAll(List<String> files, List<String> flags, int jobs) {
+    ExecutorService pool = Executors.newFixedThreadPool(Math.min(jobs, files.size()));
+    List<Future<BufferedUnit>> pending = new ArrayList<Future<BufferedUnit>>();
+    long begin = System.nanoTime();
+    for (String file : files)
+      pending.add(pool.submit(new BufferedUnit(file, flags)));
+
+    boolean ok = true;
+    long bytes = 0;
+    long busy = 0;
+    List<String> report = new ArrayList<String>();
+    try {
+      for (Future<BufferedUnit> f : pending) {
+        BufferedUnit u = f.get();
+        System.out.write(u.outBytes.toByteArray());
+        System.err.write(u.errBytes.toByteArray());
+        ok &= u.ok;
+        bytes += u.unit.bytes;
+        busy += u.unit.nanos;
+        report.add(String.format("%-30s %10d %10.2f %10.1f%s", u.unit.filename, u.unit.bytes,
+                                 u.unit.nanos / 1e6, u.unit.bytes / 1024.0 / (u.unit.nanos / 1e9),
+                                 u.ok ? "" : "  failed"));
       }
-    } catch (Exception e) {
-      /* do cleanup here -- possibly rethrow e */
+    } catch (InterruptedException | ExecutionException | IOException e) {
       e.printStackTrace();
+      ok = false;
+    } finally {
+      pool.shutdown();
     }
+    long wall = System.nanoTime() - begin;
+
+    System.out.flush();
+    System.out.printf("%-30s %10s %10s %10s\n", "file", "bytes", "ms", "KB/s");
+    for (String line : report)
+      System.out.println(line);
+    System.out.printf("%d files, %d bytes in %.2f ms on %d threads: %.1f KB/s, %.2f compilations busy on average\n",
+                      files.size(), bytes, wall / 1e6, Math.min(jobs, files.size()),
+                      bytes / 1024.0 / (wall / 1e9), (double) busy / wall);
+    return ok;
   }
 }
-
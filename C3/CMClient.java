@@ -0,0 +1,72 @@
+import java.io.*;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+/*
+  Thin front end for CMServer. Takes the same arguments as CM, sends
+  them with the current directory to the server and copies the answer
+  to stdout and stderr, exiting with the server's status. When no
+  server is listening it compiles in process instead, so it can always
+  stand in for CM.
+
+  To run:
+    $ java -cp /usr/share/java/cup.jar:. CMClient test/1.cm -a -s -c
+    $ java -cp /usr/share/java/cup.jar:. CMClient -shutdown
+
+  The socket is CMServer.defaultSocket() unless -Dcm.socket=path is set.
+*/
+public class CMClient {
+  /* Runs one request; returns the exit status, or -1 if no server answered */
+  static public int request(String socket, String cwd, String[] argv, PrintStream out, PrintStream err) throws IOException {
+    SocketChannel channel;
+    try {
+      channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+      channel.connect(UnixDomainSocketAddress.of(socket));
+    } catch (IOException e) {
+      return -1;
+    }
+
+    try (SocketChannel c = channel) {
+      Writer to = new BufferedWriter(Channels.newWriter(c, StandardCharsets.UTF_8));
+      StringBuilder line = new StringBuilder(cwd);
+      for (String arg : argv)
+        line.append('\t').append(arg);
+      to.write(line.append('\n').toString());
+      to.flush();
+
+      BufferedReader in = new BufferedReader(Channels.newReader(c, StandardCharsets.UTF_8));
+      String reply;
+      while ((reply = in.readLine()) != null) {
+        if (reply.startsWith("1 "))
+          out.println(reply.substring(2));
+        else if (reply.startsWith("2 "))
+          err.println(reply.substring(2));
+        else if (reply.startsWith("exit "))
+          return Integer.parseInt(reply.substring(5));
+      }
+    }
+    err.println("CMClient: connection closed without a status");
+    return 1;
+  }
+
+  static public void main(String argv[]) {
+    String socket = System.getProperty("cm.socket", CMServer.defaultSocket());
+    try {
+      int status = request(socket, System.getProperty("user.dir"), argv, System.out, System.err);
+      if (status < 0) {
+        if (argv.length == 1 && argv[0].equals("-shutdown"))
+          return;
+        CM.main(argv);
+        return;
+      }
+      System.out.flush();
+      System.exit(status);
+    } catch (IOException e) {
+      e.printStackTrace();
+      System.exit(1);
+    }
+  }
+}
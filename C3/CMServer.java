@@ -0,0 +1,228 @@
+import java.io.*;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/*
+  Long-running compile server. It keeps one JVM, with the parser and
+  lexer tables loaded and the hot paths compiled, and serves CMClient
+  over a UNIX domain socket.
+
+  To run:
+    $ java -cp /usr/share/java/cup.jar:. CMServer [socket]
+    $ java -cp /usr/share/java/cup.jar:. CMClient test/1.cm -a -s -c
+
+  The protocol is plain text, one request per connection. The client
+  sends one line: its working directory followed by the CM arguments,
+  separated by tabs. The server answers with lines tagged "1 " for
+  stdout and "2 " for stderr, and a last line "exit N". Output files
+  (test/<name>.abs, .sym, .tm) are written relative to the client's
+  directory, exactly where CM would have put them. The single argument
+  -shutdown stops the server.
+*/
+public class CMServer {
+  /* compilations of the built-in sample run before accepting clients */
+  static private final int WARMUP_RUNS = 1000;
+
+  static private final String SAMPLE =
+      "int x[10];\n"
+    + "int minloc(int a[], int low, int high) {\n"
+    + "  int i; int x; int k;\n"
+    + "  k = low; x = a[low]; i = low + 1;\n"
+    + "  while (i < high) {\n"
+    + "    if (a[i] < x) { x = a[i]; k = i; }\n"
+    + "    i = i + 1;\n"
+    + "  }\n"
+    + "  return k;\n"
+    + "}\n"
+    + "void main(void) {\n"
+    + "  int i; bool b;\n"
+    + "  i = 0; b = true;\n"
+    + "  while (i < 10) { x[i] = input(); i = i + 1; }\n"
+    + "  output(minloc(x, 0, 10));\n"
+    + "}\n";
+
+  static public String defaultSocket() {
+    return System.getProperty("java.io.tmpdir") + File.separator + "cm-" + System.getProperty("user.name") + ".sock";
+  }
+
+  private final Path socket;
+  private final ServerSocketChannel server;
+  private final ExecutorService workers;
+  private volatile boolean running = true;
+
+  public CMServer(String socket, int threads) throws IOException {
+    this.socket = Paths.get(socket);
+    Files.deleteIfExists(this.socket);   // left behind by a server that did not shut down
+    server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+    server.bind(UnixDomainSocketAddress.of(this.socket));
+    workers = Executors.newFixedThreadPool(threads);
+  }
+
+  /* Compiles SAMPLE with every phase enabled until the JIT has seen the
+     lexer, parser and visitors often enough to compile them. */
+  static public void warmUp() throws IOException {
+    Path dir = Files.createTempDirectory("cm-warmup");
+    Path test = Files.createDirectory(dir.resolve("test"));
+    Files.write(dir.resolve("sample.cm"), SAMPLE.getBytes(StandardCharsets.US_ASCII));
+    PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+    for (int i = 0; i < WARMUP_RUNS; i++) {
+      Compilation unit = new Compilation("sample.cm", discard, discard);
+      unit.base = dir.toFile();
+      unit.a_flag = unit.s_flag = unit.c_flag = true;
+      unit.run();
+    }
+    for (String out : new String[] { "sample.abs", "sample.sym", "sample.tm" })
+      Files.deleteIfExists(test.resolve(out));
+    Files.delete(test);
+    Files.delete(dir.resolve("sample.cm"));
+    Files.delete(dir);
+  }
+
+  public void serve() throws IOException {
+    while (running) {
+      SocketChannel client;
+      try {
+        client = server.accept();
+      } catch (IOException e) {
+        if (!running)
+          break;   // closed by -shutdown
+        throw e;
+      }
+      workers.submit(() -> handle(client));
+    }
+    workers.shutdown();
+  }
+
+  public void stop() throws IOException {
+    running = false;
+    server.close();
+    Files.deleteIfExists(socket);
+  }
+
+  /* Sends what is written to it as protocol lines with the given tag */
+  static class Tagged extends OutputStream {
+    private final Writer to;
+    private final String tag;
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+    Tagged(Writer to, String tag) {
+      this.to = to;
+      this.tag = tag;
+    }
+
+    public void write(int b) throws IOException {
+      if (b == '\n')
+        finish();
+      else
+        line.write(b);
+    }
+
+    /* writes out the current line; also called at the end for a last
+       line without a newline */
+    void finish() throws IOException {
+      synchronized (to) {
+        to.write(tag);
+        to.write(line.toString("UTF-8"));
+        to.write('\n');
+      }
+      line.reset();
+    }
+
+    boolean pending() {
+      return line.size() > 0;
+    }
+  }
+
+  private void handle(SocketChannel client) {
+    try (SocketChannel channel = client) {
+      BufferedReader in = new BufferedReader(Channels.newReader(channel, StandardCharsets.UTF_8));
+      Writer to = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8));
+      String request = in.readLine();
+      if (request == null)
+        return;
+      String[] fields = request.split("\t", -1);
+      File cwd = new File(fields[0]);
+      String[] argv = Arrays.copyOfRange(fields, 1, fields.length);
+
+      if (argv.length == 1 && argv[0].equals("-shutdown")) {
+        to.write("exit 0\n");
+        to.flush();
+        stop();
+        return;
+      }
+
+      Tagged outLines = new Tagged(to, "1 ");
+      Tagged errLines = new Tagged(to, "2 ");
+      PrintStream out = new PrintStream(outLines, false, "UTF-8");
+      PrintStream err = new PrintStream(errLines, false, "UTF-8");
+      int status = compile(cwd, argv, out, err);
+      out.flush();
+      err.flush();
+      if (outLines.pending())
+        outLines.finish();
+      if (errLines.pending())
+        errLines.finish();
+      to.write("exit " + status + "\n");
+      to.flush();
+    } catch (IOException e) {
+      System.err.println("CMServer: " + e.getMessage());
+    }
+  }
+
+  /* Same arguments as CM; the files are compiled one after another on
+     this connection's worker thread. */
+  static int compile(File cwd, String[] argv, PrintStream out, PrintStream err) {
+    List<String> files = new ArrayList<String>();
+    List<String> flags = new ArrayList<String>();
+    for (int i = 0; i < argv.length; i++) {
+      String s = argv[i];
+      if (s.equals("-j"))
+        i++;   // the server already runs requests side by side
+      else if (s.startsWith("-"))
+        flags.add(s);
+      else {
+        File f = new File(s).isAbsolute() ? new File(s) : new File(cwd, s);
+        if (f.isDirectory())
+          files.addAll(CM.sources(f));
+        else
+          files.add(s);
+      }
+    }
+    if (files.isEmpty()) {
+      err.println("usage: java CMClient file.cm|dir ... [-a] [-s] [-c] [-compact] [-cache] [-lazy] [-parallel] [-dce] [-index] [-ir] [-cfg] [-ssa] [-O0|-O1|-O2|-Os] [-time-passes] [-maxerrors=N] [-failfast]");
+      return 1;
+    }
+
+    int status = 0;
+    for (String file : files) {
+      Compilation unit = new Compilation(file, out, err);
+      unit.base = cwd;
+      for (String flag : flags)
+        unit.setFlag(flag);
+      if (!unit.run())
+        status = 1;
+    }
+    return status;
+  }
+
+  static public void main(String argv[]) {
+    String socket = argv.length > 0 ? argv[0] : defaultSocket();
+    try {
+      long start = System.nanoTime();
+      warmUp();
+      CMServer server = new CMServer(socket, Runtime.getRuntime().availableProcessors());
+      System.err.printf("CMServer: warmed up in %.0f ms, listening on %s\n", (System.nanoTime() - start) / 1e6, socket);
+      server.serve();
+    } catch (IOException e) {
+      e.printStackTrace();
+      System.exit(1);
+    }
+  }
+}
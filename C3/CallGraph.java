@@ -0,0 +1,212 @@
+import absyn.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+  Which functions of a program call which, and which of them main can
+  reach. Functions are named by their name id, so a prototype and the
+  definitions of the same name are one function, and the graph holds
+  for every copy of a packed program that is materialized.
+
+  Only the bodies of reachable functions are walked: the callees of a
+  function main cannot reach are unknown (null), and with -lazy its
+  body is never parsed. Without a main every function counts as
+  reachable, since no code is generated for the program anyway.
+*/
+public class CallGraph implements AbsynVisitor {
+
+    /* Definitions with a body for each name id, in source order */
+    private List<List<FunctionDec>> definitions = new ArrayList<>();
+
+    /* Functions in the order they are first declared */
+    private List<String> names = new ArrayList<>();
+    private List<Integer> ids = new ArrayList<>();
+
+    /* Distinct callees of each reached function, or null */
+    private int[][] callees;
+    private boolean[] reachable;
+    private boolean rooted = false;
+
+    /* Callees of the body being walked */
+    private int[] calls = new int[8];
+    private int callCount;
+    private boolean[] called;
+
+    /* Operator chains, walked without recursion however deep they nest */
+    private final OpExpWalker operators = new OpExpWalker(0) {
+        protected void operand(Exp exp, int level, boolean flag) {
+            exp.accept(CallGraph.this, level, false);
+        }
+    };
+
+    public CallGraph(DecList decs) {
+        for (DecList list = decs; list != null; list = list.tail) {
+            if (list.head instanceof FunctionDec) {
+                FunctionDec dec = (FunctionDec) list.head;
+                if (dec.funcId < 0)
+                    continue;
+                while (definitions.size() <= dec.funcId)
+                    definitions.add(null);
+                if (definitions.get(dec.funcId) == null) {
+                    definitions.set(dec.funcId, new ArrayList<FunctionDec>());
+                    names.add(dec.func);
+                    ids.add(dec.funcId);
+                }
+                if (!dec.isPrototype())
+                    definitions.get(dec.funcId).add(dec);
+                rooted |= dec.funcId == NameTable.MAIN && !dec.isPrototype();
+            }
+        }
+        int size = Math.max(definitions.size(), NameTable.MAIN + 1);
+        callees = new int[size][];
+        reachable = new boolean[size];
+        called = new boolean[size];
+        if (rooted)
+            walk(NameTable.MAIN);
+        // Only needed while walking; a packed program's bodies can go
+        definitions = null;
+    }
+
+    /* Marks everything reachable from root, breadth first */
+    private void walk(int root) {
+        int[] queue = new int[reachable.length];
+        int head = 0, tail = 0;
+        reachable[root] = true;
+        queue[tail++] = root;
+        while (head < tail) {
+            int id = queue[head++];
+            callCount = 0;
+            for (FunctionDec dec : definitions.get(id))
+                dec.body().accept(this, 0, false);
+            callees[id] = Arrays.copyOf(calls, callCount);
+            for (int i = 0; i < callCount; i++) {
+                int callee = calls[i];
+                called[callee] = false;
+                // input, output and undeclared functions are not in the graph
+                if (!reachable[callee] && isDeclared(callee)) {
+                    reachable[callee] = true;
+                    queue[tail++] = callee;
+                }
+            }
+        }
+    }
+
+    private boolean isDeclared(int funcId) {
+        return funcId < definitions.size() && definitions.get(funcId) != null;
+    }
+
+    /* false only for a function main cannot reach */
+    public boolean isReachable(int funcId) {
+        if (!rooted)
+            return true;
+        return funcId >= 0 && funcId < reachable.length && reachable[funcId];
+    }
+
+    /* Name ids of the functions funcId calls, in the order first
+       called; null if its body was not walked */
+    public int[] callees(int funcId) {
+        return funcId >= 0 && funcId < callees.length ? callees[funcId] : null;
+    }
+
+    /* Functions that would be left out, in source order */
+    public List<String> unreachable() {
+        List<String> unreachable = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++)
+            if (!isReachable(ids.get(i)))
+                unreachable.add(names.get(i));
+        return unreachable;
+    }
+
+    public void visit(ArrayDec dec, int level, boolean flag) {
+    }
+
+    public void visit(AssignExp exp, int level, boolean flag) {
+        exp.lhs.accept(this, level, false);
+        exp.rhs.accept(this, level, false);
+    }
+
+    public void visit(BoolExp exp, int level, boolean flag) {
+    }
+
+    public void visit(CallExp exp, int level, boolean flag) {
+        int id = exp.funcId;
+        if (id >= 0 && id < called.length && !called[id]) {
+            called[id] = true;
+            if (callCount == calls.length)
+                calls = Arrays.copyOf(calls, callCount * 2);
+            calls[callCount++] = id;
+        }
+        if (exp.args != null)
+            exp.args.accept(this, level, false);
+    }
+
+    public void visit(CompoundExp exp, int level, boolean flag) {
+        if (exp.exps != null)
+            exp.exps.accept(this, level, false);
+    }
+
+    public void visit(DecList decList, int level, boolean flag) {
+    }
+
+    public void visit(ExpList expList, int level, boolean flag) {
+        while (expList != null) {
+            if (expList.head != null)
+                expList.head.accept(this, level, false);
+            expList = expList.tail;
+        }
+    }
+
+    public void visit(FunctionDec dec, int level, boolean flag) {
+    }
+
+    public void visit(IfExp exp, int level, boolean flag) {
+        if (exp.test != null)
+            exp.test.accept(this, level, false);
+        if (exp.then != null)
+            exp.then.accept(this, level, false);
+        if (exp.elsee != null)
+            exp.elsee.accept(this, level, false);
+    }
+
+    public void visit(IndexVar var, int level, boolean flag) {
+        var.index.accept(this, level, false);
+    }
+
+    public void visit(IntExp exp, int level, boolean flag) {
+    }
+
+    public void visit(NameTy type, int level, boolean flag) {
+    }
+
+    public void visit(NilExp exp, int level, boolean flag) {
+    }
+
+    public void visit(OpExp exp, int level, boolean flag) {
+        operators.walk(exp, level, false);
+    }
+
+    public void visit(ReturnExp exp, int level, boolean flag) {
+        if (exp.exp != null)
+            exp.exp.accept(this, level, false);
+    }
+
+    public void visit(SimpleDec dec, int level, boolean flag) {
+    }
+
+    public void visit(SimpleVar var, int level, boolean flag) {
+    }
+
+    public void visit(VarDecList varDecList, int level, boolean flag) {
+    }
+
+    public void visit(VarExp exp, int level, boolean flag) {
+        exp.variable.accept(this, level, false);
+    }
+
+    public void visit(WhileExp exp, int level, boolean flag) {
+        if (exp.test != null)
+            exp.test.accept(this, level, false);
+        exp.body.accept(this, level, false);
+    }
+}
@@ -0,0 +1,293 @@
+/*
+  Behavioural checks of the C-Minus compiler. Unlike the benchmarks,
+  these fail: every failed check is printed and the exit status is 1.
+
+  To run:
+    $ make check
+    $ java -cp /usr/share/java/cup.jar:. Check
+
+  - test/ifelse.cm and test/prototype.cm print what they should on the
+    TM, fed the same input: else branches, and calls made through a
+    prototype before its function is defined
+  - every program in test/ that -c compiles without errors runs the same
+    on the TM, fed the same input, whichever way its code was made:
+    from the tree, packed, lazily, streamed, with -dce, through the
+    three-address code, in and out of SSA form and at every -O level
+  - SSA form defines each register once, puts its phis at the start of
+    a block, and leaves no phi behind when it is taken out again
+  - expressions 100K operators deep compile on a 512 KB thread stack
+  - statements whose test failed to parse do not stop any back end
+*/
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import absyn.*;
+import ir.Function;
+import ir.Instr;
+import ir.Program;
+import ir.Ssa;
+
+class Check {
+  /* ways of making TM code, each compared with the first */
+  static final String[][] MODES = {
+    { "-c" },
+    { "-compact", "-c" },
+    { "-lazy", "-c" },
+    { "-stream", "-c" },
+    { "-s", "-parallel", "-c" },
+    { "-dce", "-c" },
+    { "-dce", "-ir", "-c" },
+    { "-dce", "-O2", "-c" },
+    { "-ir", "-c" },
+    { "-ssa", "-c" },
+    { "-O0", "-c" },
+    { "-O1", "-c" },
+    { "-O2", "-c" },
+    { "-Os", "-c" },
+  };
+
+  /* values read by IN, in order; 0 once they run out */
+  static final int[] INPUT = { 7, 3, 12, 5, 9, 1, 4, 10, 2, 8, 6, 11 };
+
+  static int checks = 0;
+  static int failures = 0;
+
+  static void check(boolean ok, String what) {
+    checks++;
+    if (!ok) {
+      failures++;
+      System.out.println("FAIL " + what);
+    }
+  }
+
+  /* A TM machine as TMSimulator/tm.c runs it, without the prompts, and
+     with room for larger programs. A run stops at HALT, at an error or
+     after STEPS instructions, and gives what it printed and why it
+     stopped. */
+  static class Machine {
+    static final int SIZE = 65536;
+    static final int STEPS = 10000000;
+    static final List<String> OPS = Arrays.asList(
+      "HALT", "IN", "OUT", "ADD", "SUB", "MUL", "DIV", "LD", "ST",
+      "LDA", "LDC", "JLT", "JLE", "JGT", "JGE", "JEQ", "JNE");
+
+    int[] op = new int[SIZE];
+    int[] r = new int[SIZE];
+    int[] s = new int[SIZE];
+    int[] t = new int[SIZE];
+
+    Machine(String code) {
+      for (String line : code.split("\n")) {
+        line = line.trim();
+        if (line.isEmpty() || line.startsWith("*"))
+          continue;
+        int colon = line.indexOf(':');
+        int loc = Integer.parseInt(line.substring(0, colon).trim());
+        String[] words = line.substring(colon + 1).trim().split("\\s+");
+        op[loc] = OPS.indexOf(words[0]);
+        String[] args = words[1].split("[,()]");
+        r[loc] = Integer.parseInt(args[0]);
+        s[loc] = Integer.parseInt(args[1]);
+        t[loc] = Integer.parseInt(args[2]);
+      }
+    }
+
+    String run() {
+      StringBuilder printed = new StringBuilder();
+      int[] reg = new int[8];
+      int[] mem = new int[SIZE];
+      mem[0] = SIZE - 1;
+      int read = 0;
+      for (int step = 0; step < STEPS; step++) {
+        int pc = reg[7];
+        if (pc < 0 || pc >= SIZE)
+          return printed + "instruction memory fault";
+        reg[7] = pc + 1;
+        int a = r[pc];
+        int m = s[pc] + reg[t[pc]];
+        if ((op[pc] == 7 || op[pc] == 8) && (m < 0 || m >= SIZE))
+          return printed + "data memory fault";
+        switch (op[pc]) {
+          case 0: return printed + "halt";
+          case 1: reg[a] = read < INPUT.length ? INPUT[read++] : 0; break;
+          case 2: printed.append(reg[a]).append(' '); break;
+          case 3: reg[a] = reg[s[pc]] + reg[t[pc]]; break;
+          case 4: reg[a] = reg[s[pc]] - reg[t[pc]]; break;
+          case 5: reg[a] = reg[s[pc]] * reg[t[pc]]; break;
+          case 6:
+            if (reg[t[pc]] == 0)
+              return printed + "division by zero";
+            reg[a] = reg[s[pc]] / reg[t[pc]];
+            break;
+          case 7: reg[a] = mem[m]; break;
+          case 8: mem[m] = reg[a]; break;
+          case 9: reg[a] = m; break;
+          case 10: reg[a] = s[pc]; break;
+          case 11: if (reg[a] < 0) reg[7] = m; break;
+          case 12: if (reg[a] <= 0) reg[7] = m; break;
+          case 13: if (reg[a] > 0) reg[7] = m; break;
+          case 14: if (reg[a] >= 0) reg[7] = m; break;
+          case 15: if (reg[a] == 0) reg[7] = m; break;
+          case 16: if (reg[a] != 0) reg[7] = m; break;
+          default: return printed + "illegal instruction at " + pc;
+        }
+      }
+      return printed + "no halt after " + STEPS + " steps";
+    }
+  }
+
+  /* Compiles dir/name with the given flags, as CM would from dir;
+     returns what went to stderr */
+  static String compile(Path dir, String name, String... flags) {
+    ByteArrayOutputStream err = new ByteArrayOutputStream();
+    PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+    Compilation unit = new Compilation(name, discard, new PrintStream(err));
+    unit.base = dir.toFile();
+    for (String flag : flags)
+      unit.setFlag(flag);
+    unit.run();
+    return err.toString();
+  }
+
+  static String read(Path file) throws IOException {
+    return Files.exists(file) ? new String(Files.readAllBytes(file), "US-ASCII") : null;
+  }
+
+  /* Compiles test/name with -c and runs its code */
+  static void program(String name, String expected) throws Exception {
+    Path dir = Paths.get(".");
+    String err = compile(dir, "test/" + name, "-c");
+    check(err.isEmpty(), name + " -c reported:\n" + err);
+    String code = read(dir.resolve("test").resolve(name.substring(0, name.length() - 3) + ".tm"));
+    check(code != null, name + " -c wrote no TM code");
+    if (code == null)
+      return;
+    String actual = new Machine(code).run();
+    check(actual.equals(expected), name + ": " + actual + ", expected: " + expected);
+  }
+
+  /* Every mode against plain -c on each test program it compiles
+     without errors */
+  static void backEnds() throws Exception {
+    Path dir = Bench.workspace("check-backends");
+    for (File test : Bench.tests()) {
+      String name = test.getName();
+      String base = name.substring(0, name.length() - 3);
+      Files.copy(test.toPath(), dir.resolve(name));
+      Path tm = dir.resolve("test").resolve(base + ".tm");
+      if (!compile(dir, name, "-c").isEmpty())
+        continue;
+      String expected = new Machine(read(tm)).run();
+      for (String[] mode : MODES) {
+        Files.deleteIfExists(tm);
+        String err = compile(dir, name, mode);
+        String flags = String.join(" ", mode);
+        check(!err.contains("Exception"), name + " " + flags + " threw:\n" + err);
+        String code = read(tm);
+        check(code != null, name + " " + flags + " wrote no TM code");
+        if (code == null)
+          continue;
+        String actual = new Machine(code).run();
+        check(actual.equals(expected), name + " " + flags + ": " + actual + ", -c: " + expected);
+      }
+    }
+    Bench.delete(dir.toFile());
+  }
+
+  /* Builds SSA form in every function of a program, checks it and takes
+     it out again */
+  static void ssaRoundTrip(String input, ByteBuffer source) throws Exception {
+    parser p = Bench.quietParser(source);
+    DecList tree = (DecList)(p.parse().value);
+    if (tree == null || !p.valid)
+      return;
+    Program program = new IrBuilder(((Lexer) p.getScanner()).names, new Diagnostics()).build(tree);
+    for (Function function : program.functions) {
+      String where = input + " " + function.name + ": ";
+      Ssa.build(function);
+      boolean[] defined = new boolean[function.registers()];
+      boolean once = true;
+      boolean placed = true;
+      Instr previous = null;
+      for (Instr instr : function.code) {
+        if (instr.dest >= 0) {
+          once &= !defined[instr.dest];
+          defined[instr.dest] = true;
+        }
+        if (instr.kind == Instr.PHI)
+          placed &= previous != null && (previous.kind == Instr.LABEL || previous.kind == Instr.PHI);
+        previous = instr;
+      }
+      check(once, where + "a register is defined more than once in SSA form");
+      check(placed, where + "a phi is not at the start of its block");
+      Ssa.destroy(function);
+      boolean left = false;
+      for (Instr instr : function.code)
+        left |= instr.kind == Instr.PHI;
+      check(!left, where + "phis are left after leaving SSA form");
+    }
+  }
+
+  static void ssaRoundTrips() throws Exception {
+    for (File test : Bench.tests())
+      ssaRoundTrip(test.getName(), SourceReader.load(test.getPath()));
+    ssaRoundTrip("branches-200", ByteBuffer.wrap(Generated.localBranches(200).getBytes("US-ASCII")));
+    ssaRoundTrip("generated-1000", ByteBuffer.wrap(Generated.program(1000).getBytes("US-ASCII")));
+  }
+
+  /* -s -c of deeply nested expressions on a small stack */
+  static void deepExpressions() throws Exception {
+    Path dir = Bench.workspace("check-deep");
+    Files.write(dir.resolve("left.cm"), Generated.deep(100000, false).getBytes("US-ASCII"));
+    Files.write(dir.resolve("right.cm"), Generated.deep(100000, true).getBytes("US-ASCII"));
+    for (final String file : new String[] { "left.cm", "right.cm" }) {
+      for (final String mode : new String[] { "", "-compact", "-stream", "-ir" }) {
+        final String[] err = new String[1];
+        Thread thread = new Thread(null, () -> err[0] = compile(dir, file, "-s", "-c", mode),
+                                   "deep", BenchDeep.STACK);
+        thread.start();
+        thread.join();
+        check(err[0] != null && err[0].isEmpty(), file + " " + mode + " on a small stack:\n" + err[0]);
+      }
+    }
+    Bench.delete(dir.toFile());
+  }
+
+  /* if and while statements whose test is a syntax error */
+  static void syntaxErrors() throws Exception {
+    Path dir = Bench.workspace("check-errors");
+    String source = "int g[4];\nvoid main(void) {\n  int i;\n  i = 0;\n"
+      + "  while (;) { i = i + 1; }\n  if (;) output(i);\n  if (;) output(i); else output(g[i]);\n}\n";
+    Files.write(dir.resolve("errors.cm"), source.getBytes("US-ASCII"));
+    for (String[] mode : MODES) {
+      String err = compile(dir, "errors.cm", mode);
+      check(!err.contains("Exception"), "errors.cm " + String.join(" ", mode) + " threw:\n" + err);
+    }
+    for (String flag : new String[] { "-a", "-cfg", "-index" }) {
+      String err = compile(dir, "errors.cm", "-s", flag);
+      check(!err.contains("Exception"), "errors.cm -s " + flag + " threw:\n" + err);
+    }
+    Bench.delete(dir.toFile());
+  }
+
+  static public void main(String argv[]) {
+    try {
+      program("ifelse.cm", "1 1 0 -1 0 1 20 3 halt");
+      program("prototype.cm", "14 1 0 halt");
+      backEnds();
+      ssaRoundTrips();
+      deepExpressions();
+      syntaxErrors();
+    } catch (Exception e) {
+      e.printStackTrace();
+      failures++;
+    }
+    System.out.printf("%d checks, %d failed\n", checks, failures);
+    System.exit(failures == 0 ? 0 : 1);
+  }
+}
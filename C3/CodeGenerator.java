@@ -1,13 +1,29 @@
 import absyn.*;
-import java.util.HashMap;
+import java.io.OutputStream;
+import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class CodeGenerator implements AbsynVisitor {
 
-    /* Track memory locations */
-    private HashMap<String, Integer> varAddresses = new HashMap<>();
-    private HashMap<String, Integer> functionAddresses = new HashMap<>();
+    /* Function locations, indexed by interned name id; variable slots
+       are on the declarations, from the resolver */
+    private static final int UNDEFINED = Integer.MIN_VALUE;
+    private int[] functionAddresses;
+
+    /* Stub of each prototype not yet defined, by name id, and the calls
+       that went to one */
+    private int[] stubs;
+    private List<CallExp> stubCalls = new ArrayList<>();
+
+    private Resolver resolver;
+
+    /* With a call graph, functions main cannot reach are left out */
+    private CallGraph calls = null;
+    private List<String> removed = new ArrayList<>();
+    private int removedInstructions = 0;
+    private long removedBytes = 0;
 
     /* Special memory offsets */
     private static final int OFP_OFFSET = 0;      // Old frame pointer offset
@@ -18,12 +34,10 @@ public class CodeGenerator implements AbsynVisitor {
     private int mainEntry = -1;          // Entry point for main function
     private int inputEntry;              // Entry point for input function
     private int outputEntry;             // Entry point for output function
-    private int globalOffset = 0;        // Offset for global variables
     private int emitLoc = 0;             // Current instruction location
     private int highEmitLoc = 0;         // Highest instruction location
-    private int currentFunctionOffset;   // Current function's local variable offset
-    private int tempOffset;              // Current temporary variable offset
-    private String currentFunction;      // Name of current function being processed
+    private int tempOffset;              // Next free temporary slot
+    private int currentFunction;         // Name id of current function being processed
     private List<String> tempVars = new ArrayList<>(); // List of temporary variables
 
     /* Special registers */
@@ -33,7 +47,62 @@ public class CodeGenerator implements AbsynVisitor {
     private static final int GP = 6;    // Global pointer
     private static final int PC = 7;    // Program counter
 
+    /* TM instructions go to out, errors to diagnostics */
+    private PrintStream out;
+    private Diagnostics diagnostics;
+
+    /* Operators are walked with a stack of their own, however deep the
+       program nests them. The left value waits in a temporary while the
+       right one is computed; the right operand gives back every
+       temporary it takes, so the slot is the one below tempOffset again
+       when the operator is applied. */
+    private final OpExpWalker operators = new OpExpWalker(0) {
+        protected void enter(OpExp exp, int offset, boolean isAddr) {
+            emitComment("-> op");
+        }
+
+        protected void operand(Exp exp, int offset, boolean isAddr) {
+            exp.accept(CodeGenerator.this, offset, false);
+        }
+
+        protected void between(OpExp exp, int offset, boolean isAddr) {
+            emitRM("ST", AC, tempOffset--, FP, "op: push left");
+        }
+
+        protected void leave(OpExp exp, int offset, boolean isAddr) {
+            emitRM("LD", AC1, ++tempOffset, FP, "op: load left");
+            emitOperator(exp);
+            emitComment("<- op");
+        }
+    };
+
+    public CodeGenerator(NameTable names) {
+        this(names, System.out, new Diagnostics());
+    }
+
+    public CodeGenerator(NameTable names, PrintStream out, Diagnostics diagnostics) {
+        this.out = out;
+        this.diagnostics = diagnostics;
+        resolver = new Resolver(names);
+        functionAddresses = new int[names.size()];
+        Arrays.fill(functionAddresses, UNDEFINED);
+        stubs = new int[names.size()];
+        Arrays.fill(stubs, UNDEFINED);
+    }
+
     public void visit(Absyn trees) {
+        prelude();
+
+        // Process the program
+        trees.accept(this, 0, false);
+
+        finale();
+    }
+
+    /* Standard prelude with the input and output routines. Streaming
+       compilation calls prelude(), then generate() for one declaration at
+       a time, then finale(). */
+    public void prelude() {
         // Generate the prelude
         emitComment("Standard prelude:");
         emitRM("LD", GP, 0, AC, "load gp with maxaddress");
@@ -65,42 +134,67 @@ public class CodeGenerator implements AbsynVisitor {
         emitRestore();
         
         emitComment("End of standard prelude.");
-        
-        // Process the program
-        trees.accept(this, 0, false);
-        
+    }
+
+    /* Jumps to main and halts; reports a program without main */
+    public void finale() {
+        // A prototype never defined leaves its callers nothing to run
+        for (CallExp call : stubCalls)
+            if (stubAddress(call.funcId) != UNDEFINED)
+                diagnostics.report("G02", call.row, call.col, "Error: Undefined function " + call.func);
+
         // Check if main was defined
         if (mainEntry == -1) {
-            System.err.println("Error: 'main' function not found");
+            diagnostics.report("G01", Diagnostics.END, 0, "Error: 'main' function not found");
             return;
         }
         
-        // Check if main was defined
-    if (mainEntry == -1) {
-        System.err.println("Error: 'main' function not found");
-        return;
+        // Generate finale; the frame of main starts below the globals
+        int globalOffset = resolver.globalOffset();
+        emitRM("ST", FP, globalOffset + OFP_OFFSET, FP, "push ofp");
+        emitRM("LDA", FP, globalOffset, FP, "push frame");
+        emitRM("LDA", AC, 1, PC, "load ac with ret ptr");
+        emitRM_Abs("LDA", PC, mainEntry, "jump to main loc");
+        
+        emitComment("End of execution.");
+        emitRO("HALT", 0, 0, 0, "");
+    }
+
+    /* Leaves out the functions that calls finds unreachable */
+    public void eliminate(CallGraph calls) {
+        this.calls = calls;
+    }
+
+    /* Functions left out, and the instructions and .tm bytes they had */
+    public List<String> removed() {
+        return removed;
+    }
+
+    public int removedInstructions() {
+        return removedInstructions;
     }
-    
-    // Generate finale
-    emitRM("ST", FP, globalOffset + OFP_OFFSET, FP, "push ofp");
-    emitRM("LDA", FP, globalOffset, FP, "push frame");
-    emitRM("LDA", AC, 1, PC, "load ac with ret ptr");
-    emitRM_Abs("LDA", PC, mainEntry, "jump to main loc");
-    
-    emitComment("End of execution.");
-    emitRO("HALT", 0, 0, 0, "");
+
+    public long removedBytes() {
+        return removedBytes;
+    }
+
+    /* Instructions generated so far */
+    public int size() {
+        return highEmitLoc;
+    }
+
+    /* Resolves the slots of one top-level declaration and generates it */
+    public void generate(Dec dec) {
+        resolver.resolve(dec);
+        dec.accept(this, 0, false);
     }
 
     public void visit(ArrayDec dec, int offset, boolean isAddr) {
-        // Handle array declaration
-        if (offset == 0) { // Global array
+        // The slots were given by the resolver
+        if (dec.nestLevel == 0) { // Global array
             emitComment("allocating global var: " + dec.name + "[" + dec.size + "]");
-            globalOffset -= dec.size;
-            varAddresses.put(dec.name, globalOffset);
         } else { // Local array
             emitComment("processing local var: " + dec.name + "[" + dec.size + "]");
-            currentFunctionOffset -= dec.size;
-            varAddresses.put(dec.name, currentFunctionOffset);
         }
     }
 
@@ -118,6 +212,7 @@ public class CodeGenerator implements AbsynVisitor {
         // Store RHS value to LHS address
         emitRM("LD", AC1, lhsOffset, FP, "op: load left");
         emitRM("ST", AC, 0, AC1, "assign: store value");
+        tempOffset++;
         
         emitComment("<- op");
     }
@@ -133,14 +228,16 @@ public class CodeGenerator implements AbsynVisitor {
         
         // If it's an input/output function, handle specially
         int functionLoc;
-        if (exp.func.equals("input")) {
+        if (exp.funcId == NameTable.INPUT) {
             functionLoc = inputEntry;
-        } else if (exp.func.equals("output")) {
+        } else if (exp.funcId == NameTable.OUTPUT) {
             functionLoc = outputEntry;
-        } else if (functionAddresses.containsKey(exp.func)) {
-            functionLoc = functionAddresses.get(exp.func);
+        } else if (functionAddress(exp.funcId) != UNDEFINED) {
+            functionLoc = functionAddress(exp.funcId);
+            if (stubAddress(exp.funcId) != UNDEFINED)
+                stubCalls.add(exp);
         } else {
-            System.err.println("Error: Undefined function " + exp.func);
+            diagnostics.report("G02", exp.row, exp.col, "Error: Undefined function " + exp.func);
             return;
         }
         
@@ -160,19 +257,20 @@ public class CodeGenerator implements AbsynVisitor {
                 argCount++;
             }
             
-            // Copy arguments to the new frame
+            // Copy arguments to the new frame, below the temporaries
             for (int i = 0; i < argLocations.size(); i++) {
                 emitRM("LD", AC, argLocations.get(i), FP, "load arg");
-                emitRM("ST", AC, offset + INIT_OFFSET - i, FP, "store arg val in next frame");
+                emitRM("ST", AC, tempOffset + INIT_OFFSET - i, FP, "store arg val in next frame");
             }
         }
         
         // Set up call frame
-        emitRM("ST", FP, offset + OFP_OFFSET, FP, "push ofp");
-        emitRM("LDA", FP, offset, FP, "push frame");
+        emitRM("ST", FP, tempOffset + OFP_OFFSET, FP, "push ofp");
+        emitRM("LDA", FP, tempOffset, FP, "push frame");
         emitRM("LDA", AC, 1, PC, "load ac with ret ptr");
         emitRM_Abs("LDA", PC, functionLoc, "jump to fun loc");
         emitRM("LD", FP, OFP_OFFSET, FP, "pop frame");
+        tempOffset += argCount;
         
         emitComment("<- call");
     }
@@ -195,7 +293,7 @@ public class CodeGenerator implements AbsynVisitor {
 
     public void visit(DecList decList, int offset, boolean isAddr) {
         while (decList != null) {
-            decList.head.accept(this, offset, isAddr);
+            generate(decList.head);
             decList = decList.tail;
         }
     }
@@ -210,59 +308,56 @@ public class CodeGenerator implements AbsynVisitor {
     }
 
     public void visit(FunctionDec dec, int offset, boolean isAddr) {
+        if (calls != null && !calls.isReachable(dec.funcId)) {
+            remove(dec);
+            return;
+        }
         emitComment("processing function: " + dec.func);
         
         // Save current function name
-        currentFunction = dec.func;
+        currentFunction = dec.funcId;
         
         // Jump around function body (will backpatch later)
         emitComment("jump around function body here");
         int jumpLoc = emitSkip(1);
         
-        // Store function address
+        // Store function address; a prototype's code is a stub that its
+        // definition turns into a jump, for the calls made before it
         int functionLoc = emitLoc;
-        functionAddresses.put(dec.func, functionLoc);
+        if (dec.isPrototype()) {
+            if (functionAddress(dec.funcId) == UNDEFINED) {
+                setFunctionAddress(dec.funcId, functionLoc);
+                stubs = setAddress(stubs, dec.funcId, functionLoc);
+            }
+        } else {
+            int stub = stubAddress(dec.funcId);
+            if (stub != UNDEFINED) {
+                emitBackup(stub);
+                emitRM_Abs("LDA", PC, functionLoc, "jump to definition");
+                emitRestore();
+                stubs = setAddress(stubs, dec.funcId, UNDEFINED);
+            }
+            setFunctionAddress(dec.funcId, functionLoc);
+        }
         
         // If it's main, store its entry point
-        if (dec.func.equals("main")) {
+        if (dec.funcId == NameTable.MAIN) {
             mainEntry = functionLoc;
         }
         
         // Store return address
         emitRM("ST", AC, RET_OFFSET, FP, "store return");
         
-        // Reset function offsets
-        currentFunctionOffset = INIT_OFFSET;
-        tempOffset = currentFunctionOffset - 1;
-        
-        // Process parameters
-        if (dec.params != null) {
-            VarDecList params = dec.params;
-            int paramOffset = INIT_OFFSET;
-            
-            while (params != null) {
-                if (params.head instanceof SimpleDec) {
-                    SimpleDec param = (SimpleDec) params.head;
-                    varAddresses.put(param.name, paramOffset);
-                } else if (params.head instanceof ArrayDec) {
-                    ArrayDec param = (ArrayDec) params.head;
-                    varAddresses.put(param.name, paramOffset);
-                }
-                
-                paramOffset--;
-                currentFunctionOffset = paramOffset;
-                tempOffset = currentFunctionOffset - 1;
-                params = params.tail;
-            }
-        }
+        // Temporaries go below the parameters and locals
+        tempOffset = dec.frameOffset;
         
         // Process function body
-        if (dec.body != null) {
-            dec.body.accept(this, offset, false);
+        if (!dec.isPrototype()) {
+            dec.body().accept(this, offset, false);
         }
         
         // Special handling for different function types
-        if (dec.func.equals("main")) {
+        if (dec.funcId == NameTable.MAIN) {
             // Directly halt for main function
             emitRO("HALT", 0, 0, 0, "halt for main function");
         } else {
@@ -281,6 +376,9 @@ public class CodeGenerator implements AbsynVisitor {
     }
 
     public void visit(IfExp exp, int offset, boolean isAddr) {
+        // A test that failed to parse leaves nothing to branch on
+        if (exp.test == null)
+            return;
         emitComment("-> if");
         
         // Generate test condition
@@ -303,7 +401,7 @@ public class CodeGenerator implements AbsynVisitor {
         // Backpatch jump to else part
         int elseLocation = emitLoc;
         emitBackup(falseJump);
-        emitRM("JEQ", AC, elseLocation - falseJump, PC, "if: jmp to else");
+        emitRM_Abs("JEQ", AC, elseLocation, "if: jmp to else");
         emitRestore();
         
         // Generate else part
@@ -329,21 +427,25 @@ public class CodeGenerator implements AbsynVisitor {
         emitRM("ST", AC, indexLoc, FP, "store array index");
         
         // Load array base address
-        Integer baseAddr = varAddresses.get(var.name);
-        if (baseAddr == null) {
-            System.err.println("Error: Undefined array variable " + var.name);
+        VarDec dec = var.dec;
+        if (dec == null) {
+            diagnostics.report("G03", var.row, var.col, "Error: Undefined array variable " + var.name);
+            tempOffset++;
             return;
         }
         
-        if (baseAddr >= 0) { // Global array
-            emitRM("LDA", AC, baseAddr, GP, "load array base addr");
+        if (dec.nestLevel == 0) { // Global array
+            emitRM("LDA", AC, dec.offset, GP, "load array base addr");
+        } else if (isReference(dec)) { // Array parameter, holding the base
+            emitRM("LD", AC, dec.offset, FP, "load array base addr");
         } else { // Local array
-            emitRM("LDA", AC, baseAddr, FP, "load array base addr");
+            emitRM("LDA", AC, dec.offset, FP, "load array base addr");
         }
         
-        // Calculate element address: base + index
+        // Calculate element address: base - index, elements run down
         emitRM("LD", AC1, indexLoc, FP, "load index");
         emitRO("SUB", AC, AC, AC1, "compute element address");
+        tempOffset++;
         
         // If we want the address, we're done; if we want the value, load it
         if (!isAddr) {
@@ -368,20 +470,11 @@ public class CodeGenerator implements AbsynVisitor {
     }
 
     public void visit(OpExp exp, int offset, boolean isAddr) {
-        emitComment("-> op");
-        
-        // Generate left operand
-        exp.left.accept(this, offset, false);
-        int leftLoc = tempOffset--;
-        emitRM("ST", AC, leftLoc, FP, "op: push left");
-        
-        // Generate right operand
-        exp.right.accept(this, offset, false);
-        
-        // Load left operand
-        emitRM("LD", AC1, leftLoc, FP, "op: load left");
-        
-        // Perform operation
+        operators.walk(exp, offset, false);
+    }
+
+    /* Applies exp.op to the left value in AC1 and the right one in AC */
+    private void emitOperator(OpExp exp) {
         switch (exp.op) {
             case OpExp.PLUS:
                 emitRO("ADD", AC, AC1, AC, "op +");
@@ -452,10 +545,8 @@ public class CodeGenerator implements AbsynVisitor {
                 break;
                 
             default:
-                System.err.println("Error: Unrecognized operator " + exp.op);
+                diagnostics.report("G04", exp.row, exp.col, "Error: Unrecognized operator " + exp.op);
         }
-        
-        emitComment("<- op");
     }
 
     public void visit(ReturnExp expr, int offset, boolean isAddr) {
@@ -467,7 +558,7 @@ public class CodeGenerator implements AbsynVisitor {
         }
         
         // Special handling for main function
-        if (currentFunction.equals("main")) {
+        if (currentFunction == NameTable.MAIN) {
             // Directly jump to HALT instruction
             emitRM_Abs("LDA", PC, emitLoc + 2, "jump to HALT for main");
         } else {
@@ -479,15 +570,11 @@ public class CodeGenerator implements AbsynVisitor {
     }
 
     public void visit(SimpleDec dec, int offset, boolean isAddr) {
-        // Handle simple variable declaration
-        if (offset == 0) { // Global variable
+        // The slot was given by the resolver
+        if (dec.nestLevel == 0) { // Global variable
             emitComment("allocating global var: " + dec.name);
-            globalOffset--;
-            varAddresses.put(dec.name, globalOffset);
         } else { // Local variable
             emitComment("processing local var: " + dec.name);
-            currentFunctionOffset--;
-            varAddresses.put(dec.name, currentFunctionOffset);
         }
     }
 
@@ -495,25 +582,23 @@ public class CodeGenerator implements AbsynVisitor {
         emitComment("-> id");
         emitComment("looking up id: " + var.name);
         
-        // Find variable address
-        Integer varAddr = varAddresses.get(var.name);
-        if (varAddr == null) {
-            System.err.println("Error: Undefined variable " + var.name);
+        // The declaration in scope has the slot
+        VarDec dec = var.dec;
+        if (dec == null) {
+            diagnostics.report("G03", var.row, var.col, "Error: Undefined variable " + var.name);
             return;
         }
         
-        if (varAddr >= 0) { // Global variable
-            if (isAddr) {
-                emitRM("LDA", AC, varAddr, GP, "load id address");
-            } else {
-                emitRM("LD", AC, varAddr, GP, "load id value");
-            }
-        } else { // Local variable
-            if (isAddr) {
-                emitRM("LDA", AC, varAddr, FP, "load id address");
-            } else {
-                emitRM("LD", AC, varAddr, FP, "load id value");
-            }
+        // An array passed as an argument is passed by its base address
+        if (dec instanceof ArrayDec && !isReference(dec)) {
+            isAddr = true;
+        }
+        
+        int base = dec.nestLevel == 0 ? GP : FP;
+        if (isAddr) {
+            emitRM("LDA", AC, dec.offset, base, "load id address");
+        } else {
+            emitRM("LD", AC, dec.offset, base, "load id value");
         }
         
         emitComment("<- id");
@@ -531,6 +616,8 @@ public class CodeGenerator implements AbsynVisitor {
     }
 
     public void visit(WhileExp exp, int offset, boolean isAddr) {
+        if (exp.test == null)
+            return;
         emitComment("-> while");
         
         // Save location of test
@@ -557,25 +644,99 @@ public class CodeGenerator implements AbsynVisitor {
         emitComment("<- while");
     }
 
+    /* Generates an unreachable function into a counter instead of out,
+       to report its size, and takes back the locations it used. Only
+       other unreachable functions can call it, so its address may stay
+       set. */
+    private void remove(FunctionDec dec) {
+        PrintStream saved = out;
+        long[] bytes = { 0 };
+        out = new PrintStream(new OutputStream() {
+            public void write(int b) {
+                bytes[0]++;
+            }
+
+            public void write(byte[] b, int off, int len) {
+                bytes[0] += len;
+            }
+        });
+        int loc = emitLoc;
+        int high = highEmitLoc;
+        CallGraph graph = calls;
+        Diagnostics reported = diagnostics;
+        calls = null;
+        diagnostics = new Diagnostics();
+        try {
+            visit(dec, 0, false);
+        } finally {
+            calls = graph;
+            diagnostics = reported;
+        }
+        out.flush();
+        out = saved;
+        if (!removed.contains(dec.func))
+            removed.add(dec.func);
+        removedInstructions += highEmitLoc - high;
+        removedBytes += bytes[0];
+        emitLoc = loc;
+        highEmitLoc = high;
+    }
+
+    /* An array parameter: its slot holds the base address of the array */
+    private static boolean isReference(VarDec dec) {
+        return dec instanceof ArrayDec && dec.nestLevel > 0 && ((ArrayDec) dec).size == 0;
+    }
+
+    // Functions that failed to parse have no name (id -1) and get no address
+    /* The table starts at the size of the name table and grows if names
+       are interned after construction, as when compiling while parsing */
+    private void setFunctionAddress(int nameId, int address) {
+        functionAddresses = setAddress(functionAddresses, nameId, address);
+    }
+
+    private int functionAddress(int nameId) {
+        return nameId >= 0 && nameId < functionAddresses.length ? functionAddresses[nameId] : UNDEFINED;
+    }
+
+    private int stubAddress(int nameId) {
+        return nameId >= 0 && nameId < stubs.length ? stubs[nameId] : UNDEFINED;
+    }
+
+    private static int[] setAddress(int[] addresses, int nameId, int address) {
+        if (nameId >= 0) {
+            if (nameId >= addresses.length)
+                addresses = grow(addresses, nameId);
+            addresses[nameId] = address;
+        }
+        return addresses;
+    }
+
+    private static int[] grow(int[] addresses, int nameId) {
+        int size = addresses.length;
+        int[] grown = Arrays.copyOf(addresses, Math.max(size * 2, nameId + 1));
+        Arrays.fill(grown, size, grown.length, UNDEFINED);
+        return grown;
+    }
+
     // Emit helper methods
     private void emitComment(String comment) {
-        System.out.println("* " + comment);
+        out.println("* " + comment);
     }
 
     private void emitRO(String op, int r, int s, int t, String comment) {
-        System.out.printf("%3d: %5s %d,%d,%d \t%s\n", emitLoc, op, r, s, t, comment);
+        out.printf("%3d: %5s %d,%d,%d \t%s\n", emitLoc, op, r, s, t, comment);
         emitLoc++;
         if (highEmitLoc < emitLoc) highEmitLoc = emitLoc;
     }
 
     private void emitRM(String op, int r, int d, int s, String comment) {
-        System.out.printf("%3d: %5s %d,%d(%d) \t%s\n", emitLoc, op, r, d, s, comment);
+        out.printf("%3d: %5s %d,%d(%d) \t%s\n", emitLoc, op, r, d, s, comment);
         emitLoc++;
         if (highEmitLoc < emitLoc) highEmitLoc = emitLoc;
     }
 
     private void emitRM_Abs(String op, int r, int a, String comment) {
-        System.out.printf("%3d: %5s %d,%d(%d) \t%s\n", emitLoc, op, r, a - (emitLoc + 1), PC, comment);
+        out.printf("%3d: %5s %d,%d(%d) \t%s\n", emitLoc, op, r, a - (emitLoc + 1), PC, comment);
         emitLoc++;
         if (highEmitLoc < emitLoc) highEmitLoc = emitLoc;
     }
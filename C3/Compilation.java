@@ -0,0 +1,354 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import absyn.*;
+import ir.Cfg;
+import ir.Function;
+import ir.PassManager;
+import ir.Program;
+
+/*
+  One .cm file taken through the phases selected on the command line.
+  Everything the compilation prints goes to its own out and err streams
+  and every phase writes its own output file, so several compilations
+  can run at once in one JVM.
+*/
+class Compilation {
+  final String filename;
+  final PrintStream out;
+  final PrintStream err;
+
+  /* directory that relative paths are taken from; null for the current
+     one. The compile server sets it to its client's directory. */
+  File base = null;
+
+  boolean a_flag = false;
+  boolean s_flag = false;
+  boolean c_flag = false;
+  boolean compact_flag = false;
+  boolean cache_flag = false;
+  boolean lazy_flag = false;
+  boolean stream_flag = false;
+  boolean parallel_flag = false;
+  boolean dce_flag = false;
+  boolean index_flag = false;
+  boolean ir_flag = false;
+  boolean cfg_flag = false;
+  boolean ssa_flag = false;
+  boolean time_passes = false;
+
+  /* -O0, -O1, -O2 or -Os: the letter after the O, null without one */
+  String opt_level = null;
+
+  /* errors allowed before the compilation stops, 0 for no limit */
+  int max_errors = 0;
+
+  /* error messages, printed at the end by position */
+  Diagnostics diagnostics = null;
+
+  /* results, for the driver's report */
+  long bytes = 0;
+  long nanos = 0;
+  boolean fatal = false;
+
+  Compilation(String filename, PrintStream out, PrintStream err) {
+    this.filename = filename;
+    this.out = out;
+    this.err = err;
+  }
+
+  void setFlag(String s) {
+    if (s.equals("-a"))
+      a_flag = true;
+    if (s.equals("-s"))
+      s_flag = true;
+    if (s.equals("-c"))
+      c_flag = true;
+    if (s.equals("-compact"))
+      compact_flag = true;
+    if (s.equals("-cache"))
+      cache_flag = true;
+    if (s.equals("-lazy"))
+      lazy_flag = true;
+    if (s.equals("-stream"))
+      stream_flag = true;
+    if (s.equals("-parallel"))
+      parallel_flag = true;
+    if (s.equals("-dce"))
+      dce_flag = true;
+    if (s.equals("-index"))
+      index_flag = true;
+    if (s.equals("-ir"))
+      ir_flag = true;
+    if (s.equals("-cfg"))
+      cfg_flag = true;
+    if (s.equals("-ssa"))
+      ssa_flag = true;
+    if (s.equals("-O0") || s.equals("-O1") || s.equals("-O2") || s.equals("-Os"))
+      opt_level = s.substring(2);
+    if (s.equals("-time-passes"))
+      time_passes = true;
+    if (s.equals("-failfast"))
+      max_errors = 1;
+    if (s.startsWith("-maxerrors="))
+      max_errors = Integer.parseInt(s.substring("-maxerrors=".length()));
+  }
+
+  File resolve(String path) {
+    File file = new File(path);
+    return base == null || file.isAbsolute() ? file : new File(base, path);
+  }
+
+  /* Runs the selected phases. Returns false if parsing had to give up
+     or the compilation stopped at the maximum number of errors. */
+  boolean run() {
+    long begin = System.nanoTime();
+    diagnostics = new Diagnostics(max_errors);
+    try {
+      compile();
+      diagnostics.flush(err);
+    } catch (Diagnostics.Abort e) {
+      diagnostics.flush(err);
+      err.println(e.getMessage());
+      fatal = true;
+    } catch (Exception e) {
+      diagnostics.flush(err);
+      /* a fatal syntax error has already been reported */
+      if (!fatal)
+        e.printStackTrace(err);
+    }
+    nanos = System.nanoTime() - begin;
+    out.flush();
+    err.flush();
+    return !fatal;
+  }
+
+  /* scanner in front of the parser when -lazy is set */
+  private LazyScanner lazy = null;
+
+  private parser parser(ByteBuffer source, Lexer lexer) {
+    lexer.diagnostics = diagnostics;
+
+    /* With -lazy, function bodies are skipped here and parsed the
+       first time a phase visits them */
+    if (lazy_flag) {
+      lazy = new LazyScanner(source, lexer);
+      lazy.diagnostics = diagnostics;
+    }
+    parser p = parser.of(lazy != null ? lazy : lexer);
+    p.diagnostics = diagnostics;
+    return p;
+  }
+
+  /* file name without directory or extension */
+  private String name() {
+    Path path = Paths.get(filename);
+    Path file = path.getFileName();
+    String name = file.toString();
+    return name.substring(0, name.lastIndexOf("."));
+  }
+
+  private PrintStream output(boolean flag, String extension) throws IOException {
+    if (!flag)
+      return null;
+    return new PrintStream(new BufferedOutputStream(new FileOutputStream(resolve("test/" + name() + extension))));
+  }
+
+  private void compile() throws Exception {
+    ByteBuffer source = SourceReader.load(resolve(filename).getPath());
+    bytes = source.remaining();
+    if (stream_flag) {
+      stream(source);
+      return;
+    }
+    AstCache cache = cache_flag ? new AstCache(resolve(AstCache.DEFAULT_DIR).getPath()) : null;
+    String key = null;
+    AstArena arena = null;
+    NameTable names;
+    Absyn result;
+
+    long start = System.nanoTime();
+    if (cache != null) {
+      key = AstCache.key(source);
+      arena = cache.load(key);
+    }
+
+    if (arena != null) {
+      names = arena.names;
+      result = compact_flag ? arena.root() : arena.toDecList();
+      err.printf("AST cache hit for %s: %.2f ms\n", filename, (System.nanoTime() - start) / 1e6);
+    } else {
+      Lexer lexer = new Lexer(new SourceReader(source));
+      parser p = parser(source, lexer);
+      try {
+        result = (Absyn)(p.parse().value);
+      } finally {
+        fatal = p.fatal;
+      }
+      names = lexer.names;
+
+      /* Keep the program packed and let each phase materialize one
+         declaration at a time */
+      if ((compact_flag || cache != null) && result != null)
+        arena = AstArena.pack((DecList) result, names);
+      if (cache != null && arena != null && p.valid && (lazy == null || lazy.valid)) {
+        try {
+          cache.store(key, arena);
+        } catch (IOException e) {
+          err.println("Warning: could not write AST cache entry: " + e.getMessage());
+        }
+      }
+      if (compact_flag && arena != null)
+        result = arena.root();
+      if (cache != null)
+        err.printf("AST cache miss for %s: %.2f ms\n", filename, (System.nanoTime() - start) / 1e6);
+    }
+
+    String name = name();
+
+    if (a_flag && result != null) {
+      try (PrintStream abs = output(true, ".abs")) {
+        abs.println("The abstract syntax tree is:");
+        ShowTreeVisitor visitor = new ShowTreeVisitor(abs);
+        result.accept(visitor, 0, false);
+      }
+    }
+
+    /* -index needs the analyzer, even without -s */
+    PositionIndex index = index_flag && result != null ? new PositionIndex(source) : null;
+
+    if ((s_flag || index != null) && result != null) {
+      try (PrintStream sym = s_flag ? output(true, ".sym") : new PrintStream(OutputStream.nullOutputStream())) {
+        sym.println("Entering the global scope:");
+        /* function bodies are checked concurrently; not for a packed
+           program or lazy bodies, which are materialized as they are
+           visited, nor for the index, which is built in source order */
+        if (parallel_flag && result instanceof DecList && lazy == null && index == null) {
+          ParallelAnalyzer visitor = new ParallelAnalyzer(ForkJoinPool.commonPool(), sym, diagnostics);
+          visitor.analyze((DecList) result);
+          visitor.printSymbolTable(1);
+        } else {
+          SemanticAnalyzer visitor = new SemanticAnalyzer(sym, diagnostics);
+          visitor.index = index;
+          result.accept(visitor, 0, false);
+          visitor.printSymbolTable(1);
+        }
+        sym.println("Leaving the global scope");
+      }
+    }
+
+    /* -ir: the program as three-address code, which -c then turns
+       into TM code instead of the tree; -cfg: the control-flow graph
+       of each function, for Graphviz; -O: the passes of that level run
+       on the code first, timed by -time-passes; -ssa: the code as it is
+       in SSA form, taken out of it again before -c. -dce leaves out of
+       either back end the functions main cannot reach */
+    Program program = null;
+    boolean lowered = ir_flag || ssa_flag || opt_level != null;
+    if ((lowered || cfg_flag) && result != null)
+      program = new IrBuilder(names, diagnostics).build(result);
+    PassManager passes = null;
+    if (program != null) {
+      passes = PassManager.preset(opt_level == null ? "0" : opt_level);
+      if (ssa_flag && !passes.has("ssa"))
+        passes.add("unreachable", "ssa", "out-of-ssa");
+      passes.runUntil(program, ssa_flag ? "out-of-ssa" : null);
+    }
+    if (ir_flag && program != null) {
+      try (PrintStream ir = output(true, ".ir")) {
+        ir.println("* C-Minus three-address code");
+        ir.println("* File: " + name + ".ir");
+        program.print(ir);
+      }
+    }
+    if (cfg_flag && program != null) {
+      try (PrintStream dot = output(true, ".dot")) {
+        dot.println("digraph \"" + name + "\" {");
+        dot.println("  node [shape=box fontname=monospace];");
+        for (Function function : program.functions)
+          new Cfg(function).dot(dot);
+        dot.println("}");
+      }
+    }
+
+    if (passes != null) {
+      passes.run(program);
+      if (time_passes)
+        passes.report(err);
+    }
+    /* a packed program is unpacked whole for the call graph, which
+       keeps none of it */
+    CallGraph calls = null;
+    if (c_flag && dce_flag && result != null)
+      calls = new CallGraph(result instanceof DecList ? (DecList) result : arena.toDecList());
+    if (c_flag && lowered && program != null) {
+      try (PrintStream tm = output(true, ".tm")) {
+        tm.println("* C-Minus Compilation to TM Code");
+        tm.println("* File: " + name + ".tm");
+        IrCodeGenerator generator = new IrCodeGenerator(names, tm, diagnostics);
+        if (calls != null)
+          generator.eliminate(calls);
+        generator.generate(program);
+        removed(generator.removed(), generator.removedInstructions(), generator.removedBytes());
+      }
+    } else if (c_flag && result != null) {
+      /* Need to verify that SemanticAnalyzer produces without errors before running CodeGenerator */
+      try (PrintStream tm = output(true, ".tm")) {
+        tm.println("* C-Minus Compilation to TM Code");
+        tm.println("* File: " + name + ".tm");
+        CodeGenerator visitor = new CodeGenerator(names, tm, diagnostics);
+        if (calls != null)
+          visitor.eliminate(calls);
+        visitor.visit(result);
+        removed(visitor.removed(), visitor.removedInstructions(), visitor.removedBytes());
+      }
+    }
+
+    if (index != null) {
+      try (PrintStream idx = output(true, ".idx")) {
+        index.write(idx, name);
+      }
+    }
+  }
+
+  /* -dce: what a back end left out */
+  private void removed(List<String> functions, int instructions, long bytes) {
+    if (!functions.isEmpty())
+      err.printf("Removed unreachable functions from %s: %s (%d instructions, %d bytes)\n",
+                 filename, String.join(", ", functions), instructions, bytes);
+  }
+
+  /* -stream: each declaration goes through the phases as soon as it is
+     parsed; no DecList is built. The batch pipeline writes nothing when
+     the parser gives up, so partial output files are removed then. */
+  private void stream(ByteBuffer source) throws Exception {
+    Lexer lexer = new Lexer(new SourceReader(source));
+    parser p = parser(source, lexer);
+    try (PrintStream abs = output(a_flag, ".abs");
+         PrintStream sym = output(s_flag, ".sym");
+         PrintStream tm = output(c_flag, ".tm")) {
+      PositionIndex index = index_flag ? new PositionIndex(source) : null;
+      StreamingCompiler phases = new StreamingCompiler(lexer.names, abs, sym, tm, index, diagnostics);
+      p.sink = phases;
+      phases.begin(name());
+      try {
+        p.parse();
+      } finally {
+        fatal = p.fatal;
+      }
+      phases.end();
+      if (index != null) {
+        try (PrintStream idx = output(true, ".idx")) {
+          index.write(idx, name());
+        }
+      }
+    } finally {
+      if (fatal)
+        for (String extension : new String[] { ".abs", ".sym", ".tm", ".idx" })
+          resolve("test/" + name() + extension).delete();
+    }
+  }
+}
@@ -0,0 +1,116 @@
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+
+/*
+  The error messages of one compilation. The phases report here instead
+  of printing, and flush writes everything out at once, ordered by
+  position. A message without a position stays right after the one
+  reported before it.
+
+  Each message has a code: a letter for the phase that found it (L
+  lexer, P parser, S semantic analysis, G code generation) and a
+  number for the kind of error.
+
+  With a maximum (-maxerrors=N, or -failfast for 1), the report that
+  reaches it throws Abort, which ends the compilation.
+*/
+public class Diagnostics {
+  public static class Diagnostic {
+    public final String code;
+    public final int row;   // from 0, like the tree
+    public final int col;
+    public final String message;
+    final int order;
+
+    Diagnostic(String code, int row, int col, String message, int order) {
+      this.code = code;
+      this.row = row;
+      this.col = col;
+      this.message = message;
+      this.order = order;
+    }
+
+    public String toString() {
+      String at = row == END ? "end" : (row + 1) + ":" + (col + 1);
+      return code + " " + at + " " + message;
+    }
+  }
+
+  static final Comparator<Diagnostic> BY_POSITION = new Comparator<Diagnostic>() {
+    public int compare(Diagnostic a, Diagnostic b) {
+      if (a.row != b.row)
+        return Integer.compare(a.row, b.row);
+      if (a.col != b.col)
+        return Integer.compare(a.col, b.col);
+      return Integer.compare(a.order, b.order);
+    }
+  };
+
+  /* row of a message about the whole program, which goes last */
+  public static final int END = Integer.MAX_VALUE;
+
+  /* thrown by the report that reaches the maximum */
+  public static class Abort extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    Abort(int errors) {
+      super("compilation stopped after " + errors + (errors == 1 ? " error" : " errors"));
+    }
+  }
+
+  private final ArrayList<Diagnostic> reported = new ArrayList<Diagnostic>();
+  private final int max;    // 0 for no maximum
+
+  /* position of the last message, for one that has none */
+  private int row = -1;
+  private int col = -1;
+
+  public Diagnostics() {
+    this(0);
+  }
+
+  public Diagnostics(int max) {
+    this.max = max;
+  }
+
+  /* row and col from 0; a negative row for no position */
+  public synchronized void report(String code, int row, int col, String message) {
+    if (row < 0) {
+      row = this.row;
+      col = this.col;
+    }
+    this.row = row;
+    this.col = col;
+    reported.add(new Diagnostic(code, row, col, message, reported.size()));
+    if (max > 0 && reported.size() >= max)
+      throw new Abort(reported.size());
+  }
+
+  /* reports what another collector holds, in the order it was reported */
+  public void report(Diagnostics from) {
+    for (Diagnostic d : from.reported)
+      report(d.code, d.row, d.col, d.message);
+  }
+
+  public synchronized int count() {
+    return reported.size();
+  }
+
+  public synchronized ArrayList<Diagnostic> sorted() {
+    ArrayList<Diagnostic> sorted = new ArrayList<Diagnostic>(reported);
+    sorted.sort(BY_POSITION);
+    return sorted;
+  }
+
+  /* prints the messages reported so far, by position, and drops them */
+  public synchronized void flush(PrintStream err) {
+    if (reported.isEmpty())
+      return;
+    StringBuilder text = new StringBuilder();
+    for (Diagnostic d : sorted())
+      text.append(d.message).append('\n');
+    err.print(text);
+    reported.clear();
+  }
+}
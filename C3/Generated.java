@@ -0,0 +1,119 @@
+/*
+  C-Minus programs made up for the benchmarks, each a source string
+  of the size asked for.
+*/
+
+class Generated {
+  /* N global declarations followed by an empty main */
+  static String globals(int n) {
+    StringBuilder sb = new StringBuilder(n * 14);
+    for (int i = 0; i < n; i++)
+      sb.append("int g").append(i).append(";\n");
+    sb.append("void main(void) { }\n");
+    return sb.toString();
+  }
+
+  /* a single main whose block holds N statements */
+  static String statements(int n) {
+    StringBuilder sb = new StringBuilder(n * 12 + 64);
+    sb.append("int x;\nvoid main(void) {\n");
+    for (int i = 0; i < n; i++)
+      sb.append("  x = ").append(i).append(";\n");
+    sb.append("}\n");
+    return sb.toString();
+  }
+
+  /* functions with a mix of declarations, arithmetic, calls and control flow */
+  static String program(int lines) {
+    StringBuilder sb = new StringBuilder(lines * 24);
+    int written = 0;
+    for (int i = 0; written < lines; i++) {
+      sb.append("int f").append(i).append("(int a, int b[]) {\n");
+      sb.append("  int x;\n  int y[10];\n");
+      sb.append("  x = a * 2 + b[a - 1];\n");
+      sb.append("  while (x > 0) {\n");
+      sb.append("    y[x / 2] = f").append(i).append("(x - 1, y) + 1;\n");
+      sb.append("    if (x == 3) x = x - 2; else x = x - 1;\n");
+      sb.append("  }\n  return x;\n}\n");
+      written += 10;
+    }
+    sb.append("void main(void) { }\n");
+    return sb.toString();
+  }
+
+  /* N globals and a main whose innermost of depth nested blocks reads
+     every one of them, next to a local of each enclosing block */
+  static String scopes(int n, int depth) {
+    StringBuilder sb = new StringBuilder(n * 30 + depth * 40);
+    for (int i = 0; i < n; i++)
+      sb.append("int g").append(i).append(";\n");
+    sb.append("void main(void) {\n  int x;\n  x = 0;\n");
+    for (int d = 0; d < depth; d++)
+      sb.append("  while (x < 1) {\n  int l").append(d).append(";\n");
+    for (int i = 0; i < n; i++)
+      sb.append("  x = g").append(i).append(" + l").append(i % depth).append(";\n");
+    for (int d = 0; d < depth; d++)
+      sb.append("  }\n");
+    sb.append("}\n");
+    return sb.toString();
+  }
+
+  /* a main that assigns an undeclared variable n times */
+  static String undeclared(int n) {
+    StringBuilder sb = new StringBuilder(n * 10 + 64);
+    sb.append("int x;\nvoid main(void) {\n");
+    for (int i = 0; i < n; i++)
+      sb.append("  x = y;\n");
+    sb.append("}\n");
+    return sb.toString();
+  }
+
+  /* a main assigning one expression of n operators, nested to the left
+     (1 + 1 + ... + 1) or to the right (1 - (1 - (... - 1))) */
+  static String deep(int n, boolean right) {
+    StringBuilder sb = new StringBuilder(n * 6 + 64);
+    sb.append("int x;\nvoid main(void) {\n  x = ");
+    if (right) {
+      for (int i = 0; i < n; i++)
+        sb.append("1 - (");
+      sb.append('1');
+      for (int i = 0; i < n; i++)
+        sb.append(')');
+    } else {
+      sb.append('1');
+      for (int i = 0; i < n; i++)
+        sb.append(" + 1");
+    }
+    sb.append(";\n}\n");
+    return sb.toString();
+  }
+
+  /* a main with n loops in a row, each around an if and an else */
+  static String branches(int n) {
+    StringBuilder sb = new StringBuilder(n * 72 + 64);
+    sb.append("int x;\nvoid main(void) {\n");
+    for (int i = 0; i < n; i++) {
+      sb.append("  while (x < ").append(i).append(") {\n");
+      sb.append("    if (x == ").append(i).append(") x = x + 1; else x = x - 1;\n  }\n");
+    }
+    sb.append("}\n");
+    return sb.toString();
+  }
+
+  /* a main with 16 locals and n loops in a row over them, each around
+     an if and an else that assign to different ones */
+  static String localBranches(int n) {
+    StringBuilder sb = new StringBuilder(n * 96 + 256);
+    sb.append("void main(void) {\n");
+    for (int v = 0; v < 16; v++)
+      sb.append("  int v").append(v).append(";\n");
+    for (int i = 0; i < n; i++) {
+      sb.append("  while (v").append(i % 16).append(" < ").append(i).append(") {\n");
+      sb.append("    if (v").append((i + 1) % 16).append(" == ").append(i).append(") v").append(i % 16)
+        .append(" = v").append((i + 3) % 16).append(" + 1; else v").append((i + 5) % 16)
+        .append(" = v").append(i % 16).append(" - 1;\n  }\n");
+    }
+    sb.append("}\n");
+    return sb.toString();
+  }
+}
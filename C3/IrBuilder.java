@@ -0,0 +1,374 @@
+import absyn.*;
+import ir.Function;
+import ir.Instr;
+import ir.Program;
+import ir.Slot;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/*
+  Lowers the syntax tree to three-address code (CM -ir), one top-level
+  declaration at a time: the Resolver gives each variable its slot,
+  and then every expression becomes instructions that leave their value
+  in a fresh virtual register. Variables stay in memory and are read
+  and written with explicit loads and stores; an if or a while becomes
+  labels and jumps. IrCodeGenerator turns the result into TM code.
+
+  Operands are evaluated left to right, the address of an indexed
+  assignment before its value, as CodeGenerator does. Every function
+  ends in a return, so control never runs off the end of its code.
+*/
+public class IrBuilder implements AbsynVisitor {
+
+    private Resolver resolver;
+    private Diagnostics diagnostics;
+    private Program program = new Program();
+
+    /* Result type of each function by name id, from its first
+       declaration; a call to an unknown function gives an int */
+    private int[] results;
+
+    /* Slots of the globals and of the function being built */
+    private IdentityHashMap<VarDec, Slot> globals = new IdentityHashMap<>();
+    private IdentityHashMap<VarDec, Slot> locals = new IdentityHashMap<>();
+    private Set<String> localNames = new HashSet<>();
+
+    private Function function = null;    // The function being built
+    private int value = -1;              // Register of the last expression, -1 for none
+
+    /* Operators are walked with a stack of their own, however deep the
+       program nests them; the values of their operands wait here */
+    private int[] values = new int[16];
+    private int valueCount = 0;
+
+    private final OpExpWalker operators = new OpExpWalker(0) {
+        protected void operand(Exp exp, int level, boolean flag) {
+            push(expression(exp));
+        }
+
+        protected void leave(OpExp exp, int level, boolean flag) {
+            int right = values[--valueCount];
+            int left = values[--valueCount];
+            push(operator(exp, left, right));
+        }
+    };
+
+    public IrBuilder(NameTable names, Diagnostics diagnostics) {
+        this.diagnostics = diagnostics;
+        resolver = new Resolver(names);
+        results = new int[names.size()];
+        Arrays.fill(results, Function.INT);
+    }
+
+    /* Lowers a whole program */
+    public Program build(Absyn trees) {
+        trees.accept(this, 0, false);
+        return program;
+    }
+
+    /* Resolves the slots of one top-level declaration and lowers it */
+    public void build(Dec dec) {
+        resolver.resolve(dec);
+        dec.accept(this, 0, false);
+        program.globalOffset = resolver.globalOffset();
+    }
+
+    public Program program() {
+        return program;
+    }
+
+    /* The register holding the value of exp, or -1 if it has none */
+    private int expression(Exp exp) {
+        value = -1;
+        if (exp != null)
+            exp.accept(this, 0, false);
+        return value;
+    }
+
+    private void push(int register) {
+        if (valueCount == values.length)
+            values = Arrays.copyOf(values, valueCount * 2);
+        values[valueCount++] = register;
+    }
+
+    private void emit(Instr instr) {
+        function.add(instr);
+    }
+
+    public void visit(ArrayDec dec, int level, boolean isParam) {
+        // An array parameter holds the base address of its argument
+        int kind = isParam && dec.size == 0 ? Slot.REFERENCE : Slot.ARRAY;
+        declare(dec, dec.name, kind, dec.typ.typ, dec.size, isParam);
+    }
+
+    public void visit(AssignExp exp, int level, boolean flag) {
+        Var lhs = exp.lhs == null ? null : exp.lhs.variable;
+        if (lhs instanceof IndexVar) {
+            IndexVar var = (IndexVar) lhs;
+            int index = expression(var.index);
+            int rhs = expression(exp.rhs);
+            Slot slot = slot(var.dec, var.name, var.row, var.col, "Error: Undefined array variable ");
+            if (slot != null)
+                emit(Instr.storeElement(slot, index, rhs));
+            value = rhs;
+        } else if (lhs instanceof SimpleVar) {
+            SimpleVar var = (SimpleVar) lhs;
+            int rhs = expression(exp.rhs);
+            Slot slot = slot(var.dec, var.name, var.row, var.col, "Error: Undefined variable ");
+            if (slot != null)
+                emit(Instr.store(slot, rhs));
+            value = rhs;
+        } else {
+            value = expression(exp.rhs);
+        }
+    }
+
+    public void visit(BoolExp exp, int level, boolean flag) {
+        value = function.newRegister(Function.BOOL);
+        emit(Instr.constant(value, exp.value ? 1 : 0));
+    }
+
+    public void visit(CallExp exp, int level, boolean flag) {
+        int count = 0;
+        for (ExpList args = exp.args; args != null; args = args.tail)
+            count++;
+        int[] args = new int[count];
+        count = 0;
+        for (ExpList list = exp.args; list != null; list = list.tail)
+            args[count++] = expression(list.head);
+
+        int type = result(exp.funcId);
+        value = type == Function.VOID ? -1 : function.newRegister(type);
+        Instr call = Instr.call(value, exp.func, exp.funcId, args);
+        call.row = exp.row;
+        call.col = exp.col;
+        emit(call);
+    }
+
+    public void visit(CompoundExp exp, int level, boolean flag) {
+        if (exp.decs != null)
+            exp.decs.accept(this, level, false);
+        if (exp.exps != null)
+            exp.exps.accept(this, level, false);
+        value = -1;
+    }
+
+    public void visit(DecList decList, int level, boolean flag) {
+        while (decList != null) {
+            if (decList.head != null)
+                build(decList.head);
+            decList = decList.tail;
+        }
+    }
+
+    public void visit(ExpList expList, int level, boolean flag) {
+        while (expList != null) {
+            expression(expList.head);
+            expList = expList.tail;
+        }
+    }
+
+    public void visit(FunctionDec dec, int level, boolean flag) {
+        // Functions that failed to parse have no name (id -1) and no code
+        if (dec.funcId < 0)
+            return;
+        if (dec.funcId >= results.length) {
+            int size = results.length;
+            results = Arrays.copyOf(results, Math.max(size * 2, dec.funcId + 1));
+            Arrays.fill(results, size, results.length, Function.INT);
+        }
+        results[dec.funcId] = dec.result.typ;
+        if (dec.isPrototype())
+            return;
+
+        function = new Function(dec.func, dec.funcId, dec.result.typ);
+        if (dec.params != null)
+            dec.params.accept(this, level, true);
+        dec.body().accept(this, level, false);
+        int size = function.code.size();
+        if (size == 0 || function.code.get(size - 1).fallsThrough())
+            emit(Instr.ret(-1));
+        function.frameOffset = dec.frameOffset;
+        program.functions.add(function);
+
+        function = null;
+        locals.clear();
+        localNames.clear();
+    }
+
+    public void visit(IfExp exp, int level, boolean flag) {
+        if (exp.test == null)
+            return;
+        int test = expression(exp.test);
+        int elseLabel = function.newLabel();
+        emit(Instr.ifFalse(test, elseLabel));
+        expression(exp.then);
+
+        // Without an else the parser leaves a NilExp
+        if (exp.elsee != null && !(exp.elsee instanceof NilExp)) {
+            int endLabel = function.newLabel();
+            emit(Instr.jump(endLabel));
+            emit(Instr.label(elseLabel));
+            expression(exp.elsee);
+            emit(Instr.label(endLabel));
+        } else {
+            emit(Instr.label(elseLabel));
+        }
+        value = -1;
+    }
+
+    public void visit(IndexVar var, int level, boolean flag) {
+        int index = expression(var.index);
+        Slot slot = slot(var.dec, var.name, var.row, var.col, "Error: Undefined array variable ");
+        if (slot == null) {
+            value = -1;
+            return;
+        }
+        value = function.newRegister(slot.type);
+        emit(Instr.loadElement(value, slot, index));
+    }
+
+    public void visit(IntExp exp, int level, boolean flag) {
+        value = function.newRegister(Function.INT);
+        emit(Instr.constant(value, exp.value));
+    }
+
+    public void visit(NameTy type, int level, boolean flag) {
+    }
+
+    public void visit(NilExp exp, int level, boolean flag) {
+        value = -1;
+    }
+
+    public void visit(OpExp exp, int level, boolean flag) {
+        operators.walk(exp, level, false);
+        value = values[--valueCount];
+    }
+
+    /* The instruction for one operator, whose operands are in left and
+       right; a unary operator has only the right one */
+    private int operator(OpExp exp, int left, int right) {
+        int result;
+        switch (exp.op) {
+            case OpExp.UMINUS:
+                result = function.newRegister(Function.INT);
+                emit(Instr.unary(result, exp.op, right));
+                return result;
+
+            case OpExp.NOT:
+                result = function.newRegister(Function.BOOL);
+                emit(Instr.unary(result, exp.op, right));
+                return result;
+
+            case OpExp.PLUS:
+            case OpExp.MINUS:
+            case OpExp.TIMES:
+            case OpExp.OVER:
+                result = function.newRegister(Function.INT);
+                emit(Instr.binary(result, left, exp.op, right));
+                return result;
+
+            case OpExp.EQ:
+            case OpExp.NE:
+            case OpExp.LT:
+            case OpExp.LE:
+            case OpExp.GT:
+            case OpExp.GE:
+            case OpExp.AND:
+            case OpExp.OR:
+                result = function.newRegister(Function.BOOL);
+                emit(Instr.binary(result, left, exp.op, right));
+                return result;
+
+            default:
+                diagnostics.report("G04", exp.row, exp.col, "Error: Unrecognized operator " + exp.op);
+                return -1;
+        }
+    }
+
+    public void visit(ReturnExp exp, int level, boolean flag) {
+        emit(Instr.ret(expression(exp.exp)));
+        value = -1;
+    }
+
+    public void visit(SimpleDec dec, int level, boolean isParam) {
+        declare(dec, dec.name, Slot.SCALAR, dec.typ.typ, 1, isParam);
+    }
+
+    public void visit(SimpleVar var, int level, boolean flag) {
+        Slot slot = slot(var.dec, var.name, var.row, var.col, "Error: Undefined variable ");
+        if (slot == null) {
+            value = -1;
+            return;
+        }
+        // An array passed as an argument is passed by its base address
+        if (slot.isArray()) {
+            value = function.newRegister(Function.ADDR);
+            emit(Instr.address(value, slot));
+        } else {
+            value = function.newRegister(slot.type);
+            emit(Instr.load(value, slot));
+        }
+    }
+
+    public void visit(VarDecList varDecList, int level, boolean isParam) {
+        while (varDecList != null) {
+            if (varDecList.head != null)
+                varDecList.head.accept(this, level, isParam);
+            varDecList = varDecList.tail;
+        }
+    }
+
+    public void visit(VarExp exp, int level, boolean flag) {
+        exp.variable.accept(this, level, flag);
+    }
+
+    public void visit(WhileExp exp, int level, boolean flag) {
+        if (exp.test == null)
+            return;
+        int testLabel = function.newLabel();
+        int endLabel = function.newLabel();
+        emit(Instr.label(testLabel));
+        int test = expression(exp.test);
+        emit(Instr.ifFalse(test, endLabel));
+        expression(exp.body);
+        emit(Instr.jump(testLabel));
+        emit(Instr.label(endLabel));
+        value = -1;
+    }
+
+    /* A slot for a declaration the Resolver has placed. A local that
+       hides another of its function gets the name with its number,
+       so the dump tells them apart. */
+    private void declare(VarDec dec, String name, int kind, int type, int size, boolean isParam) {
+        if (name == null)
+            return;
+        if (function == null) {
+            globals.put(dec, program.addGlobal(new Slot(name, kind, type, size, true, dec.offset, dec)));
+            return;
+        }
+        Slot slot = new Slot(name, kind, type, size, false, dec.offset, dec);
+        function.addSlot(slot, isParam);
+        if (!localNames.add(name))
+            slot.name = name + "." + slot.id;
+        locals.put(dec, slot);
+    }
+
+    /* The slot a variable resolved to; reports one that is undefined */
+    private Slot slot(VarDec dec, String name, int row, int col, String message) {
+        Slot slot = dec == null ? null : dec.nestLevel == 0 ? globals.get(dec) : locals.get(dec);
+        if (slot == null)
+            diagnostics.report("G03", row, col, message + name);
+        return slot;
+    }
+
+    private int result(int funcId) {
+        if (funcId == NameTable.INPUT)
+            return Function.INT;
+        if (funcId == NameTable.OUTPUT)
+            return Function.VOID;
+        return funcId >= 0 && funcId < results.length ? results[funcId] : Function.INT;
+    }
+}
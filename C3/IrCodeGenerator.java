@@ -0,0 +1,667 @@
+import ir.Bits;
+import ir.Cfg;
+import ir.Function;
+import ir.Instr;
+import ir.Liveness;
+import ir.Program;
+import ir.Slot;
+import ir.Variables;
+import absyn.NameTable;
+import absyn.OpExp;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+  Turns three-address code into TM code (CM -ir -c). The prelude, the
+  frames and the calling convention are CodeGenerator's, so the two
+  back ends' programs work alike; only the code inside a function body
+  is made from the instructions instead of the tree.
+
+  A register lives in the accumulator from its definition until the
+  next instruction, and is also stored in a temporary slot of the frame
+  unless that next instruction is its only use. The temporaries are
+  below the locals, shared by registers that are never live at once,
+  and a callee's frame starts below the temporaries.
+
+  The blocks of a function that cannot be reached are not generated.
+  Jumps to labels and calls to functions that come later are filled in
+  once the target is known, so a function can call one defined after
+  it. A call to a function never defined is reported at the end. With
+  a call graph (-dce), the functions main cannot reach are left out.
+*/
+public class IrCodeGenerator {
+
+    /* Special memory offsets */
+    private static final int OFP_OFFSET = 0;      // Old frame pointer offset
+    private static final int RET_OFFSET = -1;     // Return address offset
+    private static final int INIT_OFFSET = -2;    // Initial parameter offset
+
+    /* Special registers */
+    private static final int AC = 0;    // Accumulator
+    private static final int AC1 = 1;   // Secondary accumulator
+    private static final int AC2 = 2;   // Array base while an element address is computed
+    private static final int FP = 5;    // Frame pointer
+    private static final int GP = 6;    // Global pointer
+    private static final int PC = 7;    // Program counter
+
+    private static final int UNDEFINED = Integer.MIN_VALUE;
+
+    /* With a call graph, functions main cannot reach are left out */
+    private CallGraph calls = null;
+    private List<String> removed = new ArrayList<>();
+    private int removedInstructions = 0;
+    private long removedBytes = 0;
+
+    /* Entry points, by name id for the functions of the program */
+    private int mainEntry = -1;
+    private int inputEntry;
+    private int outputEntry;
+    private int[] functionAddresses;
+
+    /* Calls emitted before their function, and where the jump of each
+       goes; the CALL gives the target, and the position to report if
+       it never comes */
+    private List<Instr> pendingCalls = new ArrayList<>();
+    private int[] pendingLocations = new int[16];
+
+    private int emitLoc = 0;             // Current instruction location
+    private int highEmitLoc = 0;         // Highest instruction location
+
+    /* State of the function being generated */
+    private Function function;
+    private int[] temps;                 // Frame slot of each register, UNDEFINED if never stored
+    private int callFrame;               // Where a callee's frame starts
+    private int inAC;                    // Register the accumulator holds, -1 for none
+    private int[] labelAddresses;
+    private int[] jumpLocations = new int[16];    // Jumps to labels not yet placed
+    private Instr[] jumps = new Instr[16];
+    private int jumpCount;
+
+    /* TM instructions go to out, errors to diagnostics */
+    private PrintStream out;
+    private Diagnostics diagnostics;
+
+    public IrCodeGenerator(NameTable names, PrintStream out, Diagnostics diagnostics) {
+        this.out = out;
+        this.diagnostics = diagnostics;
+        functionAddresses = new int[names.size()];
+        Arrays.fill(functionAddresses, UNDEFINED);
+    }
+
+    public void generate(Program program) {
+        prelude();
+        for (Slot global : program.globals)
+            emitComment("allocating global var: " + global.declaration());
+        for (Function function : program.functions) {
+            if (calls != null && !calls.isReachable(function.funcId))
+                remove(function);
+            else
+                generate(function);
+        }
+        finale(program.globalOffset);
+    }
+
+    /* Leaves out the functions that calls finds unreachable */
+    public void eliminate(CallGraph calls) {
+        this.calls = calls;
+    }
+
+    /* Functions left out, and the instructions and .tm bytes they had */
+    public List<String> removed() {
+        return removed;
+    }
+
+    public int removedInstructions() {
+        return removedInstructions;
+    }
+
+    public long removedBytes() {
+        return removedBytes;
+    }
+
+    /* Standard prelude with the input and output routines, as
+       CodeGenerator emits it */
+    public void prelude() {
+        emitComment("Standard prelude:");
+        emitRM("LD", GP, 0, AC, "load gp with maxaddress");
+        emitRM("LDA", FP, 0, GP, "copy to gp to fp");
+        emitRM("ST", AC, 0, AC, "clear location 0");
+        int jumpLoc = emitSkip(1);
+
+        emitComment("code for input routine");
+        inputEntry = emitLoc;
+        emitRM("ST", AC, RET_OFFSET, FP, "store return");
+        emitRO("IN", AC, 0, 0, "input");
+        emitRM("LD", PC, RET_OFFSET, FP, "return to caller");
+
+        emitComment("code for output routine");
+        outputEntry = emitLoc;
+        emitRM("ST", AC, RET_OFFSET, FP, "store return");
+        emitRM("LD", AC, INIT_OFFSET, FP, "load output value");
+        emitRO("OUT", AC, 0, 0, "output");
+        emitRM("LD", PC, RET_OFFSET, FP, "return to caller");
+
+        int currentLoc = emitLoc;
+        emitBackup(jumpLoc);
+        emitRM_Abs("LDA", PC, currentLoc, "jump around i/o code");
+        emitRestore();
+        emitComment("End of standard prelude.");
+    }
+
+    /* Fills in the calls to later functions, then jumps to main and
+       halts; reports a program without main */
+    public void finale(int globalOffset) {
+        for (int i = 0; i < pendingCalls.size(); i++) {
+            Instr call = pendingCalls.get(i);
+            int address = functionAddress(call.funcId);
+            if (address == UNDEFINED) {
+                diagnostics.report("G02", call.row, call.col, "Error: Undefined function " + call.func);
+                continue;
+            }
+            emitBackup(pendingLocations[i]);
+            emitRM_Abs("LDA", PC, address, "jump to fun loc");
+            emitRestore();
+        }
+
+        if (mainEntry == -1) {
+            diagnostics.report("G01", Diagnostics.END, 0, "Error: 'main' function not found");
+            return;
+        }
+        emitRM("ST", FP, globalOffset + OFP_OFFSET, FP, "push ofp");
+        emitRM("LDA", FP, globalOffset, FP, "push frame");
+        emitRM("LDA", AC, 1, PC, "load ac with ret ptr");
+        emitRM_Abs("LDA", PC, mainEntry, "jump to main loc");
+        emitComment("End of execution.");
+        emitRO("HALT", 0, 0, 0, "");
+    }
+
+    public void generate(Function function) {
+        this.function = function;
+        emitComment("processing function: " + function.name);
+        emitComment("jump around function body here");
+        int jumpLoc = emitSkip(1);
+
+        setFunctionAddress(function.funcId, emitLoc);
+        if (function.funcId == NameTable.MAIN)
+            mainEntry = emitLoc;
+        emitRM("ST", AC, RET_OFFSET, FP, "store return");
+
+        for (Slot param : function.params)
+            emitComment("processing param: " + param.declaration());
+        for (Slot local : function.locals)
+            emitComment("processing local var: " + local.declaration());
+        Cfg cfg = new Cfg(function);
+        assignTemps(cfg);
+        labelAddresses = new int[function.labels()];
+        Arrays.fill(labelAddresses, UNDEFINED);
+        jumpCount = 0;
+        inAC = -1;
+
+        // Blocks no path from the entry reaches, such as code after a
+        // return, are left out
+        List<Instr> code = function.code;
+        for (int b = 1; b < cfg.exit(); b++)
+            if (cfg.isReachable(b))
+                for (int i = cfg.start(b); i < cfg.end(b); i++)
+                    generate(code.get(i));
+
+        for (int i = 0; i < jumpCount; i++) {
+            emitBackup(jumpLocations[i]);
+            if (jumps[i].kind == Instr.JUMP)
+                emitRM_Abs("LDA", PC, labelAddresses[jumps[i].label], "jmp to L" + jumps[i].label);
+            else
+                emitRM_Abs("JEQ", AC, labelAddresses[jumps[i].label], "if false: jmp to L" + jumps[i].label);
+            emitRestore();
+            jumps[i] = null;
+        }
+
+        int savedLoc = emitLoc;
+        emitBackup(jumpLoc);
+        emitRM_Abs("LDA", PC, savedLoc, "jump around fn body");
+        emitRestore();
+        emitComment("<- fundecl");
+        this.function = null;
+    }
+
+    /* Generates an unreachable function into a counter instead of out,
+       to report its size, and takes back the locations and the pending
+       calls it used. Only other unreachable functions can call it, so
+       its address may stay set. */
+    private void remove(Function function) {
+        PrintStream saved = out;
+        long[] bytes = { 0 };
+        out = new PrintStream(new OutputStream() {
+            public void write(int b) {
+                bytes[0]++;
+            }
+
+            public void write(byte[] b, int off, int len) {
+                bytes[0] += len;
+            }
+        });
+        int loc = emitLoc;
+        int high = highEmitLoc;
+        int pending = pendingCalls.size();
+        try {
+            generate(function);
+        } finally {
+            out.flush();
+            out = saved;
+        }
+        pendingCalls.subList(pending, pendingCalls.size()).clear();
+        if (!removed.contains(function.name))
+            removed.add(function.name);
+        removedInstructions += highEmitLoc - high;
+        removedBytes += bytes[0];
+        emitLoc = loc;
+        highEmitLoc = high;
+    }
+
+    /* A slot below the locals for every register that is used later
+       than the instruction after its definition, or more than once, or
+       is defined more than once, as the copies out of Ssa form are.
+       Registers whose live ranges do not overlap share a slot: a
+       register's range runs over the code from the first to the last
+       point it is defined, used or live at the edge of a block, and
+       slots are handed out in the order the ranges start, each going
+       back once its range has ended. */
+    private void assignTemps(Cfg cfg) {
+        List<Instr> code = function.code;
+        int registers = function.registers();
+        int[] uses = new int[registers];
+        int[] lastUse = new int[registers];
+        int[] defs = new int[registers];
+        int[] defCounts = new int[registers];
+        int[] first = new int[registers];
+        int[] last = new int[registers];
+        Arrays.fill(defs, -1);
+        Arrays.fill(first, -1);
+        for (int b = 1; b < cfg.exit(); b++) {
+            if (!cfg.isReachable(b))
+                continue;
+            for (int i = cfg.start(b); i < cfg.end(b); i++) {
+                Instr instr = code.get(i);
+                use(uses, lastUse, instr.a, i);
+                use(uses, lastUse, instr.b, i);
+                if (instr.args != null)
+                    for (int arg : instr.args)
+                        use(uses, lastUse, arg, i);
+                if (instr.dest >= 0 && defCounts[instr.dest]++ == 0)
+                    defs[instr.dest] = i;
+                reach(first, last, instr.dest, i);
+                reach(first, last, instr.a, i);
+                reach(first, last, instr.b, i);
+                if (instr.args != null)
+                    for (int arg : instr.args)
+                        reach(first, last, arg, i);
+            }
+        }
+
+        // Registers live from one block into another, by liveness
+        Variables variables = new Variables(cfg);
+        Liveness liveness = new Liveness(cfg, variables).solve();
+        for (int b = 1; b < cfg.exit(); b++) {
+            if (!cfg.isReachable(b) || cfg.start(b) == cfg.end(b))
+                continue;
+            long[] in = liveness.in(b);
+            for (int id = Bits.next(in, 0); id >= 0; id = Bits.next(in, id + 1))
+                reach(first, last, variables.register(id), cfg.start(b));
+            long[] out = liveness.out(b);
+            for (int id = Bits.next(out, 0); id >= 0; id = Bits.next(out, id + 1))
+                reach(first, last, variables.register(id), cfg.end(b) - 1);
+        }
+
+        // The registers needing a slot, by where their ranges start and end
+        int n = code.size();
+        int[] starting = new int[n + 1];
+        int[] ending = new int[n + 1];
+        temps = new int[registers];
+        Arrays.fill(temps, UNDEFINED);
+        for (int r = 0; r < registers; r++) {
+            if (defs[r] >= 0 && !(defCounts[r] == 1 && uses[r] == 1 && lastUse[r] == defs[r] + 1)) {
+                starting[first[r] + 1]++;
+                ending[last[r] + 1]++;
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            starting[i + 1] += starting[i];
+            ending[i + 1] += ending[i];
+        }
+        int[] byStart = new int[starting[n]];
+        int[] byEnd = new int[ending[n]];
+        for (int r = 0; r < registers; r++) {
+            if (defs[r] >= 0 && !(defCounts[r] == 1 && uses[r] == 1 && lastUse[r] == defs[r] + 1)) {
+                byStart[starting[first[r]]++] = r;
+                byEnd[ending[last[r]]++] = r;
+            }
+        }
+
+        // starting[i] and ending[i] are now where those at i + 1 begin
+        int[] free = new int[byStart.length];
+        int freeCount = 0;
+        int slots = 0;
+        int s = 0;
+        int e = 0;
+        for (int i = 0; i < n; i++) {
+            for (; e < byEnd.length && last[byEnd[e]] < i; e++)
+                free[freeCount++] = function.frameOffset - temps[byEnd[e]];
+            for (; s < byStart.length && first[byStart[s]] == i; s++) {
+                int slot = freeCount > 0 ? free[--freeCount] : slots++;
+                temps[byStart[s]] = function.frameOffset - slot;
+            }
+        }
+        callFrame = function.frameOffset - slots;
+    }
+
+    private static void reach(int[] first, int[] last, int register, int at) {
+        if (register < 0)
+            return;
+        if (first[register] < 0 || at < first[register])
+            first[register] = at;
+        if (at > last[register])
+            last[register] = at;
+    }
+
+    private static void use(int[] uses, int[] lastUse, int register, int at) {
+        if (register >= 0) {
+            uses[register]++;
+            lastUse[register] = at;
+        }
+    }
+
+    private void generate(Instr instr) {
+        switch (instr.kind) {
+            case Instr.CONST:
+                emitRM("LDC", AC, instr.value, 0, "load const");
+                break;
+
+            case Instr.COPY:
+                load(instr.a, AC);
+                break;
+
+            case Instr.UNARY:
+                load(instr.a, AC);
+                if (instr.op == OpExp.UMINUS) {
+                    emitRM("LDC", AC1, 0, 0, "load 0");
+                    emitRO("SUB", AC, AC1, AC, "op unary -");
+                } else {
+                    emitRM("JEQ", AC, 2, PC, "op !: br if operand false");
+                    emitRM("LDC", AC, 0, 0, "false case");
+                    emitRM("LDA", PC, 1, PC, "unconditional jmp");
+                    emitRM("LDC", AC, 1, 0, "true case");
+                }
+                break;
+
+            case Instr.BINARY:
+                load(instr.a, AC1, instr.b, AC);
+                emitOperator(instr.op);
+                break;
+
+            case Instr.LOAD:
+                emitRM("LD", AC, instr.slot.offset, base(instr.slot), "load id value: " + instr.slot);
+                break;
+
+            case Instr.STORE:
+                load(instr.a, AC);
+                emitRM("ST", AC, instr.slot.offset, base(instr.slot), "assign: store " + instr.slot);
+                break;
+
+            case Instr.ADDR:
+                arrayBase(instr.slot, AC);
+                break;
+
+            case Instr.ALOAD:
+                load(instr.a, AC1);
+                arrayBase(instr.slot, AC);
+                emitRO("SUB", AC, AC, AC1, "compute element address");
+                emitRM("LD", AC, 0, AC, "load array element value");
+                break;
+
+            case Instr.ASTORE:
+                load(instr.a, AC1, instr.b, AC);
+                arrayBase(instr.slot, AC2);
+                emitRO("SUB", AC1, AC2, AC1, "compute element address");
+                emitRM("ST", AC, 0, AC1, "assign: store element");
+                break;
+
+            case Instr.CALL:
+                call(instr);
+                break;
+
+            case Instr.LABEL:
+                labelAddresses[instr.label] = emitLoc;
+                emitComment("L" + instr.label + ":");
+                inAC = -1;
+                return;
+
+            case Instr.JUMP:
+                jump(instr);
+                break;
+
+            case Instr.IFFALSE:
+                load(instr.a, AC);
+                jump(instr);
+                break;
+
+            case Instr.RETURN:
+                if (instr.a >= 0)
+                    load(instr.a, AC);
+                if (function.funcId == NameTable.MAIN)
+                    emitRO("HALT", 0, 0, 0, "return from main");
+                else
+                    emitRM("LD", PC, RET_OFFSET, FP, "return to caller");
+                break;
+        }
+
+        inAC = instr.dest;
+        if (instr.dest >= 0 && temps[instr.dest] != UNDEFINED)
+            emitRM("ST", AC, temps[instr.dest], FP, "store t" + instr.dest);
+    }
+
+    /* Arguments go below the temporaries, into the callee's frame */
+    private void call(Instr call) {
+        emitComment("-> call of function: " + call.func);
+        int[] args = call.args;
+        // The argument just computed first, before the accumulator is reused
+        for (int i = 0; i < args.length; i++)
+            if (args[i] >= 0 && args[i] == inAC)
+                emitRM("ST", AC, callFrame + INIT_OFFSET - i, FP, "store arg val in next frame");
+        for (int i = 0; i < args.length; i++) {
+            if (args[i] < 0 || args[i] == inAC)
+                continue;
+            load(args[i], AC);
+            emitRM("ST", AC, callFrame + INIT_OFFSET - i, FP, "store arg val in next frame");
+        }
+        inAC = -1;
+
+        emitRM("ST", FP, callFrame + OFP_OFFSET, FP, "push ofp");
+        emitRM("LDA", FP, callFrame, FP, "push frame");
+        emitRM("LDA", AC, 1, PC, "load ac with ret ptr");
+        if (call.funcId == NameTable.INPUT) {
+            emitRM_Abs("LDA", PC, inputEntry, "jump to fun loc");
+        } else if (call.funcId == NameTable.OUTPUT) {
+            emitRM_Abs("LDA", PC, outputEntry, "jump to fun loc");
+        } else if (functionAddress(call.funcId) != UNDEFINED) {
+            emitRM_Abs("LDA", PC, functionAddress(call.funcId), "jump to fun loc");
+        } else {
+            if (pendingCalls.size() == pendingLocations.length)
+                pendingLocations = Arrays.copyOf(pendingLocations, pendingCalls.size() * 2);
+            pendingLocations[pendingCalls.size()] = emitSkip(1);
+            pendingCalls.add(call);
+        }
+        emitRM("LD", FP, OFP_OFFSET, FP, "pop frame");
+        emitComment("<- call");
+    }
+
+    /* JUMP, or IFFALSE with the test in the accumulator */
+    private void jump(Instr instr) {
+        String op = instr.kind == Instr.JUMP ? "LDA" : "JEQ";
+        int reg = instr.kind == Instr.JUMP ? PC : AC;
+        String comment = instr.kind == Instr.JUMP ? "jmp to L" + instr.label : "if false: jmp to L" + instr.label;
+        int target = labelAddresses[instr.label];
+        if (target != UNDEFINED) {
+            emitRM_Abs(op, reg, target, comment);
+            return;
+        }
+        if (jumpCount == jumps.length) {
+            jumps = Arrays.copyOf(jumps, jumpCount * 2);
+            jumpLocations = Arrays.copyOf(jumpLocations, jumpCount * 2);
+        }
+        jumps[jumpCount] = instr;
+        jumpLocations[jumpCount++] = emitSkip(1);
+    }
+
+    /* Puts a register's value in reg: it is in the accumulator or in its
+       temporary; a missing operand (from an error) reads as 0 */
+    private void load(int register, int reg) {
+        if (register < 0) {
+            emitRM("LDC", reg, 0, 0, "no value");
+        } else if (register == inAC) {
+            if (reg != AC)
+                emitRM("LDA", reg, 0, AC, "move t" + register);
+        } else {
+            emitRM("LD", reg, temps[register], FP, "load t" + register);
+        }
+    }
+
+    /* Two operands, the one in the accumulator moved first */
+    private void load(int first, int firstReg, int second, int secondReg) {
+        if (second >= 0 && second == inAC && secondReg != AC) {
+            load(second, secondReg);
+            load(first, firstReg);
+        } else {
+            load(first, firstReg);
+            load(second, secondReg);
+        }
+    }
+
+    /* The base address of an array, or the one an array parameter holds */
+    private void arrayBase(Slot slot, int reg) {
+        if (slot.kind == Slot.REFERENCE)
+            emitRM("LD", reg, slot.offset, base(slot), "load array base addr: " + slot);
+        else
+            emitRM("LDA", reg, slot.offset, base(slot), "load array base addr: " + slot);
+    }
+
+    private static int base(Slot slot) {
+        return slot.global ? GP : FP;
+    }
+
+    /* Applies op to the left value in AC1 and the right one in AC */
+    private void emitOperator(int op) {
+        switch (op) {
+            case OpExp.PLUS:
+                emitRO("ADD", AC, AC1, AC, "op +");
+                break;
+            case OpExp.MINUS:
+                emitRO("SUB", AC, AC1, AC, "op -");
+                break;
+            case OpExp.TIMES:
+                emitRO("MUL", AC, AC1, AC, "op *");
+                break;
+            case OpExp.OVER:
+                emitRO("DIV", AC, AC1, AC, "op /");
+                break;
+            case OpExp.EQ:
+                emitCompare("JEQ", "op ==");
+                break;
+            case OpExp.NE:
+                emitCompare("JNE", "op !=");
+                break;
+            case OpExp.LT:
+                emitCompare("JLT", "op <");
+                break;
+            case OpExp.LE:
+                emitCompare("JLE", "op <=");
+                break;
+            case OpExp.GT:
+                emitCompare("JGT", "op >");
+                break;
+            case OpExp.GE:
+                emitCompare("JGE", "op >=");
+                break;
+            case OpExp.AND:
+                emitRM("JEQ", AC1, 1, PC, "op &&: br if left false");
+                emitRM("JNE", AC, 2, PC, "br if true");
+                emitRM("LDC", AC, 0, 0, "false case");
+                emitRM("LDA", PC, 1, PC, "unconditional jmp");
+                emitRM("LDC", AC, 1, 0, "true case");
+                break;
+            case OpExp.OR:
+                emitRM("JNE", AC1, 3, PC, "op ||: br if left true");
+                emitRM("JNE", AC, 2, PC, "br if true");
+                emitRM("LDC", AC, 0, 0, "false case");
+                emitRM("LDA", PC, 1, PC, "unconditional jmp");
+                emitRM("LDC", AC, 1, 0, "true case");
+                break;
+        }
+    }
+
+    private void emitCompare(String jump, String comment) {
+        emitRO("SUB", AC, AC1, AC, comment);
+        emitRM(jump, AC, 2, PC, "br if true");
+        emitRM("LDC", AC, 0, 0, "false case");
+        emitRM("LDA", PC, 1, PC, "unconditional jmp");
+        emitRM("LDC", AC, 1, 0, "true case");
+    }
+
+    private void setFunctionAddress(int nameId, int address) {
+        if (nameId >= functionAddresses.length) {
+            int size = functionAddresses.length;
+            functionAddresses = Arrays.copyOf(functionAddresses, Math.max(size * 2, nameId + 1));
+            Arrays.fill(functionAddresses, size, functionAddresses.length, UNDEFINED);
+        }
+        functionAddresses[nameId] = address;
+    }
+
+    private int functionAddress(int nameId) {
+        return nameId >= 0 && nameId < functionAddresses.length ? functionAddresses[nameId] : UNDEFINED;
+    }
+
+    /* Instructions generated so far */
+    public int size() {
+        return highEmitLoc;
+    }
+
+    // Emit helper methods
+    private void emitComment(String comment) {
+        out.println("* " + comment);
+    }
+
+    private void emitRO(String op, int r, int s, int t, String comment) {
+        out.printf("%3d: %5s %d,%d,%d \t%s\n", emitLoc, op, r, s, t, comment);
+        emitLoc++;
+        if (highEmitLoc < emitLoc) highEmitLoc = emitLoc;
+    }
+
+    private void emitRM(String op, int r, int d, int s, String comment) {
+        out.printf("%3d: %5s %d,%d(%d) \t%s\n", emitLoc, op, r, d, s, comment);
+        emitLoc++;
+        if (highEmitLoc < emitLoc) highEmitLoc = emitLoc;
+    }
+
+    private void emitRM_Abs(String op, int r, int a, String comment) {
+        out.printf("%3d: %5s %d,%d(%d) \t%s\n", emitLoc, op, r, a - (emitLoc + 1), PC, comment);
+        emitLoc++;
+        if (highEmitLoc < emitLoc) highEmitLoc = emitLoc;
+    }
+
+    private int emitSkip(int distance) {
+        int i = emitLoc;
+        emitLoc += distance;
+        if (highEmitLoc < emitLoc) highEmitLoc = emitLoc;
+        return i;
+    }
+
+    private void emitBackup(int loc) {
+        if (loc > highEmitLoc) emitComment("BUG in emitBackup");
+        emitLoc = loc;
+    }
+
+    private void emitRestore() {
+        emitLoc = highEmitLoc;
+    }
+}
@@ -0,0 +1,102 @@
+import java.nio.ByteBuffer;
+import java_cup.runtime.Symbol;
+import absyn.*;
+
+/*
+  Sits between the Lexer and the parser for CM -lazy. Every brace block
+  at the top level of a program is a function body; instead of passing
+  its tokens on, the scanner skips to the matching closing brace and
+  hands the parser a single BODY token whose value is a LazyBody holding
+  the character range. The body is parsed from that range the first time
+  a phase asks the FunctionDec for it.
+
+  Syntax errors inside a skipped body are reported when the body is
+  loaded rather than during the initial parse.
+*/
+public class LazyScanner implements java_cup.runtime.Scanner, BodyLoader {
+  private final ByteBuffer source;
+  private final Lexer lexer;
+
+  /* where the parsers of loaded bodies report, as for the main parser */
+  public Diagnostics diagnostics = new Diagnostics();
+
+  /* cleared once a loaded body had syntax errors */
+  public boolean valid = true;
+
+  /* number of bodies skipped and number parsed on demand so far */
+  public int skipped = 0;
+  public int loaded = 0;
+
+  public LazyScanner(ByteBuffer source, Lexer lexer) {
+    this.source = source;
+    this.lexer = lexer;
+  }
+
+  public Symbol next_token() throws Exception {
+    Symbol tok = lexer.next_token();
+    if (tok == null || tok.sym != sym.LBRACE)
+      return tok;
+
+    int start = lexer.offset();
+    int end = start + 1;
+    int depth = 1;
+    while (depth > 0) {
+      Symbol t = lexer.next_token();
+      if (t == null)
+        break;
+      if (t.sym == sym.LBRACE)
+        depth++;
+      else if (t.sym == sym.RBRACE)
+        depth--;
+      end = lexer.offset() + 1;
+    }
+    skipped++;
+    return new Symbol(sym.BODY, tok.left, tok.right, new LazyBody(tok.left, tok.right, start, end, this));
+  }
+
+  /* Reparses one body by feeding the parser the tokens of a dummy
+     signature, void main(void), followed by the body's own tokens. The
+     slice lexer starts at the body's line and column, so positions in
+     the tree and in error messages match a full parse. */
+  public Exp load(LazyBody body) {
+    ByteBuffer slice = source.duplicate();
+    slice.limit(source.position() + body.end);
+    slice.position(source.position() + body.start);
+
+    final Lexer bodyLexer = new Lexer(new SourceReader(slice));
+    bodyLexer.names = lexer.names;
+    bodyLexer.quiet = true;
+    bodyLexer.diagnostics = diagnostics;
+    bodyLexer.startAt(body.row, body.col);
+    final Symbol[] signature = {
+      new Symbol(sym.VOID, body.row, body.col),
+      new Symbol(sym.ID, body.row, body.col, lexer.names.get(NameTable.MAIN)),
+      new Symbol(sym.LPAREN, body.row, body.col),
+      new Symbol(sym.VOID, body.row, body.col),
+      new Symbol(sym.RPAREN, body.row, body.col)
+    };
+    java_cup.runtime.Scanner scanner = new java_cup.runtime.Scanner() {
+      int next = 0;
+      public Symbol next_token() throws Exception {
+        return next < signature.length ? signature[next++] : bodyLexer.next_token();
+      }
+    };
+
+    parser p = parser.of(scanner);
+    p.diagnostics = diagnostics;
+    try {
+      DecList program = (DecList) p.parse().value;
+      loaded++;
+      if (program != null && program.head instanceof FunctionDec)
+        return ((FunctionDec) program.head).body;
+    } catch (Diagnostics.Abort e) {
+      throw e;
+    } catch (Exception e) {
+      if (!p.fatal)
+        diagnostics.report("P02", body.row, body.col, "Error in line " + (body.row + 1) + ", column " + (body.col + 1) + ": could not parse function body: " + e.getMessage());
+    } finally {
+      valid &= p.valid;
+    }
+    return null;
+  }
+}
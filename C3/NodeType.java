@@ -2,11 +2,15 @@ import absyn.*;
 
 public class NodeType {
 	public String name;
+	public int id;
 	public Dec def;
 	public int level;
+	/* the declaration of the same name in an enclosing scope, see SymbolTable */
+	public NodeType shadowed;
 
-	public NodeType(String name, Dec def, int level) {
+	public NodeType(String name, int id, Dec def, int level) {
 		this.name = name;
+		this.id = id;
 		this.def = def;
 		this.level = level;
 	}
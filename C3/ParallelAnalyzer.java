@@ -0,0 +1,192 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import absyn.*;
+
+/*
+  SemanticAnalyzer in two phases (CM -parallel). The first goes through
+  the top-level declarations in order on the calling thread: global
+  variables are declared, and each function is declared and its
+  parameters checked (SemanticAnalyzer.enter). After that every
+  signature is in the global scope, so the second phase checks the
+  function bodies (SemanticAnalyzer.leave) as tasks on a ForkJoinPool,
+  GRAIN functions to a task. Each body has its own SymbolTable view,
+  which only sees the globals declared before the function, as in a
+  sequential run.
+
+  What each declaration prints is buffered, in one buffer per thread,
+  and its errors are collected on their own; both are passed on in
+  source order at the end, so the .sym file and the error messages are
+  the same as SemanticAnalyzer's, and a maximum number of errors stops
+  at the same one.
+*/
+class ParallelAnalyzer {
+  /* function bodies checked by one task */
+  static private final int GRAIN = 8;
+
+  /* what a sequence of declarations printed, one after another */
+  static class Output {
+    final Buffer bytes = new Buffer();
+    final PrintStream out = new PrintStream(bytes);
+  }
+
+  static class Buffer extends ByteArrayOutputStream {
+    void copy(int from, int to, PrintStream dest) {
+      dest.write(buf, from, to - from);
+    }
+  }
+
+  /* the part of an Output that one declaration printed */
+  static class Printed {
+    final Output output;
+    final int start;
+    int end;
+
+    Printed(Output output) {
+      this.output = output;
+      start = output.bytes.size();
+    }
+
+    void end() {
+      end = output.bytes.size();
+    }
+
+    void copy(PrintStream out) {
+      output.bytes.copy(start, end, out);
+    }
+  }
+
+  /* one top-level declaration */
+  static class Part {
+    final Dec dec;
+    final SymbolTable symbolTable;
+    final Diagnostics diagnostics = new Diagnostics();
+    Printed declared;
+    Printed checked;
+
+    /* the function's body is still to be checked */
+    boolean body = false;
+    Throwable failed = null;
+
+    Part(Dec dec, SymbolTable symbolTable) {
+      this.dec = dec;
+      this.symbolTable = symbolTable;
+    }
+
+    void check(Output output) {
+      if (!body)
+        return;
+      body = false;
+      checked = new Printed(output);
+      try {
+        new SemanticAnalyzer(symbolTable, output.out, diagnostics).leave((FunctionDec) dec, 0, false);
+      } catch (RuntimeException | Error e) {
+        failed = e;
+      }
+      checked.end();
+    }
+  }
+
+  /* checks the bodies of parts [from, to) */
+  class Bodies extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    final List<Part> parts;
+    final int from;
+    final int to;
+
+    Bodies(List<Part> parts, int from, int to) {
+      this.parts = parts;
+      this.from = from;
+      this.to = to;
+    }
+
+    protected void compute() {
+      if (to - from <= GRAIN) {
+        Output output = output();
+        for (int i = from; i < to; i++)
+          parts.get(i).check(output);
+        return;
+      }
+      int middle = (from + to) >>> 1;
+      invokeAll(new Bodies(parts, from, middle), new Bodies(parts, middle, to));
+    }
+  }
+
+  private final SymbolTable symbolTable = new SymbolTable();
+  private final ForkJoinPool pool;
+  private final PrintStream out;
+  private final Diagnostics diagnostics;
+
+  private final Map<Thread, Output> outputs = new ConcurrentHashMap<Thread, Output>();
+
+  ParallelAnalyzer(ForkJoinPool pool, PrintStream out, Diagnostics diagnostics) {
+    this.pool = pool;
+    this.out = out;
+    this.diagnostics = diagnostics;
+  }
+
+  /* the buffer of the current thread */
+  private Output output() {
+    return outputs.computeIfAbsent(Thread.currentThread(), thread -> new Output());
+  }
+
+  void analyze(DecList decs) {
+    List<Part> parts = new ArrayList<Part>();
+    /* the last function of each name whose body is not checked yet */
+    Map<String, Part> pending = new HashMap<String, Part>();
+    Output output = output();
+    try {
+      for (DecList list = decs; list != null && list.head != null; list = list.tail) {
+        Part part;
+        if (list.head instanceof FunctionDec) {
+          FunctionDec dec = (FunctionDec) list.head;
+          /* A definition may reopen the scope of the last function of the
+             same name, which has to be complete by then */
+          Part last = pending.remove(dec.func);
+          if (last != null)
+            last.check(output);
+          part = new Part(dec, symbolTable.view());
+          parts.add(part);
+          part.declared = new Printed(output);
+          part.body = new SemanticAnalyzer(part.symbolTable, output.out, part.diagnostics).enter(dec, 0, false);
+          if (part.body)
+            pending.put(dec.func, part);
+        } else {
+          part = new Part(list.head, symbolTable);
+          parts.add(part);
+          part.declared = new Printed(output);
+          list.head.accept(new SemanticAnalyzer(symbolTable, output.out, part.diagnostics), 0, false);
+        }
+        part.declared.end();
+      }
+    } catch (RuntimeException | Error e) {
+      /* the sequential analyzer would have stopped here */
+      Part part = parts.get(parts.size() - 1);
+      part.declared.end();
+      part.body = false;
+      part.failed = e;
+    }
+
+    List<Part> bodies = new ArrayList<Part>();
+    for (Part part : parts)
+      if (part.body)
+        bodies.add(part);
+    pool.invoke(new Bodies(bodies, 0, bodies.size()));
+
+    for (Part part : parts) {
+      part.declared.copy(out);
+      if (part.checked != null)
+        part.checked.copy(out);
+      diagnostics.report(part.diagnostics);
+      if (part.failed instanceof Error)
+        throw (Error) part.failed;
+      if (part.failed != null)
+        throw (RuntimeException) part.failed;
+    }
+  }
+
+  public void printSymbolTable(int level) {
+    new SemanticAnalyzer(symbolTable, out, diagnostics).printSymbolTable(level);
+  }
+}
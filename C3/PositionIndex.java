@@ -0,0 +1,342 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import absyn.*;
+
+/*
+  Where each name of a program is declared and used (CM -index).
+  SemanticAnalyzer records every declaration and every use it resolves;
+  write() saves the index to test/<file>.idx next to the .tm file, and
+  load() reads it back, so a tool can ask which declaration a position
+  refers to, and where that declaration is used, without compiling
+  again:
+
+    java PositionIndex test/file.idx row col
+
+  Every occurrence of a name is an entry with its row, column, length
+  and declaration. Names do not span lines or overlap, so once the
+  entries are sorted by position at() is a binary search. The uses of
+  each declaration are kept together, in position order.
+
+  A declaration node starts at its type; its name is found in the
+  source after it, and a declaration whose name is not there has no
+  position (0 0 in the file). Rows and columns count from 0 here and
+  from 1 in the file, as in the error messages.
+*/
+public class PositionIndex {
+  /* what a declaration declares */
+  public static final int VARIABLE = 0;
+  public static final int ARRAY = 1;
+  public static final int FUNCTION = 2;
+  static final String[] KINDS = { "variable", "array", "function" };
+
+  /* declarations, numbered in the order they are recorded */
+  private final ArrayList<String> names = new ArrayList<String>();
+  private int[] kinds = new int[16];
+  private int[] declRows = new int[16];
+  private int[] declCols = new int[16];
+
+  /* entries, declared names and uses, in the order they are recorded */
+  private int[] rows = new int[64];
+  private int[] cols = new int[64];
+  private int[] lengths = new int[64];
+  private int[] decls = new int[64];
+  private int count = 0;
+
+  /* from seal(): entries by position, and the uses of declaration d at
+     uses[useStart[d]] up to uses[useStart[d + 1]] */
+  private int[] sorted = null;
+  private int[] useStart;
+  private int[] uses;
+
+  /* declaration numbers of the recorded Decs */
+  private final IdentityHashMap<Dec, Integer> numbers = new IdentityHashMap<Dec, Integer>();
+
+  /* source text, to find declared names; null when loaded from a file */
+  private final ByteBuffer source;
+  private int[] lineStarts;
+
+  public PositionIndex(ByteBuffer source) {
+    this.source = source == null ? null : source.duplicate();
+    if (source != null)
+      lineStarts = lineStarts(this.source);
+  }
+
+  static private int[] lineStarts(ByteBuffer source) {
+    int[] starts = new int[64];
+    int lines = 0;
+    starts[lines++] = source.position();
+    for (int i = source.position(); i < source.limit(); i++) {
+      byte b = source.get(i);
+      if (b == '\n' || (b == '\r' && (i + 1 == source.limit() || source.get(i + 1) != '\n'))) {
+        if (lines == starts.length)
+          starts = Arrays.copyOf(starts, lines * 2);
+        starts[lines++] = i + 1;
+      }
+    }
+    return Arrays.copyOf(starts, lines);
+  }
+
+  /* Records a declaration; does nothing for one that failed to parse */
+  public synchronized void declare(Dec dec) {
+    String name;
+    int kind;
+    if (dec instanceof FunctionDec) {
+      name = ((FunctionDec) dec).func;
+      kind = FUNCTION;
+    } else if (dec instanceof ArrayDec) {
+      name = ((ArrayDec) dec).name;
+      kind = ARRAY;
+    } else if (dec instanceof SimpleDec) {
+      name = ((SimpleDec) dec).name;
+      kind = VARIABLE;
+    } else {
+      return;
+    }
+    if (name == null || numbers.containsKey(dec))
+      return;
+    int decl = names.size();
+    numbers.put(dec, decl);
+    // without the name in the source, the declaration has no position
+    long at = find(name, dec.row, dec.col);
+    add(decl, name, kind, at < 0 ? -1 : (int) (at >>> 32), at < 0 ? -1 : (int) at);
+    if (at >= 0)
+      entry((int) (at >>> 32), (int) at, name.length(), decl);
+  }
+
+  /* Records a use of a name at row and col that resolved to dec */
+  public synchronized void use(int row, int col, String name, Dec dec) {
+    Integer decl = numbers.get(dec);
+    if (decl != null && name != null && row >= 0)
+      entry(row, col, name.length(), decl);
+  }
+
+  private void add(int decl, String name, int kind, int row, int col) {
+    if (decl == kinds.length) {
+      kinds = Arrays.copyOf(kinds, decl * 2);
+      declRows = Arrays.copyOf(declRows, decl * 2);
+      declCols = Arrays.copyOf(declCols, decl * 2);
+    }
+    names.add(name);
+    kinds[decl] = kind;
+    declRows[decl] = row;
+    declCols[decl] = col;
+  }
+
+  private void entry(int row, int col, int length, int decl) {
+    if (count == rows.length) {
+      rows = Arrays.copyOf(rows, count * 2);
+      cols = Arrays.copyOf(cols, count * 2);
+      lengths = Arrays.copyOf(lengths, count * 2);
+      decls = Arrays.copyOf(decls, count * 2);
+    }
+    rows[count] = row;
+    cols[count] = col;
+    lengths[count] = length;
+    decls[count] = decl;
+    count++;
+    sorted = null;
+  }
+
+  /* Position of name after the word (the type) at row and col, packed
+     as row << 32 | col, or -1 if the source does not have it there */
+  private long find(String name, int row, int col) {
+    if (source == null || row < 0 || row >= lineStarts.length)
+      return -1;
+    int i = lineStarts[row] + col;
+    int end = source.limit();
+    while (i < end && isNameChar(source.get(i)))
+      i++;
+    // blanks, line breaks and comments up to the name
+    while (i < end) {
+      byte b = source.get(i);
+      if (b == ' ' || b == '\t' || b == '\r' || b == '\n' || b == '\f') {
+        i++;
+      } else if (b == '/' && i + 1 < end && source.get(i + 1) == '*') {
+        i += 2;
+        while (i + 1 < end && !(source.get(i) == '*' && source.get(i + 1) == '/'))
+          i++;
+        i += 2;
+      } else {
+        break;
+      }
+    }
+    if (i + name.length() > end)
+      return -1;
+    for (int k = 0; k < name.length(); k++)
+      if (source.get(i + k) != name.charAt(k))
+        return -1;
+    if (i + name.length() < end && isNameChar(source.get(i + name.length())))
+      return -1;
+    int line = Arrays.binarySearch(lineStarts, i);
+    if (line < 0)
+      line = -line - 2;
+    return (long) line << 32 | (i - lineStarts[line]);
+  }
+
+  static private boolean isNameChar(byte b) {
+    return b == '_' || (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9');
+  }
+
+  /* Sorts the entries by position and groups the uses by declaration */
+  private void seal() {
+    if (sorted != null)
+      return;
+    Integer[] order = new Integer[count];
+    for (int i = 0; i < count; i++)
+      order[i] = i;
+    Arrays.sort(order, new Comparator<Integer>() {
+      public int compare(Integer a, Integer b) {
+        if (rows[a] != rows[b])
+          return Integer.compare(rows[a], rows[b]);
+        return Integer.compare(cols[a], cols[b]);
+      }
+    });
+    sorted = new int[count];
+    for (int i = 0; i < count; i++)
+      sorted[i] = order[i];
+
+    int declarations = names.size();
+    useStart = new int[declarations + 1];
+    for (int e : sorted)
+      if (!isDeclaration(e))
+        useStart[decls[e] + 1]++;
+    for (int d = 0; d < declarations; d++)
+      useStart[d + 1] += useStart[d];
+    uses = new int[useStart[declarations]];
+    int[] next = Arrays.copyOf(useStart, declarations);
+    for (int e : sorted)
+      if (!isDeclaration(e))
+        uses[next[decls[e]]++] = e;
+  }
+
+  private boolean isDeclaration(int entry) {
+    int d = decls[entry];
+    return rows[entry] == declRows[d] && cols[entry] == declCols[d];
+  }
+
+  /* The entry whose name covers row and col, or -1 */
+  public synchronized int at(int row, int col) {
+    seal();
+    int low = 0;
+    int high = count - 1;
+    int found = -1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      int e = sorted[middle];
+      if (rows[e] < row || (rows[e] == row && cols[e] <= col)) {
+        found = e;
+        low = middle + 1;
+      } else {
+        high = middle - 1;
+      }
+    }
+    if (found < 0 || rows[found] != row || col >= cols[found] + lengths[found])
+      return -1;
+    return found;
+  }
+
+  /* The declaration a position refers to, or -1 */
+  public int definition(int row, int col) {
+    int e = at(row, col);
+    return e < 0 ? -1 : decls[e];
+  }
+
+  /* The entries that use declaration decl, in position order */
+  public synchronized int[] uses(int decl) {
+    seal();
+    return Arrays.copyOfRange(uses, useStart[decl], useStart[decl + 1]);
+  }
+
+  public int declarations() {
+    return names.size();
+  }
+
+  public String name(int decl) {
+    return names.get(decl);
+  }
+
+  public int kind(int decl) {
+    return kinds[decl];
+  }
+
+  public int row(int decl) {
+    return declRows[decl];
+  }
+
+  public int col(int decl) {
+    return declCols[decl];
+  }
+
+  public int entryRow(int entry) {
+    return rows[entry];
+  }
+
+  public int entryCol(int entry) {
+    return cols[entry];
+  }
+
+  /* Saves the declarations and then the uses, in position order */
+  public synchronized void write(PrintStream out, String name) {
+    seal();
+    out.println("* C-Minus position index");
+    out.println("* File: " + name + ".idx");
+    out.println("declarations " + names.size());
+    for (int d = 0; d < names.size(); d++)
+      out.println(KINDS[kinds[d]] + " " + names.get(d) + " " + (declRows[d] + 1) + " " + (declCols[d] + 1));
+    out.println("uses " + uses.length);
+    for (int e : sorted)
+      if (!isDeclaration(e))
+        out.println((rows[e] + 1) + " " + (cols[e] + 1) + " " + decls[e]);
+  }
+
+  static public PositionIndex load(String filename) throws IOException {
+    PositionIndex index = new PositionIndex(null);
+    try (BufferedReader in = new BufferedReader(new FileReader(filename))) {
+      String line = in.readLine();
+      while (line != null && line.startsWith("*"))
+        line = in.readLine();
+      int declarations = Integer.parseInt(line.substring("declarations ".length()));
+      for (int d = 0; d < declarations; d++) {
+        String[] fields = in.readLine().split(" ");
+        int kind = Arrays.asList(KINDS).indexOf(fields[0]);
+        int row = Integer.parseInt(fields[2]) - 1;
+        int col = Integer.parseInt(fields[3]) - 1;
+        index.add(d, fields[1], kind, row, col);
+        if (row >= 0)
+          index.entry(row, col, fields[1].length(), d);
+      }
+      line = in.readLine();
+      int uses = Integer.parseInt(line.substring("uses ".length()));
+      for (int u = 0; u < uses; u++) {
+        String[] fields = in.readLine().split(" ");
+        int decl = Integer.parseInt(fields[2]);
+        index.entry(Integer.parseInt(fields[0]) - 1, Integer.parseInt(fields[1]) - 1, index.names.get(decl).length(), decl);
+      }
+    }
+    return index;
+  }
+
+  /* Prints the declaration at a position (from 1) and its uses */
+  static public void main(String[] argv) throws IOException {
+    if (argv.length != 3) {
+      System.err.println("usage: java PositionIndex file.idx row col");
+      System.exit(1);
+    }
+    PositionIndex index = load(argv[0]);
+    int decl = index.definition(Integer.parseInt(argv[1]) - 1, Integer.parseInt(argv[2]) - 1);
+    if (decl < 0) {
+      System.out.println("no name at " + argv[1] + ":" + argv[2]);
+      return;
+    }
+    System.out.println(KINDS[index.kind(decl)] + " " + index.name(decl) + " declared at "
+                       + (index.row(decl) + 1) + ":" + (index.col(decl) + 1));
+    StringBuilder text = new StringBuilder();
+    for (int e : index.uses(decl))
+      text.append("  used at ").append(index.entryRow(e) + 1).append(':').append(index.entryCol(e) + 1).append('\n');
+    System.out.print(text);
+  }
+}
@@ -0,0 +1,218 @@
+import absyn.*;
+import java.util.Arrays;
+
+/*
+  Gives every variable its memory slot before CodeGenerator sees it,
+  one top-level declaration at a time. A declaration gets its nesting
+  level (0 for globals, 1 for parameters and a function's own locals,
+  one more for each inner block) and its offset, from the global
+  pointer for globals and from the frame pointer otherwise. Each
+  SimpleVar and IndexVar is pointed at the declaration in scope, so the
+  code generator reads the slot off the node.
+
+  Blocks are scoped: an inner declaration hides an outer one only
+  until the end of its block, and the slots of a block are given again
+  to the blocks after it. FunctionDec.frameOffset is the first slot
+  below the deepest block, where temporaries start.
+*/
+public class Resolver implements AbsynVisitor {
+
+    /* First parameter offset, below the old frame pointer and return address */
+    private static final int INIT_OFFSET = -2;
+
+    /* Declaration in scope for each name id, or null */
+    private VarDec[] scope;
+
+    /* Declarations hidden by inner ones, restored when a block ends */
+    private VarDec[] hidden = new VarDec[16];
+    private int[] hiddenIds = new int[16];
+    private int hiddenCount = 0;
+
+    private int globalOffset = 0;    // Next free global slot
+    private int frameOffset;         // Next free slot in the current frame
+    private int lowestOffset;        // Lowest free slot the function reached
+    private int depth = 0;           // Nesting level of the current block
+
+    /* Operator chains, walked without recursion however deep they nest */
+    private final OpExpWalker operators = new OpExpWalker(0) {
+        protected void operand(Exp exp, int level, boolean flag) {
+            exp.accept(Resolver.this, level, false);
+        }
+    };
+
+    public Resolver(NameTable names) {
+        scope = new VarDec[Math.max(names.size(), 16)];
+    }
+
+    /* Next free global slot, where the frame of main starts */
+    public int globalOffset() {
+        return globalOffset;
+    }
+
+    public void resolve(Dec dec) {
+        dec.accept(this, 0, false);
+    }
+
+    public void visit(ArrayDec dec, int level, boolean flag) {
+        // An array parameter is a reference and takes a single slot
+        declare(dec, dec.nameId, Math.max(dec.size, 1));
+    }
+
+    public void visit(AssignExp exp, int level, boolean flag) {
+        exp.lhs.accept(this, level, false);
+        exp.rhs.accept(this, level, false);
+    }
+
+    public void visit(BoolExp exp, int level, boolean flag) {
+    }
+
+    public void visit(CallExp exp, int level, boolean flag) {
+        if (exp.args != null)
+            exp.args.accept(this, level, false);
+    }
+
+    public void visit(CompoundExp exp, int level, boolean flag) {
+        int mark = hiddenCount;
+        int offset = frameOffset;
+        depth++;
+        if (exp.decs != null)
+            exp.decs.accept(this, level, false);
+        if (exp.exps != null)
+            exp.exps.accept(this, level, false);
+        depth--;
+        leave(mark);
+        frameOffset = offset;
+    }
+
+    public void visit(DecList decList, int level, boolean flag) {
+        while (decList != null) {
+            if (decList.head != null)
+                decList.head.accept(this, level, false);
+            decList = decList.tail;
+        }
+    }
+
+    public void visit(ExpList expList, int level, boolean flag) {
+        while (expList != null) {
+            if (expList.head != null)
+                expList.head.accept(this, level, false);
+            expList = expList.tail;
+        }
+    }
+
+    public void visit(FunctionDec dec, int level, boolean flag) {
+        int mark = hiddenCount;
+        depth = 1;
+        frameOffset = INIT_OFFSET;
+        lowestOffset = INIT_OFFSET;
+        if (dec.params != null)
+            dec.params.accept(this, level, false);
+        // The body block shares the level of the parameters
+        if (!dec.isPrototype()) {
+            depth = 0;
+            dec.body().accept(this, level, false);
+        }
+        depth = 0;
+        leave(mark);
+        dec.frameOffset = lowestOffset;
+    }
+
+    public void visit(IfExp exp, int level, boolean flag) {
+        if (exp.test != null)
+            exp.test.accept(this, level, false);
+        if (exp.then != null)
+            exp.then.accept(this, level, false);
+        if (exp.elsee != null)
+            exp.elsee.accept(this, level, false);
+    }
+
+    public void visit(IndexVar var, int level, boolean flag) {
+        var.dec = lookup(var.nameId);
+        var.index.accept(this, level, false);
+    }
+
+    public void visit(IntExp exp, int level, boolean flag) {
+    }
+
+    public void visit(NameTy type, int level, boolean flag) {
+    }
+
+    public void visit(NilExp exp, int level, boolean flag) {
+    }
+
+    public void visit(OpExp exp, int level, boolean flag) {
+        operators.walk(exp, level, false);
+    }
+
+    public void visit(ReturnExp exp, int level, boolean flag) {
+        if (exp.exp != null)
+            exp.exp.accept(this, level, false);
+    }
+
+    public void visit(SimpleDec dec, int level, boolean flag) {
+        declare(dec, dec.nameId, 1);
+    }
+
+    public void visit(SimpleVar var, int level, boolean flag) {
+        var.dec = lookup(var.nameId);
+    }
+
+    public void visit(VarDecList varDecList, int level, boolean flag) {
+        while (varDecList != null) {
+            if (varDecList.head != null)
+                varDecList.head.accept(this, level, false);
+            varDecList = varDecList.tail;
+        }
+    }
+
+    public void visit(VarExp exp, int level, boolean flag) {
+        exp.variable.accept(this, level, false);
+    }
+
+    public void visit(WhileExp exp, int level, boolean flag) {
+        if (exp.test != null)
+            exp.test.accept(this, level, false);
+        exp.body.accept(this, level, false);
+    }
+
+    /* Slots run down from the offset; an array's elements follow its
+       base, which is its highest slot */
+    private void declare(VarDec dec, int nameId, int size) {
+        dec.nestLevel = depth;
+        if (depth == 0) {
+            dec.offset = globalOffset;
+            globalOffset -= size;
+        } else {
+            dec.offset = frameOffset;
+            frameOffset -= size;
+            lowestOffset = Math.min(lowestOffset, frameOffset);
+        }
+        // Declarations that failed to parse have no name (id -1)
+        if (nameId < 0)
+            return;
+        if (nameId >= scope.length)
+            scope = Arrays.copyOf(scope, Math.max(scope.length * 2, nameId + 1));
+        if (depth > 0) {
+            if (hiddenCount == hidden.length) {
+                hidden = Arrays.copyOf(hidden, hiddenCount * 2);
+                hiddenIds = Arrays.copyOf(hiddenIds, hiddenCount * 2);
+            }
+            hidden[hiddenCount] = scope[nameId];
+            hiddenIds[hiddenCount++] = nameId;
+        }
+        scope[nameId] = dec;
+    }
+
+    private VarDec lookup(int nameId) {
+        return nameId >= 0 && nameId < scope.length ? scope[nameId] : null;
+    }
+
+    /* Ends the declarations made since mark, latest first */
+    private void leave(int mark) {
+        while (hiddenCount > mark) {
+            hiddenCount--;
+            scope[hiddenIds[hiddenCount]] = hidden[hiddenCount];
+            hidden[hiddenCount] = null;
+        }
+    }
+}
@@ -1,253 +1,234 @@
 import absyn.*;
-import java.util.HashMap;
-import java.util.Stack;
-import java.util.Iterator;
+import java.io.PrintStream;
 import java.util.ArrayList;
 
 public class SemanticAnalyzer implements AbsynVisitor {
 
-    public HashMap<String, ArrayList<NodeType>> symbolTable;
-    public Stack<String> stack;
-    public int nest = 0;
+    public SymbolTable symbolTable;
 
     public String[] TYPES = {"BOOL", "INT", "VOID"};
 
     final static int SPACES = 4;
 
-    public SemanticAnalyzer() {
-        symbolTable = new HashMap<String, ArrayList<NodeType>>();
-        stack = new Stack<String>();
-        stack.add("global");
-    }
+    /* the symbol table listing and the error reports */
+    private PrintStream out;
+    private Diagnostics diagnostics;
 
-    private void indent( int level ) {
-        for( int i = 0; i < level * SPACES; i++ ) System.out.print( " " );
-    }
+    /* the function whose body is being analyzed */
+    private FunctionDec function;
 
-    public void insert(String key, NodeType node) {
-        ArrayList<NodeType> nodeList = symbolTable.get(key);
+    /* declarations and the uses resolved to them, with -index */
+    public PositionIndex index = null;
+
+    /* Operator chains are walked with a stack of their own, as deep as
+       the program nests them. Operands are typed right to left, as they
+       always were, which fixes the order of the reports -maxerrors and
+       -failfast see; evaluateExp checks left to right, leaves first. */
+    private final OpExpWalker typing = new OpExpWalker( 0, true ) {
+        protected void operand( Exp exp, int level, boolean flag ) {
+            exp.accept( SemanticAnalyzer.this, level, flag );
+        }
+
+        protected void leave( OpExp exp, int level, boolean flag ) {
+            exp.dtype = opType(exp.op, exp.left.dtype, exp.right.dtype);
+        }
+    };
 
-        if(nodeList == null) {
-            nodeList = new ArrayList<NodeType>();
-            nodeList.add(node);
-            symbolTable.put(stack.peek(), nodeList);
-        } else { 
-            if(!nodeList.contains(node)) 
-                nodeList.add(node);
+    private final OpExpWalker checking = new OpExpWalker( 0 ) {
+        protected void operand( Exp exp, int level, boolean flag ) {
+            if (exp instanceof VarExp)
+                varType((VarExp) exp);
         }
+
+        protected void leave( OpExp exp, int level, boolean flag ) {
+            checkOp(exp);
+        }
+    };
+
+    public SemanticAnalyzer() {
+        this( System.out, new Diagnostics() );
     }
 
-    public NodeType lookup(String name, int row, int col) {
-        NodeType node = nodeExists(name);
-        return node;
+    public SemanticAnalyzer( PrintStream out, Diagnostics diagnostics ) {
+        this( new SymbolTable(), out, diagnostics );
     }
-    
-    public NodeType funcExists(String name){
-        ArrayList<NodeType> list = symbolTable.get("global");
-        if(list != null) {
-            for(int i = 0; i < list.size(); i++) {
-                if(list.get(i).name.equals(name)) {
-                    return list.get(i);
-                }
-            }
-        }
-        return null;
+
+    public SemanticAnalyzer( SymbolTable symbolTable, PrintStream out, Diagnostics diagnostics ) {
+        this.out = out;
+        this.diagnostics = diagnostics;
+        this.symbolTable = symbolTable;
     }
 
-    public NodeType nodeExists(String name){
-        // If stack is not currently global, then don't check global. Else, check global
-        Iterator<String> scope = stack.iterator();
+    private void indent( int level ) {
+        for( int i = 0; i < level * SPACES; i++ ) out.print( " " );
+    }
 
-        if (!stack.peek().equals("global"))
-            scope.next();
+    private void error( String code, int row, int col, String message ) {
+        diagnostics.report( code, row, col, message );
+    }
 
-        while( scope.hasNext() ) {
-            ArrayList<NodeType> list = symbolTable.get(scope.next());
-            if(list != null) {
-                for(int i = 0; i < list.size(); i++) {
-                    if(list.get(i).name.equals(name)) {
-                        return list.get(i);
-                    }
-                }
-            }
-        }
-        if (!stack.peek().equals("global")){
-            ArrayList<NodeType> list = symbolTable.get("global");
-            if(list != null) {
-                for(int i = 0; i < list.size(); i++) {
-                    if(list.get(i).name.equals(name)) {
-                        return list.get(i);
-                    }
-                }
-            }
+    /* Interned name id of a variable reference, or -1 for any other expression */
+    public int nameId(Exp exp){
+        if (exp instanceof VarExp){
+            Var variable = ((VarExp) exp).variable;
+            if (variable instanceof SimpleVar) return ((SimpleVar) variable).nameId;
+            if (variable instanceof IndexVar) return ((IndexVar) variable).nameId;
         }
-        return null;
+        return -1;
+    }
+    
+    public NodeType funcExists(int id){
+        return symbolTable.lookupGlobal(id);
+    }
+
+    public NodeType nodeExists(int id){
+        // Unnamed declarations from parse errors (-1) never resolve
+        return symbolTable.lookup(id);
     }
 
-    public boolean isDeclared(String name, String type, int row, int col){
-        NodeType node = lookup(name, row, col);
+    public boolean isDeclared(String name, int id, String type, int row, int col){
+        NodeType node = nodeExists(id);
         if ((node == null || node.level == 0))
             return false;
 
-        System.err.println("Error in line " + row + ", column " + col + ": " + type + " Redeclaration");
-        System.err.println(type + " " + name + " has already been declared on line " + (node.def.row + 1) + ", column " + (node.def.col + 1) + "\n");
+        error("S01", row - 1, col - 1, "Error in line " + row + ", column " + col + ": " + type + " Redeclaration\n"
+              + type + " " + name + " has already been declared on line " + (node.def.row + 1) + ", column " + (node.def.col + 1) + "\n");
         return true;
     }
 
-    public boolean isDefined(String name, int row, int col){
-        NodeType node = lookup(name, row, col);
-        if (node != null)
-            return false;
-        return true;
+    public int retType(VarExp exp){
+        if (exp.variable instanceof SimpleVar)
+            return exp.dtype;
+        return exp.variable.getType();
     }
 
-    public int retType(VarExp exp){
-        int retType = -1;
-        if (exp.variable instanceof SimpleVar){
-            NodeType node = nodeExists(((SimpleVar)exp.variable).name);
-            retType = node.def.getType();
-        } else retType = exp.variable.getType();
+    /* Types are computed once, bottom up, as the visitor leaves each
+       expression, and stored in Exp.dtype and Exp.def. The checks below
+       only read them; they report an error at the point where the check
+       asks for the type. */
 
-        return retType;
+    /* Type of an operator applied to operands of the given types */
+    public int opType(int op, int lhsType, int rhsType){
+        if (lhsType == -1 || rhsType == -1 || lhsType != rhsType)
+            return -1;
+        if (op < 5)
+            return lhsType == 1 ? 1 : -1;
+        return 0;
     }
 
     public int varType(VarExp exp){
-        int varType = -1;
-        NodeType node = null;
-
-        if (exp.variable instanceof SimpleVar) node = nodeExists(((SimpleVar)exp.variable).name);
-        else if (exp.variable instanceof IndexVar) node = nodeExists(((IndexVar)exp.variable).name);
-
-        
-        if (node != null) return node.def.getType();
+        if (exp.def != null) return exp.dtype;
 
-        System.err.println("Error in line " + (exp.row + 1) + ", column " + (exp.col + 1) + ": Invalid use of undefined variable " + ((SimpleVar)exp.variable).name + "\n");
+        error("S02", exp.row, exp.col, "Error in line " + (exp.row + 1) + ", column " + (exp.col + 1) + ": Invalid use of undefined variable " + exp.variable + "\n");
         
-        return varType;
+        return -1;
     }
     
     public int evaluateExp(Exp exp){
-        int type = -1;
+        if (exp == null)
+            return -1;
         if (exp instanceof OpExp){
-            int lhsType = evaluateExp(((OpExp) exp).left);
-            int rhsType = evaluateExp(((OpExp) exp).right);
-            if (!(lhsType == -1 || rhsType == -1))
-                if (lhsType != rhsType)
-                    System.err.println("Error in line " + (exp.row + 1) + ", column " + (exp.col + 1) + " Incompatible types: " + TYPES[lhsType] + " cannot be converted to " + TYPES[rhsType] + "\n");
-                else {
-                    type = lhsType;
-                    if (((OpExp) exp).op < 5){
-                        if (type != 1) {
-                            System.err.println("Error in line " + (exp.row + 1) + ", column " + (exp.col + 1) + " performing arithmetic operation on invalid types: " + TYPES[type] + "\n");
-                            return -1;
-                        }
-                    } else {
-                        type = 0;
-                    }
-                }
-        } else if (exp instanceof CallExp){
-            NodeType node = funcExists(((CallExp) exp).func);
-
-            if (node != null)
-                type = ((FunctionDec) node.def).result.typ;
-
+            checking.walk((OpExp) exp, 0, false);
         } else if (exp instanceof VarExp){
-            type = varType((VarExp) exp);
-        } else type = exp.getType();
-        return type;
-    }
-
-    public int checkLeftOp(OpExp expLeft){
-        int type = -1;
-        if (expLeft.right instanceof absyn.VarExp){
-            NodeType node = nodeExists(expLeft.right.toString());
-            if (node != null)
-                type = node.def.getType();
-        } else {
-            type = expLeft.right.getType();
+            return varType((VarExp) exp);
         }
-        return type;
+        return exp.dtype;
+    }
+
+    /* The operands are typed already; an undefined variable has type -1
+       and has been reported by varType */
+    private void checkOp(OpExp exp){
+        int lhsType = exp.left == null ? -1 : exp.left.dtype;
+        int rhsType = exp.right == null ? -1 : exp.right.dtype;
+        if (!(lhsType == -1 || rhsType == -1))
+            if (lhsType != rhsType)
+                error("S03", exp.row, exp.col, "Error in line " + (exp.row + 1) + ", column " + (exp.col + 1) + " Incompatible types: " + TYPES[lhsType] + " cannot be converted to " + TYPES[rhsType] + "\n");
+            else if (exp.op < 5 && lhsType != 1)
+                error("S04", exp.row, exp.col, "Error in line " + (exp.row + 1) + ", column " + (exp.col + 1) + " performing arithmetic operation on invalid types: " + TYPES[lhsType] + "\n");
     }
 
     public int checkCallExp(CallExp exp){
-        NodeType node = funcExists(exp.func);
-        if (node == null){
-            System.err.println("Error in line " + (exp.row + 1) + ", column " + (exp.col + 1) + ": Invalid CallExp to undefined function "  + exp.func + "()\n");
+        FunctionDec func = (FunctionDec) exp.def;
+        if (func == null){
+            error("S05", exp.row, exp.col, "Error in line " + (exp.row + 1) + ", column " + (exp.col + 1) + ": Invalid CallExp to undefined function "  + exp.func + "()\n");
             return -1;
         }
 
         // Expected params
-        VarDecList params = ((FunctionDec) node.def).params;
+        VarDecList params = func.params;
         if (exp.args == null && params == null){
             return 2;
         } else if (exp.args == null){
-            System.err.println("Error in line " + (exp.row + 1) + ", column " + (exp.col + 1) + ": Invalid CallExp sending (VOID) when expecting ("  + params.toString().toUpperCase() + ")\n");
+            error("S06", exp.row, exp.col, "Error in line " + (exp.row + 1) + ", column " + (exp.col + 1) + ": Invalid CallExp sending (VOID) when expecting ("  + params.toString().toUpperCase() + ")\n");
             return -1;
         }
 
         ExpList expList = (ExpList) exp.args;
         while( params != null && expList != null) {
             int expType = evaluateExp(expList.head);
-            NodeType head = nodeExists(expList.head.toString());
-            if ((params.head.getType() != expType && expType != -1) || head != null && (head.def instanceof ArrayDec && (head.def.getClass() != params.head.getClass()))){
-                System.err.println("Error in line " + (exp.row + 1) + ", column " + (exp.col + 1) + ": Invalid CallExp makes use of " + TYPES[expType] + " when expected: " + params.head.toString().toUpperCase() + "\n");
+            Dec head = expList.head.def;
+            if ((params.head.getType() != expType && expType != -1) || head instanceof ArrayDec && head.getClass() != params.head.getClass()){
+                error("S07", exp.row, exp.col, "Error in line " + (exp.row + 1) + ", column " + (exp.col + 1) + ": Invalid CallExp makes use of " + TYPES[expType] + " when expected: " + params.head.toString().toUpperCase() + "\n");
                 return -1;
             }
             expList = expList.tail;
             params = params.tail;
         }
         if (params != null || expList != null) {
-            System.err.println("Error in line " + (exp.row + 1) + ", column " + (exp.col + 1) + ": Invalid CallExp argument length\n");
+            error("S08", exp.row, exp.col, "Error in line " + (exp.row + 1) + ", column " + (exp.col + 1) + ": Invalid CallExp argument length\n");
             return -1;
         }
 
-        return ((FunctionDec) node.def).result.typ;
-    }
-
-    public void delete(String name) {
-        symbolTable.remove(name);
+        return func.result.typ;
     }
 
     public void printSymbolTable( int level ) {
-        ArrayList<NodeType> scope = symbolTable.get(stack.peek());
-        if(scope != null) {
-            for( int i = 0; i < scope.size(); i++ ) {
-                indent( level );
-                System.out.println(scope.get(i).name + ": " + scope.get(i).def.toString());
-            }
+        ArrayList<NodeType> scope = symbolTable.current();
+        for( int i = 0; i < scope.size(); i++ ) {
+            indent( level );
+            out.println(scope.get(i).name + ": " + scope.get(i).def.toString());
         }
     }
 
     public void visit( ArrayDec dec, int level, boolean flag ) {
-        if(isDeclared(dec.name, "Array variable", dec.row+1, dec.col+1) == false) {
+        if(isDeclared(dec.name, dec.nameId, "Array variable", dec.row+1, dec.col+1) == false) {
             if (dec.typ.typ == 2){
-                System.err.println("Error in line " + (dec.row + 1) + ", column " + (dec.col + 1) + ": Invalid Array Variable Declaration Type (VOID)");
-                System.err.println("Instead expected type (BOOL, INT) got VOID. Changing VOID -> INT\n");
+                error("S09", dec.row, dec.col, "Error in line " + (dec.row + 1) + ", column " + (dec.col + 1) + ": Invalid Array Variable Declaration Type (VOID)\n"
+                      + "Instead expected type (BOOL, INT) got VOID. Changing VOID -> INT\n");
                 dec.typ.typ = 1;
             }
-            NodeType symbol = new NodeType(dec.name, dec, level);
-            insert(stack.peek(), symbol);
+            NodeType symbol = new NodeType(dec.name, dec.nameId, dec, level);
+            symbolTable.insert(symbol);
+            if (index != null)
+                index.declare(dec);
         }
     }
 
     public void visit ( AssignExp exp, int level, boolean flag ) {
         exp.lhs.accept( this, level, flag );
         exp.rhs.accept( this, level, flag );
+        exp.dtype = exp.getType();
         int lhsType = varType(exp.lhs);
         int rhsType = evaluateExp(exp.rhs);
 
         if (lhsType != rhsType && lhsType != -1 && rhsType != -1){
-            System.err.println("Error in line " + (exp.row + 1) + ", column " + (exp.col + 1) + " Incompatible types: " + TYPES[lhsType] + " cannot be converted to " + TYPES[rhsType] + "\n");
+            error("S03", exp.row, exp.col, "Error in line " + (exp.row + 1) + ", column " + (exp.col + 1) + " Incompatible types: " + TYPES[lhsType] + " cannot be converted to " + TYPES[rhsType] + "\n");
         }
     }
 
     public void visit ( BoolExp exp, int level, boolean flag ) {
+        exp.dtype = exp.getType();
     }
 
     public void visit ( CallExp exp, int level, boolean flag ) {
         if (exp.args != null)
             exp.args.accept(this, level, flag);
 
+        NodeType node = funcExists(exp.funcId);
+        exp.def = node != null && node.def instanceof FunctionDec ? node.def : null;
+        exp.dtype = exp.def != null ? ((FunctionDec) exp.def).result.typ : -1;
+        if (index != null && exp.def != null)
+            index.use(exp.row, exp.col, exp.func, exp.def);
         checkCallExp(exp);
     }
 
@@ -276,57 +257,80 @@ public class SemanticAnalyzer implements AbsynVisitor {
         }
     }
 
+    /* Drops the scope table of a function that has been analyzed. Only
+       the global entry for the function is needed after that. */
+    public void release( FunctionDec dec ) {
+        symbolTable.forget(dec.func);
+    }
+
     public void visit ( FunctionDec dec, int level, boolean flag ) {
-        NodeType node = funcExists(dec.func);
-
-        if ((node != null) && (dec.body == null)){
-            System.err.println("Error in line " + (dec.row + 1) + ", column " + (dec.col + 1) + ": Function Redeclaration");
-            System.err.println("Function " + dec.func + " has already been declared on line " + (node.def.row + 1)+ ", column " + (node.def.col + 1) + "\n");
-            return;
-        } else if (node != null && ((FunctionDec) node.def).body == null && (dec.body != null)) {
-            symbolTable.remove(dec.func);
+        if (enter(dec, level, flag))
+            leave(dec, level, flag);
+    }
+
+    /* The signature half of a FunctionDec: declares the function and
+       opens its scope with the parameters. Returns false if the
+       declaration was rejected and there is no scope to leave. */
+    public boolean enter( FunctionDec dec, int level, boolean flag ) {
+        NodeType node = funcExists(dec.funcId);
+
+        if ((node != null) && dec.isPrototype()){
+            error("S10", dec.row, dec.col, "Error in line " + (dec.row + 1) + ", column " + (dec.col + 1) + ": Function Redeclaration\n"
+                  + "Function " + dec.func + " has already been declared on line " + (node.def.row + 1)+ ", column " + (node.def.col + 1) + "\n");
+            return false;
+        } else if (node != null && ((FunctionDec) node.def).isPrototype() && !dec.isPrototype()) {
+            symbolTable.forget(dec.func);
         }
 
         level++;
         indent( level );
-        System.out.println("Entering the scope for function " + dec.func + ":");
+        out.println("Entering the scope for function " + dec.func + ":");
         
-        insert("global", new NodeType(dec.func, dec, level));
+        symbolTable.insertGlobal(new NodeType(dec.func, dec.funcId, dec, level));
+        if (index != null)
+            index.declare(dec);
+        function = dec;
 
         level++;
-        stack.add(dec.func);
+        symbolTable.enterFunction(dec.func);
         
         VarDecList varDecList = dec.params;
         while( varDecList != null && varDecList.head != null) {
             varDecList.head.accept( this, level, flag );
             varDecList = varDecList.tail;
         }
-        if (dec.body != null)
-            dec.body.accept( this, level, flag );
+        return true;
+    }
+
+    /* The body half of a FunctionDec, after enter */
+    public void leave( FunctionDec dec, int level, boolean flag ) {
+        function = dec;
+        level += 2;
+        if (!dec.isPrototype())
+            dec.body().accept( this, level, flag );
         
         printSymbolTable( level );
-        stack.pop();
+        symbolTable.exit();
         level--;
 
         indent( level );
-        System.out.println("Leaving the function scope");
+        out.println("Leaving the function scope");
     }
 
     public void visit ( IfExp exp, int level, boolean flag ) {
+        if (exp.test != null)
+            exp.test.accept( this, level, flag );
         int type = evaluateExp(exp.test);
         if (type != 0 && type != 1){
-            System.err.println("Error in line " + (exp.row + 1) + ", column " + (exp.col + 1) + ": Invalid test expression\n");
+            error("S11", exp.row, exp.col, "Error in line " + (exp.row + 1) + ", column " + (exp.col + 1) + ": Invalid test expression\n");
         }
 
         indent( level );
-        System.out.println("Entering a new block:");
+        out.println("Entering a new block:");
 
         level++;
-        nest++;
-        stack.add(String.valueOf(nest));
+        symbolTable.enterBlock();
         
-        if (exp.test != null)
-            exp.test.accept( this, level, flag );
         if ( exp.then != null)
             exp.then.accept( this, level, flag );
         if ( exp.elsee != null )
@@ -334,63 +338,62 @@ public class SemanticAnalyzer implements AbsynVisitor {
             
         printSymbolTable( level );
         
-        delete(String.valueOf(nest));
-        nest--;
-        stack.pop();
+        symbolTable.exit();
         level--;
             
         indent( level );
-        System.out.println("Leaving the block");
+        out.println("Leaving the block");
     }
 
     public void visit ( IndexVar var, int level, boolean flag ) {
         var.index.accept( this, level, flag );
         int indexTyp = evaluateExp(var.index);
         if (indexTyp != 1){
-            System.err.println("Error in line " + (var.row + 1) + ", column " + (var.col + 1) + ": Invalid array index of type " + TYPES[indexTyp] + " expected INT\n");
+            error("S12", var.row, var.col, "Error in line " + (var.row + 1) + ", column " + (var.col + 1) + ": Invalid array index of type " + TYPES[indexTyp] + " expected INT\n");
         }
     }
 
     public void visit ( IntExp exp, int level, boolean flag ) {
+        exp.dtype = exp.getType();
     }
 
     public void visit ( NameTy type, int level, boolean flag ) {
     }
 
     public void visit ( NilExp exp, int level, boolean flag ) {
+        exp.dtype = exp.getType();
     }
 
     public void visit ( OpExp exp, int level, boolean flag ) {
-        exp.right.accept( this, level, flag );
-        exp.left.accept( this, level, flag );
+        typing.walk( exp, level, flag );
     }
 
     public void visit ( ReturnExp expr, int level, boolean flag ) {
         // Get type of function
-        NodeType func = symbolTable.get("global").get(symbolTable.get("global").size()-1);
-        int funcType = ((FunctionDec) func.def).result.typ;
+        int funcType = function.result.typ;
         expr.exp.accept( this, level, flag );
         int expType = evaluateExp(expr.exp);
 
         if (funcType != expType && expType != -1)
-            System.err.println("Error in line " + (expr.row + 1) + ", column " + (expr.col + 1) + ": Function Type " + TYPES[((FunctionDec) func.def).result.typ] + " cannot return " + TYPES[expType] + "\n");
+            error("S13", expr.row, expr.col, "Error in line " + (expr.row + 1) + ", column " + (expr.col + 1) + ": Function Type " + TYPES[function.result.typ] + " cannot return " + TYPES[expType] + "\n");
     }
 
     public void visit ( SimpleDec dec, int level, boolean flag ) {
-        if (isDeclared(dec.name, "Variable", dec.row+1, dec.col+1) == false){
+        if (isDeclared(dec.name, dec.nameId, "Variable", dec.row+1, dec.col+1) == false){
             if (dec.typ.typ == 2){
-                System.err.println("Error in line " + (dec.row + 1) + ", column " + (dec.col + 1) + ": Invalid Variable Declaration Type (VOID)");
-                System.err.println("Instead expected type (BOOL, INT) got VOID. Changing VOID -> INT\n");
+                error("S09", dec.row, dec.col, "Error in line " + (dec.row + 1) + ", column " + (dec.col + 1) + ": Invalid Variable Declaration Type (VOID)\n"
+                      + "Instead expected type (BOOL, INT) got VOID. Changing VOID -> INT\n");
                 dec.typ.typ = 1;
             }
-            NodeType symbol = new NodeType(dec.name, dec, level);
-            insert(stack.peek(), symbol);
+            NodeType symbol = new NodeType(dec.name, dec.nameId, dec, level);
+            symbolTable.insert(symbol);
+            if (index != null)
+                index.declare(dec);
         }
     }
 
     public void visit ( SimpleVar var, int level, boolean flag ) {
-        // Check if variable has been declared
-        isDefined(var.name, var.row+1, var.col+1);
+        // Resolved by the enclosing VarExp
     }
 
     public void visit ( VarDecList varDecList, int level, boolean flag ) {
@@ -402,33 +405,35 @@ public class SemanticAnalyzer implements AbsynVisitor {
 
     public void visit ( VarExp exp, int level, boolean flag ) {
         exp.variable.accept(this, level, flag);
+        NodeType node = nodeExists(nameId(exp));
+        exp.def = node != null ? node.def : null;
+        exp.dtype = node != null ? node.def.getType() : -1;
+        if (index != null && exp.def != null)
+            index.use(exp.variable.row, exp.variable.col, exp.variable.toString(), exp.def);
     }
 
     public void visit ( WhileExp exp, int level, boolean flag ) {
+        if ( exp.test != null )
+            exp.test.accept( this, level, flag );
         int type = evaluateExp(exp.test);
         if (type != 0 && type != 1){
-            System.err.println("Error in line " + (exp.row + 1) + ", column " + (exp.col + 1) + ": Invalid test expression\n");
+            error("S11", exp.row, exp.col, "Error in line " + (exp.row + 1) + ", column " + (exp.col + 1) + ": Invalid test expression\n");
         }
 
         indent( level );
-        System.out.println("Entering a new block:");
+        out.println("Entering a new block:");
         
         level++;
-        nest++;
-        stack.add(String.valueOf(nest));
+        symbolTable.enterBlock();
 
-        if ( exp.test != null )
-            exp.test.accept( this, level, flag );
         exp.body.accept( this, level, flag );
 
         printSymbolTable( level );
 
-        delete(String.valueOf(nest));
-        nest--;
-        stack.pop();
+        symbolTable.exit();
         level--;
         
         indent( level );
-        System.out.println("Leaving the block");
+        out.println("Leaving the block");
     }
 }
\ No newline at end of file
@@ -1,32 +1,43 @@
 import absyn.*;
+import java.io.PrintStream;
 
 public class ShowTreeVisitor implements AbsynVisitor {
 
     final static int SPACES = 4;
 
+    private PrintStream out;
+
+    public ShowTreeVisitor() {
+        this( System.out );
+    }
+
+    public ShowTreeVisitor( PrintStream out ) {
+        this.out = out;
+    }
+
     private void indent( int level ) {
-        for( int i = 0; i < level * SPACES; i++ ) System.out.print( " " );
+        for( int i = 0; i < level * SPACES; i++ ) out.print( " " );
     }
     
     public void visit( ArrayDec dec, int level, boolean flag ) {
         indent( level );
         level++;
-        System.out.println( "ArrayDec:");
+        out.println( "ArrayDec:");
         indent( level );
         if ( dec.typ.typ == 1) {
-            System.out.println( "NameTy: int" );
+            out.println( "NameTy: int" );
             indent( level );
-            System.out.println( "Name: " + dec.name );
+            out.println( "Name: " + dec.name );
             if( dec.size != 0 ) {
                 indent( level );
-                System.out.println( "Size: " + dec.size );
+                out.println( "Size: " + dec.size );
             }
         }
     }
 
     public void visit ( AssignExp exp, int level, boolean flag ) {
         indent( level );
-        System.out.println( "AssignExp:" );
+        out.println( "AssignExp:" );
         level++;
         exp.lhs.accept( this, level, flag );
         exp.rhs.accept( this, level, flag );
@@ -35,15 +46,15 @@ public class ShowTreeVisitor implements AbsynVisitor {
     public void visit ( BoolExp exp, int level, boolean flag ) {
         indent( level );
         level++;
-        System.out.println( "BoolExp: " + exp.value );
+        out.println( "BoolExp: " + exp.value );
     }
 
     public void visit ( CallExp exp, int level, boolean flag ) {
         indent( level );
-        System.out.println( "CallExp: " );
+        out.println( "CallExp: " );
         level++;
         indent( level );
-        System.out.println("Func: " + exp.func);
+        out.println("Func: " + exp.func);
         ExpList argsList = exp.args;
         while( argsList != null ) {
           argsList.head.accept( this, level, flag );
@@ -53,7 +64,7 @@ public class ShowTreeVisitor implements AbsynVisitor {
 
     public void visit ( CompoundExp exp, int level, boolean flag ) {
         indent( level );
-        System.out.println( "CompoundExp: " );
+        out.println( "CompoundExp: " );
         level++;
         VarDecList varDecList = exp.decs;
         while( varDecList != null ) {
@@ -83,29 +94,29 @@ public class ShowTreeVisitor implements AbsynVisitor {
 
     public void visit ( FunctionDec dec, int level, boolean flag ) {
         indent( level );
-        System.out.println("FunctionDec:");
+        out.println("FunctionDec:");
         level++;
         
         indent( level );
         if( dec.result.typ == 0 )
-            System.out.println( "NameTy: bool" );
+            out.println( "NameTy: bool" );
         else if ( dec.result.typ == 1 )
-            System.out.println( "NameTy: int");
+            out.println( "NameTy: int");
         else if ( dec.result.typ == 2 )
-            System.out.println( "NameTy: void");
+            out.println( "NameTy: void");
 
         VarDecList varDecList = dec.params;
         while( varDecList != null && varDecList.head != null) {
             varDecList.head.accept( this, level, flag );
             varDecList = varDecList.tail;
         }
-        if( dec.body != null )
-            dec.body.accept( this, level, flag );   
+        if( !dec.isPrototype() )
+            dec.body().accept( this, level, flag );   
     }
 
     public void visit ( IfExp exp, int level, boolean flag ) {
         indent( level );
-        System.out.println( "IfExp:" );
+        out.println( "IfExp:" );
         level++;
         if (exp.test != null)
             exp.test.accept( this, level, flag );
@@ -117,88 +128,101 @@ public class ShowTreeVisitor implements AbsynVisitor {
 
     public void visit ( IndexVar var, int level, boolean flag ) {
         indent( level );
-        System.out.println( "IndexVar: " + var.name );
+        out.println( "IndexVar: " + var.name );
         level++;
         var.index.accept( this, level, flag );
     }
     
     public void visit ( IntExp exp, int level, boolean flag ) {
         indent( level );
-        System.out.println( "IntExp: " + exp.value ); 
+        out.println( "IntExp: " + exp.value ); 
     }
 
     public void visit ( NameTy type, int level, boolean flag ) {
         indent( level );
         if ( type.typ == 0) 
-            System.out.println( "NameTy: BOOL" );
+            out.println( "NameTy: BOOL" );
         else if ( type.typ == 1 ) 
-            System.out.println( "NameTy: INT" );
+            out.println( "NameTy: INT" );
         else if ( type.typ == 2 ) 
-            System.out.println( "NameTy: VOID" );
+            out.println( "NameTy: VOID" );
     }
     
     public void visit ( NilExp exp, int level, boolean flag ) {
         indent( level );
-        System.out.println( "NilExp: null" );
+        out.println( "NilExp: null" );
     }
 
+    /* Operators can nest as deep as a generated program likes, so they
+       are walked with a stack of their own */
+    private final OpExpWalker operators = new OpExpWalker( 1 ) {
+        protected void enter( OpExp exp, int level, boolean flag ) {
+            showOperator( exp, level );
+        }
+
+        protected void operand( Exp exp, int level, boolean flag ) {
+            if ( exp != null )
+                exp.accept( ShowTreeVisitor.this, level, flag );
+        }
+    };
+
     public void visit ( OpExp exp, int level, boolean flag ) {
+        operators.walk( exp, level, flag );
+    }
+
+    private void showOperator( OpExp exp, int level ) {
         indent( level );
         switch( exp.op ) {
             case OpExp.PLUS:
-                System.out.println( "OpExp: + " );
+                out.println( "OpExp: + " );
                 break;
             case OpExp.MINUS:
-                System.out.println( "OpExp: - " );
+                out.println( "OpExp: - " );
                 break;
             case OpExp.UMINUS:
-                System.out.println( "OpExp: - " );
+                out.println( "OpExp: - " );
                 break;
             case OpExp.TIMES:
-                System.out.println( "OpExp: * " );
+                out.println( "OpExp: * " );
                 break;
             case OpExp.OVER:
-                System.out.println( "OpExp: / " );
+                out.println( "OpExp: / " );
                 break;
             case OpExp.EQ:
-                System.out.println( "OpExp: == " );
+                out.println( "OpExp: == " );
                 break;
             case OpExp.NE:
-                System.out.println( "OpExp: != " );
+                out.println( "OpExp: != " );
                 break;
             case OpExp.LT:
-                System.out.println( "OpExp: < " );
+                out.println( "OpExp: < " );
                 break;
             case OpExp.LE:
-                System.out.println( "OpExp: <= " );
+                out.println( "OpExp: <= " );
                 break;
             case OpExp.GT:
-                System.out.println( "OpExp: > " );
+                out.println( "OpExp: > " );
                 break;
             case OpExp.GE:
-                System.out.println( "OpExp: >= " );
+                out.println( "OpExp: >= " );
                 break;
             case OpExp.NOT:
-                System.out.println( "OpExp: ~ " );
+                out.println( "OpExp: ~ " );
                 break;
             case OpExp.AND:
-                System.out.println( "OpExp: && " );
+                out.println( "OpExp: && " );
                 break;
             case OpExp.OR:
-                System.out.println( "OpExp: || " );
+                out.println( "OpExp: || " );
                 break;
             default:
-                System.out.println( "Unrecognized operator at line " + exp.row + " and column " + exp.col );
+                out.println( "Unrecognized operator at line " + exp.row + " and column " + exp.col );
         }
-        level++;
-        if ( exp.left != null )
-           exp.left.accept( this, level, flag );
-        exp.right.accept( this, level, flag );
     }
 
     public void visit ( ReturnExp expr, int level, boolean flag ) {
         indent( level );
-        System.out.println( "ReturnExp:" );
+        out.println( "ReturnExp:" );
         level++;
         if ( expr.exp != null )
             expr.exp.accept( this, level, flag );
@@ -209,24 +233,24 @@ public class ShowTreeVisitor implements AbsynVisitor {
 
         if (dec.name == null) return;
 
-        System.out.println( "SimpleDec:");
+        out.println( "SimpleDec:");
         level++;
     
         indent( level );
         if( dec.typ.typ == 0 )
-            System.out.println("NameTy: bool");
+            out.println("NameTy: bool");
         else if( dec.typ.typ == 1 ) 
-            System.out.println( "NameTy: int");
+            out.println( "NameTy: int");
         else if( dec.typ.typ == 2 )
-            System.out.println( "NameTy: void"); 
+            out.println( "NameTy: void"); 
 
         indent( level );
-        System.out.println("String: " + dec.name);
+        out.println("String: " + dec.name);
     }
 
     public void visit ( SimpleVar var, int level, boolean flag ) {
         indent( level );
-        System.out.println( "SimpleVar: " + var.name );
+        out.println( "SimpleVar: " + var.name );
     }
 
     public void visit ( VarDecList varDecList, int level, boolean flag ) {
@@ -238,14 +262,14 @@ public class ShowTreeVisitor implements AbsynVisitor {
 
     public void visit ( VarExp exp, int level, boolean flag ) {
         indent( level );
-        System.out.println( "VarExp:" );
+        out.println( "VarExp:" );
         level++;
         exp.variable.accept( this, level, flag );
     }
 
     public void visit ( WhileExp exp, int level, boolean flag ) {
         indent( level );
-        System.out.println( "WhileExp:" );
+        out.println( "WhileExp:" );
         level++;
         if ( exp.test != null )
             exp.test.accept( this, level, flag );
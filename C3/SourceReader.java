@@ -0,0 +1,58 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/*
+  Feeds a .cm file to the Lexer without going through a charset decoder.
+  Large files are memory-mapped and small ones are read into a single
+  buffer; either way each byte is widened straight into the Lexer's own
+  character buffer. C-Minus sources are plain ASCII, so bytes and chars
+  map one to one.
+*/
+public class SourceReader extends Reader {
+  /* below this size a single read is cheaper than setting up a mapping */
+  static private final long MAP_THRESHOLD = 64 * 1024;
+
+  private final ByteBuffer source;
+  private int pos;
+
+  public SourceReader(String filename) throws IOException {
+    this(load(filename));
+  }
+
+  public SourceReader(ByteBuffer source) {
+    this.source = source;
+    this.pos = source.position();
+  }
+
+  static public ByteBuffer load(String filename) throws IOException {
+    try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size >= MAP_THRESHOLD)
+        return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      ByteBuffer buffer = ByteBuffer.allocate((int) size);
+      while (buffer.hasRemaining() && channel.read(buffer) >= 0)
+        ;
+      buffer.flip();
+      return buffer;
+    }
+  }
+
+  @Override
+  public int read(char[] cbuf, int off, int len) {
+    int limit = source.limit();
+    if (pos >= limit)
+      return len == 0 ? 0 : -1;
+    int n = Math.min(len, limit - pos);
+    for (int i = 0; i < n; i++)
+      cbuf[off + i] = (char) (source.get(pos + i) & 0xff);
+    pos += n;
+    return n;
+  }
+
+  @Override
+  public void close() {
+  }
+}
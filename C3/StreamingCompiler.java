@@ -0,0 +1,86 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import absyn.*;
+
+/*
+  Runs the phases one top-level declaration at a time, as the parser
+  reduces each one (CM -stream). A declaration is printed, analyzed and
+  turned into TM code, and then a function's body is released. What
+  stays live is the global symbol table with function signatures and
+  the code generator's global slots, so peak memory follows the
+  largest function instead of the whole program.
+
+  The output files come out the same as in the batch pipeline, and so
+  do the error messages, which Diagnostics prints by position.
+*/
+class StreamingCompiler implements DecSink {
+  /* a phase is skipped when its stream is null */
+  private final PrintStream abs;
+  private final PrintStream sym;
+  private final PrintStream tm;
+
+  private final ShowTreeVisitor printer;
+  private final SemanticAnalyzer analyzer;
+  private final CodeGenerator generator;
+
+  /* the batch visitors stop at the first declaration the parser lost */
+  private boolean stopped = false;
+
+  /* the analyzer also runs for an index, printing nowhere */
+  StreamingCompiler(NameTable names, PrintStream abs, PrintStream sym, PrintStream tm, PositionIndex index, Diagnostics diagnostics) {
+    this.abs = abs;
+    this.sym = sym;
+    this.tm = tm;
+    printer = abs != null ? new ShowTreeVisitor(abs) : null;
+    if (sym != null || index != null) {
+      analyzer = new SemanticAnalyzer(sym != null ? sym : new PrintStream(OutputStream.nullOutputStream()), diagnostics);
+      analyzer.index = index;
+    } else {
+      analyzer = null;
+    }
+    generator = tm != null ? new CodeGenerator(names, tm, diagnostics) : null;
+  }
+
+  /* headers, in the order the batch pipeline prints them */
+  void begin(String name) {
+    if (abs != null)
+      abs.println("The abstract syntax tree is:");
+    if (sym != null)
+      sym.println("Entering the global scope:");
+    if (tm != null) {
+      tm.println("* C-Minus Compilation to TM Code");
+      tm.println("* File: " + name + ".tm");
+      generator.prelude();
+    }
+  }
+
+  public void declare(Dec dec) {
+    if (dec == null)
+      stopped = true;
+    if (stopped)
+      return;
+
+    if (printer != null)
+      dec.accept(printer, 0, false);
+    if (analyzer != null)
+      dec.accept(analyzer, 0, false);
+    if (generator != null)
+      generator.generate(dec);
+
+    if (dec instanceof FunctionDec) {
+      FunctionDec fun = (FunctionDec) dec;
+      if (analyzer != null)
+        analyzer.release(fun);
+      fun.releaseBody();
+    }
+  }
+
+  void end() {
+    if (sym != null) {
+      analyzer.printSymbolTable(1);
+      sym.println("Leaving the global scope");
+    }
+    if (tm != null)
+      generator.finale();
+  }
+}
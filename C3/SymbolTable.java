@@ -0,0 +1,200 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/*
+  Scoped symbol table for SemanticAnalyzer. Lookups are indexed by the
+  interned name id rather than by scanning every open scope:
+
+  - every id has a chain of the local declarations currently visible,
+    innermost first, linked through NodeType.shadowed;
+  - globals are kept in a separate array holding the first global
+    declaration of each id, which is the one the analyzer has always
+    resolved to;
+  - each scope keeps its symbols in declaration order. That list is
+    what printSymbolTable prints, and it is also the undo log: leaving
+    a scope unlinks its symbols from their chains.
+
+  So a lookup is one or two array reads whatever the number of symbols
+  or the depth of nesting.
+
+  A function's scope is kept after the function is left, as the
+  analyzer has always done. A second definition with the same name
+  reopens it, and a definition after a prototype drops it (forget).
+
+  A view (see view()) has its own local scopes over the globals of
+  another table, and only sees the globals declared before it was
+  made, plus the ones it declares itself. ParallelAnalyzer gives each
+  function body a view, so bodies can be checked on separate threads
+  once every signature is in the shared table.
+*/
+public class SymbolTable {
+
+    static class Scope {
+        final String name;    // null for a block
+        final ArrayList<NodeType> symbols;
+
+        Scope( String name, ArrayList<NodeType> symbols ) {
+            this.name = name;
+            this.symbols = symbols;
+        }
+    }
+
+    private Scope[] scopes = new Scope[16];
+    private int depth = 0;
+
+    /* indexed by name id */
+    private NodeType[] locals = new NodeType[64];
+    private NodeType[] globals = new NodeType[64];
+
+    /* position of globals[id] in the global scope */
+    private int[] order = new int[64];
+
+    /* scopes of functions that have been left, by function name */
+    private final HashMap<String, ArrayList<NodeType>> closed;
+
+    /* for a view: the table holding the globals, and how many of them
+       the view sees */
+    private final SymbolTable parent;
+    private int limit;
+
+    public SymbolTable() {
+        scopes[0] = new Scope( "global", new ArrayList<NodeType>() );
+        closed = new HashMap<String, ArrayList<NodeType>>();
+        parent = null;
+    }
+
+    private SymbolTable( SymbolTable parent ) {
+        scopes[0] = parent.scopes[0];
+        closed = parent.closed;
+        this.parent = parent;
+        limit = parent.global().size();
+    }
+
+    /* A table for one function body that reads this table's globals.
+       The views and this table must not be changed at the same time,
+       except for the local scopes of each view. */
+    public SymbolTable view() {
+        return parent != null ? parent.view() : new SymbolTable( this );
+    }
+
+    public boolean atGlobal() {
+        return depth == 0;
+    }
+
+    /* symbols of the innermost scope, in declaration order */
+    public ArrayList<NodeType> current() {
+        return scopes[depth].symbols;
+    }
+
+    public ArrayList<NodeType> global() {
+        return scopes[0].symbols;
+    }
+
+    /* A view keeps the function's scope on entry instead of on exit,
+       so views never change the shared map while bodies are checked */
+    public void enterFunction( String name ) {
+        ArrayList<NodeType> symbols = name != null ? closed.remove( name ) : null;
+        if( symbols == null ) {
+            push( name, new ArrayList<NodeType>() );
+        } else {
+            push( name, symbols );
+            for( NodeType node : symbols )
+                link( node );
+        }
+        if( parent != null && name != null )
+            closed.put( name, current() );
+    }
+
+    public void enterBlock() {
+        push( null, new ArrayList<NodeType>() );
+    }
+
+    /* Leaves the innermost scope; a function scope is kept for enterFunction */
+    public void exit() {
+        Scope scope = scopes[depth];
+        ArrayList<NodeType> symbols = scope.symbols;
+        for( int i = symbols.size() - 1; i >= 0; i-- ) {
+            NodeType node = symbols.get( i );
+            if( node.id >= 0 )
+                locals[node.id] = node.shadowed;
+        }
+        scopes[depth--] = null;
+        if( depth == 0 && scope.name != null && parent == null )
+            closed.put( scope.name, symbols );
+    }
+
+    /* Drops the kept scope of a function */
+    public void forget( String name ) {
+        closed.remove( name );
+    }
+
+    public void insert( NodeType node ) {
+        current().add( node );
+        if( depth == 0 )
+            addGlobal( node );
+        else
+            link( node );
+    }
+
+    public void insertGlobal( NodeType node ) {
+        if( parent != null ) {
+            parent.insertGlobal( node );
+            limit = parent.global().size();
+            return;
+        }
+        global().add( node );
+        addGlobal( node );
+    }
+
+    /* The visible declaration of id: the local one if any, else the global */
+    public NodeType lookup( int id ) {
+        if( id < 0 )
+            return null;
+        if( depth > 0 && id < locals.length && locals[id] != null )
+            return locals[id];
+        return lookupGlobal( id );
+    }
+
+    public NodeType lookupGlobal( int id ) {
+        if( parent != null ) {
+            NodeType node = parent.lookupGlobal( id );
+            return node != null && parent.order[id] < limit ? node : null;
+        }
+        return id >= 0 && id < globals.length ? globals[id] : null;
+    }
+
+    private void push( String name, ArrayList<NodeType> symbols ) {
+        if( depth + 1 == scopes.length )
+            scopes = java.util.Arrays.copyOf( scopes, scopes.length * 2 );
+        scopes[++depth] = new Scope( name, symbols );
+    }
+
+    private void link( NodeType node ) {
+        if( node.id < 0 )
+            return;
+        ensure( node.id );
+        node.shadowed = locals[node.id];
+        locals[node.id] = node;
+    }
+
+    private void addGlobal( NodeType node ) {
+        if( node.id < 0 )
+            return;
+        ensure( node.id );
+        if( globals[node.id] == null ) {
+            globals[node.id] = node;
+            order[node.id] = global().size() - 1;
+        }
+    }
+
+    private void ensure( int id ) {
+        if( id >= locals.length ) {
+            int size = Math.max( id + 1, locals.length * 2 );
+            locals = java.util.Arrays.copyOf( locals, size );
+            if( parent != null )
+                return;    // a view's globals are its parent's
+            globals = java.util.Arrays.copyOf( globals, size );
+            order = java.util.Arrays.copyOf( order, size );
+        }
+    }
+}
@@ -3,16 +3,18 @@ package absyn;
 public class ArrayDec extends VarDec {
     public NameTy typ;
     public String name;
+    public int nameId;
     public int size;
     // public int nestLevel;
     // public int offset;
 
     // public ArrayDec ( int row, int col, NameTy typ, String name, int size, int nestLevel, int offset ) {
-    public ArrayDec ( int row, int col, NameTy typ, String name, int size ) {
+    public ArrayDec ( int row, int col, NameTy typ, Name name, int size ) {
         this.row = row;
         this.col = col;
         this.typ = typ;
-        this.name = name;
+        this.name = name == null ? null : name.text;
+        this.nameId = name == null ? -1 : name.id;
         this.size = size;
         // this.nestLevel = nestLevel;
         // this.offset = offset;
@@ -0,0 +1,435 @@
+package absyn;
+
+import java.nio.ByteBuffer;
+import java.nio.BufferUnderflowException;
+import java.util.Arrays;
+
+/* Struct-of-arrays store for a whole program. Every node is an index into
+   parallel primitive arrays holding its kind, position and up to three
+   operands, instead of a separate heap object with its own header and
+   pointers. Lists are packed into one shared int array as a count
+   followed by the element indices.
+
+   VarExp and the Var it wraps share one node (the parser gives both the
+   same position), and a declaration's NameTy is folded into its operands.
+
+   The parsed tree is packed once with pack(). Visitors walk the arena
+   through root(), which materializes one top-level declaration at a time,
+   so only the declaration being visited exists as objects. */
+public class AstArena {
+    /* node kinds */
+    public final static byte SIMPLE_DEC = 0;    // a = name id, b = type
+    public final static byte ARRAY_DEC = 1;     // a = name id, b = type, c = size
+    public final static byte FUNCTION_DEC = 2;  // a = name id, b = result type, c = extra: body, params list
+    public final static byte COMPOUND = 3;      // a = decs list, b = exps list
+    public final static byte ASSIGN = 4;        // a = lhs var, b = rhs
+    public final static byte OP = 5;            // a = left, b = operator, c = right
+    public final static byte CALL = 6;          // a = name id, b = args list
+    public final static byte SIMPLE_VAR = 7;    // a = name id, c = column of the name
+    public final static byte INDEX_VAR = 8;     // a = name id, b = index, c = column of the name
+    public final static byte INT = 9;           // a = value
+    public final static byte BOOL = 10;         // a = 0 or 1
+    public final static byte NIL = 11;
+    public final static byte IF = 12;           // a = test, b = then, c = else
+    public final static byte WHILE = 13;        // a = test, b = body
+    public final static byte RETURN = 14;       // a = exp
+
+    /* marks an absent child or list */
+    public final static int NONE = -1;
+
+    public final NameTable names;
+
+    byte[] kind = new byte[256];
+    int[] row = new int[256];
+    int[] col = new int[256];
+    int[] a = new int[256];
+    int[] b = new int[256];
+    int[] c = new int[256];
+    int nodes = 0;
+
+    int[] lists = new int[256];
+    int listsSize = 0;
+
+    int root = NONE;    // list of top-level declarations
+
+    /* Packs operator chains as add() would, both operands before the
+       operator, but with a stack of its own so deep expressions fit;
+       the node numbers of packed operands wait in operands[] */
+    private int[] operands = new int[16];
+    private int operandCount = 0;
+    private final OpExpWalker operators = new OpExpWalker( 0 ) {
+        protected void operand( Exp exp, int level, boolean flag ) {
+            pushOperand( add( exp ) );
+        }
+
+        protected void leave( OpExp exp, int level, boolean flag ) {
+            int right = operands[--operandCount];
+            int left = operands[--operandCount];
+            pushOperand( node( OP, exp.row, exp.col, left, exp.op, right ) );
+        }
+    };
+
+    public AstArena( NameTable names ) {
+        this.names = names;
+    }
+
+    /* Packs a parsed program. The tree is not referenced afterwards. */
+    public static AstArena pack( DecList program, NameTable names ) {
+        AstArena arena = new AstArena( names );
+        int count = 0;
+        for( DecList d = program; d != null; d = d.tail )
+            count++;
+        int[] decs = new int[count];
+        int i = 0;
+        for( DecList d = program; d != null; d = d.tail )
+            decs[i++] = arena.add( d.head );
+        arena.root = arena.addList( decs, count );
+        arena.trim();
+        return arena;
+    }
+
+    /* Drops the spare capacity left over from growing the arrays. */
+    void trim() {
+        kind = Arrays.copyOf( kind, nodes );
+        row = Arrays.copyOf( row, nodes );
+        col = Arrays.copyOf( col, nodes );
+        a = Arrays.copyOf( a, nodes );
+        b = Arrays.copyOf( b, nodes );
+        c = Arrays.copyOf( c, nodes );
+        lists = Arrays.copyOf( lists, listsSize );
+    }
+
+    public int size() {
+        return nodes;
+    }
+
+    /* Bytes held by the arrays, counting only the used part of each. */
+    public long footprint() {
+        return (long) nodes * (1 + 5 * 4) + (long) listsSize * 4;
+    }
+
+    /* Serialized layout, all big-endian: MAGIC, name count, each name as a
+       length-prefixed ASCII string in id order, node count, list size, root,
+       then the kind bytes followed by the int arrays back to back. */
+    public final static int MAGIC = 0x434d4131;    // "CMA1"
+
+    /* Bump whenever the layout, the node kinds or what a node holds
+       change: AstCache keys its entries by it, so stale ones miss. */
+    public final static int FORMAT = 2;
+
+    /* Writes the arena and its names into one exactly sized buffer. */
+    public ByteBuffer toBytes() {
+        int size = 4 * 5 + nodes + (nodes * 5 + listsSize) * 4;
+        for( int id = 0; id < names.size(); id++ )
+            size += 2 + names.get( id ).text.length();
+        ByteBuffer out = ByteBuffer.allocate( size );
+        out.putInt( MAGIC );
+        out.putInt( names.size() );
+        for( int id = 0; id < names.size(); id++ ) {
+            String text = names.get( id ).text;
+            out.putShort( (short) text.length() );
+            for( int i = 0; i < text.length(); i++ )
+                out.put( (byte) text.charAt( i ) );
+        }
+        out.putInt( nodes );
+        out.putInt( listsSize );
+        out.putInt( root );
+        out.put( kind, 0, nodes );
+        for( int[] column : new int[][] { row, col, a, b, c } ) {
+            out.asIntBuffer().put( column, 0, nodes );
+            out.position( out.position() + nodes * 4 );
+        }
+        out.asIntBuffer().put( lists, 0, listsSize );
+        out.position( out.position() + listsSize * 4 );
+        out.flip();
+        return out;
+    }
+
+    /* Rebuilds an arena written by toBytes(). Returns null if the bytes
+       are not a well-formed arena. */
+    public static AstArena fromBytes( ByteBuffer in ) {
+        try {
+            if( in.getInt() != MAGIC )
+                return null;
+            NameTable names = new NameTable();
+            int count = in.getInt();
+            char[] buf = new char[64];
+            for( int id = 0; id < count; id++ ) {
+                int len = in.getShort() & 0xffff;
+                if( len > buf.length )
+                    buf = new char[len];
+                for( int i = 0; i < len; i++ )
+                    buf[i] = (char) (in.get() & 0xff);
+                if( names.intern( buf, 0, len ).id != id )
+                    return null;
+            }
+            AstArena arena = new AstArena( names );
+            int nodes = in.getInt();
+            int listsSize = in.getInt();
+            arena.root = in.getInt();
+            if( nodes < 0 || listsSize < 0 || (long) nodes * 21 + (long) listsSize * 4 != in.remaining() )
+                return null;
+            arena.nodes = nodes;
+            arena.listsSize = listsSize;
+            arena.kind = new byte[nodes];
+            in.get( arena.kind );
+            arena.row = ints( in, nodes );
+            arena.col = ints( in, nodes );
+            arena.a = ints( in, nodes );
+            arena.b = ints( in, nodes );
+            arena.c = ints( in, nodes );
+            arena.lists = ints( in, listsSize );
+            return arena;
+        } catch( BufferUnderflowException e ) {
+            return null;
+        }
+    }
+
+    private static int[] ints( ByteBuffer in, int n ) {
+        int[] values = new int[n];
+        in.asIntBuffer().get( values );
+        in.position( in.position() + n * 4 );
+        return values;
+    }
+
+    /* Exposes the packed program to AbsynVisitor implementations. */
+    public Absyn root() {
+        return new Absyn() {
+            public void accept( AbsynVisitor visitor, int level, boolean flag ) {
+                if( root == NONE )
+                    return;
+                for( int i = 1; i <= lists[root]; i++ ) {
+                    Dec dec = (Dec) materialize( lists[root + i] );
+                    if( dec != null )
+                        new DecList( dec, null ).accept( visitor, level, flag );
+                }
+            }
+        };
+    }
+
+    /* Rebuilds the whole program as an ordinary object tree. */
+    public DecList toDecList() {
+        DecList head = null;
+        if( root != NONE )
+            for( int i = lists[root]; i >= 1; i-- )
+                head = new DecList( (Dec) materialize( lists[root + i] ), head );
+        return head;
+    }
+
+    int node( byte k, int r, int cl, int x, int y, int z ) {
+        if( nodes == kind.length ) {
+            int n = Math.max( nodes * 2, 16 );
+            kind = Arrays.copyOf( kind, n );
+            row = Arrays.copyOf( row, n );
+            col = Arrays.copyOf( col, n );
+            a = Arrays.copyOf( a, n );
+            b = Arrays.copyOf( b, n );
+            c = Arrays.copyOf( c, n );
+        }
+        kind[nodes] = k;
+        row[nodes] = r;
+        col[nodes] = cl;
+        a[nodes] = x;
+        b[nodes] = y;
+        c[nodes] = z;
+        return nodes++;
+    }
+
+    int addList( int[] items, int count ) {
+        if( listsSize + count + 1 > lists.length )
+            lists = Arrays.copyOf( lists, Math.max( lists.length * 2, listsSize + count + 1 ) );
+        int at = listsSize;
+        lists[listsSize++] = count;
+        for( int i = 0; i < count; i++ )
+            lists[listsSize++] = items[i];
+        return at;
+    }
+
+    private int addVarDecs( VarDecList list ) {
+        if( list == null )
+            return NONE;
+        int count = 0;
+        for( VarDecList l = list; l != null; l = l.tail )
+            count++;
+        int[] items = new int[count];
+        int i = 0;
+        for( VarDecList l = list; l != null; l = l.tail )
+            items[i++] = add( l.head );
+        return addList( items, count );
+    }
+
+    private int addExps( ExpList list ) {
+        if( list == null )
+            return NONE;
+        int count = 0;
+        for( ExpList l = list; l != null; l = l.tail )
+            count++;
+        int[] items = new int[count];
+        int i = 0;
+        for( ExpList l = list; l != null; l = l.tail )
+            items[i++] = add( l.head );
+        return addList( items, count );
+    }
+
+    private int add( Absyn tree ) {
+        if( tree == null )
+            return NONE;
+        if( tree instanceof SimpleDec ) {
+            SimpleDec dec = (SimpleDec) tree;
+            return node( SIMPLE_DEC, dec.row, dec.col, dec.nameId, dec.typ.typ, 0 );
+        } else if( tree instanceof ArrayDec ) {
+            ArrayDec dec = (ArrayDec) tree;
+            return node( ARRAY_DEC, dec.row, dec.col, dec.nameId, dec.typ.typ, dec.size );
+        } else if( tree instanceof FunctionDec ) {
+            FunctionDec dec = (FunctionDec) tree;
+            int[] extra = { add( dec.body() ), addVarDecs( dec.params ) };
+            return node( FUNCTION_DEC, dec.row, dec.col, dec.funcId, dec.result.typ, addList( extra, 2 ) );
+        } else if( tree instanceof CompoundExp ) {
+            CompoundExp exp = (CompoundExp) tree;
+            return node( COMPOUND, exp.row, exp.col, addVarDecs( exp.decs ), addExps( exp.exps ), 0 );
+        } else if( tree instanceof AssignExp ) {
+            AssignExp exp = (AssignExp) tree;
+            return node( ASSIGN, exp.row, exp.col, add( exp.lhs ), add( exp.rhs ), 0 );
+        } else if( tree instanceof OpExp ) {
+            operators.walk( (OpExp) tree, 0, false );
+            return operands[--operandCount];
+        } else if( tree instanceof CallExp ) {
+            CallExp exp = (CallExp) tree;
+            return node( CALL, exp.row, exp.col, exp.funcId, addExps( exp.args ), 0 );
+        } else if( tree instanceof VarExp ) {
+            VarExp exp = (VarExp) tree;
+            if( exp.variable instanceof IndexVar ) {
+                IndexVar var = (IndexVar) exp.variable;
+                return node( INDEX_VAR, exp.row, exp.col, var.nameId, add( var.index ), var.col );
+            }
+            return node( SIMPLE_VAR, exp.row, exp.col, ((SimpleVar) exp.variable).nameId, 0, exp.variable.col );
+        } else if( tree instanceof IntExp ) {
+            IntExp exp = (IntExp) tree;
+            return node( INT, exp.row, exp.col, exp.value, 0, 0 );
+        } else if( tree instanceof BoolExp ) {
+            BoolExp exp = (BoolExp) tree;
+            return node( BOOL, exp.row, exp.col, exp.value ? 1 : 0, 0, 0 );
+        } else if( tree instanceof NilExp ) {
+            return node( NIL, tree.row, tree.col, 0, 0, 0 );
+        } else if( tree instanceof IfExp ) {
+            IfExp exp = (IfExp) tree;
+            return node( IF, exp.row, exp.col, add( exp.test ), add( exp.then ), add( exp.elsee ) );
+        } else if( tree instanceof WhileExp ) {
+            WhileExp exp = (WhileExp) tree;
+            return node( WHILE, exp.row, exp.col, add( exp.test ), add( exp.body ), 0 );
+        } else if( tree instanceof ReturnExp ) {
+            ReturnExp exp = (ReturnExp) tree;
+            return node( RETURN, exp.row, exp.col, add( exp.exp ), 0, 0 );
+        }
+        throw new IllegalArgumentException( "cannot pack " + tree.getClass().getName() );
+    }
+
+    private void pushOperand( int n ) {
+        if( operandCount == operands.length )
+            operands = Arrays.copyOf( operands, operandCount * 2 );
+        operands[operandCount++] = n;
+    }
+
+    /* Builds a chain of OP nodes top down, the OpExps first and their
+       operands filled in from a stack, so materializing a deep
+       expression does not recurse; other operands are materialized as
+       usual. The stack is local, as materialize() keeps no state. */
+    private OpExp ops( int n ) {
+        int[] pending = new int[16];
+        OpExp[] built = new OpExp[16];
+        int count = 0;
+        OpExp root = new OpExp( row[n], col[n], null, b[n], null );
+        pending[count] = n;
+        built[count++] = root;
+        while( count > 0 ) {
+            int m = pending[--count];
+            OpExp exp = built[count];
+            for( int side = 0; side < 2; side++ ) {
+                int operand = side == 0 ? a[m] : c[m];
+                Exp child;
+                if( operand != NONE && kind[operand] == OP ) {
+                    child = new OpExp( row[operand], col[operand], null, b[operand], null );
+                    if( count == pending.length ) {
+                        pending = Arrays.copyOf( pending, count * 2 );
+                        built = Arrays.copyOf( built, count * 2 );
+                    }
+                    pending[count] = operand;
+                    built[count++] = (OpExp) child;
+                } else {
+                    child = (Exp) materialize( operand );
+                }
+                if( side == 0 )
+                    exp.left = child;
+                else
+                    exp.right = child;
+            }
+        }
+        return root;
+    }
+
+    private VarDecList varDecs( int list ) {
+        VarDecList head = null;
+        if( list != NONE )
+            for( int i = lists[list]; i >= 1; i-- )
+                head = new VarDecList( (VarDec) materialize( lists[list + i] ), head );
+        return head;
+    }
+
+    private ExpList exps( int list ) {
+        ExpList head = null;
+        if( list != NONE )
+            for( int i = lists[list]; i >= 1; i-- )
+                head = new ExpList( (Exp) materialize( lists[list + i] ), head );
+        return head;
+    }
+
+    /* The variable of a VarExp starts on its row, at its own column:
+       a VarExp of an IndexVar is placed at the closing bracket */
+    private Var var( int n ) {
+        Name name = names.get( a[n] );
+        if( kind[n] == INDEX_VAR )
+            return new IndexVar( row[n], c[n], name, (Exp) materialize( b[n] ) );
+        return new SimpleVar( row[n], c[n], name );
+    }
+
+    /* Builds the object form of node n and everything below it. */
+    public Absyn materialize( int n ) {
+        if( n == NONE )
+            return null;
+        int r = row[n];
+        int cl = col[n];
+        switch( kind[n] ) {
+            case SIMPLE_DEC:
+                return new SimpleDec( r, cl, new NameTy( r, cl, b[n] ), names.get( a[n] ) );
+            case ARRAY_DEC:
+                return new ArrayDec( r, cl, new NameTy( r, cl, b[n] ), names.get( a[n] ), c[n] );
+            case FUNCTION_DEC:
+                return new FunctionDec( r, cl, new NameTy( r, cl, b[n] ), names.get( a[n] ),
+                                        varDecs( lists[c[n] + 2] ), (Exp) materialize( lists[c[n] + 1] ) );
+            case COMPOUND:
+                return new CompoundExp( r, cl, varDecs( a[n] ), exps( b[n] ) );
+            case ASSIGN:
+                return new AssignExp( r, cl, (VarExp) materialize( a[n] ), (Exp) materialize( b[n] ) );
+            case OP:
+                return ops( n );
+            case CALL:
+                return new CallExp( r, cl, names.get( a[n] ), exps( b[n] ) );
+            case SIMPLE_VAR:
+            case INDEX_VAR:
+                return new VarExp( r, cl, var( n ) );
+            case INT:
+                return new IntExp( r, cl, a[n] );
+            case BOOL:
+                return new BoolExp( r, cl, a[n] != 0 );
+            case NIL:
+                return new NilExp( r, cl );
+            case IF:
+                return new IfExp( r, cl, (Exp) materialize( a[n] ), (Exp) materialize( b[n] ), (Exp) materialize( c[n] ) );
+            case WHILE:
+                return new WhileExp( r, cl, (Exp) materialize( a[n] ), (Exp) materialize( b[n] ) );
+            case RETURN:
+                return new ReturnExp( r, cl, (Exp) materialize( a[n] ) );
+        }
+        throw new IllegalStateException( "bad node kind " + kind[n] );
+    }
+}
@@ -0,0 +1,6 @@
+package absyn;
+
+/* Parses a function body that the front end skipped, on first use. */
+public interface BodyLoader {
+    public Exp load( LazyBody body );
+}
@@ -2,12 +2,14 @@ package absyn;
 
 public class CallExp extends Exp {
     public String func;
+    public int funcId;
     public ExpList args;
 
-    public CallExp ( int row, int col, String func, ExpList args ) {
+    public CallExp ( int row, int col, Name func, ExpList args ) {
         this.row = row;
         this.col = col;
-        this.func = func;
+        this.func = func.text;
+        this.funcId = func.id;
         this.args = args;
     }
     
@@ -0,0 +1,8 @@
+package absyn;
+
+/* Receives each top-level declaration as soon as the parser reduces it,
+   in source order. A declaration the parser could not recover is passed
+   as null. */
+public interface DecSink {
+    public void declare( Dec dec );
+}
@@ -1,7 +1,11 @@
 package absyn;
 
 abstract public class Exp extends Absyn {
+    /* Filled in bottom up by SemanticAnalyzer: the type of the expression
+       (-1 when it has none or is in error) and, for a variable or a call,
+       the declaration it resolves to (null if undefined). */
     public int dtype;
+    public Dec def;
     
     public int getType(){
         return -1;
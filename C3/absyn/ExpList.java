@@ -9,6 +9,19 @@ public class ExpList extends Absyn {
         this.tail = tail;
     }
 
+    /* Reverses the list in place and returns the new head. The parser
+       prepends while reducing and restores source order with one call. */
+    public static ExpList reverse( ExpList list ) {
+        ExpList reversed = null;
+        while( list != null ) {
+            ExpList next = list.tail;
+            list.tail = reversed;
+            reversed = list;
+            list = next;
+        }
+        return reversed;
+    }
+
     public void accept( AbsynVisitor visitor, int level, boolean flag ) {
         visitor.visit( this, level, flag );
     }
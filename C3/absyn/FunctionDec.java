@@ -3,21 +3,45 @@ package absyn;
 public class FunctionDec extends Dec {
     public NameTy result;
     public String func;
+    public int funcId;
     public VarDecList params;
     public Exp body;
+    public int frameOffset;    // first slot below the locals, set by Resolver
     // public int funaddr;
 
     // public FunctionDec ( int row, int col, NameTy result, String func, VarDecList params, Exp body, int funaddr ) {
-    public FunctionDec ( int row, int col, NameTy result, String func, VarDecList params, Exp body ) {
+    public FunctionDec ( int row, int col, NameTy result, Name func, VarDecList params, Exp body ) {
         this.row = row;
         this.col = col;
         this.result = result;
-        this.func = func;
+        this.func = func == null ? null : func.text;
+        this.funcId = func == null ? -1 : func.id;
         this.params = params;
         this.body = body;
         // this.funaddr = funaddr;
     }
 
+    /* A prototype has no body at all; a definition's body may still be a
+       LazyBody, which is parsed and swapped in here on first use. */
+    public boolean isPrototype() {
+        return body == null;
+    }
+
+    /* Stands in for a body that has been compiled and released; the
+       function still counts as defined. */
+    private final static Exp RELEASED = new NilExp( -1, -1 );
+
+    public void releaseBody() {
+        if( body != null )
+            body = RELEASED;
+    }
+
+    public Exp body() {
+        if( body instanceof LazyBody )
+            body = ((LazyBody) body).load();
+        return body;
+    }
+
     public String toString() {
         String parameters = (params != null) ? "(" + params.toString() + ")" : "(void)";
         if(result.typ == 0) return parameters + " -> bool";
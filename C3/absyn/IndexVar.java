@@ -2,12 +2,14 @@ package absyn;
 
 public class IndexVar extends Var {
     public String name;
+    public int nameId;
     public Exp index;
 
-    public IndexVar ( int row, int col, String name, Exp index ) {
+    public IndexVar ( int row, int col, Name name, Exp index ) {
         this.row = row;
         this.col = col;
-        this.name = name;
+        this.name = name.text;
+        this.nameId = name.id;
         this.index = index;
     }
 
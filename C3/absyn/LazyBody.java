@@ -0,0 +1,34 @@
+package absyn;
+
+/* Stands in for a function body the parser skipped. Only the position of
+   the opening brace and the character range of the braces are kept; the
+   body is parsed the first time it is asked for, and the tree is kept
+   from then on. */
+public class LazyBody extends Exp {
+    public int start;     // offset of the opening brace
+    public int end;       // offset just past the closing brace
+    private BodyLoader loader;
+    private Exp body;
+
+    public LazyBody( int row, int col, int start, int end, BodyLoader loader ) {
+        this.row = row;
+        this.col = col;
+        this.start = start;
+        this.end = end;
+        this.loader = loader;
+    }
+
+    public Exp load() {
+        if( loader != null ) {
+            body = loader.load( this );
+            loader = null;
+        }
+        return body;
+    }
+
+    public void accept( AbsynVisitor visitor, int level, boolean flag ) {
+        Exp exp = load();
+        if( exp != null )
+            exp.accept( visitor, level, flag );
+    }
+}
@@ -0,0 +1,17 @@
+package absyn;
+
+/* An interned identifier. There is exactly one Name per spelling in a
+   NameTable, so names can be compared by id or by reference. */
+public final class Name {
+    public final String text;
+    public final int id;
+
+    Name( String text, int id ) {
+        this.text = text;
+        this.id = id;
+    }
+
+    public String toString() {
+        return text;
+    }
+}
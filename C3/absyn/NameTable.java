@@ -0,0 +1,90 @@
+package absyn;
+
+/* Compilation-wide identifier table. The lexer interns every ID straight
+   out of its character buffer, so an identifier that has been seen before
+   costs a probe and no allocation. Ids are dense, starting at 0, which
+   lets later phases index plain arrays by name instead of hashing. */
+public class NameTable {
+    /* ids reserved for the names the back end treats specially */
+    public final static int INPUT = 0;
+    public final static int OUTPUT = 1;
+    public final static int MAIN = 2;
+
+    private Name[] names = new Name[64];    // indexed by id
+    private int[] hashes = new int[64];     // indexed by id
+    private int[] slots = new int[128];     // open addressing, holds id + 1
+    private int count = 0;
+
+    public NameTable() {
+        intern( "input" );
+        intern( "output" );
+        intern( "main" );
+    }
+
+    public Name intern( String text ) {
+        return intern( text.toCharArray(), 0, text.length() );
+    }
+
+    public Name intern( char[] buf, int off, int len ) {
+        int hash = hash( buf, off, len );
+        int mask = slots.length - 1;
+        int i = hash & mask;
+        while( slots[i] != 0 ) {
+            int id = slots[i] - 1;
+            if( hashes[id] == hash && matches( names[id].text, buf, off, len ) )
+                return names[id];
+            i = (i + 1) & mask;
+        }
+        return add( new String( buf, off, len ), hash, i );
+    }
+
+    /* Returns the name with the given id, or null for an unknown id. */
+    public Name get( int id ) {
+        return id >= 0 && id < count ? names[id] : null;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    private Name add( String text, int hash, int slot ) {
+        if( count == names.length ) {
+            names = java.util.Arrays.copyOf( names, count * 2 );
+            hashes = java.util.Arrays.copyOf( hashes, count * 2 );
+        }
+        Name name = new Name( text, count );
+        names[count] = name;
+        hashes[count] = hash;
+        slots[slot] = ++count;
+        if( count * 2 > slots.length )
+            rehash();
+        return name;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+        for( int id = 0; id < count; id++ ) {
+            int i = hashes[id] & mask;
+            while( slots[i] != 0 )
+                i = (i + 1) & mask;
+            slots[i] = id + 1;
+        }
+    }
+
+    private static int hash( char[] buf, int off, int len ) {
+        int h = 0;
+        for( int i = off; i < off + len; i++ )
+            h = 31 * h + buf[i];
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean matches( String text, char[] buf, int off, int len ) {
+        if( text.length() != len )
+            return false;
+        for( int i = 0; i < len; i++ )
+            if( text.charAt( i ) != buf[off + i] )
+                return false;
+        return true;
+    }
+}
@@ -0,0 +1,93 @@
+package absyn;
+
+import java.util.Arrays;
+
+/* Walks an OpExp and the OpExps nested in its operands with a stack of
+   its own, so a long chain of operators, nested to the left, to the
+   right or through unary minus, costs heap instead of Java stack.
+   Operands that are not OpExps go to operand(), which visits them as
+   usual; an OpExp inside one of them (an array index or a call
+   argument) is walked again from there, on the same stack.
+
+   The hooks run in the order a recursive visitor calls them: enter() on
+   the way down, the left operand, between(), the right operand, then
+   leave(); a walker made with rightFirst takes the right operand before
+   the left. Each hook gets the level given to walk() plus step for
+   every OpExp above it, as a visitor that adds step per operator
+   would. */
+public abstract class OpExpWalker {
+    private final int step;
+    private final boolean rightFirst;
+
+    /* OpExps on the path from the root, and whether their second
+       operand has been started */
+    private OpExp[] stack = new OpExp[16];
+    private boolean[] second = new boolean[16];
+    private int top = 0;
+
+    protected OpExpWalker( int step ) {
+        this( step, false );
+    }
+
+    protected OpExpWalker( int step, boolean rightFirst ) {
+        this.step = step;
+        this.rightFirst = rightFirst;
+    }
+
+    protected void enter( OpExp exp, int level, boolean flag ) {
+    }
+
+    /* An operand that is not an OpExp, possibly null */
+    protected abstract void operand( Exp exp, int level, boolean flag );
+
+    protected void between( OpExp exp, int level, boolean flag ) {
+    }
+
+    protected void leave( OpExp exp, int level, boolean flag ) {
+    }
+
+    public final void walk( OpExp root, int level, boolean flag ) {
+        int base = top;
+        try {
+            Exp exp = root;
+            while( true ) {
+                while( exp instanceof OpExp ) {
+                    OpExp op = (OpExp) exp;
+                    enter( op, level + (top - base) * step, flag );
+                    push( op );
+                    exp = rightFirst ? op.right : op.left;
+                }
+                operand( exp, level + (top - base) * step, flag );
+
+                // Back up to the nearest operator still missing its second operand
+                while( true ) {
+                    if( top == base )
+                        return;
+                    OpExp op = stack[top - 1];
+                    int at = level + (top - 1 - base) * step;
+                    if( !second[top - 1] ) {
+                        second[top - 1] = true;
+                        between( op, at, flag );
+                        exp = rightFirst ? op.left : op.right;
+                        break;
+                    }
+                    stack[--top] = null;
+                    leave( op, at, flag );
+                }
+            }
+        } finally {
+            // A hook that throws (an aborted compilation) leaves nothing behind
+            while( top > base )
+                stack[--top] = null;
+        }
+    }
+
+    private void push( OpExp op ) {
+        if( top == stack.length ) {
+            stack = Arrays.copyOf( stack, top * 2 );
+            second = Arrays.copyOf( second, top * 2 );
+        }
+        stack[top] = op;
+        second[top++] = false;
+    }
+}
@@ -3,15 +3,17 @@ package absyn;
 public class SimpleDec extends VarDec {
     public NameTy typ;
     public String name;
+    public int nameId;
     // public int nestLevel;
     // public int offset;
 
     // public SimpleDec ( int row, int col, NameTy typ, String name, int nestLevel, int offset ) {
-    public SimpleDec ( int row, int col, NameTy typ, String name ) {
+    public SimpleDec ( int row, int col, NameTy typ, Name name ) {
         this.row = row;
         this.col = col;
         this.typ = typ;
-        this.name = name;
+        this.name = name == null ? null : name.text;
+        this.nameId = name == null ? -1 : name.id;
         // this.nestLevel = nestLevel;
         // this.offset = offset;
     }
@@ -2,12 +2,14 @@ package absyn;
 
 public class SimpleVar extends Var {
     public String name;
+    public int nameId;
     public int type = 3;
 
-    public SimpleVar ( int row, int col, String name ) {
+    public SimpleVar ( int row, int col, Name name ) {
         this.row = row;
         this.col = col;
-        this.name = name;
+        this.name = name.text;
+        this.nameId = name.id;
     }
 
     public int getType(){
@@ -1,6 +1,9 @@
 package absyn;
 
 abstract public class Var extends Absyn {
+    /* declaration in scope, set by Resolver; null if there is none */
+    public VarDec dec;
+
     public int getType(){
         return -1;
     }
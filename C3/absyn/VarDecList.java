@@ -9,6 +9,19 @@ public class VarDecList extends Absyn {
       this.tail = tail;
     }
 
+    /* Reverses the list in place and returns the new head. The parser
+       prepends while reducing and restores source order with one call. */
+    public static VarDecList reverse( VarDecList list ) {
+      VarDecList reversed = null;
+      while( list != null ) {
+        VarDecList next = list.tail;
+        list.tail = reversed;
+        reversed = list;
+        list = next;
+      }
+      return reversed;
+    }
+
     public String toString() {
       String varTypes = "";
       VarDecList pointer = this;
@@ -0,0 +1,128 @@
+package ir;
+
+/* The analyses of one Function that passes ask for, by name. Each is
+   computed the first time it is asked for and kept until a pass
+   changes the code in a way it does not preserve. The analyses depend
+   on one another, so dropping one drops those built on it: everything
+   on the Cfg, and Liveness and ReachingDefinitions on Variables. */
+public class Analyses {
+    public final static String CFG = "cfg";
+    public final static String DOMINATORS = "dominators";
+    public final static String VARIABLES = "variables";
+    public final static String LIVENESS = "liveness";
+    public final static String REACHING_DEFINITIONS = "reaching-definitions";
+
+    public final Function function;
+
+    private Cfg cfg;
+    private Dominators dominators;
+    private Variables variables;
+    private Liveness liveness;
+    private ReachingDefinitions reachingDefinitions;
+
+    /* time spent computing analyses */
+    public long nanos = 0;
+
+    public Analyses( Function function ) {
+        this.function = function;
+    }
+
+    public Cfg cfg() {
+        if( cfg == null ) {
+            long start = System.nanoTime();
+            cfg = new Cfg( function );
+            nanos += System.nanoTime() - start;
+        }
+        return cfg;
+    }
+
+    public Dominators dominators() {
+        if( dominators == null ) {
+            Cfg graph = cfg();
+            long start = System.nanoTime();
+            dominators = new Dominators( graph );
+            nanos += System.nanoTime() - start;
+        }
+        return dominators;
+    }
+
+    public Variables variables() {
+        if( variables == null ) {
+            Cfg graph = cfg();
+            long start = System.nanoTime();
+            variables = new Variables( graph );
+            nanos += System.nanoTime() - start;
+        }
+        return variables;
+    }
+
+    public Liveness liveness() {
+        if( liveness == null ) {
+            Variables vars = variables();
+            long start = System.nanoTime();
+            liveness = new Liveness( cfg, vars ).solve();
+            nanos += System.nanoTime() - start;
+        }
+        return liveness;
+    }
+
+    public ReachingDefinitions reachingDefinitions() {
+        if( reachingDefinitions == null ) {
+            Variables vars = variables();
+            long start = System.nanoTime();
+            reachingDefinitions = new ReachingDefinitions( cfg, vars ).solve();
+            nanos += System.nanoTime() - start;
+        }
+        return reachingDefinitions;
+    }
+
+    /* Computes an analysis by name, if it is not kept already */
+    public void compute( String name ) {
+        switch( name ) {
+            case CFG:
+                cfg();
+                break;
+            case DOMINATORS:
+                dominators();
+                break;
+            case VARIABLES:
+                variables();
+                break;
+            case LIVENESS:
+                liveness();
+                break;
+            case REACHING_DEFINITIONS:
+                reachingDefinitions();
+                break;
+            default:
+                throw new IllegalArgumentException( "unknown analysis " + name );
+        }
+    }
+
+    /* Drops every analysis not named in preserved, and those that
+       depend on one dropped */
+    public void retain( String[] preserved ) {
+        boolean keepCfg = false;
+        boolean keepDominators = false;
+        boolean keepVariables = false;
+        boolean keepLiveness = false;
+        boolean keepReaching = false;
+        for( String name : preserved ) {
+            keepCfg |= name.equals( CFG );
+            keepDominators |= name.equals( DOMINATORS );
+            keepVariables |= name.equals( VARIABLES );
+            keepLiveness |= name.equals( LIVENESS );
+            keepReaching |= name.equals( REACHING_DEFINITIONS );
+        }
+        if( !keepCfg )
+            cfg = null;
+        if( !keepCfg || !keepDominators )
+            dominators = null;
+        if( !keepCfg || !keepVariables )
+            variables = null;
+        if( variables == null || !keepLiveness )
+            liveness = null;
+        if( variables == null || !keepReaching )
+            reachingDefinitions = null;
+    }
+}
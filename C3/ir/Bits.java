@@ -0,0 +1,85 @@
+package ir;
+
+/* Operations on sets of small ints kept in long[] words, bit i of the
+   set in bit i % 64 of word i / 64. The dataflow analyses keep one
+   such array per block and fact set. */
+public final class Bits {
+    private Bits() {
+    }
+
+    public static int words( int bits ) {
+        return (bits + 63) >>> 6;
+    }
+
+    public static boolean get( long[] set, int i ) {
+        return (set[i >>> 6] & (1L << i)) != 0;
+    }
+
+    public static void set( long[] set, int i ) {
+        set[i >>> 6] |= 1L << i;
+    }
+
+    public static void clear( long[] set, int i ) {
+        set[i >>> 6] &= ~(1L << i);
+    }
+
+    /* Every bit below bits */
+    public static void fill( long[] set, int bits ) {
+        for( int w = 0; w < set.length; w++ )
+            set[w] = bits >= (w + 1) * 64 ? -1L : bits <= w * 64 ? 0 : (1L << (bits - w * 64)) - 1;
+    }
+
+    public static void copy( long[] into, long[] from ) {
+        System.arraycopy( from, 0, into, 0, into.length );
+    }
+
+    public static void or( long[] into, long[] from ) {
+        for( int w = 0; w < into.length; w++ )
+            into[w] |= from[w];
+    }
+
+    public static void and( long[] into, long[] from ) {
+        for( int w = 0; w < into.length; w++ )
+            into[w] &= from[w];
+    }
+
+    public static void andNot( long[] into, long[] from ) {
+        for( int w = 0; w < into.length; w++ )
+            into[w] &= ~from[w];
+    }
+
+    /* into = gen | (from & ~kill); whether into changed */
+    public static boolean transfer( long[] into, long[] gen, long[] from, long[] kill ) {
+        boolean changed = false;
+        for( int w = 0; w < into.length; w++ ) {
+            long word = gen[w] | (from[w] & ~kill[w]);
+            if( word != into[w] ) {
+                into[w] = word;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    public static int count( long[] set ) {
+        int count = 0;
+        for( long word : set )
+            count += Long.bitCount( word );
+        return count;
+    }
+
+    /* The first element at or after i, or -1 */
+    public static int next( long[] set, int i ) {
+        int w = i >>> 6;
+        if( w >= set.length )
+            return -1;
+        long word = set[w] & (-1L << i);
+        while( true ) {
+            if( word != 0 )
+                return w * 64 + Long.numberOfTrailingZeros( word );
+            if( ++w == set.length )
+                return -1;
+            word = set[w];
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package ir;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/* Simplifies jumps: a conditional jump on a constant becomes a jump or
+   goes, a jump to a jump goes straight to where that one leads, a
+   jump to the code right after it goes, and so do the labels no jump
+   is left to. Code this cuts off is for UnreachableBlocks.
+
+   Each of these changes the edges of the Cfg, which the phis of SSA
+   form hang on, so a function in SSA form is left alone. */
+public class BranchFolding extends Pass {
+
+    public BranchFolding() {
+        super( "branches", NONE, NONE );
+    }
+
+    public boolean run( Function function, Analyses analyses ) {
+        if( hasPhis( function ) )
+            return false;
+        List<Instr> code = function.code;
+        int n = code.size();
+        int[] defs = definitions( function );
+        boolean changed = false;
+
+        // Where each label is, and the constant each register is set to
+        // if it is set only to one
+        int[] labels = new int[function.labels()];
+        Arrays.fill( labels, -1 );
+        boolean[] constant = new boolean[function.registers()];
+        int[] values = new int[function.registers()];
+        for( int i = 0; i < n; i++ ) {
+            Instr instr = code.get( i );
+            if( instr.kind == Instr.LABEL )
+                labels[instr.label] = i;
+            else if( instr.kind == Instr.CONST && defs[instr.dest] == 1 ) {
+                constant[instr.dest] = true;
+                values[instr.dest] = instr.value;
+            }
+        }
+
+        boolean[] removed = new boolean[n];
+        for( int i = 0; i < n; i++ ) {
+            Instr instr = code.get( i );
+            if( instr.kind == Instr.IFFALSE && instr.a >= 0 && constant[instr.a] ) {
+                if( values[instr.a] == 0 ) {
+                    instr.kind = Instr.JUMP;
+                    instr.a = -1;
+                } else {
+                    removed[i] = true;
+                }
+                changed = true;
+            }
+            if( removed[i] || ( instr.kind != Instr.JUMP && instr.kind != Instr.IFFALSE ) )
+                continue;
+            int target = thread( code, labels, instr.label );
+            if( target != instr.label ) {
+                instr.label = target;
+                changed = true;
+            }
+            if( next( code, labels[instr.label], i ) ) {
+                removed[i] = true;
+                changed = true;
+            }
+        }
+
+        boolean[] used = new boolean[function.labels()];
+        for( int i = 0; i < n; i++ )
+            if( !removed[i] && ( code.get( i ).kind == Instr.JUMP || code.get( i ).kind == Instr.IFFALSE ) )
+                used[code.get( i ).label] = true;
+        for( int i = 0; i < n; i++ ) {
+            if( code.get( i ).kind == Instr.LABEL && !used[code.get( i ).label] ) {
+                removed[i] = true;
+                changed = true;
+            }
+        }
+        if( !changed )
+            return false;
+
+        List<Instr> result = new ArrayList<>( n );
+        for( int i = 0; i < n; i++ )
+            if( !removed[i] )
+                result.add( code.get( i ) );
+        function.code = result;
+        return true;
+    }
+
+    /* The label a jump to label ends up at, through blocks that do
+       nothing but jump; a loop of such jumps stays as it is */
+    private static int thread( List<Instr> code, int[] labels, int label ) {
+        int target = label;
+        for( int hops = 0; hops < labels.length; hops++ ) {
+            int i = labels[target];
+            while( i >= 0 && i < code.size() && code.get( i ).kind == Instr.LABEL )
+                i++;
+            if( i < 0 || i >= code.size() || code.get( i ).kind != Instr.JUMP || code.get( i ).label == target )
+                return target;
+            target = code.get( i ).label;
+        }
+        return label;
+    }
+
+    /* Whether only labels come between the jump at i and at */
+    private static boolean next( List<Instr> code, int at, int i ) {
+        if( at <= i )
+            return false;
+        for( int k = i + 1; k < at; k++ )
+            if( code.get( k ).kind != Instr.LABEL )
+                return false;
+        return true;
+    }
+}
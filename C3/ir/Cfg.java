@@ -0,0 +1,253 @@
+package ir;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.List;
+
+/* The basic blocks of a Function and the edges between them. Block 0
+   is an empty entry block and the last one an empty exit block that
+   every return goes to. The blocks between hold the code in order,
+   each a run of instructions that starts at the first one, at a label
+   or after a jump or return, so a block that falls through goes on to
+   the next number.
+
+   A depth-first walk from the entry puts the blocks it reaches in
+   reverse postorder, the order a forward analysis visits them in, and
+   takes an edge to a block still on its stack for a back edge: the
+   jump from the end of a while loop to its test. Blocks it does not
+   reach, such as the code after a return, are left out of the order.
+   Everything is in arrays, built in time linear in the code, so the
+   graph is cheap to build again after the code changes. */
+public class Cfg {
+    public final Function function;
+
+    private int size;
+    private int[] starts;           // first instruction of each block; starts[size] is the end of the code
+    private int[][] successors;
+    private int[][] predecessors;
+    private int[] labelBlocks;      // block of each label, -1 for a label not in the code
+
+    private int[] order;            // reachable blocks in reverse postorder
+    private int[] positions;        // place of each block in order, -1 if unreachable
+    private int[] backFrom = new int[4];
+    private int[] backTo = new int[4];
+    private int backEdges = 0;
+    private boolean[] headers;      // targets of back edges
+
+    private final static int[] NONE = new int[0];
+
+    public Cfg( Function function ) {
+        this.function = function;
+        List<Instr> code = function.code;
+        int n = code.size();
+
+        boolean[] leaders = new boolean[n + 1];
+        leaders[0] = true;
+        for( int i = 0; i < n; i++ ) {
+            Instr instr = code.get( i );
+            if( instr.kind == Instr.LABEL )
+                leaders[i] = true;
+            else if( instr.kind == Instr.JUMP || instr.kind == Instr.IFFALSE || instr.kind == Instr.RETURN )
+                leaders[i + 1] = true;
+        }
+        int blocks = 0;
+        for( int i = 0; i < n; i++ )
+            if( leaders[i] )
+                blocks++;
+
+        size = blocks + 2;
+        starts = new int[size + 1];
+        int b = 1;
+        for( int i = 0; i < n; i++ )
+            if( leaders[i] )
+                starts[b++] = i;
+        starts[size - 1] = n;
+        starts[size] = n;
+
+        labelBlocks = new int[function.labels()];
+        Arrays.fill( labelBlocks, -1 );
+        for( b = 1; b < size - 1; b++ )
+            for( int i = starts[b]; i < starts[b + 1] && code.get( i ).kind == Instr.LABEL; i++ )
+                labelBlocks[code.get( i ).label] = b;
+
+        successors = new int[size][];
+        successors[0] = new int[] { 1 };
+        for( b = 1; b < size - 1; b++ ) {
+            Instr last = code.get( starts[b + 1] - 1 );
+            switch( last.kind ) {
+                case Instr.JUMP:
+                    successors[b] = new int[] { labelBlocks[last.label] };
+                    break;
+                case Instr.IFFALSE:
+                    int target = labelBlocks[last.label];
+                    successors[b] = target == b + 1 ? new int[] { b + 1 } : new int[] { b + 1, target };
+                    break;
+                case Instr.RETURN:
+                    successors[b] = new int[] { size - 1 };
+                    break;
+                default:
+                    successors[b] = new int[] { b + 1 };
+            }
+        }
+        successors[size - 1] = NONE;
+
+        int[] counts = new int[size];
+        for( b = 0; b < size; b++ )
+            for( int s : successors[b] )
+                counts[s]++;
+        predecessors = new int[size][];
+        for( b = 0; b < size; b++ )
+            predecessors[b] = counts[b] == 0 ? NONE : new int[counts[b]];
+        Arrays.fill( counts, 0 );
+        for( b = 0; b < size; b++ )
+            for( int s : successors[b] )
+                predecessors[s][counts[s]++] = b;
+
+        walk();
+    }
+
+    /* Reverse postorder and back edges, with a stack of its own. The
+       successors of a block are walked last first, so a loop's body
+       and the then part of an if come in the order before what follows
+       them, as in the code. */
+    private void walk() {
+        int[] stack = new int[size];
+        int[] next = new int[size];         // successor to look at next
+        byte[] state = new byte[size];      // 0 unseen, 1 on the stack, 2 done
+        int[] post = new int[size];
+        int count = 0;
+        int top = 0;
+        headers = new boolean[size];
+
+        stack[top++] = 0;
+        state[0] = 1;
+        while( top > 0 ) {
+            int b = stack[top - 1];
+            if( next[b] < successors[b].length ) {
+                int s = successors[b][successors[b].length - 1 - next[b]++];
+                if( state[s] == 0 ) {
+                    state[s] = 1;
+                    stack[top++] = s;
+                } else if( state[s] == 1 ) {
+                    addBackEdge( b, s );
+                }
+            } else {
+                state[b] = 2;
+                post[count++] = b;
+                top--;
+            }
+        }
+
+        order = new int[count];
+        positions = new int[size];
+        Arrays.fill( positions, -1 );
+        for( int i = 0; i < count; i++ ) {
+            order[i] = post[count - 1 - i];
+            positions[order[i]] = i;
+        }
+    }
+
+    private void addBackEdge( int from, int to ) {
+        if( backEdges == backFrom.length ) {
+            backFrom = Arrays.copyOf( backFrom, backEdges * 2 );
+            backTo = Arrays.copyOf( backTo, backEdges * 2 );
+        }
+        backFrom[backEdges] = from;
+        backTo[backEdges++] = to;
+        headers[to] = true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int entry() {
+        return 0;
+    }
+
+    public int exit() {
+        return size - 1;
+    }
+
+    /* The instructions of block b are start(b) up to end(b) in the code */
+    public int start( int b ) {
+        return starts[b];
+    }
+
+    public int end( int b ) {
+        return starts[b + 1];
+    }
+
+    /* The arrays below belong to the graph and must not be changed */
+    public int[] successors( int b ) {
+        return successors[b];
+    }
+
+    public int[] predecessors( int b ) {
+        return predecessors[b];
+    }
+
+    public int[] order() {
+        return order;
+    }
+
+    public boolean isReachable( int b ) {
+        return positions[b] >= 0;
+    }
+
+    /* Place of b in the reverse postorder, -1 if it is unreachable */
+    public int position( int b ) {
+        return positions[b];
+    }
+
+    public int block( int label ) {
+        return labelBlocks[label];
+    }
+
+    public int backEdges() {
+        return backEdges;
+    }
+
+    public int backEdgeFrom( int i ) {
+        return backFrom[i];
+    }
+
+    public int backEdgeTo( int i ) {
+        return backTo[i];
+    }
+
+    public boolean isLoopHeader( int b ) {
+        return headers[b];
+    }
+
+    /* The graph as a Graphviz cluster, to go inside a digraph; back
+       edges are dashed and unreachable blocks grey */
+    public void dot( PrintStream out ) {
+        String prefix = "\"" + function.name + ".";
+        out.println( "  subgraph \"cluster_" + function.name + "\" {" );
+        out.println( "    label=\"" + function.name + "\";" );
+        for( int b = 0; b < size; b++ ) {
+            StringBuilder text = new StringBuilder();
+            if( b == 0 )
+                text.append( "entry\\l" );
+            else if( b == size - 1 )
+                text.append( "exit\\l" );
+            else
+                text.append( "B" ).append( b ).append( "\\l" );
+            for( int i = starts[b]; i < starts[b + 1]; i++ )
+                text.append( function.code.get( i ).toString( function ) ).append( "\\l" );
+            out.println( "    " + prefix + b + "\" [label=\"" + text + "\"" + ( isReachable( b ) ? "" : " color=grey fontcolor=grey" ) + "];" );
+        }
+        for( int b = 0; b < size; b++ )
+            for( int s : successors[b] )
+                out.println( "    " + prefix + b + "\" -> " + prefix + s + "\"" + ( isBackEdge( b, s ) ? " [style=dashed]" : "" ) + ";" );
+        out.println( "  }" );
+    }
+
+    private boolean isBackEdge( int from, int to ) {
+        for( int i = 0; i < backEdges; i++ )
+            if( backFrom[i] == from && backTo[i] == to )
+                return true;
+        return false;
+    }
+}
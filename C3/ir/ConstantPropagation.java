@@ -0,0 +1,202 @@
+package ir;
+
+import absyn.OpExp;
+import java.util.List;
+
+/* Works out the registers whose value is known when compiling and
+   defines each by a constant: a copy of one, an operator on them, or
+   in SSA form a phi whose arguments are all the same constant, which
+   moves after the phis left in its block. Only registers defined once
+   are followed, so after leaving SSA the copies are not.
+
+   Values are computed as IrCodeGenerator's TM code computes them,
+   comparisons by the sign of the difference; a division by zero, or
+   of the smallest int by -1, is left for the TM to run. */
+public class ConstantPropagation extends Pass {
+
+    public ConstantPropagation() {
+        super( "constprop", new String[] { Analyses.CFG }, new String[] { Analyses.CFG, Analyses.DOMINATORS } );
+    }
+
+    public boolean run( Function function, Analyses analyses ) {
+        List<Instr> code = function.code;
+        int n = code.size();
+        int registers = function.registers();
+        int[] defs = definitions( function );
+
+        // The instructions using each register, to look at again when
+        // its value is found
+        int[] starts = new int[registers + 1];
+        for( Instr instr : code ) {
+            count( starts, instr.a );
+            count( starts, instr.b );
+            if( instr.args != null )
+                for( int arg : instr.args )
+                    count( starts, arg );
+        }
+        for( int r = 0; r < registers; r++ )
+            starts[r + 1] += starts[r];
+        int[] users = new int[starts[registers]];
+        int[] fill = starts.clone();
+        for( int i = 0; i < n; i++ ) {
+            Instr instr = code.get( i );
+            if( instr.a >= 0 )
+                users[fill[instr.a]++] = i;
+            if( instr.b >= 0 )
+                users[fill[instr.b]++] = i;
+            if( instr.args != null )
+                for( int arg : instr.args )
+                    if( arg >= 0 )
+                        users[fill[arg]++] = i;
+        }
+
+        boolean[] known = new boolean[registers];
+        int[] values = new int[registers];
+        int[] work = new int[n];
+        boolean[] queued = new boolean[n];
+        int top = 0;
+        for( int i = n - 1; i >= 0; i-- ) {
+            work[top++] = i;
+            queued[i] = true;
+        }
+        while( top > 0 ) {
+            int i = work[--top];
+            queued[i] = false;
+            Instr instr = code.get( i );
+            int dest = instr.dest;
+            if( dest < 0 || defs[dest] != 1 || known[dest] || !evaluate( instr, known, values ) )
+                continue;
+            known[dest] = true;
+            for( int k = starts[dest]; k < starts[dest + 1]; k++ ) {
+                if( !queued[users[k]] ) {
+                    queued[users[k]] = true;
+                    work[top++] = users[k];
+                }
+            }
+        }
+
+        boolean changed = false;
+        boolean phis = false;
+        for( Instr instr : code ) {
+            if( instr.dest >= 0 && known[instr.dest] && instr.kind != Instr.CONST ) {
+                phis |= instr.kind == Instr.PHI;
+                instr.kind = Instr.CONST;
+                instr.value = values[instr.dest];
+                instr.a = -1;
+                instr.b = -1;
+                instr.args = null;
+                changed = true;
+            }
+        }
+        if( phis )
+            sortPhis( function, analyses.cfg() );
+        return changed;
+    }
+
+    /* Whether the value of instr is known, put in values if so */
+    private static boolean evaluate( Instr instr, boolean[] known, int[] values ) {
+        int value;
+        switch( instr.kind ) {
+            case Instr.CONST:
+                value = instr.value;
+                break;
+            case Instr.COPY:
+                if( instr.a < 0 || !known[instr.a] )
+                    return false;
+                value = values[instr.a];
+                break;
+            case Instr.UNARY:
+                if( instr.a < 0 || !known[instr.a] )
+                    return false;
+                value = instr.op == OpExp.UMINUS ? -values[instr.a] : values[instr.a] == 0 ? 1 : 0;
+                break;
+            case Instr.BINARY:
+                if( instr.a < 0 || instr.b < 0 || !known[instr.a] || !known[instr.b] )
+                    return false;
+                int a = values[instr.a];
+                int b = values[instr.b];
+                if( instr.op == OpExp.OVER && ( b == 0 || ( a == Integer.MIN_VALUE && b == -1 ) ) )
+                    return false;
+                value = fold( instr.op, a, b );
+                break;
+            case Instr.PHI:
+                boolean found = false;
+                value = 0;
+                for( int arg : instr.args ) {
+                    if( arg < 0 || arg == instr.dest )
+                        continue;
+                    if( !known[arg] || ( found && values[arg] != value ) )
+                        return false;
+                    value = values[arg];
+                    found = true;
+                }
+                if( !found )
+                    return false;
+                break;
+            default:
+                return false;
+        }
+        values[instr.dest] = value;
+        return true;
+    }
+
+    private static int fold( int op, int a, int b ) {
+        switch( op ) {
+            case OpExp.PLUS:
+                return a + b;
+            case OpExp.MINUS:
+                return a - b;
+            case OpExp.TIMES:
+                return a * b;
+            case OpExp.OVER:
+                return a / b;
+            case OpExp.EQ:
+                return a - b == 0 ? 1 : 0;
+            case OpExp.NE:
+                return a - b != 0 ? 1 : 0;
+            case OpExp.LT:
+                return a - b < 0 ? 1 : 0;
+            case OpExp.LE:
+                return a - b <= 0 ? 1 : 0;
+            case OpExp.GT:
+                return a - b > 0 ? 1 : 0;
+            case OpExp.GE:
+                return a - b >= 0 ? 1 : 0;
+            case OpExp.AND:
+                return a != 0 && b != 0 ? 1 : 0;
+            case OpExp.OR:
+                return a != 0 || b != 0 ? 1 : 0;
+            default:
+                return 0;
+        }
+    }
+
+    private static void count( int[] starts, int register ) {
+        if( register >= 0 )
+            starts[register + 1]++;
+    }
+
+    /* Puts the phis of each block back together after its labels, so
+       the constants made of some go after them; blocks stay where they
+       were */
+    private static void sortPhis( Function function, Cfg cfg ) {
+        List<Instr> code = function.code;
+        Instr[] rest = new Instr[code.size()];
+        for( int b = 1; b < cfg.exit(); b++ ) {
+            int i = cfg.start( b );
+            while( i < cfg.end( b ) && code.get( i ).kind == Instr.LABEL )
+                i++;
+            int at = i;
+            int others = 0;
+            for( int k = i; k < cfg.end( b ); k++ ) {
+                Instr instr = code.get( k );
+                if( instr.kind == Instr.PHI )
+                    code.set( at++, instr );
+                else
+                    rest[others++] = instr;
+            }
+            for( int k = 0; k < others; k++ )
+                code.set( at++, rest[k] );
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package ir;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/* Takes out a copy d = s whose source is defined once, earlier in the
+   same block, and read by nothing else, by having that definition set
+   d instead. Most copies left by Ssa.destroy are such, the value of a
+   variable made just before the jump back to a loop's test. d must be
+   neither read nor set between the two, or it would be changed too
+   soon. */
+public class CopyCoalescing extends Pass {
+
+    public CopyCoalescing() {
+        super( "coalesce", new String[] { Analyses.CFG }, NONE );
+    }
+
+    public boolean run( Function function, Analyses analyses ) {
+        List<Instr> code = function.code;
+        Cfg cfg = analyses.cfg();
+        int registers = function.registers();
+        int[] defs = definitions( function );
+        int[] uses = new int[registers];
+        for( Instr instr : code ) {
+            if( instr.a >= 0 )
+                uses[instr.a]++;
+            if( instr.b >= 0 )
+                uses[instr.b]++;
+            if( instr.args != null )
+                for( int arg : instr.args )
+                    if( arg >= 0 )
+                        uses[arg]++;
+        }
+
+        int[] at = new int[registers];          // where each register was last set in this block, or -1
+        Arrays.fill( at, -1 );
+        boolean[] removed = new boolean[code.size()];
+        boolean changed = false;
+        for( int b = 1; b < cfg.exit(); b++ ) {
+            for( int i = cfg.start( b ); i < cfg.end( b ); i++ ) {
+                Instr instr = code.get( i );
+                if( instr.kind == Instr.COPY && instr.a >= 0 && instr.a != instr.dest
+                        && defs[instr.a] == 1 && uses[instr.a] == 1 && at[instr.a] >= 0
+                        && untouched( code, removed, at[instr.a] + 1, i, instr.dest ) ) {
+                    code.get( at[instr.a] ).dest = instr.dest;
+                    removed[i] = true;
+                    changed = true;
+                    continue;
+                }
+                if( instr.dest >= 0 )
+                    at[instr.dest] = i;
+            }
+            for( int i = cfg.start( b ); i < cfg.end( b ); i++ )
+                if( code.get( i ).dest >= 0 )
+                    at[code.get( i ).dest] = -1;
+        }
+        if( !changed )
+            return false;
+
+        List<Instr> result = new ArrayList<>( code.size() );
+        for( int i = 0; i < code.size(); i++ )
+            if( !removed[i] )
+                result.add( code.get( i ) );
+        function.code = result;
+        return true;
+    }
+
+    /* Whether no instruction from first up to last reads or sets r */
+    private static boolean untouched( List<Instr> code, boolean[] removed, int first, int last, int r ) {
+        for( int i = first; i < last; i++ ) {
+            if( removed[i] )
+                continue;
+            Instr instr = code.get( i );
+            if( instr.dest == r || instr.a == r || instr.b == r )
+                return false;
+            if( instr.args != null )
+                for( int arg : instr.args )
+                    if( arg == r )
+                        return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,86 @@
+package ir;
+
+/* Uses the source of a copy in place of its register, and in SSA form
+   the one value of a phi whose arguments other than itself are all the
+   same register. Only registers defined once take part, so the value
+   read is the one the copy would have made; the copies and phis left
+   unused are for DeadCodeElimination. */
+public class CopyPropagation extends Pass {
+
+    public CopyPropagation() {
+        super( "copyprop", NONE, new String[] { Analyses.CFG, Analyses.DOMINATORS } );
+    }
+
+    public boolean run( Function function, Analyses analyses ) {
+        int registers = function.registers();
+        int[] defs = definitions( function );
+        int[] replaced = new int[registers];
+        for( int r = 0; r < registers; r++ )
+            replaced[r] = r;
+
+        boolean any = false;
+        for( Instr instr : function.code ) {
+            int dest = instr.dest;
+            if( dest < 0 || defs[dest] != 1 )
+                continue;
+            int source = -1;
+            if( instr.kind == Instr.COPY ) {
+                source = instr.a;
+            } else if( instr.kind == Instr.PHI ) {
+                for( int arg : instr.args ) {
+                    if( arg < 0 || arg == dest )
+                        continue;
+                    if( source >= 0 && find( replaced, arg ) != find( replaced, source ) ) {
+                        source = -1;
+                        break;
+                    }
+                    source = arg;
+                }
+            }
+            if( source < 0 || defs[source] != 1 )
+                continue;
+            source = find( replaced, source );
+            if( source != dest ) {
+                replaced[dest] = source;
+                any = true;
+            }
+        }
+        if( !any )
+            return false;
+
+        boolean changed = false;
+        for( Instr instr : function.code ) {
+            if( instr.a >= 0 && find( replaced, instr.a ) != instr.a ) {
+                instr.a = find( replaced, instr.a );
+                changed = true;
+            }
+            if( instr.b >= 0 && find( replaced, instr.b ) != instr.b ) {
+                instr.b = find( replaced, instr.b );
+                changed = true;
+            }
+            if( instr.args != null ) {
+                for( int k = 0; k < instr.args.length; k++ ) {
+                    int arg = instr.args[k];
+                    if( arg >= 0 && find( replaced, arg ) != arg ) {
+                        instr.args[k] = find( replaced, arg );
+                        changed = true;
+                    }
+                }
+            }
+        }
+        return changed;
+    }
+
+    /* The register r stands for, shortening the chain on the way */
+    private static int find( int[] replaced, int r ) {
+        int root = r;
+        while( replaced[root] != root )
+            root = replaced[root];
+        while( replaced[r] != root ) {
+            int next = replaced[r];
+            replaced[r] = root;
+            r = next;
+        }
+        return root;
+    }
+}
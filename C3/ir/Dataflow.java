@@ -0,0 +1,149 @@
+package ir;
+
+import java.util.Arrays;
+
+/* A dataflow problem over the blocks of a Cfg, solved with a worklist.
+   The facts at the start and the end of each block are sets of bits,
+   one long[] each. A subclass gives the lattice, by its meet and the
+   starting facts, and the transfer function of a block; a forward
+   problem goes from the entry along the edges, a backward one from
+   the exit against them.
+
+   Blocks are taken in reverse postorder (forward) or its reverse
+   (backward), so that in a loop-free part of the graph each is visited
+   once; a block goes back on the list only when the facts it reads
+   have changed, and the list is kept in the same order. Blocks that cannot be reached keep their
+   starting facts. */
+public abstract class Dataflow {
+    public final Cfg cfg;
+    protected final boolean forward;
+    protected final int bits;
+    protected final int words;
+
+    /* facts at the start and at the end of each block */
+    protected final long[][] in;
+    protected final long[][] out;
+
+    /* blocks visited by solve(), counting repeats */
+    public int visits = 0;
+
+    protected Dataflow( Cfg cfg, boolean forward, int bits ) {
+        this.cfg = cfg;
+        this.forward = forward;
+        this.bits = bits;
+        words = Bits.words( bits );
+        in = new long[cfg.size()][words];
+        out = new long[cfg.size()][words];
+    }
+
+    /* Combines the facts from another path into into */
+    protected abstract void meet( long[] into, long[] from );
+
+    /* Facts of block b before it is first visited, that a block which
+       reaches it through a back edge sees; empty unless overridden, the
+       start for a problem whose meet is union */
+    protected void initial( int b, long[] facts ) {
+    }
+
+    /* Facts coming into the entry (forward) or the exit (backward) */
+    protected void boundary( long[] facts ) {
+    }
+
+    /* Sets output from input for block b: the end facts from the start
+       ones going forward, the start from the end ones going backward.
+       Returns whether output changed. */
+    protected abstract boolean transfer( int b, long[] input, long[] output );
+
+    public Dataflow solve() {
+        int size = cfg.size();
+        for( int b = 0; b < size; b++ )
+            initial( b, forward ? out[b] : in[b] );
+
+        // Blocks to visit, by their place in the order they are taken in,
+        // so that a change inside a loop settles before the blocks after
+        // the loop see it
+        int[] order = cfg.order();
+        int n = order.length;
+        int[] heap = new int[n];
+        boolean[] queued = new boolean[size];
+        for( int i = 0; i < n; i++ ) {
+            heap[i] = i;
+            queued[order[forward ? i : n - 1 - i]] = true;
+        }
+        int count = n;
+
+        while( count > 0 ) {
+            int b = order[forward ? heap[0] : n - 1 - heap[0]];
+            heap[0] = heap[--count];
+            down( heap, count );
+            queued[b] = false;
+            visits++;
+
+            long[] input = forward ? in[b] : out[b];
+            long[] output = forward ? out[b] : in[b];
+            int[] sources = forward ? cfg.predecessors( b ) : cfg.successors( b );
+            if( b == (forward ? cfg.entry() : cfg.exit()) ) {
+                Arrays.fill( input, 0 );
+                boundary( input );
+            } else {
+                boolean first = true;
+                for( int s : sources ) {
+                    long[] facts = forward ? out[s] : in[s];
+                    if( first )
+                        Bits.copy( input, facts );
+                    else
+                        meet( input, facts );
+                    first = false;
+                }
+            }
+
+            if( transfer( b, input, output ) ) {
+                for( int t : forward ? cfg.successors( b ) : cfg.predecessors( b ) ) {
+                    if( !queued[t] && cfg.isReachable( t ) ) {
+                        queued[t] = true;
+                        heap[count++] = forward ? cfg.position( t ) : n - 1 - cfg.position( t );
+                        up( heap, count - 1 );
+                    }
+                }
+            }
+        }
+        return this;
+    }
+
+    /* A binary min-heap of places in heap[0] up to count */
+    private static void down( int[] heap, int count ) {
+        int i = 0;
+        while( true ) {
+            int least = i;
+            int left = 2 * i + 1;
+            if( left < count && heap[left] < heap[least] )
+                least = left;
+            if( left + 1 < count && heap[left + 1] < heap[least] )
+                least = left + 1;
+            if( least == i )
+                return;
+            int place = heap[i];
+            heap[i] = heap[least];
+            heap[least] = place;
+            i = least;
+        }
+    }
+
+    private static void up( int[] heap, int i ) {
+        while( i > 0 && heap[(i - 1) / 2] > heap[i] ) {
+            int place = heap[i];
+            heap[i] = heap[(i - 1) / 2];
+            heap[(i - 1) / 2] = place;
+            i = (i - 1) / 2;
+        }
+    }
+
+    /* Facts at the start and at the end of block b; not to be changed */
+    public long[] in( int b ) {
+        return in[b];
+    }
+
+    public long[] out( int b ) {
+        return out[b];
+    }
+}
@@ -0,0 +1,114 @@
+package ir;
+
+import absyn.OpExp;
+import java.util.ArrayList;
+import java.util.List;
+
+/* Removes the instructions whose only effect is a register nothing
+   reads. Everything else is kept: stores, calls and control, and the
+   divisions and element loads the TM can stop on, unless the divisor
+   is a constant other than 0 and -1. From those, the definitions of
+   the registers they read are kept in turn, so a loop of phis and
+   operators feeding only each other goes too.
+
+   In SSA form a block left with no instructions would merge into an
+   edge and change the predecessors the arguments of phis go with, so
+   each block keeps at least one. */
+public class DeadCodeElimination extends Pass {
+
+    public DeadCodeElimination() {
+        super( "dce", new String[] { Analyses.CFG }, NONE );
+    }
+
+    public boolean run( Function function, Analyses analyses ) {
+        List<Instr> code = function.code;
+        int n = code.size();
+        int registers = function.registers();
+
+        // The instructions defining each register
+        int[] starts = new int[registers + 1];
+        for( Instr instr : code )
+            if( instr.dest >= 0 )
+                starts[instr.dest + 1]++;
+        for( int r = 0; r < registers; r++ )
+            starts[r + 1] += starts[r];
+        int[] definers = new int[starts[registers]];
+        int[] fill = starts.clone();
+        for( int i = 0; i < n; i++ )
+            if( code.get( i ).dest >= 0 )
+                definers[fill[code.get( i ).dest]++] = i;
+
+        boolean[] live = new boolean[n];
+        int[] work = new int[n];
+        int top = 0;
+        for( int i = 0; i < n; i++ ) {
+            if( !removable( code.get( i ), code, starts, definers ) ) {
+                live[i] = true;
+                work[top++] = i;
+            }
+        }
+        if( hasPhis( function ) ) {
+            Cfg cfg = analyses.cfg();
+            for( int b = 1; b < cfg.exit(); b++ ) {
+                boolean kept = false;
+                for( int i = cfg.start( b ); i < cfg.end( b ); i++ )
+                    kept |= live[i];
+                if( !kept && cfg.start( b ) < cfg.end( b ) ) {
+                    live[cfg.start( b )] = true;
+                    work[top++] = cfg.start( b );
+                }
+            }
+        }
+        while( top > 0 ) {
+            Instr instr = code.get( work[--top] );
+            top = keep( instr.a, live, work, top, starts, definers );
+            top = keep( instr.b, live, work, top, starts, definers );
+            if( instr.args != null )
+                for( int arg : instr.args )
+                    top = keep( arg, live, work, top, starts, definers );
+        }
+
+        List<Instr> result = new ArrayList<>( n );
+        for( int i = 0; i < n; i++ )
+            if( live[i] )
+                result.add( code.get( i ) );
+        if( result.size() == n )
+            return false;
+        function.code = result;
+        return true;
+    }
+
+    private static int keep( int register, boolean[] live, int[] work, int top, int[] starts, int[] definers ) {
+        if( register < 0 )
+            return top;
+        for( int k = starts[register]; k < starts[register + 1]; k++ ) {
+            if( !live[definers[k]] ) {
+                live[definers[k]] = true;
+                work[top++] = definers[k];
+            }
+        }
+        return top;
+    }
+
+    private static boolean removable( Instr instr, List<Instr> code, int[] starts, int[] definers ) {
+        switch( instr.kind ) {
+            case Instr.CONST:
+            case Instr.COPY:
+            case Instr.UNARY:
+            case Instr.LOAD:
+            case Instr.ADDR:
+            case Instr.PHI:
+                return true;
+            case Instr.BINARY:
+                if( instr.op != OpExp.OVER )
+                    return true;
+                // A division by a constant known not to stop the TM
+                if( instr.b < 0 || starts[instr.b + 1] - starts[instr.b] != 1 )
+                    return false;
+                Instr divisor = code.get( definers[starts[instr.b]] );
+                return divisor.kind == Instr.CONST && divisor.value != 0 && divisor.value != -1;
+            default:
+                return false;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package ir;
+
+import java.util.Arrays;
+
+/* The dominator tree of a Cfg and the dominance frontier of each
+   block. Block a dominates b when every path from the entry to b goes
+   through a; the immediate dominator of b is the closest such block
+   other than b itself.
+
+   The tree is found as Cooper, Harvey and Kennedy do, going over the
+   blocks in reverse postorder and meeting the dominators of the
+   predecessors already seen until nothing changes; with the order the
+   Cfg gives, code without gotos settles in two passes. The frontier of
+   a block is where its dominance stops: the blocks it does not strictly
+   dominate that have a predecessor it dominates, where an Ssa phi goes.
+   Blocks that cannot be reached are in neither. */
+public class Dominators {
+    public final Cfg cfg;
+
+    private int[] idoms;            // immediate dominator of each block, -1 if unreachable
+    private int[][] children;
+    private int[] preorder;         // reachable blocks, each before the blocks it dominates
+    private int[] first;            // place of each block in preorder
+    private int[] last;             // place of the last block it dominates
+    private int[][] frontiers;
+
+    private final static int[] NONE = new int[0];
+
+    public Dominators( Cfg cfg ) {
+        this.cfg = cfg;
+        int size = cfg.size();
+        int[] order = cfg.order();
+        idoms = new int[size];
+        Arrays.fill( idoms, -1 );
+        idoms[cfg.entry()] = cfg.entry();
+
+        boolean changed = true;
+        while( changed ) {
+            changed = false;
+            for( int i = 1; i < order.length; i++ ) {
+                int b = order[i];
+                int idom = -1;
+                for( int p : cfg.predecessors( b ) ) {
+                    if( idoms[p] < 0 )
+                        continue;
+                    idom = idom < 0 ? p : intersect( p, idom );
+                }
+                if( idoms[b] != idom ) {
+                    idoms[b] = idom;
+                    changed = true;
+                }
+            }
+        }
+
+        int[] counts = new int[size];
+        for( int b : order )
+            if( b != cfg.entry() )
+                counts[idoms[b]]++;
+        children = new int[size][];
+        for( int b = 0; b < size; b++ )
+            children[b] = counts[b] == 0 ? NONE : new int[counts[b]];
+        Arrays.fill( counts, 0 );
+        for( int b : order )
+            if( b != cfg.entry() )
+                children[idoms[b]][counts[idoms[b]]++] = b;
+
+        walk();
+        findFrontiers();
+    }
+
+    /* The closest common dominator of a and b, going up the tree from
+       whichever is later in reverse postorder */
+    private int intersect( int a, int b ) {
+        while( a != b ) {
+            while( cfg.position( a ) > cfg.position( b ) )
+                a = idoms[a];
+            while( cfg.position( b ) > cfg.position( a ) )
+                b = idoms[b];
+        }
+        return a;
+    }
+
+    /* Preorder of the tree and the span of each subtree in it */
+    private void walk() {
+        int size = cfg.size();
+        preorder = new int[cfg.order().length];
+        first = new int[size];
+        last = new int[size];
+        Arrays.fill( first, -1 );
+        Arrays.fill( last, -1 );
+        int[] stack = new int[size];
+        int[] next = new int[size];
+        int top = 0;
+        int count = 0;
+        stack[top++] = cfg.entry();
+        first[cfg.entry()] = count;
+        preorder[count++] = cfg.entry();
+        while( top > 0 ) {
+            int b = stack[top - 1];
+            if( next[b] < children[b].length ) {
+                int c = children[b][next[b]++];
+                first[c] = count;
+                preorder[count++] = c;
+                stack[top++] = c;
+            } else {
+                last[b] = count - 1;
+                top--;
+            }
+        }
+    }
+
+    private void findFrontiers() {
+        int size = cfg.size();
+        int[] counts = new int[size];
+        int[] marks = new int[size];        // last block added to each frontier, plus one
+        frontiers = new int[size][];
+        Arrays.fill( frontiers, NONE );
+        for( int b : cfg.order() ) {
+            int[] preds = cfg.predecessors( b );
+            if( preds.length < 2 )
+                continue;
+            for( int p : preds ) {
+                for( int runner = p; idoms[p] >= 0 && runner != idoms[b]; runner = idoms[runner] ) {
+                    if( marks[runner] == b + 1 )
+                        continue;
+                    marks[runner] = b + 1;
+                    if( counts[runner] == frontiers[runner].length )
+                        frontiers[runner] = Arrays.copyOf( frontiers[runner], Math.max( 2, counts[runner] * 2 ) );
+                    frontiers[runner][counts[runner]++] = b;
+                }
+            }
+        }
+        for( int b = 0; b < size; b++ )
+            if( counts[b] < frontiers[b].length )
+                frontiers[b] = Arrays.copyOf( frontiers[b], counts[b] );
+    }
+
+    /* The immediate dominator of b; the entry for the entry, -1 if b is
+       unreachable */
+    public int idom( int b ) {
+        return idoms[b];
+    }
+
+    /* The arrays below belong to the tree and must not be changed */
+    public int[] children( int b ) {
+        return children[b];
+    }
+
+    public int[] preorder() {
+        return preorder;
+    }
+
+    public int[] frontier( int b ) {
+        return frontiers[b];
+    }
+
+    public boolean dominates( int a, int b ) {
+        return first[a] >= 0 && first[b] >= first[a] && first[b] <= last[a];
+    }
+}
@@ -0,0 +1,81 @@
+package ir;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/* The three-address code of one function body. Registers and labels
+   are numbered from 0 here; a register is defined by the instruction
+   that names it as dest and has the type it was made with. */
+public class Function {
+    /* register and slot types */
+    public final static int BOOL = 0;
+    public final static int INT = 1;
+    public final static int VOID = 2;
+    public final static int ADDR = 3;
+    final static String[] TYPES = { "bool", "int", "void", "addr" };
+
+    public String name;
+    public int funcId;
+    public int result;            // BOOL, INT or VOID
+    public int frameOffset;       // first free slot below the locals, from the Resolver
+    public List<Slot> params = new ArrayList<>();
+    public List<Slot> locals = new ArrayList<>();
+    public List<Instr> code = new ArrayList<>();
+
+    private int[] types = new int[16];
+    private int registers = 0;
+    private int labels = 0;
+
+    public Function( String name, int funcId, int result ) {
+        this.name = name;
+        this.funcId = funcId;
+        this.result = result;
+    }
+
+    public int newRegister( int type ) {
+        if( registers == types.length )
+            types = Arrays.copyOf( types, registers * 2 );
+        types[registers] = type;
+        return registers++;
+    }
+
+    public int type( int register ) {
+        return types[register];
+    }
+
+    public int registers() {
+        return registers;
+    }
+
+    public int newLabel() {
+        return labels++;
+    }
+
+    public int labels() {
+        return labels;
+    }
+
+    public void add( Instr instr ) {
+        code.add( instr );
+    }
+
+    /* Adds a slot to the parameters or locals and numbers it */
+    public Slot addSlot( Slot slot, boolean param ) {
+        slot.id = params.size() + locals.size();
+        ( param ? params : locals ).add( slot );
+        return slot;
+    }
+
+    public void print( PrintStream out ) {
+        StringBuilder header = new StringBuilder( "function " + TYPES[result] + " " + name + "(" );
+        for( int i = 0; i < params.size(); i++ )
+            header.append( i == 0 ? "" : ", " ).append( params.get( i ).declaration() );
+        out.println( header.append( ")" ) );
+        for( Slot local : locals )
+            out.println( "  local " + local.declaration() );
+        for( Instr instr : code )
+            out.println( instr.toString( this ) );
+    }
+}
@@ -0,0 +1,19 @@
+package ir;
+
+/* A dataflow problem whose transfer function is the same for every
+   set of facts coming into a block: the facts the block generates,
+   and the ones coming in that it does not kill. */
+public abstract class GenKill extends Dataflow {
+    protected final long[][] gen;
+    protected final long[][] kill;
+
+    protected GenKill( Cfg cfg, boolean forward, int bits ) {
+        super( cfg, forward, bits );
+        gen = new long[cfg.size()][words];
+        kill = new long[cfg.size()][words];
+    }
+
+    protected boolean transfer( int b, long[] input, long[] output ) {
+        return Bits.transfer( output, gen[b], input, kill[b] );
+    }
+}
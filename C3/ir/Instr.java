@@ -0,0 +1,213 @@
+package ir;
+
+/* One three-address instruction. Values live in virtual registers,
+   numbered from 0 in each function; a register operand of -1 means
+   there is none. Variables stay in their Slots and are reached only
+   through LOAD, STORE, ADDR, ALOAD and ASTORE, unless Ssa has put
+   them in registers; then a register is defined only once, and PHI
+   instructions at the start of a block choose the value that came in
+   by each predecessor. */
+public class Instr {
+    public final static int CONST = 0;      // dest = value
+    public final static int COPY = 1;       // dest = a
+    public final static int UNARY = 2;      // dest = op a, op is OpExp.UMINUS or NOT
+    public final static int BINARY = 3;     // dest = a op b, op from OpExp
+    public final static int LOAD = 4;       // dest = slot
+    public final static int STORE = 5;      // slot = a
+    public final static int ADDR = 6;       // dest = &slot, the base of an array
+    public final static int ALOAD = 7;      // dest = slot[a]
+    public final static int ASTORE = 8;     // slot[a] = b
+    public final static int CALL = 9;       // dest = func(args), dest -1 when unused or void
+    public final static int LABEL = 10;     // label:
+    public final static int JUMP = 11;      // goto label
+    public final static int IFFALSE = 12;   // if a == 0 goto label
+    public final static int RETURN = 13;    // return a, a -1 without a value
+    public final static int PHI = 14;       // dest = phi(args), an argument for each predecessor of the block
+
+    public final static String[] OPERATORS = {
+        "+", "-", "-", "*", "/", "==", "!=", "<", "<=", ">", ">=", "!", "&&", "||"
+    };
+
+    public int kind;
+    public int dest = -1;
+    public int a = -1;
+    public int b = -1;
+    public int op;            // operator of UNARY and BINARY
+    public int value;         // CONST
+    public Slot slot;         // LOAD, STORE, ADDR, ALOAD and ASTORE
+    public int label = -1;    // LABEL, JUMP and IFFALSE
+    public String func;       // CALL
+    public int funcId;
+    public int[] args;
+    public int row = -1;      // CALL, for an undefined function
+    public int col = -1;
+
+    public Instr( int kind ) {
+        this.kind = kind;
+    }
+
+    public static Instr constant( int dest, int value ) {
+        Instr instr = new Instr( CONST );
+        instr.dest = dest;
+        instr.value = value;
+        return instr;
+    }
+
+    public static Instr copy( int dest, int a ) {
+        Instr instr = new Instr( COPY );
+        instr.dest = dest;
+        instr.a = a;
+        return instr;
+    }
+
+    public static Instr unary( int dest, int op, int a ) {
+        Instr instr = new Instr( UNARY );
+        instr.dest = dest;
+        instr.op = op;
+        instr.a = a;
+        return instr;
+    }
+
+    public static Instr binary( int dest, int a, int op, int b ) {
+        Instr instr = new Instr( BINARY );
+        instr.dest = dest;
+        instr.a = a;
+        instr.op = op;
+        instr.b = b;
+        return instr;
+    }
+
+    public static Instr load( int dest, Slot slot ) {
+        Instr instr = new Instr( LOAD );
+        instr.dest = dest;
+        instr.slot = slot;
+        return instr;
+    }
+
+    public static Instr store( Slot slot, int a ) {
+        Instr instr = new Instr( STORE );
+        instr.slot = slot;
+        instr.a = a;
+        return instr;
+    }
+
+    public static Instr address( int dest, Slot slot ) {
+        Instr instr = new Instr( ADDR );
+        instr.dest = dest;
+        instr.slot = slot;
+        return instr;
+    }
+
+    public static Instr loadElement( int dest, Slot slot, int index ) {
+        Instr instr = new Instr( ALOAD );
+        instr.dest = dest;
+        instr.slot = slot;
+        instr.a = index;
+        return instr;
+    }
+
+    public static Instr storeElement( Slot slot, int index, int value ) {
+        Instr instr = new Instr( ASTORE );
+        instr.slot = slot;
+        instr.a = index;
+        instr.b = value;
+        return instr;
+    }
+
+    public static Instr call( int dest, String func, int funcId, int[] args ) {
+        Instr instr = new Instr( CALL );
+        instr.dest = dest;
+        instr.func = func;
+        instr.funcId = funcId;
+        instr.args = args;
+        return instr;
+    }
+
+    public static Instr label( int label ) {
+        Instr instr = new Instr( LABEL );
+        instr.label = label;
+        return instr;
+    }
+
+    public static Instr jump( int label ) {
+        Instr instr = new Instr( JUMP );
+        instr.label = label;
+        return instr;
+    }
+
+    public static Instr ifFalse( int a, int label ) {
+        Instr instr = new Instr( IFFALSE );
+        instr.a = a;
+        instr.label = label;
+        return instr;
+    }
+
+    public static Instr ret( int a ) {
+        Instr instr = new Instr( RETURN );
+        instr.a = a;
+        return instr;
+    }
+
+    /* args are in the order of the block's predecessors in the Cfg */
+    public static Instr phi( int dest, int[] args ) {
+        Instr instr = new Instr( PHI );
+        instr.dest = dest;
+        instr.args = args;
+        return instr;
+    }
+
+    /* whether control can go on to the next instruction */
+    public boolean fallsThrough() {
+        return kind != JUMP && kind != RETURN;
+    }
+
+    /* The instruction as the dump prints it; the type of each register
+       is given where it is defined */
+    public String toString( Function function ) {
+        String target = dest < 0 ? "" : reg( dest ) + ":" + Function.TYPES[function.type( dest )] + " = ";
+        switch( kind ) {
+            case CONST:
+                return "  " + target + value;
+            case COPY:
+                return "  " + target + reg( a );
+            case UNARY:
+                return "  " + target + OPERATORS[op] + reg( a );
+            case BINARY:
+                return "  " + target + reg( a ) + " " + OPERATORS[op] + " " + reg( b );
+            case LOAD:
+                return "  " + target + "load " + slot;
+            case STORE:
+                return "  store " + slot + ", " + reg( a );
+            case ADDR:
+                return "  " + target + "&" + slot;
+            case ALOAD:
+                return "  " + target + slot + "[" + reg( a ) + "]";
+            case ASTORE:
+                return "  " + slot + "[" + reg( a ) + "] = " + reg( b );
+            case CALL:
+                StringBuilder text = new StringBuilder( "  " + target + "call " + func + "(" );
+                for( int i = 0; i < args.length; i++ )
+                    text.append( i == 0 ? "" : ", " ).append( reg( args[i] ) );
+                return text.append( ")" ).toString();
+            case PHI:
+                StringBuilder phi = new StringBuilder( "  " + target + "phi(" );
+                for( int i = 0; i < args.length; i++ )
+                    phi.append( i == 0 ? "" : ", " ).append( reg( args[i] ) );
+                return phi.append( ")" ).toString();
+            case LABEL:
+                return "L" + label + ":";
+            case JUMP:
+                return "  goto L" + label;
+            case IFFALSE:
+                return "  iffalse " + reg( a ) + " goto L" + label;
+            case RETURN:
+                return a < 0 ? "  return" : "  return " + reg( a );
+            default:
+                return "  ?";
+        }
+    }
+
+    static String reg( int register ) {
+        return register < 0 ? "_" : "t" + register;
+    }
+}
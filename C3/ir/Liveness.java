@@ -0,0 +1,61 @@
+package ir;
+
+import java.util.List;
+
+/* Live variables: at each point, the Variables whose value may still
+   be read before it is written again. A backward problem whose meet is
+   union; nothing is live at the exit, since parameters and locals die
+   with the frame and globals are not followed. */
+public class Liveness extends GenKill {
+    public final Variables variables;
+
+    public Liveness( Cfg cfg, Variables variables ) {
+        super( cfg, false, variables.size() );
+        this.variables = variables;
+        List<Instr> code = cfg.function.code;
+        for( int b = 1; b < cfg.exit(); b++ ) {
+            for( int i = cfg.end( b ) - 1; i >= cfg.start( b ); i-- ) {
+                Instr instr = code.get( i );
+                int defined = variables.defined( instr );
+                if( defined >= 0 ) {
+                    Bits.set( kill[b], defined );
+                    Bits.clear( gen[b], defined );
+                }
+                use( b, instr.a );
+                use( b, instr.b );
+                if( instr.args != null )
+                    for( int arg : instr.args )
+                        use( b, arg );
+                if( instr.kind == Instr.LOAD && variables.of( instr.slot ) >= 0 )
+                    Bits.set( gen[b], variables.of( instr.slot ) );
+            }
+        }
+    }
+
+    public Liveness( Cfg cfg ) {
+        this( cfg, new Variables( cfg ) );
+    }
+
+    private void use( int b, int register ) {
+        int id = variables.of( register );
+        if( id >= 0 )
+            Bits.set( gen[b], id );
+    }
+
+    protected void meet( long[] into, long[] from ) {
+        Bits.or( into, from );
+    }
+
+    public Liveness solve() {
+        super.solve();
+        return this;
+    }
+
+    public boolean isLiveIn( int b, int id ) {
+        return Bits.get( in[b], id );
+    }
+
+    public boolean isLiveOut( int b, int id ) {
+        return Bits.get( out[b], id );
+    }
+}
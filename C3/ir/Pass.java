@@ -0,0 +1,38 @@
+package ir;
+
+/* A step of a PassManager pipeline that works on one Function at a
+   time. A pass names the Analyses it reads, which the manager computes
+   before running it, and those that stay right when it changes the
+   code; the others are dropped after a run that changes anything. */
+public abstract class Pass {
+    public final String name;
+    final String[] requires;
+    final String[] preserves;
+
+    protected final static String[] NONE = new String[0];
+
+    protected Pass( String name, String[] requires, String[] preserves ) {
+        this.name = name;
+        this.requires = requires;
+        this.preserves = preserves;
+    }
+
+    /* Runs on one function; returns whether its code changed */
+    public abstract boolean run( Function function, Analyses analyses );
+
+    /* How many instructions define each register */
+    static int[] definitions( Function function ) {
+        int[] counts = new int[function.registers()];
+        for( Instr instr : function.code )
+            if( instr.dest >= 0 )
+                counts[instr.dest]++;
+        return counts;
+    }
+
+    static boolean hasPhis( Function function ) {
+        for( Instr instr : function.code )
+            if( instr.kind == Instr.PHI )
+                return true;
+        return false;
+    }
+}
@@ -0,0 +1,184 @@
+package ir;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/* Runs a pipeline of Passes over every function of a Program, one
+   pass at a time over all of them, and keeps the Analyses of each
+   function from one pass to the next until a pass changes its code in
+   a way they do not survive.
+
+   For each place in the pipeline it counts the wall time of the pass,
+   apart from that of the analyses computed for it, the functions it
+   changed and the instructions it added or removed, which report()
+   prints so a pass that does not pay for itself shows up.
+
+   The presets are those of CM's -O options:
+     0  nothing; the code as IrBuilder made it
+     1  local clean up without SSA: constants folded, jumps on them
+        taken or dropped, dead code and blocks removed
+     2  the same in SSA form, so values are followed through the
+        scalar variables as well and copies go, then once more out
+        of it
+     s  as 2 leaving out passes that make the code larger to make it
+        faster, of which there are none yet */
+public class PassManager {
+    private final List<Pass> passes = new ArrayList<>();
+    private int next = 0;                   // first pass not run yet
+
+    private Program program;
+    private Analyses[] analyses;
+
+    /* for each pass: time, analysis time, functions changed, instructions after */
+    private long[] nanos = new long[0];
+    private long[] analysisNanos = new long[0];
+    private int[] changed = new int[0];
+    private int[] sizes = new int[0];
+    private int size = 0;                   // instructions before the first pass
+
+    /* A pass by its name */
+    public static Pass pass( String name ) {
+        switch( name ) {
+            case "unreachable":
+                return new UnreachableBlocks();
+            case "ssa":
+                return new Pass( "ssa", new String[] { Analyses.CFG, Analyses.DOMINATORS, Analyses.LIVENESS }, Pass.NONE ) {
+                    public boolean run( Function function, Analyses analyses ) {
+                        List<Instr> before = function.code;
+                        Ssa.build( function, analyses.cfg(), analyses.dominators(), analyses.variables(), analyses.liveness() );
+                        return function.code != before;
+                    }
+                };
+            case "out-of-ssa":
+                return new Pass( "out-of-ssa", new String[] { Analyses.CFG }, Pass.NONE ) {
+                    public boolean run( Function function, Analyses analyses ) {
+                        if( !hasPhis( function ) )
+                            return false;
+                        Ssa.destroy( function, analyses.cfg() );
+                        return true;
+                    }
+                };
+            case "constprop":
+                return new ConstantPropagation();
+            case "copyprop":
+                return new CopyPropagation();
+            case "dce":
+                return new DeadCodeElimination();
+            case "branches":
+                return new BranchFolding();
+            case "coalesce":
+                return new CopyCoalescing();
+            default:
+                throw new IllegalArgumentException( "unknown pass " + name );
+        }
+    }
+
+    /* The pipeline of -O0, -O1, -O2 or -Os, by the letter after the O */
+    public static PassManager preset( String level ) {
+        PassManager manager = new PassManager();
+        switch( level ) {
+            case "0":
+                break;
+            case "1":
+                manager.add( "unreachable", "constprop", "branches", "unreachable", "branches", "dce" );
+                break;
+            case "2":
+            case "s":
+                manager.add( "unreachable", "ssa", "constprop", "copyprop", "dce", "out-of-ssa", "coalesce",
+                             "branches", "unreachable", "branches", "constprop", "dce" );
+                break;
+            default:
+                throw new IllegalArgumentException( "unknown optimization level -O" + level );
+        }
+        return manager;
+    }
+
+    public PassManager add( Pass pass ) {
+        passes.add( pass );
+        return this;
+    }
+
+    public PassManager add( String... names ) {
+        for( String name : names )
+            add( pass( name ) );
+        return this;
+    }
+
+    public boolean has( String name ) {
+        for( Pass pass : passes )
+            if( pass.name.equals( name ) )
+                return true;
+        return false;
+    }
+
+    public void run( Program program ) {
+        runUntil( program, null );
+    }
+
+    /* Runs the passes not run yet up to the next one called stop, or to
+       the end if there is none; run() or runUntil() with the same
+       program goes on from there */
+    public void runUntil( Program program, String stop ) {
+        if( this.program != program ) {
+            this.program = program;
+            analyses = new Analyses[program.functions.size()];
+            for( int f = 0; f < analyses.length; f++ )
+                analyses[f] = new Analyses( program.functions.get( f ) );
+            size = size( program );
+        }
+        if( nanos.length < passes.size() ) {
+            nanos = Arrays.copyOf( nanos, passes.size() );
+            analysisNanos = Arrays.copyOf( analysisNanos, passes.size() );
+            changed = Arrays.copyOf( changed, passes.size() );
+            sizes = Arrays.copyOf( sizes, passes.size() );
+        }
+        for( ; next < passes.size(); next++ ) {
+            Pass pass = passes.get( next );
+            if( stop != null && pass.name.equals( stop ) )
+                return;
+            for( Analyses cached : analyses ) {
+                long analysed = cached.nanos;
+                long start = System.nanoTime();
+                for( String name : pass.requires )
+                    cached.compute( name );
+                boolean changes = pass.run( cached.function, cached );
+                long spent = cached.nanos - analysed;
+                nanos[next] += System.nanoTime() - start - spent;
+                analysisNanos[next] += spent;
+                if( changes ) {
+                    changed[next]++;
+                    cached.retain( pass.preserves );
+                }
+            }
+            sizes[next] = size( program );
+        }
+    }
+
+    private static int size( Program program ) {
+        int size = 0;
+        for( Function function : program.functions )
+            size += function.code.size();
+        return size;
+    }
+
+    /* One line for each pass run: its time and that of the analyses it
+       asked for, the functions it changed and the instructions after
+       it, with the change it made */
+    public void report( PrintStream out ) {
+        int functions = analyses == null ? 0 : analyses.length;
+        out.printf( "%-14s %10s %12s %9s %9s %8s\n", "pass", "ms", "analyses ms", "changed", "instrs", "delta" );
+        long total = 0;
+        long totalAnalyses = 0;
+        int before = size;
+        for( int i = 0; i < next; i++ ) {
+            out.printf( "%-14s %10.3f %12.3f %5d/%-3d %9d %+8d\n", passes.get( i ).name, nanos[i] / 1e6, analysisNanos[i] / 1e6,
+                        changed[i], functions, sizes[i], sizes[i] - before );
+            total += nanos[i];
+            totalAnalyses += analysisNanos[i];
+            before = sizes[i];
+        }
+        out.printf( "%-14s %10.3f %12.3f %9s %9d %+8d\n", "total", total / 1e6, totalAnalyses / 1e6, "", before, before - size );
+    }
+}
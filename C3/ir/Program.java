@@ -0,0 +1,28 @@
+package ir;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/* The three-address code of a program: its globals, and a Function
+   for each function definition, in source order. */
+public class Program {
+    public List<Slot> globals = new ArrayList<>();
+    public List<Function> functions = new ArrayList<>();
+    public int globalOffset;      // next free global slot, where the frame of main starts
+
+    public Slot addGlobal( Slot slot ) {
+        slot.id = globals.size();
+        globals.add( slot );
+        return slot;
+    }
+
+    public void print( PrintStream out ) {
+        for( Slot global : globals )
+            out.println( "global " + global.declaration() );
+        for( Function function : functions ) {
+            out.println();
+            function.print( out );
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package ir;
+
+import java.util.Arrays;
+import java.util.List;
+
+/* Reaching definitions: at each point, the definitions of Variables
+   that some path reaches it by without another definition of the same
+   variable. A forward problem whose meet is union.
+
+   Definitions are numbered densely: first one for each followed slot
+   at the entry, standing for the argument of a parameter and for the
+   unset value of a local, then each instruction that defines a
+   followed variable, in code order. A definition kills the others of
+   its variable; a variable defined only once kills nothing, so the
+   only kill sets kept are those of variables defined more than once,
+   such as a local assigned in several places. */
+public class ReachingDefinitions extends GenKill {
+    public final Variables variables;
+
+    private int[] instructions;     // instruction of each definition, -1 at the entry
+    private int[] defined;          // variable of each definition
+    private int[][] definitions;    // definitions of each variable
+    private long[][] sets;          // the same as a set, for a variable defined more than once
+
+    public ReachingDefinitions( Cfg cfg, Variables variables ) {
+        super( cfg, true, count( cfg, variables ) );
+        this.variables = variables;
+        List<Instr> code = cfg.function.code;
+        int vars = variables.size();
+
+        instructions = new int[bits];
+        defined = new int[bits];
+        int[] counts = new int[vars];
+        int d = 0;
+        for( int v = 0; v < vars; v++ ) {
+            if( variables.slot( v ) != null ) {
+                instructions[d] = -1;
+                defined[d++] = v;
+                counts[v]++;
+            }
+        }
+        int[] blocks = new int[bits];
+        for( int b = 1; b < cfg.exit(); b++ ) {
+            for( int i = cfg.start( b ); i < cfg.end( b ); i++ ) {
+                int v = variables.defined( code.get( i ) );
+                if( v >= 0 ) {
+                    instructions[d] = i;
+                    blocks[d] = b;
+                    defined[d++] = v;
+                    counts[v]++;
+                }
+            }
+        }
+
+        definitions = new int[vars][];
+        sets = new long[vars][];
+        for( int v = 0; v < vars; v++ ) {
+            definitions[v] = new int[counts[v]];
+            if( counts[v] > 1 )
+                sets[v] = new long[words];
+        }
+        Arrays.fill( counts, 0 );
+        for( d = 0; d < bits; d++ ) {
+            int v = defined[d];
+            definitions[v][counts[v]++] = d;
+            if( sets[v] != null )
+                Bits.set( sets[v], d );
+        }
+
+        // In code order, so the last definition of a variable in a
+        // block is the one it generates
+        for( d = 0; d < bits; d++ ) {
+            int b = instructions[d] < 0 ? cfg.entry() : blocks[d];
+            int v = defined[d];
+            if( sets[v] != null ) {
+                Bits.or( kill[b], sets[v] );
+                Bits.andNot( gen[b], sets[v] );
+            }
+            Bits.set( gen[b], d );
+        }
+    }
+
+    public ReachingDefinitions( Cfg cfg ) {
+        this( cfg, new Variables( cfg ) );
+    }
+
+    private static int count( Cfg cfg, Variables variables ) {
+        int count = 0;
+        for( int v = 0; v < variables.size(); v++ )
+            if( variables.slot( v ) != null )
+                count++;
+        for( int b = 1; b < cfg.exit(); b++ )
+            for( int i = cfg.start( b ); i < cfg.end( b ); i++ )
+                if( variables.defined( cfg.function.code.get( i ) ) >= 0 )
+                    count++;
+        return count;
+    }
+
+    protected void meet( long[] into, long[] from ) {
+        Bits.or( into, from );
+    }
+
+    public ReachingDefinitions solve() {
+        super.solve();
+        return this;
+    }
+
+    public int definitions() {
+        return bits;
+    }
+
+    /* The instruction of definition d, -1 for one at the entry */
+    public int instruction( int d ) {
+        return instructions[d];
+    }
+
+    public int variable( int d ) {
+        return defined[d];
+    }
+
+    /* The definitions of variable v; not to be changed */
+    public int[] definitionsOf( int v ) {
+        return definitions[v];
+    }
+
+    public boolean reachesIn( int b, int d ) {
+        return Bits.get( in[b], d );
+    }
+}
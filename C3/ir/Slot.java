@@ -0,0 +1,52 @@
+package ir;
+
+import absyn.VarDec;
+
+/* A variable in memory: a global, a parameter or a local of some
+   block. Loads and stores name the slot, so the code says which
+   variable it touches; where the slot is comes from the Resolver, as
+   an offset from the global pointer for a global and from the frame
+   pointer otherwise. */
+public class Slot {
+    /* what the slot holds */
+    public final static int SCALAR = 0;
+    public final static int ARRAY = 1;        // the elements, base at offset
+    public final static int REFERENCE = 2;    // an array parameter: the base address
+
+    public String name;
+    public int kind;
+    public int type;          // Function.INT or Function.BOOL, of the value or the elements
+    public int size;          // elements of an ARRAY
+    public boolean global;
+    public int offset;
+    public int id;            // position among the globals, or the slots of its function
+    public VarDec dec;
+
+    public Slot( String name, int kind, int type, int size, boolean global, int offset, VarDec dec ) {
+        this.name = name;
+        this.kind = kind;
+        this.type = type;
+        this.size = size;
+        this.global = global;
+        this.offset = offset;
+        this.dec = dec;
+    }
+
+    public boolean isArray() {
+        return kind != SCALAR;
+    }
+
+    /* the declaration, as the dump prints it */
+    public String declaration() {
+        String text = Function.TYPES[type] + " " + name;
+        if( kind == ARRAY )
+            text += "[" + size + "]";
+        else if( kind == REFERENCE )
+            text += "[]";
+        return text + " @" + offset;
+    }
+
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,362 @@
+package ir;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/* Static single assignment form for a Function: build() puts its
+   scalar parameters and locals in registers, and destroy() takes the
+   phis out again so the code can be turned into TM code.
+
+   build() promotes every slot of the function that holds one value;
+   arrays, array parameters and globals stay in memory, where element
+   stores and calls reach them. It drops the blocks that cannot be
+   reached and places a phi for a slot at the iterated dominance
+   frontier of the blocks that store to it, only where the slot is
+   live. Renaming then walks the dominator tree: a store makes the
+   stored register the slot's value, a load is replaced by that value
+   wherever its register is used, and both go. A slot read before any
+   store, as a parameter is, is loaded once at the start of the code.
+
+   destroy() puts a copy for each phi on each edge into its block, at
+   the end of the predecessor or, on an edge from a conditional jump
+   to a block with other predecessors, in a block of its own at the
+   end of the code. The copies into one block happen at once, through
+   fresh registers when one phi reads what another defines. */
+public final class Ssa {
+    private Ssa() {
+    }
+
+    public static void build( Function function ) {
+        UnreachableBlocks.remove( function, new Cfg( function ) );
+        Cfg cfg = new Cfg( function );
+        Variables variables = new Variables( cfg );
+        build( function, cfg, new Dominators( cfg ), variables, new Liveness( cfg, variables ).solve() );
+    }
+
+    /* With the analyses of the function's code as it is; a block that
+       cannot be reached is left as it is, and gives its phi arguments
+       no value */
+    public static void build( Function function, Cfg cfg, Dominators dominators, Variables variables, Liveness liveness ) {
+        List<Instr> code = function.code;
+        int size = cfg.size();
+
+        List<Slot> promoted = new ArrayList<>();
+        int[] index = new int[function.params.size() + function.locals.size()];
+        Arrays.fill( index, -1 );
+        for( Slot slot : function.params )
+            promote( slot, promoted, index );
+        for( Slot slot : function.locals )
+            promote( slot, promoted, index );
+        if( promoted.isEmpty() )
+            return;
+        int count = promoted.size();
+
+        // The blocks that store to each slot
+        int[][] stores = new int[count][];
+        int[] storeCounts = new int[count];
+        for( int v = 0; v < count; v++ )
+            stores[v] = new int[2];
+        for( int b = 1; b < cfg.exit(); b++ ) {
+            for( int i = cfg.start( b ); i < cfg.end( b ); i++ ) {
+                int v = promoted( code.get( i ), Instr.STORE, index );
+                if( v >= 0 && ( storeCounts[v] == 0 || stores[v][storeCounts[v] - 1] != b ) ) {
+                    if( storeCounts[v] == stores[v].length )
+                        stores[v] = Arrays.copyOf( stores[v], storeCounts[v] * 2 );
+                    stores[v][storeCounts[v]++] = b;
+                }
+            }
+        }
+
+        // Phis at the iterated frontiers, where the slot is live
+        List<List<Instr>> phis = new ArrayList<>( size );
+        List<int[]> phiSlots = new ArrayList<>( size );
+        int[] phiCounts = new int[size];
+        for( int b = 0; b < size; b++ ) {
+            phis.add( null );
+            phiSlots.add( null );
+        }
+        int[] placed = new int[size];       // last slot given a phi in each block, plus one
+        int[] queued = new int[size];       // last slot each block was queued for, plus one
+        int[] work = new int[size];
+        for( int v = 0; v < count; v++ ) {
+            int id = variables.of( promoted.get( v ) );
+            int top = 0;
+            for( int i = 0; i < storeCounts[v]; i++ ) {
+                work[top++] = stores[v][i];
+                queued[stores[v][i]] = v + 1;
+            }
+            while( top > 0 ) {
+                int x = work[--top];
+                for( int y : dominators.frontier( x ) ) {
+                    if( placed[y] == v + 1 || y == cfg.exit() || !liveness.isLiveIn( y, id ) )
+                        continue;
+                    placed[y] = v + 1;
+                    if( phis.get( y ) == null ) {
+                        phis.set( y, new ArrayList<>() );
+                        phiSlots.set( y, new int[2] );
+                    }
+                    int[] slots = phiSlots.get( y );
+                    if( phiCounts[y] == slots.length )
+                        phiSlots.set( y, slots = Arrays.copyOf( slots, slots.length * 2 ) );
+                    slots[phiCounts[y]++] = v;
+                    int[] args = new int[cfg.predecessors( y ).length];
+                    Arrays.fill( args, -1 );
+                    phis.get( y ).add( Instr.phi( function.newRegister( promoted.get( v ).type ), args ) );
+                    if( queued[y] != v + 1 ) {
+                        queued[y] = v + 1;
+                        work[top++] = y;
+                    }
+                }
+            }
+        }
+
+        new Renamer( function, cfg, dominators, promoted, index, phis, phiSlots ).rename();
+    }
+
+    private static void promote( Slot slot, List<Slot> promoted, int[] index ) {
+        if( slot.kind == Slot.SCALAR && !slot.global ) {
+            index[slot.id] = promoted.size();
+            promoted.add( slot );
+        }
+    }
+
+    /* The promoted slot an instruction of the given kind touches, or -1 */
+    private static int promoted( Instr instr, int kind, int[] index ) {
+        if( instr.kind != kind || instr.slot == null || instr.slot.global || instr.slot.id >= index.length )
+            return -1;
+        return index[instr.slot.id];
+    }
+
+    /* Renaming along the dominator tree, with a stack of its own */
+    private static class Renamer {
+        private final Function function;
+        private final Cfg cfg;
+        private final Dominators dominators;
+        private final List<Slot> promoted;
+        private final int[] index;
+        private final List<List<Instr>> phis;
+        private final List<int[]> phiSlots;
+
+        private int[][] values;         // the values of each slot, innermost last
+        private int[] depths;
+        private int[] log = new int[16];    // slots given a value, to undo on leaving a block
+        private int logSize = 0;
+        private int[] entries;          // register loaded at the start for each slot, or -1
+        private int[] replaced;         // value of each loaded register, or -1
+
+        Renamer( Function function, Cfg cfg, Dominators dominators, List<Slot> promoted, int[] index,
+                 List<List<Instr>> phis, List<int[]> phiSlots ) {
+            this.function = function;
+            this.cfg = cfg;
+            this.dominators = dominators;
+            this.promoted = promoted;
+            this.index = index;
+            this.phis = phis;
+            this.phiSlots = phiSlots;
+            int count = promoted.size();
+            values = new int[count][4];
+            depths = new int[count];
+            entries = new int[count];
+            Arrays.fill( entries, -1 );
+            replaced = new int[function.registers()];
+            Arrays.fill( replaced, -1 );
+        }
+
+        void rename() {
+            List<Instr> code = function.code;
+            boolean[] removed = new boolean[code.size()];
+            int size = cfg.size();
+            int[] stack = new int[size];
+            int[] marks = new int[size];    // size of the log on entering each block
+            int[] next = new int[size];
+            int top = 0;
+            stack[top++] = cfg.entry();
+            enter( cfg.entry(), code, removed );
+            marks[cfg.entry()] = 0;
+            while( top > 0 ) {
+                int b = stack[top - 1];
+                int[] children = dominators.children( b );
+                if( next[b] < children.length ) {
+                    int c = children[next[b]++];
+                    marks[c] = logSize;
+                    enter( c, code, removed );
+                    stack[top++] = c;
+                } else {
+                    while( logSize > marks[b] )
+                        depths[log[--logSize]]--;
+                    top--;
+                }
+            }
+
+            // The code again, with phis after the labels of their blocks
+            // and the loads of the values slots have at the start first
+            List<Instr> result = new ArrayList<>( code.size() );
+            for( int v = 0; v < entries.length; v++ )
+                if( entries[v] >= 0 )
+                    result.add( Instr.load( entries[v], promoted.get( v ) ) );
+            for( int b = 1; b < cfg.exit(); b++ ) {
+                int i = cfg.start( b );
+                for( ; i < cfg.end( b ) && code.get( i ).kind == Instr.LABEL; i++ )
+                    result.add( code.get( i ) );
+                if( phis.get( b ) != null )
+                    result.addAll( phis.get( b ) );
+                for( ; i < cfg.end( b ); i++ )
+                    if( !removed[i] )
+                        result.add( code.get( i ) );
+            }
+            function.code = result;
+        }
+
+        private void enter( int b, List<Instr> code, boolean[] removed ) {
+            List<Instr> blockPhis = phis.get( b );
+            if( blockPhis != null ) {
+                int[] slots = phiSlots.get( b );
+                for( int k = 0; k < blockPhis.size(); k++ )
+                    define( slots[k], blockPhis.get( k ).dest );
+            }
+            for( int i = cfg.start( b ); i < cfg.end( b ); i++ ) {
+                Instr instr = code.get( i );
+                instr.a = value( instr.a );
+                instr.b = value( instr.b );
+                if( instr.args != null )
+                    for( int k = 0; k < instr.args.length; k++ )
+                        instr.args[k] = value( instr.args[k] );
+                int v = promoted( instr, Instr.LOAD, index );
+                if( v >= 0 ) {
+                    replaced[instr.dest] = current( v );
+                    removed[i] = true;
+                }
+                v = promoted( instr, Instr.STORE, index );
+                if( v >= 0 ) {
+                    define( v, instr.a );
+                    removed[i] = true;
+                }
+            }
+            for( int s : cfg.successors( b ) ) {
+                List<Instr> successorPhis = phis.get( s );
+                if( successorPhis == null )
+                    continue;
+                int[] preds = cfg.predecessors( s );
+                int j = 0;
+                while( preds[j] != b )
+                    j++;
+                int[] slots = phiSlots.get( s );
+                for( int k = 0; k < successorPhis.size(); k++ )
+                    successorPhis.get( k ).args[j] = current( slots[k] );
+            }
+        }
+
+        /* What a register operand stands for now that loads are gone */
+        private int value( int register ) {
+            return register >= 0 && register < replaced.length && replaced[register] >= 0 ? replaced[register] : register;
+        }
+
+        private void define( int v, int register ) {
+            if( depths[v] == values[v].length )
+                values[v] = Arrays.copyOf( values[v], depths[v] * 2 );
+            values[v][depths[v]++] = register;
+            if( logSize == log.length )
+                log = Arrays.copyOf( log, logSize * 2 );
+            log[logSize++] = v;
+        }
+
+        private int current( int v ) {
+            if( depths[v] > 0 )
+                return values[v][depths[v] - 1];
+            if( entries[v] < 0 )
+                entries[v] = function.newRegister( promoted.get( v ).type );
+            return entries[v];
+        }
+    }
+
+    public static void destroy( Function function ) {
+        destroy( function, new Cfg( function ) );
+    }
+
+    public static void destroy( Function function, Cfg cfg ) {
+        List<Instr> code = function.code;
+        int n = code.size();
+        List<List<Instr>> before = new ArrayList<>( n + 1 );   // copies to go before each instruction
+        for( int i = 0; i <= n; i++ )
+            before.add( null );
+        List<Instr> after = new ArrayList<>();                  // blocks of their own after the code
+
+        for( int s = 1; s < cfg.exit(); s++ ) {
+            int first = cfg.start( s );
+            while( first < cfg.end( s ) && code.get( first ).kind == Instr.LABEL )
+                first++;
+            int last = first;
+            while( last < cfg.end( s ) && code.get( last ).kind == Instr.PHI )
+                last++;
+            if( last == first )
+                continue;
+            int[] preds = cfg.predecessors( s );
+            for( int j = 0; j < preds.length; j++ ) {
+                int p = preds[j];
+                List<Instr> copies = copies( function, code, first, last, j );
+                if( copies.isEmpty() )
+                    continue;
+                Instr jump = p == cfg.entry() || cfg.start( p ) == cfg.end( p ) ? null : code.get( cfg.end( p ) - 1 );
+                boolean jumps = jump != null && ( jump.kind == Instr.JUMP || jump.kind == Instr.IFFALSE ) && cfg.block( jump.label ) == s;
+                boolean fallsInto = cfg.end( p ) == cfg.start( s ) && ( jump == null || jump.fallsThrough() );
+                if( fallsInto )
+                    add( before, cfg.start( s ), copies );
+                if( jumps && jump.kind == Instr.JUMP ) {
+                    add( before, cfg.end( p ) - 1, copies );
+                } else if( jumps ) {
+                    // The edge is split: the jump goes to the copies, and
+                    // they go on to the block
+                    int label = function.newLabel();
+                    after.add( Instr.label( label ) );
+                    after.addAll( fallsInto ? copies( function, code, first, last, j ) : copies );
+                    after.add( Instr.jump( jump.label ) );
+                    jump.label = label;
+                }
+            }
+        }
+
+        List<Instr> result = new ArrayList<>( n + after.size() );
+        for( int i = 0; i <= n; i++ ) {
+            if( before.get( i ) != null )
+                result.addAll( before.get( i ) );
+            if( i < n && code.get( i ).kind != Instr.PHI )
+                result.add( code.get( i ) );
+        }
+        result.addAll( after );
+        function.code = result;
+    }
+
+    /* The copies for the phis first up to last on the edge from
+       predecessor j, as one parallel copy */
+    private static List<Instr> copies( Function function, List<Instr> code, int first, int last, int j ) {
+        List<Instr> copies = new ArrayList<>();
+        boolean overlap = false;
+        for( int i = first; i < last; i++ ) {
+            Instr phi = code.get( i );
+            int source = phi.args[j];
+            if( source < 0 || source == phi.dest )
+                continue;
+            for( int k = first; k < last; k++ )
+                if( code.get( k ).dest == source )
+                    overlap = true;
+            copies.add( Instr.copy( phi.dest, source ) );
+        }
+        if( !overlap )
+            return copies;
+        List<Instr> staged = new ArrayList<>( copies.size() * 2 );
+        for( Instr copy : copies ) {
+            int temp = function.newRegister( function.type( copy.dest ) );
+            staged.add( Instr.copy( temp, copy.a ) );
+            copy.a = temp;
+        }
+        staged.addAll( copies );
+        return staged;
+    }
+
+    private static void add( List<List<Instr>> before, int i, List<Instr> copies ) {
+        if( before.get( i ) == null )
+            before.set( i, new ArrayList<>() );
+        before.get( i ).addAll( copies );
+    }
+}
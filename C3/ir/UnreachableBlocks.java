@@ -0,0 +1,52 @@
+package ir;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/* Removes the blocks no path from the entry reaches, such as code
+   after a return or the arm of an if that BranchFolding has cut off.
+   A phi loses the arguments of the predecessors that go; the others
+   keep their order, since the blocks left keep theirs. */
+public class UnreachableBlocks extends Pass {
+
+    public UnreachableBlocks() {
+        super( "unreachable", new String[] { Analyses.CFG }, NONE );
+    }
+
+    public boolean run( Function function, Analyses analyses ) {
+        return remove( function, analyses.cfg() );
+    }
+
+    static boolean remove( Function function, Cfg cfg ) {
+        if( cfg.order().length == cfg.size() )
+            return false;
+        List<Instr> code = new ArrayList<>( function.code.size() );
+        for( int b = 1; b < cfg.exit(); b++ ) {
+            if( !cfg.isReachable( b ) )
+                continue;
+            for( int i = cfg.start( b ); i < cfg.end( b ); i++ ) {
+                Instr instr = function.code.get( i );
+                if( instr.kind == Instr.PHI )
+                    dropArguments( instr, cfg.predecessors( b ), cfg );
+                code.add( instr );
+            }
+        }
+        function.code = code;
+        return true;
+    }
+
+    private static void dropArguments( Instr phi, int[] preds, Cfg cfg ) {
+        int count = 0;
+        for( int p : preds )
+            if( cfg.isReachable( p ) )
+                count++;
+        if( count == preds.length )
+            return;
+        int[] args = new int[count];
+        count = 0;
+        for( int j = 0; j < preds.length; j++ )
+            if( cfg.isReachable( preds[j] ) )
+                args[count++] = phi.args[j];
+        phi.args = args;
+    }
+}
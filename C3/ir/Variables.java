@@ -0,0 +1,118 @@
+package ir;
+
+import java.util.Arrays;
+import java.util.List;
+
+/* The variables of a function the dataflow analyses follow from block
+   to block, numbered densely from 0: its scalar parameters and locals,
+   then the registers used or defined in more than one block. A
+   register whose definition and uses are all in one block, as nearly
+   every temporary of an expression is, gets no number; what happens
+   to it can be read off the block itself, so a function with
+   thousands of them still has small sets.
+
+   Globals and arrays stay in memory where calls and element stores
+   reach them, and are not followed. */
+public class Variables {
+    private int size;
+    private int[] registerIds;      // number of each register, or -1
+    private int[] slotIds;          // number of each slot of the function, or -1
+    private int[] registers;        // register of each number, -1 for a slot
+    private Slot[] slots;           // slot of each number, null for a register
+
+    public Variables( Cfg cfg ) {
+        Function function = cfg.function;
+        List<Instr> code = function.code;
+        int count = function.registers();
+
+        // The block each register is first seen in, and whether it is
+        // seen in another
+        int[] homes = new int[count];
+        Arrays.fill( homes, -1 );
+        boolean[] shared = new boolean[count];
+        for( int b = 1; b < cfg.exit(); b++ ) {
+            for( int i = cfg.start( b ); i < cfg.end( b ); i++ ) {
+                Instr instr = code.get( i );
+                see( homes, shared, instr.dest, b );
+                see( homes, shared, instr.a, b );
+                see( homes, shared, instr.b, b );
+                if( instr.args != null )
+                    for( int arg : instr.args )
+                        see( homes, shared, arg, b );
+            }
+        }
+
+        int slotCount = function.params.size() + function.locals.size();
+        slotIds = new int[slotCount];
+        Arrays.fill( slotIds, -1 );
+        registerIds = new int[count];
+        Arrays.fill( registerIds, -1 );
+        registers = new int[slotCount + 16];
+        slots = new Slot[slotCount + 16];
+        for( Slot slot : function.params )
+            add( slot );
+        for( Slot slot : function.locals )
+            add( slot );
+        for( int r = 0; r < count; r++ ) {
+            if( shared[r] ) {
+                if( size == registers.length ) {
+                    registers = Arrays.copyOf( registers, size * 2 );
+                    slots = Arrays.copyOf( slots, size * 2 );
+                }
+                registerIds[r] = size;
+                registers[size++] = r;
+            }
+        }
+    }
+
+    private static void see( int[] homes, boolean[] shared, int register, int block ) {
+        if( register < 0 )
+            return;
+        if( homes[register] < 0 )
+            homes[register] = block;
+        else if( homes[register] != block )
+            shared[register] = true;
+    }
+
+    private void add( Slot slot ) {
+        if( slot.isArray() )
+            return;
+        slotIds[slot.id] = size;
+        registers[size] = -1;
+        slots[size++] = slot;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /* The number of a register or a slot, -1 if it is not followed */
+    public int of( int register ) {
+        return register >= 0 && register < registerIds.length ? registerIds[register] : -1;
+    }
+
+    public int of( Slot slot ) {
+        return slot == null || slot.global ? -1 : slotIds[slot.id];
+    }
+
+    /* The register with number id, or -1 if it is a slot */
+    public int register( int id ) {
+        return registers[id];
+    }
+
+    /* The slot with number id, or null if it is a register */
+    public Slot slot( int id ) {
+        return slots[id];
+    }
+
+    /* The number defined by an instruction, or -1 */
+    public int defined( Instr instr ) {
+        if( instr.kind == Instr.STORE )
+            return of( instr.slot );
+        return of( instr.dest );
+    }
+
+    public String name( int id ) {
+        return registers[id] >= 0 ? Instr.reg( registers[id] ) : slots[id].name;
+    }
+}